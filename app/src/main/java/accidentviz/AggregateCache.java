@@ -0,0 +1,116 @@
+package accidentviz;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * LRU cache of computed aggregates, bounded by their estimated size in bytes. Keys carry the
+ * {@link ColumnTable#getVersion() version} of the table they were computed from, so results
+ * for a previous dataset can never be served for a new one; {@link #invalidateAll()} drops
+ * them eagerly when a new file is loaded.
+ */
+class AggregateCache {
+
+    /** Implemented by cached results to report their approximate heap footprint. */
+    interface Sized {
+        long estimatedBytes();
+    }
+
+    static final class Key {
+        private final long version;
+        private final String kind;
+        private final int[] columns;
+
+        Key(long version, String kind, int... columns) {
+            this.version = version;
+            this.kind = kind;
+            this.columns = columns;
+        }
+
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return version == other.version && kind.equals(other.kind) && Arrays.equals(columns, other.columns);
+        }
+
+        public int hashCode() {
+            return 31 * (31 * Long.hashCode(version) + kind.hashCode()) + Arrays.hashCode(columns);
+        }
+
+        public String toString() {
+            return kind + Arrays.toString(columns) + "@" + version;
+        }
+    }
+
+    private final long maxBytes;
+    private final LinkedHashMap<Key, Sized> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    private long hits;
+    private long misses;
+
+    AggregateCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the cached value or computes and caches it. The computation runs outside the
+     * lock, so concurrent callers may both compute a missing value; the last one wins.
+     * Computations are timed as the {@link Metrics.Stage#AGGREGATE} stage.
+     */
+    @SuppressWarnings({"unchecked", "try"})
+    <T extends Sized> T get(Key key, Supplier<T> compute) {
+        synchronized (this) {
+            Sized cached = entries.get(key);
+            if (cached != null) {
+                hits++;
+                return (T) cached;
+            }
+            misses++;
+        }
+        T value;
+        try (Metrics.Span span = Metrics.GLOBAL.start(Metrics.Stage.AGGREGATE)) {
+            value = compute.get();
+        }
+        put(key, value);
+        return value;
+    }
+
+    /** Whether a value is cached; does not count as a hit or miss. */
+    synchronized boolean contains(Key key) {
+        return entries.containsKey(key);
+    }
+
+    synchronized void invalidateAll() {
+        entries.clear();
+        totalBytes = 0;
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    private synchronized void put(Key key, Sized value) {
+        long size = value.estimatedBytes();
+        if (size > maxBytes) return;
+        Sized previous = entries.put(key, value);
+        if (previous != null) {
+            totalBytes -= previous.estimatedBytes();
+        }
+        totalBytes += size;
+        Iterator<Map.Entry<Key, Sized>> eldest = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<Key, Sized> entry = eldest.next();
+            if (entry.getKey().equals(key)) continue;
+            totalBytes -= entry.getValue().estimatedBytes();
+            eldest.remove();
+        }
+    }
+}
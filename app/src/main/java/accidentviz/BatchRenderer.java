@@ -0,0 +1,342 @@
+package accidentviz;
+
+import org.jfree.chart.ChartUtils;
+import org.jfree.chart.JFreeChart;
+import org.jfree.svg.SVGGraphics2D;
+import org.jfree.svg.SVGUtils;
+
+import java.awt.*;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Headless entry point for scheduled reports. Loads a dataset once, then builds and writes
+ * every requested chart in parallel:
+ *
+ * <pre>
+ * java -cp ... accidentviz.BatchRenderer [--out DIR] [--format png|svg] [--size 1150x400] [--threads N]
+ *         [--where Weather_Conditions=Raining no high winds] [--metrics metrics.json]
+ *         data.csv bar:category=District_Area,value=Number_of_Casualties,agg=mean
+ *         pie:category=Weather_Conditions heatmap:x=Longitude,y=Latitude,weight=Number_of_Casualties @more-specs.txt
+ * </pre>
+ *
+ * Chart types are bar, pie, line, scatter and heatmap; bar and line take category, value and
+ * an optional agg, scatter takes x and y, and heatmap takes x, y and an optional weight
+ * column. Any spec may set name= for the output file. An
+ * argument starting with @ names a file of specs, one per line. Each --where keeps only rows
+ * with that category value; values of one column are OR'ed and columns are AND'ed. With
+ * --metrics, the time spent per stage is written to that file as JSON once the batch is done.
+ * The bar, pie and line charts are aggregated together, in one scan of the loaded rows. A
+ * file larger than {@link ExternalAggregator#defaultThreshold()} is not loaded: those charts
+ * are aggregated in one pass over the file, and the other chart types and --where are not
+ * available.
+ */
+class BatchRenderer {
+
+    private final ChartBuilder charts;
+    private final File outputDir;
+    private final String format;
+    private final int width;
+    private final int height;
+
+    BatchRenderer(ChartBuilder charts, File outputDir, String format, int width, int height) {
+        this.charts = charts;
+        this.outputDir = outputDir;
+        this.format = format;
+        this.width = width;
+        this.height = height;
+    }
+
+    /** Reads a CSV or XLSX file, a large CSV file on all cores, or maps a snapshot saved from the window. */
+    static ColumnTable load(File file) throws IOException {
+        try (Metrics.Span span = Metrics.GLOBAL.start(Metrics.Stage.LOAD)) {
+            ColumnTable table;
+            if (SnapshotFile.isSnapshot(file)) {
+                table = SnapshotFile.read(file).table;
+            } else if (!XlsxReader.isWorkbook(file) && ParallelCsvLoader.isWorthSplitting(file)) {
+                try {
+                    table = new ParallelCsvLoader(0).load(file, null).finish();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Load interrupted");
+                }
+            } else {
+                TableLoader loader = new TableLoader();
+                RowReader reader = XlsxReader.isWorkbook(file) ? new XlsxReader() : new CsvParser();
+                reader.parse(file, loader);
+                table = loader.finish();
+            }
+            if (table == null || table.getRowCount() == 0) {
+                throw new IOException("Invalid data format!");
+            }
+            span.addRows(table.getRowCount());
+            span.addBytes(file.length());
+            return table;
+        }
+    }
+
+    /** Reads the first rows of a file to be charted out of core. */
+    static ColumnTable open(ExternalAggregator external) throws IOException {
+        try (Metrics.Span span = Metrics.GLOBAL.start(Metrics.Stage.LOAD)) {
+            ColumnTable sample = external.open();
+            if (sample == null || sample.getRowCount() == 0) {
+                throw new IOException("Invalid data format!");
+            }
+            span.addRows(sample.getRowCount());
+            span.addBytes(external.getBytesRead());
+            return sample;
+        }
+    }
+
+    /**
+     * Aggregates the bar, pie and line charts of the batch together: in one pass over a file
+     * charted out of core, or in one scan of the loaded rows. Specs with errors are skipped
+     * here and reported when they are rendered.
+     */
+    void prefetch(List<ChartSpec> specs) {
+        charts.prefetch(ChartSpec.queries(charts, specs));
+    }
+
+    /**
+     * Renders the charts on a pool of the given size and returns the number that failed.
+     * Each failure is reported on standard error without stopping the others.
+     */
+    int renderAll(List<ChartSpec> specs, int threads) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<File>> results = new ArrayList<>();
+            for (final ChartSpec spec : specs) {
+                results.add(pool.submit(() -> render(spec)));
+            }
+            int failures = 0;
+            for (int i = 0; i < specs.size(); i++) {
+                try {
+                    System.out.println("Wrote " + results.get(i).get());
+                } catch (ExecutionException ex) {
+                    failures++;
+                    System.err.println("Error generating chart " + specs.get(i) + ": " + ex.getCause().getMessage());
+                }
+            }
+            return failures;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    File render(ChartSpec spec) throws IOException {
+        JFreeChart chart;
+        try (Metrics.Span span = Metrics.GLOBAL.start(Metrics.Stage.CHART)) {
+            span.addRows(charts.getTable().getRowCount());
+            chart = spec.build(charts);
+        }
+        File file = new File(outputDir, spec.fileName + "." + format);
+        try (Metrics.Span span = Metrics.GLOBAL.start(Metrics.Stage.RENDER)) {
+            if (format.equals("svg")) {
+                SVGGraphics2D g2 = new SVGGraphics2D(width, height);
+                chart.draw(g2, new Rectangle(0, 0, width, height));
+                SVGUtils.writeToSVG(file, g2.getSVGElement());
+            } else {
+                ChartUtils.saveChartAsPNG(file, chart, width, height);
+            }
+            span.addBytes(file.length());
+        }
+        return file;
+    }
+
+    /** Turns COLUMN=VALUE conditions into a filter over the category columns. */
+    static RowFilter parseFilter(ColumnTable table, List<String> conditions) {
+        RowFilter filter = RowFilter.NONE;
+        for (String condition : conditions) {
+            int equals = condition.indexOf('=');
+            if (equals <= 0) {
+                throw new IllegalArgumentException("Expected COLUMN=VALUE: " + condition);
+            }
+            String name = condition.substring(0, equals).trim();
+            String value = condition.substring(equals + 1).trim();
+            int col = -1;
+            for (int i = 0; i < table.getColumnCount(); i++) {
+                if (table.getHeaders()[i].equals(name)) col = i;
+            }
+            if (col < 0 || table.getColumn(col).getType() != ColumnTable.ColumnType.CATEGORY) {
+                throw new IllegalArgumentException("No category column named " + name);
+            }
+            String[] dictionary = table.getCategoryColumn(col).dictionary;
+            int code = Arrays.asList(dictionary).indexOf(value);
+            if (code < 0) {
+                throw new IllegalArgumentException(name + " has no value " + value);
+            }
+            int[] codes = filter.getCodes(col);
+            codes = Arrays.copyOf(codes, codes.length + 1);
+            codes[codes.length - 1] = code;
+            filter = filter.with(col, codes);
+        }
+        return filter;
+    }
+
+    private static void addSpecs(List<String> specs, String argument) throws IOException {
+        if (!argument.startsWith("@")) {
+            specs.add(argument);
+            return;
+        }
+        for (String line : Files.readAllLines(new File(argument.substring(1)).toPath(), StandardCharsets.UTF_8)) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            specs.add(line);
+        }
+    }
+
+    private static int usage(String message) {
+        System.err.println(message);
+        System.err.println("Usage: BatchRenderer [--out DIR] [--format png|svg] [--size WIDTHxHEIGHT] [--threads N]"
+                + " [--where COLUMN=VALUE]... [--metrics FILE] <dataset> <type:key=value,...|@specfile>...");
+        return 2;
+    }
+
+    static int run(String[] args) throws IOException, InterruptedException {
+        File outputDir = new File(".");
+        String format = "png";
+        int width = 1150;
+        int height = 400;
+        int threads = Runtime.getRuntime().availableProcessors();
+        File dataset = null;
+        File metricsFile = null;
+        List<String> specArgs = new ArrayList<>();
+        List<String> conditions = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.startsWith("--")) {
+                if (i + 1 == args.length) return usage("Missing value for " + arg);
+                String value = args[++i];
+                try {
+                    switch (arg) {
+                        case "--out":
+                            outputDir = new File(value);
+                            break;
+                        case "--format":
+                            format = value.toLowerCase(Locale.ROOT);
+                            if (!format.equals("png") && !format.equals("svg")) return usage("Unknown format: " + value);
+                            break;
+                        case "--size":
+                            String[] size = value.toLowerCase(Locale.ROOT).split("x");
+                            width = Integer.parseInt(size[0]);
+                            height = Integer.parseInt(size[1]);
+                            break;
+                        case "--threads":
+                            threads = Math.max(1, Integer.parseInt(value));
+                            break;
+                        case "--where":
+                            conditions.add(value);
+                            break;
+                        case "--metrics":
+                            metricsFile = new File(value);
+                            break;
+                        default:
+                            return usage("Unknown option: " + arg);
+                    }
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException ex) {
+                    return usage("Invalid value for " + arg + ": " + value);
+                }
+            } else if (dataset == null) {
+                dataset = new File(arg);
+            } else {
+                addSpecs(specArgs, arg);
+            }
+        }
+        if (dataset == null || specArgs.isEmpty()) {
+            return usage("A dataset and at least one chart spec are required.");
+        }
+
+        List<ChartSpec> specs = new ArrayList<>();
+        try {
+            for (String spec : specArgs) {
+                specs.add(ChartSpec.parse(spec, specs.size() + 1));
+            }
+        } catch (IllegalArgumentException ex) {
+            return usage(ex.getMessage());
+        }
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            return usage("Cannot create output directory " + outputDir);
+        }
+
+        long start = System.nanoTime();
+        ColumnTable table;
+        ExternalAggregator external = null;
+        try {
+            if (!SnapshotFile.isSnapshot(dataset) && ExternalAggregator.isOutOfCore(dataset)) {
+                external = new ExternalAggregator(dataset);
+                table = open(external);
+            } else {
+                table = load(dataset);
+            }
+        } catch (IOException ex) {
+            System.err.println("Error loading file: " + ex.getMessage());
+            return 1;
+        }
+        long loaded = System.nanoTime();
+        if (external != null) {
+            System.out.printf("%s is larger than %,d MB; charting it out of core%n", dataset.getName(),
+                    ExternalAggregator.defaultThreshold() >> 20);
+        } else {
+            System.out.printf("Loaded %,d rows in %,d ms%n", table.getRowCount(), (loaded - start) / 1_000_000);
+        }
+
+        RowFilter filter;
+        try {
+            if (external != null && !conditions.isEmpty()) {
+                return usage("--where is not available for files charted out of core");
+            }
+            filter = parseFilter(table, conditions);
+        } catch (IllegalArgumentException ex) {
+            return usage(ex.getMessage());
+        }
+
+        // One cache for the whole batch, so charts over the same columns share one scan.
+        AggregateCache aggregates = new AggregateCache(Runtime.getRuntime().maxMemory() / 16);
+        ChartBuilder charts = external != null ? ChartBuilder.outOfCore(external, table, aggregates, false)
+                : new ChartBuilder(table, aggregates, false, filter);
+        if (!filter.isEmpty()) {
+            System.out.printf("Filter matches %,d rows%n", charts.countRows());
+        }
+        BatchRenderer renderer = new BatchRenderer(charts, outputDir, format, width, height);
+        try {
+            renderer.prefetch(specs);
+            if (external != null) {
+                System.out.printf("Aggregated %,d rows in one pass in %,d ms%n", external.getRowCount(),
+                        (System.nanoTime() - loaded) / 1_000_000);
+            }
+        } catch (IllegalStateException | UncheckedIOException ex) {
+            // Each chart then makes its own pass, and the ones that cannot be drawn fail.
+            System.err.println("Error aggregating file: " + ex.getMessage());
+        }
+        int failures = renderer.renderAll(specs, threads);
+        System.out.printf("Rendered %d of %d charts in %,d ms%n", specs.size() - failures, specs.size(),
+                (System.nanoTime() - loaded) / 1_000_000);
+        if (metricsFile != null) {
+            try {
+                Files.write(metricsFile.toPath(), Metrics.GLOBAL.toJson().getBytes(StandardCharsets.UTF_8));
+            } catch (IOException ex) {
+                System.err.println("Error writing metrics: " + ex.getMessage());
+                return 1;
+            }
+        }
+        return failures == 0 ? 0 : 1;
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        System.exit(run(args));
+    }
+}
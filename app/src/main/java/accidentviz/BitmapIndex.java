@@ -0,0 +1,49 @@
+package accidentviz;
+
+/**
+ * One {@link RowBitmap} per value of a category column, built in a single pass over the
+ * codes. Rows with a missing value are in none of the bitmaps.
+ */
+class BitmapIndex implements AggregateCache.Sized {
+
+    private final RowBitmap[] bitmaps;
+
+    private BitmapIndex(RowBitmap[] bitmaps) {
+        this.bitmaps = bitmaps;
+    }
+
+    static BitmapIndex build(ColumnTable.CategoryColumn column, int rows) {
+        RowBitmap.Builder[] builders = new RowBitmap.Builder[column.getCardinality()];
+        for (int code = 0; code < builders.length; code++) {
+            builders[code] = new RowBitmap.Builder();
+        }
+        for (int row = 0; row < rows; row++) {
+            int code = column.getCode(row);
+            if (code != ColumnTable.MISSING_CODE) {
+                builders[code].add(row);
+            }
+        }
+        RowBitmap[] bitmaps = new RowBitmap[builders.length];
+        for (int code = 0; code < bitmaps.length; code++) {
+            bitmaps[code] = builders[code].build();
+        }
+        return new BitmapIndex(bitmaps);
+    }
+
+    /** Rows holding any of the given codes. */
+    RowBitmap rowsWithAny(int[] codes) {
+        RowBitmap result = RowBitmap.EMPTY;
+        for (int code : codes) {
+            result = result.or(bitmaps[code]);
+        }
+        return result;
+    }
+
+    public long estimatedBytes() {
+        long bytes = 16 + 8L * bitmaps.length;
+        for (RowBitmap bitmap : bitmaps) {
+            bytes += bitmap.estimatedBytes();
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,800 @@
+package accidentviz;
+
+import org.jfree.chart.ChartFactory;
+import org.jfree.chart.ChartUtils;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.axis.NumberAxis;
+import org.jfree.chart.axis.ValueAxis;
+import org.jfree.chart.plot.PlotOrientation;
+import org.jfree.chart.plot.XYPlot;
+import org.jfree.chart.renderer.PaintScale;
+import org.jfree.chart.renderer.xy.XYBlockRenderer;
+import org.jfree.chart.renderer.xy.XYDotRenderer;
+import org.jfree.chart.title.PaintScaleLegend;
+import org.jfree.chart.title.TextTitle;
+import org.jfree.chart.ui.RectangleEdge;
+import org.jfree.data.category.DefaultCategoryDataset;
+import org.jfree.data.general.DefaultPieDataset;
+import org.jfree.data.time.Day;
+import org.jfree.data.time.Month;
+import org.jfree.data.time.RegularTimePeriod;
+import org.jfree.data.time.TimeSeries;
+import org.jfree.data.time.TimeSeriesCollection;
+import org.jfree.data.time.Year;
+import org.jfree.data.xy.XYSeries;
+import org.jfree.data.xy.DefaultXYZDataset;
+import org.jfree.data.xy.XYSeriesCollection;
+
+import java.awt.*;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the charts for one loaded table. Used by the window, the batch renderer and the
+ * query server; no method touches Swing components, so charts can be built on any thread. Aggregates come from
+ * the shared cache, so charts over the same columns scan the table once. With a
+ * {@link RowFilter}, every chart covers only the matching rows. Out of core, the table holds
+ * only the first rows of the file, and bar, pie and line charts take their aggregates from
+ * an {@link ExternalAggregator} pass instead.
+ */
+class ChartBuilder {
+
+    static final int HEAT_BINS_X = 192;
+    static final int HEAT_BINS_Y = 96;
+    /** Most points per category a time series shows before moving to a coarser granularity. */
+    static final int MAX_TIME_PERIODS = 500;
+    /** Category columns with more values than this are only rolled up when first charted. */
+    static final int MAX_ROLLUP_CATEGORIES = 64;
+
+    /**
+     * A chart that can take rows appended to its table. Bar, pie and line charts fold the
+     * new rows into the aggregates they were drawn from; charts without an updater have to
+     * be rebuilt.
+     */
+    static final class LiveChart {
+        final JFreeChart chart;
+        private final Updater updater;
+
+        LiveChart(JFreeChart chart, Updater updater) {
+            this.chart = chart;
+            this.updater = updater;
+        }
+
+        boolean isUpdatable() {
+            return updater != null;
+        }
+
+        /**
+         * Aggregates the rows of the grown table that the chart has not seen yet, off the
+         * EDT, and returns the task that puts the new values into the chart's dataset.
+         * Updates must be applied in order, one at a time.
+         */
+        Runnable update(ChartBuilder grown) {
+            return updater.update(grown);
+        }
+    }
+
+    private interface Updater {
+        Runnable update(ChartBuilder grown);
+    }
+
+    private final ColumnTable table;
+    private final AggregateCache aggregates;
+    private final boolean interactive;
+    private final RowFilter filter;
+    private final ExternalAggregator external;
+    private final int dateColumnIndex;
+
+    /**
+     * @param interactive whether XY charts re-query their data on zoom; off for charts that
+     *                    are only rendered to a file
+     */
+    ChartBuilder(ColumnTable table, AggregateCache aggregates, boolean interactive) {
+        this(table, aggregates, interactive, RowFilter.NONE);
+    }
+
+    ChartBuilder(ColumnTable table, AggregateCache aggregates, boolean interactive, RowFilter filter) {
+        this(table, aggregates, interactive, filter, null);
+    }
+
+    private ChartBuilder(ColumnTable table, AggregateCache aggregates, boolean interactive, RowFilter filter,
+                         ExternalAggregator external) {
+        this.table = table;
+        this.aggregates = aggregates;
+        this.interactive = interactive;
+        this.filter = filter;
+        this.external = external;
+        int dateIndex = -1;
+        for (int col = 0; col < table.getColumnCount(); col++) {
+            if (table.getColumn(col).getType() == ColumnTable.ColumnType.DATE) {
+                dateIndex = col;
+                break;
+            }
+        }
+        this.dateColumnIndex = dateIndex;
+    }
+
+    /**
+     * Charts over a file opened out of core; {@code sample} is the table returned by
+     * {@link ExternalAggregator#open()}. Filters, appended rows, scatter charts and heatmaps
+     * need every row in memory and are not available.
+     */
+    static ChartBuilder outOfCore(ExternalAggregator external, ColumnTable sample, AggregateCache aggregates,
+                                  boolean interactive) {
+        return new ChartBuilder(sample, aggregates, interactive, RowFilter.NONE, external);
+    }
+
+    ColumnTable getTable() {
+        return table;
+    }
+
+    /** The aggregator of a file opened out of core, or null if the table holds every row. */
+    ExternalAggregator getExternal() {
+        return external;
+    }
+
+    /** The first date column, which time series are drawn over, or -1. */
+    int getDateColumnIndex() {
+        return dateColumnIndex;
+    }
+
+    RowFilter getFilter() {
+        return filter;
+    }
+
+    /** The same charts over the rows matching the filter. */
+    ChartBuilder withFilter(RowFilter newFilter) {
+        requireRows("Filters");
+        return new ChartBuilder(table, aggregates, interactive, newFilter);
+    }
+
+    /** The same charts over a table that has had rows appended. */
+    ChartBuilder withTable(ColumnTable grown) {
+        requireRows("Following files");
+        return new ChartBuilder(grown, aggregates, interactive, filter);
+    }
+
+    /**
+     * Computes the aggregates of several charts together and caches them: out of core in one
+     * pass over the file, otherwise in one {@link FusedAggregator} scan of the filtered rows,
+     * instead of a pass or scan per chart. Aggregates already cached are skipped.
+     */
+    void prefetch(List<ExternalAggregator.Query> queries) {
+        List<ExternalAggregator.Query> missing = new ArrayList<>();
+        for (ExternalAggregator.Query query : queries) {
+            if (!missing.contains(query) && !aggregates.contains(key(query.kind, query.columns))) {
+                missing.add(query);
+            }
+        }
+        if (missing.isEmpty()) return;
+        Map<ExternalAggregator.Query, AggregateCache.Sized> results;
+        try (Metrics.Span span = Metrics.GLOBAL.start(Metrics.Stage.AGGREGATE)) {
+            if (external == null) {
+                results = FusedAggregator.aggregate(table, missing, getSelection());
+                span.addRows(table.getRowCount());
+            } else {
+                results = external.aggregate(missing);
+                span.addRows(external.getRowCount());
+                span.addBytes(external.getBytesRead());
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        for (final Map.Entry<ExternalAggregator.Query, AggregateCache.Sized> result : results.entrySet()) {
+            aggregates.get(key(result.getKey().kind, result.getKey().columns), () -> result.getValue());
+        }
+    }
+
+    /** The queries for a bar, pie or line chart, as {@link #prefetch} takes them. */
+    List<ExternalAggregator.Query> queriesFor(String chartType, int catIndex, int numIndex) {
+        List<ExternalAggregator.Query> queries = new ArrayList<>();
+        if (chartType.equals("pie")) {
+            queries.add(ExternalAggregator.Query.count(catIndex));
+        } else if (chartType.equals("line") && dateColumnIndex >= 0) {
+            queries.add(ExternalAggregator.Query.rollup(dateColumnIndex, catIndex));
+        } else {
+            queries.add(ExternalAggregator.Query.groupBy(catIndex, numIndex));
+        }
+        return queries;
+    }
+
+    /** The bitmap index over a category column, built on first use and kept in the aggregate cache. */
+    BitmapIndex getBitmapIndex(int catIndex) {
+        return aggregates.get(new AggregateCache.Key(table.getVersion(), "bitmap", catIndex),
+                () -> BitmapIndex.build(table.getCategoryColumn(catIndex), table.getRowCount()));
+    }
+
+    /** The rows matching the filter, or null when nothing is filtered. */
+    RowBitmap getSelection() {
+        if (filter.isEmpty()) return null;
+        return aggregates.get(new AggregateCache.Key(table.getVersion(), "selection " + filter.key()),
+                () -> filter.select(this::getBitmapIndex));
+    }
+
+    /** Number of rows the charts cover. */
+    int countRows() {
+        RowBitmap selection = getSelection();
+        return selection == null ? table.getRowCount() : selection.cardinality();
+    }
+
+    /** Index of the named column, or -1. */
+    int getColumnIndex(String columnName) {
+        String[] headers = table.getHeaders();
+        for (int i = 0; i < headers.length; i++) {
+            if (headers[i].equals(columnName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    JFreeChart createBarChart(int catIndex, int numIndex, GroupByAggregator.Aggregation aggregation) {
+        return liveBarChart(catIndex, numIndex, aggregation).chart;
+    }
+
+    JFreeChart createPieChart(int catIndex) {
+        return livePieChart(catIndex).chart;
+    }
+
+    /** A time series per category when the table has a date column, otherwise a category line chart. */
+    JFreeChart createLineChart(int catIndex, int numIndex, GroupByAggregator.Aggregation aggregation) {
+        return liveLineChart(catIndex, numIndex, aggregation).chart;
+    }
+
+    LiveChart liveBarChart(int catIndex, int numIndex, GroupByAggregator.Aggregation aggregation) {
+        String categoryCol = table.getHeaders()[catIndex];
+        DefaultCategoryDataset dataset = new DefaultCategoryDataset();
+        String valueLabel = valueLabel(numIndex, aggregation);
+        Updater updater = addCategoryValues(dataset, valueLabel, catIndex, numIndex, aggregation);
+
+        return new LiveChart(filtered(ChartFactory.createBarChart(
+                valueLabel + " by " + categoryCol,
+                categoryCol,
+                valueLabel,
+                dataset,
+                PlotOrientation.VERTICAL,
+                true, true, false)), updater);
+    }
+
+    LiveChart livePieChart(final int catIndex) {
+        final String categoryCol = table.getHeaders()[catIndex];
+        final DefaultPieDataset<String> dataset = new DefaultPieDataset<>();
+        final GroupByAggregator.Result counts = getGroupBy(catIndex, -1);
+
+        int limit = setTopValues(dataset, counts);
+        if (limit == 0) {
+            throw new IllegalStateException("No data available for pie chart!");
+        }
+
+        final JFreeChart pieChart = filtered(ChartFactory.createPieChart(
+                "Distribution of " + categoryCol + " (Top " + limit + ")",
+                dataset,
+                true, true, false));
+
+        Updater updater = new Updater() {
+            private GroupByAggregator.Result current = counts;
+            private int rows = table.getRowCount();
+
+            public Runnable update(ChartBuilder grown) {
+                current = grown.appendGroupBy(current, rows, "count", catIndex, -1);
+                rows = grown.table.getRowCount();
+                final GroupByAggregator.Result updated = current;
+                return () -> {
+                    int shown = setTopValues(dataset, updated);
+                    pieChart.setTitle("Distribution of " + categoryCol + " (Top " + shown + ")");
+                };
+            }
+        };
+        return new LiveChart(pieChart, updater);
+    }
+
+    /** See {@link #createLineChart}. */
+    LiveChart liveLineChart(int catIndex, int numIndex, GroupByAggregator.Aggregation aggregation) {
+        if (dateColumnIndex >= 0) {
+            return createTimeSeriesChart(catIndex, numIndex, aggregation);
+        }
+        String categoryCol = table.getHeaders()[catIndex];
+        DefaultCategoryDataset dataset = new DefaultCategoryDataset();
+        String valueLabel = valueLabel(numIndex, aggregation);
+        Updater updater = addCategoryValues(dataset, valueLabel, catIndex, numIndex, aggregation);
+
+        return new LiveChart(filtered(ChartFactory.createLineChart(
+                valueLabel + " Trend",
+                categoryCol,
+                valueLabel,
+                dataset,
+                PlotOrientation.VERTICAL,
+                true, true, false)), updater);
+    }
+
+    JFreeChart createScatterChart(int xIndex, int yIndex) {
+        requireRows("Scatter charts");
+        String xCol = table.getHeaders()[xIndex];
+        String yCol = table.getHeaders()[yIndex];
+        final ColumnTable.NumericColumn xValues = table.getNumericColumn(xIndex);
+        final ColumnTable.NumericColumn yValues = table.getNumericColumn(yIndex);
+        final XYSeries series = new XYSeries("Data Points", false);
+        final RowBitmap selection = getSelection();
+        Downsampling.Points fullView = aggregates.get(key("scatter", xIndex, yIndex),
+                () -> Downsampling.densityBin(xValues, yValues, table.getRowCount(), selection,
+                        Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY,
+                        Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY));
+        fillScatterSeries(series, fullView).run();
+
+        XYSeriesCollection dataset = new XYSeriesCollection(series);
+
+        JFreeChart scatterChart = ChartFactory.createScatterPlot(
+                xCol + " vs " + yCol,
+                xCol,
+                yCol,
+                dataset,
+                PlotOrientation.VERTICAL,
+                true, true, false);
+
+        XYPlot plot = (XYPlot) scatterChart.getPlot();
+        XYDotRenderer renderer = new XYDotRenderer();
+        renderer.setDotHeight(8);
+        renderer.setDotWidth(8);
+        plot.setRenderer(renderer);
+
+        if (interactive) {
+            ZoomResampler.install(plot, (xLow, xHigh, yLow, yHigh) -> fillScatterSeries(series,
+                    Downsampling.densityBin(xValues, yValues, table.getRowCount(), selection, xLow, xHigh, yLow, yHigh)));
+        }
+        return filtered(scatterChart);
+    }
+
+    /**
+     * Density of rows over two coordinate columns, as a count or weighted by a numeric column
+     * (weightIndex -1 for a plain count). Built from the spatial grid, so the cost depends on
+     * the number of cells rather than the number of rows.
+     */
+    JFreeChart createHeatmap(int xIndex, int yIndex, int weightIndex) {
+        requireRows("Heatmaps");
+        String xCol = table.getHeaders()[xIndex];
+        String yCol = table.getHeaders()[yIndex];
+        String valueLabel = weightIndex < 0 ? "Accidents" : table.getHeaders()[weightIndex];
+        final SpatialGrid grid = getSpatialGrid(xIndex, yIndex);
+        final ColumnTable.NumericColumn weights = weightIndex < 0 ? null : table.getNumericColumn(weightIndex);
+        final RowBitmap selection = getSelection();
+        final SpatialGrid.CellSums cellSums = weights == null ? null : aggregates.get(
+                new AggregateCache.Key(table.getVersion(), "cellSums", xIndex, yIndex, weightIndex),
+                () -> grid.sumCells(weights));
+
+        final DefaultXYZDataset dataset = new DefaultXYZDataset();
+        final XYBlockRenderer renderer = new XYBlockRenderer();
+        NumberAxis xAxis = new NumberAxis(xCol);
+        xAxis.setAutoRangeIncludesZero(false);
+        NumberAxis yAxis = new NumberAxis(yCol);
+        yAxis.setAutoRangeIncludesZero(false);
+        XYPlot plot = new XYPlot(dataset, xAxis, yAxis, renderer);
+
+        final PaintScaleLegend legend = new PaintScaleLegend(new HeatPaintScale(0, 1), new NumberAxis(valueLabel));
+        legend.setPosition(RectangleEdge.RIGHT);
+        legend.setMargin(4, 4, 40, 4);
+        fillHeatmap(dataset, renderer, legend, grid.heat(weights, cellSums, selection,
+                Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, HEAT_BINS_X, HEAT_BINS_Y)).run();
+
+        JFreeChart heatmap = new JFreeChart(valueLabel + " by " + xCol + " and " + yCol,
+                JFreeChart.DEFAULT_TITLE_FONT, plot, false);
+        heatmap.addSubtitle(legend);
+        ChartUtils.applyCurrentTheme(heatmap);
+        plot.setBackgroundPaint(Color.WHITE);
+
+        if (interactive) {
+            ZoomResampler.install(plot, (xLow, xHigh, yLow, yHigh) -> fillHeatmap(dataset, renderer, legend,
+                    grid.heat(weights, cellSums, selection, xLow, xHigh, yLow, yHigh, HEAT_BINS_X, HEAT_BINS_Y)));
+        }
+        return filtered(heatmap);
+    }
+
+    /** The grid over the given coordinate columns, built once per table and kept in the aggregate cache. */
+    SpatialGrid getSpatialGrid(int xIndex, int yIndex) {
+        return aggregates.get(new AggregateCache.Key(table.getVersion(), "spatial", xIndex, yIndex),
+                () -> SpatialGrid.build(table.getNumericColumn(xIndex), table.getNumericColumn(yIndex), table.getRowCount()));
+    }
+
+    /** Builds the grid over the Longitude and Latitude columns, if the table has them. */
+    void indexCoordinates() {
+        int xIndex = SpatialGrid.findColumn(table, "Longitude", "Lon", "Lng");
+        int yIndex = SpatialGrid.findColumn(table, "Latitude", "Lat");
+        if (xIndex >= 0 && yIndex >= 0) {
+            getSpatialGrid(xIndex, yIndex);
+        }
+    }
+
+    /**
+     * Sketches of every column over all rows, whatever the filter, kept in the aggregate
+     * cache. Built at load time, or out of core in one pass over the file.
+     */
+    ColumnProfile getProfile() {
+        return aggregates.get(new AggregateCache.Key(table.getVersion(), "profile"),
+                () -> external != null ? (ColumnProfile) aggregateExternally(ExternalAggregator.Query.profile())
+                        : ColumnProfile.of(table));
+    }
+
+    /**
+     * Count, sum, min and max of a numeric column per category over the filtered rows, or
+     * only the rows per category with a numIndex of -1, kept in the aggregate cache. Bar and
+     * line charts read the first, pie charts the second.
+     */
+    GroupByAggregator.Result getGroupBy(int catIndex, int numIndex) {
+        if (numIndex < 0) {
+            return aggregates.get(key("count", catIndex),
+                    () -> external != null ? (GroupByAggregator.Result) aggregateExternally(ExternalAggregator.Query.count(catIndex))
+                            : GroupByAggregator.aggregate(table.getCategoryColumn(catIndex), null, getSelection()));
+        }
+        return aggregates.get(key("groupBy", catIndex, numIndex),
+                () -> external != null ? (GroupByAggregator.Result) aggregateExternally(ExternalAggregator.Query.groupBy(catIndex, numIndex))
+                        : GroupByAggregator.aggregate(table.getCategoryColumn(catIndex), table.getNumericColumn(numIndex), getSelection()));
+    }
+
+    /**
+     * The time rollup of a category column over the filtered rows, kept in the aggregate
+     * cache. Built in one scan on first use, or at load time by {@link #rollUpDates}.
+     */
+    TimeRollup getTimeRollup(int catIndex) {
+        return aggregates.get(key("rollup", dateColumnIndex, catIndex),
+                () -> external != null ? (TimeRollup) aggregateExternally(ExternalAggregator.Query.rollup(dateColumnIndex, catIndex))
+                        : TimeRollup.build(table, dateColumnIndex, catIndex, 0, table.getRowCount(), getSelection()));
+    }
+
+    /**
+     * Builds the time rollups of the category columns with few enough values to chart, if
+     * the table has a date column, so that the first time series chart does not scan the rows.
+     */
+    void rollUpDates() {
+        if (dateColumnIndex < 0) return;
+        for (int col = 0; col < table.getColumnCount(); col++) {
+            if (table.getColumn(col).getType() == ColumnTable.ColumnType.CATEGORY
+                    && table.getCategoryColumn(col).getCardinality() <= MAX_ROLLUP_CATEGORIES) {
+                getTimeRollup(col);
+            }
+        }
+    }
+
+    private LiveChart createTimeSeriesChart(final int catIndex, int numIndex, GroupByAggregator.Aggregation aggregation) {
+        String valueLabel = valueLabel(numIndex, aggregation);
+        final TimeRollup rollup = getTimeRollup(catIndex);
+        final PeriodSeries series = new PeriodSeries(rollup, rollup.slotOf(numIndex), aggregation, valueLabel);
+
+        JFreeChart lineChart = ChartFactory.createTimeSeriesChart(
+                valueLabel + " Over Time",
+                "Date",
+                valueLabel,
+                series.dataset,
+                true, true, false);
+        series.rangeAxis = ((XYPlot) lineChart.getPlot()).getRangeAxis();
+        series.fill(Integer.MIN_VALUE, Integer.MAX_VALUE).run();
+
+        if (interactive) {
+            ZoomResampler.install((XYPlot) lineChart.getPlot(), (xLow, xHigh, yLow, yHigh) -> series.fill(
+                    Double.isInfinite(xLow) ? Integer.MIN_VALUE : toEpochDay(xLow),
+                    Double.isInfinite(xHigh) ? Integer.MAX_VALUE : toEpochDay(xHigh)));
+        }
+
+        Updater updater = new Updater() {
+            private int rows = table.getRowCount();
+
+            public Runnable update(ChartBuilder grown) {
+                series.rollup = grown.appendRollup(series.rollup, rows, catIndex);
+                rows = grown.table.getRowCount();
+                return series.fill(series.fromDay, series.toDay);
+            }
+        };
+        return new LiveChart(filtered(lineChart), updater);
+    }
+
+    /** The label for aggregated values: the plain column name for sums, as before. */
+    private String valueLabel(int numIndex, GroupByAggregator.Aggregation aggregation) {
+        String numericCol = table.getHeaders()[numIndex];
+        return aggregation == GroupByAggregator.Aggregation.SUM ? numericCol : aggregation + " " + numericCol;
+    }
+
+    /**
+     * Aggregates the numeric column per category, in order of first appearance, and returns
+     * the updater that keeps the dataset current as rows are appended.
+     */
+    private Updater addCategoryValues(final DefaultCategoryDataset dataset, final String valueLabel, final int catIndex,
+                                      final int numIndex, final GroupByAggregator.Aggregation aggregation) {
+        // One cached result holds every aggregation, so switching Sum/Mean or Bar/Line rescans nothing.
+        final GroupByAggregator.Result result = getGroupBy(catIndex, numIndex);
+        setCategoryValues(dataset, valueLabel, null, result, aggregation);
+
+        return new Updater() {
+            private GroupByAggregator.Result current = result;
+            private int rows = table.getRowCount();
+
+            public Runnable update(ChartBuilder grown) {
+                final GroupByAggregator.Result previous = current;
+                current = grown.appendGroupBy(previous, rows, "groupBy", catIndex, numIndex);
+                rows = grown.table.getRowCount();
+                final GroupByAggregator.Result updated = current;
+                return () -> setCategoryValues(dataset, valueLabel, previous, updated, aggregation);
+            }
+        };
+    }
+
+    /**
+     * Groups the rows from fromRow on, merges the previous result for the rows before them
+     * and caches the total under this builder's table, so that a new chart over the grown
+     * table finds it. Cost depends on the number of new rows, not the size of the table.
+     */
+    private GroupByAggregator.Result appendGroupBy(GroupByAggregator.Result previous, int fromRow, String kind,
+                                                   int catIndex, int numIndex) {
+        int rows = table.getRowCount();
+        GroupByAggregator.Result total = GroupByAggregator.aggregate(table.getCategoryColumn(catIndex),
+                numIndex < 0 ? null : table.getNumericColumn(numIndex), fromRow, rows, filter.select(table, fromRow, rows));
+        total.merge(previous);
+        return aggregates.get(numIndex < 0 ? key(kind, catIndex) : key(kind, catIndex, numIndex), () -> total);
+    }
+
+    /** As {@link #appendGroupBy}, for the time rollup of a time series chart. */
+    private TimeRollup appendRollup(TimeRollup previous, int fromRow, int catIndex) {
+        int rows = table.getRowCount();
+        TimeRollup added = TimeRollup.build(table, dateColumnIndex, catIndex, fromRow, rows, filter.select(table, fromRow, rows));
+        TimeRollup total = TimeRollup.merge(previous, added);
+        return aggregates.get(key("rollup", dateColumnIndex, catIndex), () -> total);
+    }
+
+    /**
+     * Sets the values of the categories whose counts differ from the previous result, or of
+     * every category with rows when there is none. New categories are added at the end.
+     */
+    private static void setCategoryValues(DefaultCategoryDataset dataset, String valueLabel, GroupByAggregator.Result previous,
+                                          GroupByAggregator.Result result, GroupByAggregator.Aggregation aggregation) {
+        dataset.setNotify(false);
+        for (int code = 0; code < result.size(); code++) {
+            long before = previous == null || code >= previous.size() ? 0 : previous.counts[code];
+            if (result.counts[code] > 0 && result.counts[code] != before) {
+                dataset.setValue(result.value(code, aggregation), valueLabel, result.keys[code]);
+            }
+        }
+        dataset.setNotify(true);
+    }
+
+    /** Shows the ten largest non-blank categories and returns how many there are. */
+    private static int setTopValues(DefaultPieDataset<String> dataset, GroupByAggregator.Result counts) {
+        int[] top = counts.topK(10, GroupByAggregator.Aggregation.COUNT, code -> counts.counts[code] > 0 && !counts.keys[code].isEmpty());
+        dataset.setNotify(false);
+        dataset.clear();
+        for (int code : top) {
+            dataset.setValue(counts.keys[code], counts.counts[code]);
+        }
+        dataset.setNotify(true);
+        return top.length;
+    }
+
+    /** Runs a pass over the file opened out of core for one aggregate. */
+    private AggregateCache.Sized aggregateExternally(ExternalAggregator.Query query) {
+        try {
+            return external.aggregate(Arrays.asList(query)).get(query);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /** Fails for features that read rows, which a table opened out of core does not hold. */
+    private void requireRows(String feature) {
+        if (external != null) {
+            throw new IllegalStateException(feature + " need the whole file in memory; "
+                    + external.getFile().getName() + " is too large and is charted out of core.");
+        }
+    }
+
+    /** Cache key for an aggregate over the filtered rows. */
+    private AggregateCache.Key key(String kind, int... columns) {
+        return new AggregateCache.Key(table.getVersion(), filter.isEmpty() ? kind : kind + " where " + filter.key(), columns);
+    }
+
+    /** Names the filter under the title, so exported charts say which rows they cover. */
+    private JFreeChart filtered(JFreeChart chart) {
+        if (!filter.isEmpty()) {
+            chart.addSubtitle(0, new TextTitle("Where " + filter.describe(table)));
+        }
+        return chart;
+    }
+
+    /**
+     * The series of a time series chart, one per category with data. Each fill picks the
+     * granularity that fits the visible days into at most {@link #MAX_TIME_PERIODS} points
+     * and reads that level of the rollup. The rollup is replaced as rows are appended, and a
+     * series is added when a category first gets a value.
+     */
+    private static final class PeriodSeries {
+        final TimeSeriesCollection dataset = new TimeSeriesCollection();
+        volatile TimeRollup rollup;
+        /** The range last filled, so updates keep the zoomed view. */
+        volatile int fromDay = Integer.MIN_VALUE;
+        volatile int toDay = Integer.MAX_VALUE;
+        /** Set once the chart exists; the value label names the granularity shown. */
+        ValueAxis rangeAxis;
+        private final int slot;
+        private final GroupByAggregator.Aggregation aggregation;
+        private final String valueLabel;
+        /** Only touched by the tasks returned from {@link #fill}, which run one at a time. */
+        private TimeSeries[] seriesByCode = new TimeSeries[0];
+        private TimeRollup.Granularity shown;
+
+        PeriodSeries(TimeRollup rollup, int slot, GroupByAggregator.Aggregation aggregation, String valueLabel) {
+            this.rollup = rollup;
+            this.slot = slot;
+            this.aggregation = aggregation;
+            this.valueLabel = valueLabel;
+        }
+
+        /**
+         * Reads each category's periods within [fromDay, toDay], downsampled if there are
+         * still too many, and returns the task that puts them into the series.
+         */
+        Runnable fill(int fromDay, int toDay) {
+            this.fromDay = fromDay;
+            this.toDay = toDay;
+            final TimeRollup current = rollup;
+            final TimeRollup.Granularity granularity = current.isEmpty() ? TimeRollup.Granularity.DAY
+                    : TimeRollup.Granularity.fitting(Math.max(fromDay, current.minDay), Math.min(toDay, current.maxDay),
+                            MAX_TIME_PERIODS);
+            final RegularTimePeriod[][] periods = new RegularTimePeriod[current.keys.length][];
+            final double[][] values = new double[current.keys.length][];
+            for (int code = 0; code < periods.length; code++) {
+                TimeRollup.Series series = current.getSeries(granularity, code);
+                int with = 0;
+                for (int i = 0; i < series.size(); i++) {
+                    if (series.counts[slot][i] > 0) with++;
+                }
+                if (with == 0) continue;
+                // Periods where the column has no values are left out, as rows without a value are.
+                int[] starts = new int[with];
+                double[] x = new double[with];
+                double[] y = new double[with];
+                int next = 0;
+                for (int i = 0; i < series.size(); i++) {
+                    if (series.counts[slot][i] == 0) continue;
+                    starts[next] = series.periods[i];
+                    y[next++] = series.value(slot, i, aggregation);
+                }
+                int from = lowerBound(starts, granularity.start(Math.max(fromDay, current.minDay)));
+                int to = toDay == Integer.MAX_VALUE ? with : lowerBound(starts, toDay + 1);
+                // Keep one point either side of the view so lines run to the edges.
+                from = Math.max(0, from - 1);
+                to = Math.min(with, to + 1);
+
+                for (int i = from; i < to; i++) x[i] = starts[i];
+                int[] selected = Downsampling.largestTriangleThreeBuckets(x, y, from, to, Downsampling.LINE_THRESHOLD);
+                periods[code] = new RegularTimePeriod[selected.length];
+                values[code] = new double[selected.length];
+                for (int i = 0; i < selected.length; i++) {
+                    periods[code][i] = toPeriod(granularity, starts[selected[i]]);
+                    values[code][i] = y[selected[i]];
+                }
+            }
+            return () -> {
+                if (seriesByCode.length < periods.length) {
+                    seriesByCode = Arrays.copyOf(seriesByCode, periods.length);
+                }
+                for (int code = 0; code < periods.length; code++) {
+                    if (periods[code] == null) continue;
+                    TimeSeries series = seriesByCode[code];
+                    if (series == null) {
+                        series = new TimeSeries(current.keys[code]);
+                        seriesByCode[code] = series;
+                        dataset.addSeries(series);
+                    }
+                    series.setNotify(false);
+                    series.clear();
+                    for (int i = 0; i < periods[code].length; i++) {
+                        series.add(periods[code][i], values[code][i], false);
+                    }
+                    series.setNotify(true);
+                }
+                if (granularity != shown) {
+                    rangeAxis.setLabel(valueLabel + " per " + granularity.label);
+                    if (shown != null) {
+                        // Totals per month dwarf those per day; refit the values to the new granularity.
+                        rangeAxis.setAutoRange(true);
+                    }
+                    shown = granularity;
+                }
+            };
+        }
+
+        private static RegularTimePeriod toPeriod(TimeRollup.Granularity granularity, int epochDay) {
+            LocalDate date = LocalDate.ofEpochDay(epochDay);
+            switch (granularity) {
+                case MONTH:
+                    return new Month(date.getMonthValue(), date.getYear());
+                case YEAR:
+                    return new Year(date.getYear());
+                default:
+                    // Weeks are shown at the Monday they start on.
+                    return new Day(date.getDayOfMonth(), date.getMonthValue(), date.getYear());
+            }
+        }
+    }
+
+    private static Runnable fillScatterSeries(final XYSeries series, final Downsampling.Points points) {
+        return () -> {
+            series.setNotify(false);
+            series.clear();
+            for (int i = 0; i < points.size; i++) {
+                series.add(points.x[i], points.y[i], false);
+            }
+            series.setNotify(true);
+        };
+    }
+
+    private static Runnable fillHeatmap(final DefaultXYZDataset dataset, final XYBlockRenderer renderer,
+                                        final PaintScaleLegend legend, final SpatialGrid.Heat heat) {
+        return () -> {
+            HeatPaintScale scale = new HeatPaintScale(heat.min, heat.max);
+            renderer.setBlockWidth(heat.binWidth);
+            renderer.setBlockHeight(heat.binHeight);
+            renderer.setPaintScale(scale);
+            legend.setScale(scale);
+            legend.getAxis().setRange(scale.getLowerBound(), scale.getUpperBound());
+            dataset.addSeries("Heat", new double[][]{heat.x, heat.y, heat.values});
+        };
+    }
+
+    /**
+     * Yellow to dark red on a log scale, so that a few very busy cells do not wash out the
+     * rest of the map.
+     */
+    private static final class HeatPaintScale implements PaintScale {
+        private static final Color LOW = new Color(255, 237, 160);
+        private static final Color MIDDLE = new Color(253, 141, 60);
+        private static final Color HIGH = new Color(128, 0, 38);
+
+        private final double lower;
+        private final double upper;
+
+        HeatPaintScale(double lower, double upper) {
+            this.lower = Math.max(lower, 0);
+            this.upper = Math.max(upper, this.lower + 1);
+        }
+
+        public double getLowerBound() {
+            return lower;
+        }
+
+        public double getUpperBound() {
+            return upper;
+        }
+
+        public Paint getPaint(double value) {
+            double clamped = Math.max(lower, Math.min(upper, value));
+            double t = Math.log1p(clamped - lower) / Math.log1p(upper - lower);
+            return t < 0.5 ? blend(LOW, MIDDLE, t * 2) : blend(MIDDLE, HIGH, t * 2 - 1);
+        }
+
+        private static Color blend(Color from, Color to, double t) {
+            return new Color((int) Math.round(from.getRed() + (to.getRed() - from.getRed()) * t),
+                    (int) Math.round(from.getGreen() + (to.getGreen() - from.getGreen()) * t),
+                    (int) Math.round(from.getBlue() + (to.getBlue() - from.getBlue()) * t));
+        }
+    }
+
+    private static int lowerBound(int[] sorted, int key) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sorted[middle] < key) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    private static int toEpochDay(double millis) {
+        return (int) Instant.ofEpochMilli((long) millis).atZone(ZoneId.systemDefault()).toLocalDate().toEpochDay();
+    }
+}
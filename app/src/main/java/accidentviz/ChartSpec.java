@@ -0,0 +1,136 @@
+package accidentviz;
+
+import org.jfree.chart.JFreeChart;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * One chart of a batch or a dashboard, parsed from a spec such as
+ * {@code bar:category=District_Area,value=Number_of_Casualties,agg=mean}. The chart types and
+ * their keys are listed on {@link BatchRenderer}.
+ */
+class ChartSpec {
+
+    final String type;
+    final Map<String, String> options;
+    final String fileName;
+
+    ChartSpec(String type, Map<String, String> options, String fileName) {
+        this.type = type;
+        this.options = options;
+        this.fileName = fileName;
+    }
+
+    static ChartSpec parse(String spec, int number) {
+        int colon = spec.indexOf(':');
+        String type = (colon < 0 ? spec : spec.substring(0, colon)).trim().toLowerCase(Locale.ROOT);
+        Map<String, String> options = new HashMap<>();
+        if (colon >= 0) {
+            for (String option : spec.substring(colon + 1).split(",")) {
+                int equals = option.indexOf('=');
+                if (equals <= 0) {
+                    throw new IllegalArgumentException("Expected key=value in chart spec: " + spec);
+                }
+                options.put(option.substring(0, equals).trim().toLowerCase(Locale.ROOT), option.substring(equals + 1).trim());
+            }
+        }
+        String name = options.remove("name");
+        if (name == null) {
+            name = String.format("%02d-%s", number, type);
+        }
+        return new ChartSpec(type, options, name);
+    }
+
+    /**
+     * The aggregates of the bar, pie and line charts among the specs, for
+     * {@link ChartBuilder#prefetch}. Specs with errors are skipped here and fail when built.
+     */
+    static List<ExternalAggregator.Query> queries(ChartBuilder charts, List<ChartSpec> specs) {
+        List<ExternalAggregator.Query> queries = new ArrayList<>();
+        for (ChartSpec spec : specs) {
+            try {
+                switch (spec.type) {
+                    case "bar":
+                    case "line":
+                        queries.addAll(charts.queriesFor(spec.type, spec.column(charts, "category", ColumnTable.ColumnType.CATEGORY),
+                                spec.column(charts, "value", ColumnTable.ColumnType.NUMERIC)));
+                        break;
+                    case "pie":
+                        queries.addAll(charts.queriesFor(spec.type, spec.column(charts, "category", ColumnTable.ColumnType.CATEGORY), -1));
+                        break;
+                    default:
+                        break;
+                }
+            } catch (IllegalArgumentException ex) {
+                // Reported by build().
+            }
+        }
+        return queries;
+    }
+
+    JFreeChart build(ChartBuilder charts) {
+        switch (type) {
+            case "bar":
+                return charts.createBarChart(column(charts, "category", ColumnTable.ColumnType.CATEGORY),
+                        column(charts, "value", ColumnTable.ColumnType.NUMERIC), aggregation());
+            case "pie":
+                return charts.createPieChart(column(charts, "category", ColumnTable.ColumnType.CATEGORY));
+            case "line":
+                return charts.createLineChart(column(charts, "category", ColumnTable.ColumnType.CATEGORY),
+                        column(charts, "value", ColumnTable.ColumnType.NUMERIC), aggregation());
+            case "scatter":
+                return charts.createScatterChart(column(charts, "x", ColumnTable.ColumnType.NUMERIC),
+                        column(charts, "y", ColumnTable.ColumnType.NUMERIC));
+            case "heatmap":
+                return charts.createHeatmap(column(charts, "x", ColumnTable.ColumnType.NUMERIC),
+                        column(charts, "y", ColumnTable.ColumnType.NUMERIC),
+                        options.containsKey("weight") ? column(charts, "weight", ColumnTable.ColumnType.NUMERIC) : -1);
+            default:
+                throw new IllegalArgumentException("Unknown chart type: " + type);
+        }
+    }
+
+    String require(String key) {
+        String value = options.get(key);
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException(type + " chart needs " + key + "=<column>");
+        }
+        return value;
+    }
+
+    private int column(ChartBuilder charts, String key, ColumnTable.ColumnType columnType) {
+        return findColumn(charts, require(key), columnType);
+    }
+
+    /** The index of the named column, which must be of the given type. */
+    static int findColumn(ChartBuilder charts, String name, ColumnTable.ColumnType columnType) {
+        int index = charts.getColumnIndex(name);
+        if (index < 0) {
+            throw new IllegalArgumentException("No column named " + name);
+        }
+        if (charts.getTable().getColumn(index).getType() != columnType) {
+            throw new IllegalArgumentException(name + " is not a " + columnType.name().toLowerCase(Locale.ROOT) + " column");
+        }
+        return index;
+    }
+
+    private GroupByAggregator.Aggregation aggregation() {
+        String value = options.get("agg");
+        if (value == null) {
+            return GroupByAggregator.Aggregation.SUM;
+        }
+        try {
+            return GroupByAggregator.Aggregation.valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Unknown aggregation: " + value);
+        }
+    }
+
+    public String toString() {
+        return fileName;
+    }
+}
@@ -0,0 +1,166 @@
+package accidentviz;
+
+import java.nio.IntBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Summary of every column of a table in a fixed amount of memory per column, whatever the
+ * number of rows: a {@link HyperLogLog} of the distinct values, a {@link QuantileSketch} of
+ * numeric and date values, and the most frequent categories from {@link HeavyHitters}. The
+ * profile of a loaded table is built at load time, a column per fork/join task; out of core,
+ * the profiles of the batches of a pass are merged into one for the whole file.
+ */
+class ColumnProfile implements AggregateCache.Sized {
+
+    /** Statistics of one column. */
+    static final class Column {
+        final String name;
+        final ColumnTable.ColumnType type;
+        long rows;
+        long missing;
+        final HyperLogLog distinct = new HyperLogLog();
+        /** Numeric values, or epoch days of a date column; null for category columns. */
+        final QuantileSketch quantiles;
+        /** The most frequent values of a category column; null for other columns. */
+        HeavyHitters topValues;
+
+        Column(String name, ColumnTable.ColumnType type) {
+            this.name = name;
+            this.type = type;
+            this.quantiles = type == ColumnTable.ColumnType.CATEGORY ? null : new QuantileSketch();
+            this.topValues = type == ColumnTable.ColumnType.CATEGORY ? new HeavyHitters() : null;
+        }
+
+        void merge(Column other) {
+            rows += other.rows;
+            missing += other.missing;
+            distinct.merge(other.distinct);
+            if (quantiles != null) {
+                quantiles.merge(other.quantiles);
+            } else {
+                topValues.merge(other.topValues);
+            }
+        }
+
+        long estimatedBytes() {
+            return 64 + distinct.estimatedBytes()
+                    + (quantiles != null ? quantiles.estimatedBytes() : topValues.estimatedBytes());
+        }
+    }
+
+    final Column[] columns;
+
+    private ColumnProfile(Column[] columns) {
+        this.columns = columns;
+    }
+
+    /** Profiles every row of the table, its columns in parallel. */
+    static ColumnProfile of(ColumnTable table) {
+        Column[] columns = new Column[table.getColumnCount()];
+        ForkJoinPool.commonPool().invoke(new ProfileTask(table, columns, 0, columns.length));
+        return new ColumnProfile(columns);
+    }
+
+    /** Adds the other profile, of more rows of a table with the same columns, into this one. */
+    void merge(ColumnProfile other) {
+        for (int col = 0; col < columns.length; col++) {
+            columns[col].merge(other.columns[col]);
+        }
+    }
+
+    public long estimatedBytes() {
+        long bytes = 32;
+        for (Column column : columns) {
+            bytes += column.estimatedBytes();
+        }
+        return bytes;
+    }
+
+    private static Column profile(ColumnTable table, int col) {
+        ColumnTable.Column values = table.getColumn(col);
+        Column column = new Column(table.getHeaders()[col], values.getType());
+        int rows = table.getRowCount();
+        column.rows = rows;
+        switch (values.getType()) {
+            case NUMERIC:
+                ColumnTable.NumericColumn numbers = (ColumnTable.NumericColumn) values;
+                for (int row = 0; row < rows; row++) {
+                    double value = numbers.getDouble(row);
+                    if (Double.isNaN(value)) {
+                        column.missing++;
+                        continue;
+                    }
+                    // Whole numbers hash alike from int and double columns; -0.0 counts as 0.
+                    column.distinct.add(HyperLogLog.hash(Double.doubleToLongBits(value + 0.0)));
+                    column.quantiles.add(value);
+                }
+                break;
+            case DATE:
+                IntBuffer days = ((ColumnTable.DateColumn) values).epochDays;
+                for (int row = 0; row < rows; row++) {
+                    int day = days.get(row);
+                    if (day == ColumnTable.MISSING_DAY) {
+                        column.missing++;
+                        continue;
+                    }
+                    column.distinct.add(HyperLogLog.hash(day));
+                    column.quantiles.add(day);
+                }
+                break;
+            default:
+                ColumnTable.CategoryColumn categories = (ColumnTable.CategoryColumn) values;
+                // Counting by code is exact; the strings are only touched once per value.
+                int[] counts = new int[categories.dictionary.length];
+                IntBuffer codes = categories.codes;
+                for (int row = 0; row < rows; row++) {
+                    int code = codes.get(row);
+                    if (code == ColumnTable.MISSING_CODE) {
+                        column.missing++;
+                    } else {
+                        counts[code]++;
+                    }
+                }
+                for (int code = 0; code < counts.length; code++) {
+                    // A blank cell is kept as an empty category, but is as missing as a blank number.
+                    if (categories.dictionary[code].isEmpty()) {
+                        column.missing += counts[code];
+                        counts[code] = 0;
+                    }
+                    if (counts[code] > 0) {
+                        column.distinct.add(HyperLogLog.hash(categories.dictionary[code]));
+                    }
+                }
+                column.topValues = HeavyHitters.ofCounts(categories.dictionary, counts, HeavyHitters.DEFAULT_CAPACITY);
+                break;
+        }
+        return column;
+    }
+
+    /** Profiles a range of columns, splitting it until each task has one column. */
+    private static final class ProfileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final ColumnTable table;
+        private final Column[] columns;
+        private final int from;
+        private final int to;
+
+        ProfileTask(ColumnTable table, Column[] columns, int from, int to) {
+            this.table = table;
+            this.columns = columns;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute() {
+            if (to - from <= 1) {
+                for (int col = from; col < to; col++) {
+                    columns[col] = profile(table, col);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new ProfileTask(table, columns, from, mid), new ProfileTask(table, columns, mid, to));
+        }
+    }
+}
@@ -0,0 +1,610 @@
+package accidentviz;
+
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToIntFunction;
+
+/**
+ * Column-oriented, primitive-typed copy of a loaded dataset. Numeric columns are stored as
+ * ints or doubles, category columns as dictionary codes and dates as epoch days, so chart
+ * aggregations run as plain primitive loops instead of re-parsing strings. Column data sits
+ * in NIO buffers: heap arrays for a freshly parsed file, or memory-mapped regions of a
+ * {@link SnapshotFile}.
+ */
+class ColumnTable {
+
+    enum ColumnType { NUMERIC, CATEGORY, DATE }
+
+    static final int MISSING_CODE = -1;
+    static final int MISSING_DAY = Integer.MIN_VALUE;
+    static final int MISSING_INT = Integer.MIN_VALUE;
+
+    abstract static class Column {
+        final String name;
+
+        Column(String name) {
+            this.name = name;
+        }
+
+        abstract ColumnType getType();
+
+        abstract boolean isMissing(int row);
+
+        /** Formats the cell for display; missing cells are empty. */
+        abstract String getString(int row);
+    }
+
+    abstract static class NumericColumn extends Column {
+        NumericColumn(String name) {
+            super(name);
+        }
+
+        ColumnType getType() {
+            return ColumnType.NUMERIC;
+        }
+
+        abstract double getDouble(int row);
+    }
+
+    static final class IntColumn extends NumericColumn {
+        final IntBuffer values;
+
+        IntColumn(String name, IntBuffer values) {
+            super(name);
+            this.values = values;
+        }
+
+        boolean isMissing(int row) {
+            return values.get(row) == MISSING_INT;
+        }
+
+        int getInt(int row) {
+            return values.get(row);
+        }
+
+        double getDouble(int row) {
+            int value = values.get(row);
+            return value == MISSING_INT ? Double.NaN : value;
+        }
+
+        String getString(int row) {
+            return isMissing(row) ? "" : Integer.toString(values.get(row));
+        }
+    }
+
+    static final class DoubleColumn extends NumericColumn {
+        final DoubleBuffer values;
+
+        DoubleColumn(String name, DoubleBuffer values) {
+            super(name);
+            this.values = values;
+        }
+
+        boolean isMissing(int row) {
+            return Double.isNaN(values.get(row));
+        }
+
+        double getDouble(int row) {
+            return values.get(row);
+        }
+
+        String getString(int row) {
+            return isMissing(row) ? "" : Double.toString(values.get(row));
+        }
+    }
+
+    static final class CategoryColumn extends Column {
+        final IntBuffer codes;
+        final String[] dictionary;
+
+        CategoryColumn(String name, IntBuffer codes, String[] dictionary) {
+            super(name);
+            this.codes = codes;
+            this.dictionary = dictionary;
+        }
+
+        ColumnType getType() {
+            return ColumnType.CATEGORY;
+        }
+
+        int getCardinality() {
+            return dictionary.length;
+        }
+
+        int getCode(int row) {
+            return codes.get(row);
+        }
+
+        boolean isMissing(int row) {
+            return codes.get(row) == MISSING_CODE;
+        }
+
+        String getString(int row) {
+            int code = codes.get(row);
+            return code == MISSING_CODE ? "" : dictionary[code];
+        }
+    }
+
+    static final class DateColumn extends Column {
+        final IntBuffer epochDays;
+
+        DateColumn(String name, IntBuffer epochDays) {
+            super(name);
+            this.epochDays = epochDays;
+        }
+
+        ColumnType getType() {
+            return ColumnType.DATE;
+        }
+
+        int getEpochDay(int row) {
+            return epochDays.get(row);
+        }
+
+        boolean isMissing(int row) {
+            return epochDays.get(row) == MISSING_DAY;
+        }
+
+        String getString(int row) {
+            return isMissing(row) ? "" : java.time.LocalDate.ofEpochDay(epochDays.get(row)).toString();
+        }
+    }
+
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    private final String[] headers;
+    private final Column[] columns;
+    private final int rowCount;
+    private final long version = VERSIONS.incrementAndGet();
+
+    ColumnTable(String[] headers, Column[] columns, int rowCount) {
+        this.headers = headers;
+        this.columns = columns;
+        this.rowCount = rowCount;
+    }
+
+    /** Unique per table instance; identifies the data that cached aggregates were computed from. */
+    long getVersion() {
+        return version;
+    }
+
+    String[] getHeaders() {
+        return headers;
+    }
+
+    int getRowCount() {
+        return rowCount;
+    }
+
+    int getColumnCount() {
+        return columns.length;
+    }
+
+    Column getColumn(int index) {
+        return columns[index];
+    }
+
+    NumericColumn getNumericColumn(int index) {
+        return (NumericColumn) columns[index];
+    }
+
+    CategoryColumn getCategoryColumn(int index) {
+        return (CategoryColumn) columns[index];
+    }
+
+    DateColumn getDateColumn(int index) {
+        return (DateColumn) columns[index];
+    }
+
+    /**
+     * Joins tables with the same columns end to end, e.g. parts of one file parsed in
+     * parallel. Category values get one dictionary in order of first appearance, as if the
+     * parts had been loaded as one table, and a numeric column holds doubles if any part
+     * needed them.
+     */
+    static ColumnTable concat(List<ColumnTable> parts) {
+        ColumnTable first = parts.get(0);
+        String[] headers = first.getHeaders();
+        int rows = 0;
+        for (ColumnTable part : parts) {
+            rows = Math.addExact(rows, part.getRowCount());
+        }
+        Column[] columns = new Column[headers.length];
+        for (int col = 0; col < headers.length; col++) {
+            switch (first.getColumn(col).getType()) {
+                case NUMERIC:
+                    columns[col] = concatNumeric(headers[col], parts, col, rows);
+                    break;
+                case DATE:
+                    int[] days = new int[rows];
+                    int offset = 0;
+                    for (ColumnTable part : parts) {
+                        part.getDateColumn(col).epochDays.get(0, days, offset, part.getRowCount());
+                        offset += part.getRowCount();
+                    }
+                    columns[col] = new DateColumn(headers[col], IntBuffer.wrap(days));
+                    break;
+                default:
+                    columns[col] = concatCategory(headers[col], parts, col, rows);
+                    break;
+            }
+        }
+        return new ColumnTable(headers, columns, rows);
+    }
+
+    private static NumericColumn concatNumeric(String name, List<ColumnTable> parts, int col, int rows) {
+        boolean ints = true;
+        for (ColumnTable part : parts) {
+            ints &= part.getColumn(col) instanceof IntColumn;
+        }
+        int offset = 0;
+        if (ints) {
+            int[] values = new int[rows];
+            for (ColumnTable part : parts) {
+                ((IntColumn) part.getColumn(col)).values.get(0, values, offset, part.getRowCount());
+                offset += part.getRowCount();
+            }
+            return new IntColumn(name, IntBuffer.wrap(values));
+        }
+        double[] values = new double[rows];
+        for (ColumnTable part : parts) {
+            NumericColumn column = part.getNumericColumn(col);
+            if (column instanceof DoubleColumn) {
+                ((DoubleColumn) column).values.get(0, values, offset, part.getRowCount());
+            } else {
+                for (int row = 0; row < part.getRowCount(); row++) {
+                    values[offset + row] = column.getDouble(row);
+                }
+            }
+            offset += part.getRowCount();
+        }
+        return new DoubleColumn(name, DoubleBuffer.wrap(values));
+    }
+
+    private static CategoryColumn concatCategory(String name, List<ColumnTable> parts, int col, int rows) {
+        Map<String, Integer> codes = new HashMap<>();
+        List<String> dictionary = new ArrayList<>();
+        int[] values = new int[rows];
+        int offset = 0;
+        for (ColumnTable part : parts) {
+            CategoryColumn column = part.getCategoryColumn(col);
+            // Each part's codes are in order of first appearance within the part.
+            int[] remap = new int[column.dictionary.length];
+            for (int code = 0; code < remap.length; code++) {
+                Integer merged = codes.get(column.dictionary[code]);
+                if (merged == null) {
+                    merged = dictionary.size();
+                    codes.put(column.dictionary[code], merged);
+                    dictionary.add(column.dictionary[code]);
+                }
+                remap[code] = merged;
+            }
+            IntBuffer partCodes = column.codes;
+            for (int row = 0; row < part.getRowCount(); row++) {
+                int code = partCodes.get(row);
+                values[offset + row] = code == MISSING_CODE ? MISSING_CODE : remap[code];
+            }
+            offset += part.getRowCount();
+        }
+        return new CategoryColumn(name, IntBuffer.wrap(values), dictionary.toArray(new String[0]));
+    }
+
+    /**
+     * Accumulates string rows into typed column builders. Values that do not fit the column
+     * type (an unparseable number or date, or a row too short to have the cell) are stored as
+     * missing, which is how the chart code already treated them. Such values are counted
+     * until passed on by {@link #reportRejected}. A null field is stored as missing without
+     * being counted, so callers can skip columns they do not need.
+     */
+    static final class Builder {
+        private final String[] headers;
+        private final ColumnType[] types;
+        private final ToIntFunction<String> dateParser;
+        private final Object[] builders;
+        private int rowCount;
+        private final long[] rejected;
+        private long raggedRows;
+
+        Builder(String[] headers, ColumnType[] types, ToIntFunction<String> dateParser) {
+            this.headers = headers;
+            this.types = types;
+            this.dateParser = dateParser;
+            this.builders = new Object[headers.length];
+            this.rejected = new long[headers.length];
+            for (int col = 0; col < headers.length; col++) {
+                switch (types[col]) {
+                    case NUMERIC:
+                        builders[col] = new NumericBuilder();
+                        break;
+                    case DATE:
+                        builders[col] = new IntArray();
+                        break;
+                    default:
+                        builders[col] = new CategoryBuilder();
+                        break;
+                }
+            }
+        }
+
+        /**
+         * Continues a finished table, e.g. to add rows appended to the file it was loaded
+         * from. The existing rows are copied once; see {@link #snapshot()}.
+         */
+        Builder(ColumnTable table, ToIntFunction<String> dateParser) {
+            this(table, table.getRowCount(), dateParser);
+        }
+
+        /** As above, keeping only the first rows of the table, e.g. to replace a row read before it was complete. */
+        Builder(ColumnTable table, int rows, ToIntFunction<String> dateParser) {
+            this.headers = table.getHeaders();
+            this.types = new ColumnType[headers.length];
+            this.dateParser = dateParser;
+            this.builders = new Object[headers.length];
+            this.rejected = new long[headers.length];
+            this.rowCount = rows;
+            for (int col = 0; col < headers.length; col++) {
+                Column column = table.getColumn(col);
+                types[col] = column.getType();
+                switch (types[col]) {
+                    case NUMERIC:
+                        builders[col] = NumericBuilder.copyOf((NumericColumn) column, rowCount);
+                        break;
+                    case DATE:
+                        builders[col] = IntArray.copyOf(((DateColumn) column).epochDays, rowCount);
+                        break;
+                    default:
+                        builders[col] = CategoryBuilder.copyOf((CategoryColumn) column, rowCount);
+                        break;
+                }
+            }
+        }
+
+        void addRow(String[] row) {
+            if (row.length != types.length) {
+                raggedRows++;
+            }
+            for (int col = 0; col < types.length; col++) {
+                String value = col < row.length && row[col] != null ? row[col].trim() : null;
+                switch (types[col]) {
+                    case NUMERIC:
+                        if (!((NumericBuilder) builders[col]).add(value)) {
+                            rejected[col]++;
+                        }
+                        break;
+                    case DATE:
+                        int day = value == null || value.isEmpty() ? MISSING_DAY : dateParser.applyAsInt(value);
+                        if (day == MISSING_DAY && value != null && !value.isEmpty()) {
+                            rejected[col]++;
+                        }
+                        ((IntArray) builders[col]).add(day);
+                        break;
+                    default:
+                        ((CategoryBuilder) builders[col]).add(value);
+                        break;
+                }
+            }
+            rowCount++;
+        }
+
+        ColumnTable build() {
+            return toTable(true);
+        }
+
+        /**
+         * The rows added so far, sharing the builder's arrays instead of copying them. Rows
+         * added later go past the end of the snapshot's buffers, so the snapshot stays valid
+         * and the cost is independent of the number of rows.
+         */
+        ColumnTable snapshot() {
+            return toTable(false);
+        }
+
+        int getRowCount() {
+            return rowCount;
+        }
+
+        /**
+         * Builds the rows added since the last flush and starts again with no rows, reusing
+         * the arrays. Category columns keep their dictionaries, so a value has the same code
+         * in every batch and aggregates of successive batches can be merged.
+         */
+        ColumnTable flush() {
+            ColumnTable batch = toTable(true);
+            for (int col = 0; col < headers.length; col++) {
+                switch (types[col]) {
+                    case NUMERIC:
+                        ((NumericBuilder) builders[col]).clear();
+                        break;
+                    case DATE:
+                        ((IntArray) builders[col]).size = 0;
+                        break;
+                    default:
+                        ((CategoryBuilder) builders[col]).rows.size = 0;
+                        break;
+                }
+            }
+            rowCount = 0;
+            return batch;
+        }
+
+        /** Number of distinct values added to a category column. */
+        int getCardinality(int col) {
+            return ((CategoryBuilder) builders[col]).dictionary.size();
+        }
+
+        /**
+         * Starts the dictionary of a category column over, e.g. once aggregates by its values
+         * have been written to disk. Codes of later batches no longer match earlier ones.
+         * Only valid right after a {@link #flush()}.
+         */
+        void forgetValues(int col) {
+            builders[col] = new CategoryBuilder();
+        }
+
+        /**
+         * Adds the values stored as missing because they did not parse, per column, and the
+         * rows whose number of fields differs from the header to the metrics, then starts
+         * counting again.
+         */
+        void reportRejected(Metrics metrics) {
+            for (int col = 0; col < headers.length; col++) {
+                metrics.count("Unparseable values in " + headers[col], rejected[col]);
+                rejected[col] = 0;
+            }
+            metrics.count("Rows with a different number of fields than the header", raggedRows);
+            raggedRows = 0;
+        }
+
+        private ColumnTable toTable(boolean copy) {
+            Column[] columns = new Column[headers.length];
+            for (int col = 0; col < headers.length; col++) {
+                switch (types[col]) {
+                    case NUMERIC:
+                        columns[col] = ((NumericBuilder) builders[col]).build(headers[col], copy);
+                        break;
+                    case DATE:
+                        columns[col] = new DateColumn(headers[col], ((IntArray) builders[col]).toBuffer(copy));
+                        break;
+                    default:
+                        columns[col] = ((CategoryBuilder) builders[col]).build(headers[col], copy);
+                        break;
+                }
+            }
+            return new ColumnTable(headers, columns, rowCount);
+        }
+    }
+
+    private static final class IntArray {
+        int[] values = new int[1024];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        IntBuffer toBuffer(boolean copy) {
+            return copy ? IntBuffer.wrap(Arrays.copyOf(values, size)) : IntBuffer.wrap(values, 0, size).slice();
+        }
+
+        static IntArray copyOf(IntBuffer source, int rows) {
+            IntArray array = new IntArray();
+            array.values = new int[Math.max(1024, rows)];
+            source.get(0, array.values, 0, rows);
+            array.size = rows;
+            return array;
+        }
+    }
+
+    /** Stores whole numbers as int until the first fractional or out-of-range value. */
+    private static final class NumericBuilder {
+        IntArray ints = new IntArray();
+        double[] doubles;
+        int size;
+
+        /** Returns false if the value was not blank but did not parse, and was stored as missing. */
+        boolean add(String value) {
+            double parsed = Double.NaN;
+            if (value != null && SchemaInference.isNumber(value)) {
+                parsed = Double.parseDouble(value);
+            }
+            boolean valid = !Double.isNaN(parsed) || value == null || value.isEmpty();
+            if (ints != null) {
+                if (Double.isNaN(parsed)) {
+                    ints.add(MISSING_INT);
+                    size++;
+                    return valid;
+                }
+                int asInt = (int) parsed;
+                if (asInt == parsed && asInt != MISSING_INT) {
+                    ints.add(asInt);
+                    size++;
+                    return true;
+                }
+                doubles = new double[Math.max(1024, ints.values.length)];
+                for (int i = 0; i < ints.size; i++) {
+                    int v = ints.values[i];
+                    doubles[i] = v == MISSING_INT ? Double.NaN : v;
+                }
+                ints = null;
+            }
+            if (size == doubles.length) {
+                doubles = Arrays.copyOf(doubles, size * 2);
+            }
+            doubles[size++] = parsed;
+            return valid;
+        }
+
+        /** Drops the values but keeps the arrays; a column already holding doubles stays so. */
+        void clear() {
+            if (ints != null) {
+                ints.size = 0;
+            }
+            size = 0;
+        }
+
+        NumericColumn build(String name, boolean copy) {
+            if (ints != null) {
+                return new IntColumn(name, ints.toBuffer(copy));
+            }
+            return new DoubleColumn(name, copy
+                    ? DoubleBuffer.wrap(Arrays.copyOf(doubles, size))
+                    : DoubleBuffer.wrap(doubles, 0, size).slice());
+        }
+
+        static NumericBuilder copyOf(NumericColumn source, int rows) {
+            NumericBuilder builder = new NumericBuilder();
+            builder.size = rows;
+            if (source instanceof IntColumn) {
+                builder.ints = IntArray.copyOf(((IntColumn) source).values, rows);
+            } else {
+                builder.ints = null;
+                builder.doubles = new double[Math.max(1024, rows)];
+                ((DoubleColumn) source).values.get(0, builder.doubles, 0, rows);
+            }
+            return builder;
+        }
+    }
+
+    private static final class CategoryBuilder {
+        final Map<String, Integer> codes = new HashMap<>();
+        final List<String> dictionary = new ArrayList<>();
+        IntArray rows = new IntArray();
+
+        void add(String value) {
+            if (value == null) {
+                rows.add(MISSING_CODE);
+                return;
+            }
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = dictionary.size();
+                codes.put(value, code);
+                dictionary.add(value);
+            }
+            rows.add(code);
+        }
+
+        CategoryColumn build(String name, boolean copy) {
+            return new CategoryColumn(name, rows.toBuffer(copy), dictionary.toArray(new String[0]));
+        }
+
+        static CategoryBuilder copyOf(CategoryColumn source, int rows) {
+            CategoryBuilder builder = new CategoryBuilder();
+            for (String value : source.dictionary) {
+                builder.codes.put(value, builder.dictionary.size());
+                builder.dictionary.add(value);
+            }
+            builder.rows = IntArray.copyOf(source.codes, rows);
+            return builder;
+        }
+    }
+}
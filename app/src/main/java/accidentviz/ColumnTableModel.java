@@ -0,0 +1,42 @@
+package accidentviz;
+
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Read-only table model that formats cells straight out of a {@link ColumnTable}, so the
+ * data preview needs no second copy of the dataset however many rows it has.
+ */
+class ColumnTableModel extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+
+    private ColumnTable table;
+
+    ColumnTableModel(ColumnTable table) {
+        this.table = table;
+    }
+
+    /** Switches to a table with rows appended to the current one. */
+    void setTable(ColumnTable grown) {
+        int before = table.getRowCount();
+        table = grown;
+        if (grown.getRowCount() > before) {
+            fireTableRowsInserted(before, grown.getRowCount() - 1);
+        }
+    }
+
+    public int getRowCount() {
+        return table.getRowCount();
+    }
+
+    public int getColumnCount() {
+        return table.getColumnCount();
+    }
+
+    public String getColumnName(int column) {
+        return table.getHeaders()[column];
+    }
+
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        return table.getColumn(columnIndex).getString(rowIndex);
+    }
+}
@@ -0,0 +1,271 @@
+package accidentviz;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Streaming RFC 4180 CSV parser. The file is read through a {@link FileChannel} in large
+ * chunks and scanned byte by byte, so delimiters, quotes and line breaks are found without
+ * decoding the whole file or compiling a regex per line. Each completed row is handed to a
+ * {@link RowHandler} as soon as it is parsed.
+ */
+class CsvParser implements RowReader {
+
+    interface RowHandler {
+        /** Returns false to stop parsing early. */
+        boolean handleRow(String[] fields);
+    }
+
+    private static final int CHUNK_SIZE = 1 << 20;
+
+    private static final int START_FIELD = 0;
+    private static final int UNQUOTED = 1;
+    private static final int QUOTED = 2;
+    private static final int QUOTE_IN_QUOTED = 3;
+
+    private static final int STOP = -1;
+
+    private final byte delimiter;
+    private volatile long bytesRead;
+    /** Whether the last parse ended inside a row, without a line break after it. */
+    private boolean endedInRow;
+    /** Bytes of the last parse up to the end of its last complete row. */
+    private long rowsEnd;
+    private boolean completeRowsOnly;
+
+    CsvParser() {
+        this(',');
+    }
+
+    CsvParser(char delimiter) {
+        this.delimiter = (byte) delimiter;
+    }
+
+    /** Bytes consumed so far by the current or last parse; safe to poll from another thread. */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Leaves out a last row that has no line break after it, e.g. one a writer is still
+     * appending to, instead of passing it on as it stands. Returns this parser.
+     */
+    CsvParser completeRowsOnly() {
+        completeRowsOnly = true;
+        return this;
+    }
+
+    /** Whether the last parse ended inside a row, without a line break after it. */
+    boolean endedInRow() {
+        return endedInRow;
+    }
+
+    /**
+     * Bytes of the last parse up to the end of its last complete row, line break included,
+     * so that a parse resumed there starts on a new row. Equals the bytes read unless the
+     * parse {@link #endedInRow() ended inside a row} or was stopped.
+     */
+    long getRowsEnd() {
+        return rowsEnd;
+    }
+
+    public long parse(File file, RowHandler handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return parse(channel, handler);
+        }
+    }
+
+    /** Parses the channel from its current position to the end and returns the number of rows. */
+    long parse(ReadableByteChannel channel, RowHandler handler) throws IOException {
+        return parse(channel, handler, true);
+    }
+
+    /**
+     * Parses bytes from..to-1 of the file, which must start at the beginning of a row, e.g.
+     * one part of a file parsed in parallel. Returns the number of rows, or -1 if the range
+     * does not end with a line break outside quotes, so that to is not the start of a row.
+     */
+    long parseRange(FileChannel channel, long from, long to, RowHandler handler) throws IOException {
+        long rows = parse(range(channel, from, to), handler, from == 0);
+        return endedInRow ? -1 : rows;
+    }
+
+    private long parse(ReadableByteChannel channel, RowHandler handler, boolean atFileStart) throws IOException {
+        byte delimiter = this.delimiter;
+        ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+        byte[] bytes = buffer.array();
+        List<String> fields = new ArrayList<>();
+        byte[] field = new byte[256];
+        int fieldLength = 0;
+        int state = START_FIELD;
+        long rows = 0;
+        boolean firstChunk = atFileStart;
+        long consumed = 0;
+        bytesRead = 0;
+        endedInRow = false;
+        rowsEnd = 0;
+
+        while (channel.read(buffer) != -1) {
+            int limit = buffer.position();
+            consumed += limit;
+            bytesRead = consumed;
+            int i = 0;
+            if (firstChunk) {
+                firstChunk = false;
+                if (limit >= 3 && bytes[0] == (byte) 0xEF && bytes[1] == (byte) 0xBB && bytes[2] == (byte) 0xBF) {
+                    i = 3;
+                }
+            }
+
+            while (i < limit) {
+                byte c = bytes[i];
+                switch (state) {
+                    case START_FIELD:
+                    case UNQUOTED:
+                        if (state == START_FIELD && c == '"') {
+                            state = QUOTED;
+                            i++;
+                            break;
+                        }
+                        // Scan ahead to the end of an unquoted field in one go.
+                        int start = i;
+                        while (i < limit) {
+                            c = bytes[i];
+                            if (c == delimiter || c == '\n' || c == '\r') break;
+                            i++;
+                        }
+                        if (i == limit) {
+                            field = append(field, fieldLength, bytes, start, i - start);
+                            fieldLength += i - start;
+                            state = UNQUOTED;
+                            break;
+                        }
+                        if (fieldLength == 0) {
+                            fields.add(new String(bytes, start, i - start, StandardCharsets.UTF_8));
+                        } else {
+                            field = append(field, fieldLength, bytes, start, i - start);
+                            fields.add(new String(field, 0, fieldLength + i - start, StandardCharsets.UTF_8));
+                            fieldLength = 0;
+                        }
+                        state = START_FIELD;
+                        if (c == delimiter) {
+                            i++;
+                        } else {
+                            i = skipLineBreak(bytes, i, limit);
+                            rowsEnd = consumed - limit + i;
+                            int emitted = endRow(fields, handler);
+                            if (emitted == STOP) return rows + 1;
+                            rows += emitted;
+                        }
+                        break;
+                    case QUOTED:
+                        int quotedStart = i;
+                        while (i < limit && bytes[i] != '"') i++;
+                        field = append(field, fieldLength, bytes, quotedStart, i - quotedStart);
+                        fieldLength += i - quotedStart;
+                        if (i < limit) {
+                            state = QUOTE_IN_QUOTED;
+                            i++;
+                        }
+                        break;
+                    default:
+                        if (c == '"') {
+                            field = append(field, fieldLength, bytes, i, 1);
+                            fieldLength++;
+                            state = QUOTED;
+                            i++;
+                        } else if (c == delimiter || c == '\n' || c == '\r') {
+                            fields.add(new String(field, 0, fieldLength, StandardCharsets.UTF_8));
+                            fieldLength = 0;
+                            state = START_FIELD;
+                            if (c == delimiter) {
+                                i++;
+                            } else {
+                                i = skipLineBreak(bytes, i, limit);
+                                rowsEnd = consumed - limit + i;
+                                int emitted = endRow(fields, handler);
+                                if (emitted == STOP) return rows + 1;
+                                rows += emitted;
+                            }
+                        } else {
+                            // Stray characters after a closing quote are kept, as most readers do.
+                            state = UNQUOTED;
+                        }
+                        break;
+                }
+            }
+            buffer.clear();
+        }
+
+        if (state != START_FIELD || !fields.isEmpty()) {
+            endedInRow = true;
+            if (!completeRowsOnly) {
+                fields.add(new String(field, 0, fieldLength, StandardCharsets.UTF_8));
+                rows += Math.abs(endRow(fields, handler));
+            }
+        }
+        return rows;
+    }
+
+    /** Emits the collected fields as a row and returns 1, or 0 for a skipped blank line, or STOP. */
+    private static int endRow(List<String> fields, RowHandler handler) {
+        if (fields.size() == 1 && fields.get(0).isEmpty()) {
+            fields.clear();
+            return 0;
+        }
+        String[] row = fields.toArray(new String[0]);
+        fields.clear();
+        return handler.handleRow(row) ? 1 : STOP;
+    }
+
+    /** Reads bytes from..to-1 of the file, without moving the channel's position. */
+    private static ReadableByteChannel range(final FileChannel channel, final long from, final long to) {
+        return new ReadableByteChannel() {
+            private long position = from;
+
+            public int read(ByteBuffer buffer) throws IOException {
+                if (position >= to) return -1;
+                int limit = buffer.limit();
+                buffer.limit((int) Math.min(limit, buffer.position() + (to - position)));
+                try {
+                    int read = channel.read(buffer, position);
+                    if (read > 0) position += read;
+                    return read;
+                } finally {
+                    buffer.limit(limit);
+                }
+            }
+
+            public boolean isOpen() {
+                return channel.isOpen();
+            }
+
+            public void close() {
+                // The channel belongs to the caller.
+            }
+        };
+    }
+
+    private static int skipLineBreak(byte[] bytes, int i, int limit) {
+        if (bytes[i] == '\r' && i + 1 < limit && bytes[i + 1] == '\n') {
+            return i + 2;
+        }
+        return i + 1;
+    }
+
+    private static byte[] append(byte[] field, int fieldLength, byte[] source, int offset, int length) {
+        if (fieldLength + length > field.length) {
+            field = Arrays.copyOf(field, Math.max(field.length * 2, fieldLength + length));
+        }
+        System.arraycopy(source, offset, field, fieldLength, length);
+        return field;
+    }
+}
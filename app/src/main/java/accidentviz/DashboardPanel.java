@@ -0,0 +1,65 @@
+package accidentviz;
+
+import org.jfree.chart.ChartPanel;
+import org.jfree.chart.JFreeChart;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.List;
+
+/**
+ * The charts of a dashboard in a grid, two to a row. Each cell names its chart until the
+ * chart is built and then shows it, or the error that stopped it, so the grid fills in as
+ * the charts are finished.
+ */
+class DashboardPanel extends JPanel {
+    private static final long serialVersionUID = 1L;
+
+    private static final int COLUMNS = 2;
+    private static final int CELL_WIDTH = 570;
+    private static final int CELL_HEIGHT = 320;
+    private static final int GAP = 10;
+
+    private final JPanel[] cells;
+
+    DashboardPanel(List<ChartSpec> specs) {
+        super(new GridLayout(0, COLUMNS, GAP, GAP));
+        setOpaque(false);
+        cells = new JPanel[specs.size()];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = new JPanel(new BorderLayout());
+            cells[i].setBackground(Color.WHITE);
+            cells[i].add(new JLabel(specs.get(i) + ": waiting for data...", SwingConstants.CENTER), BorderLayout.CENTER);
+            add(cells[i]);
+        }
+        int rows = (cells.length + COLUMNS - 1) / COLUMNS;
+        Dimension size = new Dimension(COLUMNS * CELL_WIDTH + (COLUMNS - 1) * GAP, rows * CELL_HEIGHT + (rows - 1) * GAP);
+        setPreferredSize(size);
+        setMaximumSize(size);
+        setAlignmentX(Component.CENTER_ALIGNMENT);
+    }
+
+    void showChart(int index, JFreeChart chart) {
+        setCell(index, new ChartPanel(chart) {
+            @SuppressWarnings("try")
+            public void paintComponent(Graphics g) {
+                try (Metrics.Span span = Metrics.GLOBAL.start(Metrics.Stage.PAINT)) {
+                    super.paintComponent(g);
+                }
+            }
+        });
+    }
+
+    void showError(int index, String message) {
+        JLabel label = new JLabel(message, SwingConstants.CENTER);
+        label.setForeground(Color.RED.darker());
+        setCell(index, label);
+    }
+
+    private void setCell(int index, JComponent content) {
+        cells[index].removeAll();
+        cells[index].add(content, BorderLayout.CENTER);
+        cells[index].revalidate();
+        cells[index].repaint();
+    }
+}
@@ -0,0 +1,89 @@
+package accidentviz;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Parses the values of one date column into epoch days. The format is detected once from a
+ * sample of the column, and parsing is strict, so an impossible date such as month 26 is
+ * rejected instead of rolling over into a later year. Parsed values are cached because a
+ * date column repeats the same few thousand days. Instances are immutable apart from the
+ * concurrent cache and are safe to share between threads.
+ */
+class DateParser {
+
+    private static final String[] PATTERNS = {
+        "uuuu-M-d",
+        "d-M-uuuu",
+        "M/d/uuuu",
+        "d/M/uuuu",
+        "uuuu-d-M"
+    };
+
+    private static final int CACHE_LIMIT = 1 << 16;
+
+    private final String pattern;
+    private final DateTimeFormatter formatter;
+    private final ConcurrentHashMap<String, Integer> cache = new ConcurrentHashMap<>();
+
+    private DateParser(String pattern) {
+        this.pattern = pattern;
+        this.formatter = DateTimeFormatter.ofPattern(pattern).withResolverStyle(ResolverStyle.STRICT);
+    }
+
+    /**
+     * Picks the supported format that parses the most sample values. Ties go to the earlier
+     * format in the list, so ambiguous day/month values keep the historical yyyy-MM-dd reading.
+     */
+    static DateParser detect(Iterable<String> sample) {
+        DateParser best = null;
+        int bestCount = -1;
+        for (String pattern : PATTERNS) {
+            DateParser candidate = new DateParser(pattern);
+            int count = 0;
+            for (String value : sample) {
+                if (candidate.parseUncached(value) != ColumnTable.MISSING_DAY) {
+                    count++;
+                }
+            }
+            if (count > bestCount) {
+                best = candidate;
+                bestCount = count;
+            }
+        }
+        return best;
+    }
+
+    /** Recreates the parser for a pattern previously returned by {@link #getPattern()}. */
+    static DateParser forPattern(String pattern) {
+        return new DateParser(pattern);
+    }
+
+    String getPattern() {
+        return pattern;
+    }
+
+    /** Returns the epoch day of the value, or {@link ColumnTable#MISSING_DAY} if it does not parse. */
+    int parseEpochDay(String value) {
+        Integer cached = cache.get(value);
+        if (cached != null) {
+            return cached;
+        }
+        int day = parseUncached(value);
+        if (cache.size() < CACHE_LIMIT) {
+            cache.put(value, day);
+        }
+        return day;
+    }
+
+    private int parseUncached(String value) {
+        try {
+            return (int) LocalDate.parse(value.trim(), formatter).toEpochDay();
+        } catch (DateTimeParseException e) {
+            return ColumnTable.MISSING_DAY;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package accidentviz;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Non-modal window showing the {@link Metrics} of this session: per stage latencies and
+ * throughput, the values the loader could not parse, and the aggregate cache hit rate. The
+ * numbers refresh every second while the window is open and can be exported as JSON, to be
+ * attached to a report of a slow dataset.
+ */
+class DiagnosticsDialog extends JDialog {
+    private static final long serialVersionUID = 1L;
+
+    private static final int REFRESH_MILLIS = 1000;
+    private static final String[] COLUMNS = {
+        "Stage", "Count", "Mean ms", "p50 ms", "p90 ms", "p99 ms", "Max ms", "Rows/s", "MB/s", "Allocated MB"
+    };
+
+    private final Metrics metrics;
+    private final AggregateCache aggregates;
+    private final StageTableModel stageModel = new StageTableModel();
+    private final JTextArea counterArea = new JTextArea(6, 60);
+    private final Timer refreshTimer;
+
+    DiagnosticsDialog(Frame owner, Metrics metrics, AggregateCache aggregates) {
+        super(owner, "Diagnostics", false);
+        this.metrics = metrics;
+        this.aggregates = aggregates;
+
+        JTable stageTable = new JTable(stageModel);
+        stageTable.getColumnModel().getColumn(0).setPreferredWidth(120);
+        counterArea.setEditable(false);
+
+        JButton resetButton = new JButton("Reset");
+        resetButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                DiagnosticsDialog.this.metrics.reset();
+                refresh();
+            }
+        });
+        JButton exportButton = new JButton("Export JSON...");
+        exportButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                exportJson();
+            }
+        });
+        JButton closeButton = new JButton("Close");
+        closeButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                dispose();
+            }
+        });
+
+        refreshTimer = new Timer(REFRESH_MILLIS, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                refresh();
+            }
+        });
+        addWindowListener(new WindowAdapter() {
+            public void windowOpened(WindowEvent e) {
+                refreshTimer.start();
+            }
+
+            public void windowClosed(WindowEvent e) {
+                refreshTimer.stop();
+            }
+        });
+
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        buttons.add(resetButton);
+        buttons.add(exportButton);
+        buttons.add(closeButton);
+
+        JPanel tables = new JPanel(new BorderLayout(0, 10));
+        tables.add(new JScrollPane(stageTable), BorderLayout.CENTER);
+        tables.add(new JScrollPane(counterArea), BorderLayout.SOUTH);
+
+        JPanel content = new JPanel(new BorderLayout(0, 10));
+        content.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+        content.add(new JLabel("Time spent per stage since the application started or the last reset."), BorderLayout.NORTH);
+        content.add(tables, BorderLayout.CENTER);
+        content.add(buttons, BorderLayout.SOUTH);
+        setContentPane(content);
+        setSize(900, 460);
+        setLocationRelativeTo(owner);
+        refresh();
+    }
+
+    private void refresh() {
+        stageModel.setStages(metrics.getStages());
+        StringBuilder text = new StringBuilder();
+        long hits = aggregates.getHits();
+        long misses = aggregates.getMisses();
+        text.append(String.format("Aggregate cache: %,d hits, %,d misses%n", hits, misses));
+        Map<String, Long> counters = metrics.getCounters();
+        if (counters.isEmpty()) {
+            text.append("No unparseable values or ragged rows.");
+        }
+        for (Map.Entry<String, Long> counter : counters.entrySet()) {
+            text.append(String.format("%s: %,d%n", counter.getKey(), counter.getValue()));
+        }
+        counterArea.setText(text.toString());
+        counterArea.setCaretPosition(0);
+    }
+
+    private void exportJson() {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setSelectedFile(new File("metrics.json"));
+        if (fileChooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        try {
+            Files.write(fileChooser.getSelectedFile().toPath(), metrics.toJson().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException ex) {
+            JOptionPane.showMessageDialog(this, "Error exporting metrics: " + ex.getMessage());
+        }
+    }
+
+    private static final class StageTableModel extends AbstractTableModel {
+        private static final long serialVersionUID = 1L;
+        private List<Metrics.StageStats> stages = new ArrayList<>();
+
+        void setStages(List<Metrics.StageStats> updated) {
+            stages = updated;
+            fireTableDataChanged();
+        }
+
+        public int getRowCount() {
+            return stages.size();
+        }
+
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        public String getColumnName(int column) {
+            return COLUMNS[column];
+        }
+
+        public Object getValueAt(int row, int column) {
+            Metrics.StageStats stats = stages.get(row);
+            switch (column) {
+                case 0:
+                    return stats.stage.label;
+                case 1:
+                    return String.format("%,d", stats.count);
+                case 2:
+                    return String.format("%,.1f", stats.meanMillis());
+                case 3:
+                    return String.format("%,.1f", stats.percentileMillis(0.5));
+                case 4:
+                    return String.format("%,.1f", stats.percentileMillis(0.9));
+                case 5:
+                    return String.format("%,.1f", stats.percentileMillis(0.99));
+                case 6:
+                    return String.format("%,.1f", stats.maxNanos / 1e6);
+                case 7:
+                    return stats.rows == 0 ? "" : String.format("%,.0f", stats.rowsPerSecond());
+                case 8:
+                    return stats.bytes == 0 ? "" : String.format("%,.1f", stats.bytesPerSecond() / (1 << 20));
+                default:
+                    return stats.allocatedBytes < 0 ? "n/a" : String.format("%,.1f", stats.allocatedBytes / (double) (1 << 20));
+            }
+        }
+    }
+}
@@ -0,0 +1,1420 @@
+package accidentviz;
+
+import org.jfree.chart.ChartPanel;
+import org.jfree.chart.JFreeChart;
+
+import javax.swing.*;
+import javax.swing.Timer;
+import javax.swing.table.DefaultTableModel;
+import javax.swing.table.TableModel;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+class DiverseDataVisualizationApp extends JFrame {
+    private static final long serialVersionUID = 1L;
+
+    private JPanel panel;
+    private JButton uploadButton;
+    private JButton snapshotButton;
+    private JButton generateButton;
+    private JButton dashboardButton;
+    private JButton filterButton;
+    private JToggleButton followButton;
+    private JButton profileButton;
+    private JButton diagnosticsButton;
+    private JLabel filterLabel;
+    private JComboBox<String> chartTypeComboBox;
+    private JComboBox<String> categoryColumnComboBox;
+    private JComboBox<String> numericColumnComboBox;
+    private JComboBox<String> xAxisComboBox;
+    private JComboBox<String> yAxisComboBox;
+    private JComboBox<GroupByAggregator.Aggregation> aggregationComboBox;
+    private JProgressBar progressBar;
+    private JButton cancelButton;
+    private SwingWorker<?, ?> activeTask;
+    private FilterDialog filterDialog;
+    private DiagnosticsDialog diagnosticsDialog;
+    private ProfileDialog profileDialog;
+    private Timer filterTimer;
+    private RowFilter filter = RowFilter.NONE;
+    private int filteredRows;
+    private String shownChartType;
+    private ChartBuilder.LiveChart shownChart;
+    private Function<ChartBuilder, ChartBuilder.LiveChart> shownChartTask;
+    private List<ChartSpec> shownDashboard;
+    /** The specs last entered for a dashboard, or null to suggest some. */
+    private String dashboardSpecs;
+    private long chartShownAt;
+    private boolean chartBehind;
+
+    private File loadedFile;
+    /** The snapshot the table is mapped from, which cannot be saved over while it is open. */
+    private File mappedSnapshot;
+    /** Where following the loaded file starts: the end of its last complete row. */
+    private long loadedBytes;
+    /**
+     * Whether the last row of the table is the file's last line read without its line break.
+     * A writer may still be appending to it, so following re-reads it and replaces the row.
+     */
+    private boolean loadedPartialRow;
+    private FeedFollower follower;
+    private AtomicReference<Appended> appended;
+    private Timer followTimer;
+    private SwingWorker<?, ?> liveUpdate;
+
+    private ColumnTable table;
+    private ChartBuilder charts;
+    private List<SchemaInference.ColumnSchema> schema;
+    private DateParser dateParser;
+    private String[] headers;
+    private JTable dataTable;
+    private JScrollPane tableScrollPane;
+    private List<Integer> numericColumns;
+    private List<Integer> categoryColumns;
+    private Integer dateColumnIndex;
+
+    private static final int PREVIEW_ROWS = 1000;
+    private static final String COUNT_WEIGHT = "(count)";
+    /** How often rows read from a followed file are shown, at most. */
+    private static final int FOLLOW_REFRESH_MILLIS = 250;
+    /** How often charts that cannot take appended rows are rebuilt while following. */
+    private static final int FOLLOW_REBUILD_MILLIS = 2000;
+    /** How often the progress of a pass over a file charted out of core is shown. */
+    private static final int PASS_PROGRESS_MILLIS = 250;
+
+    /** The table grown by rows read from the followed file, and the file offset it covers. */
+    private static final class Appended {
+        final ColumnTable table;
+        final long offset;
+
+        Appended(ColumnTable table, long offset) {
+            this.table = table;
+            this.offset = offset;
+        }
+    }
+
+    /** A chart of a dashboard, or the error that stopped it, handed from the worker to the EDT. */
+    private static final class Tile {
+        final int index;
+        final JFreeChart chart;
+        final String error;
+
+        Tile(int index, JFreeChart chart, String error) {
+            this.index = index;
+            this.chart = chart;
+            this.error = error;
+        }
+    }
+
+    /** Aggregates shared by repeated and related chart requests, e.g. Bar and Line on the same columns. */
+    private static final AggregateCache AGGREGATES = new AggregateCache(Runtime.getRuntime().maxMemory() / 16);
+
+    public DiverseDataVisualizationApp() {
+        setTitle("Diverse Data Visualization");
+        setSize(1200, 900);
+        setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        setLocationRelativeTo(null);
+
+        panel = new JPanel();
+        panel.setLayout(new BoxLayout(panel, BoxLayout.Y_AXIS));
+        panel.setBackground(new Color(240, 248, 255));
+        JScrollPane scrollPane = new JScrollPane(panel);
+
+        uploadButton = new JButton("Upload Dataset");
+        uploadButton.setBackground(new Color(70, 130, 180));
+        uploadButton.setForeground(Color.WHITE);
+        uploadButton.setFocusPainted(false);
+
+        snapshotButton = new JButton("Save Snapshot");
+        snapshotButton.setBackground(new Color(70, 130, 180));
+        snapshotButton.setForeground(Color.WHITE);
+        snapshotButton.setFocusPainted(false);
+        snapshotButton.setEnabled(false);
+
+        generateButton = new JButton("Generate Visualization");
+        generateButton.setBackground(new Color(34, 139, 34));
+        generateButton.setForeground(Color.WHITE);
+        generateButton.setFocusPainted(false);
+        generateButton.setEnabled(false);
+
+        dashboardButton = new JButton("Dashboard...");
+        dashboardButton.setBackground(new Color(34, 139, 34));
+        dashboardButton.setForeground(Color.WHITE);
+        dashboardButton.setFocusPainted(false);
+        dashboardButton.setEnabled(false);
+        dashboardButton.setToolTipText("Several charts in a grid, aggregated together in one scan of the rows");
+
+        filterButton = new JButton("Filters...");
+        filterButton.setBackground(new Color(70, 130, 180));
+        filterButton.setForeground(Color.WHITE);
+        filterButton.setFocusPainted(false);
+        filterButton.setEnabled(false);
+
+        followButton = new JToggleButton("Follow File");
+        followButton.setFocusPainted(false);
+        followButton.setEnabled(false);
+        followButton.setToolTipText("Add rows as they are appended to the loaded CSV file");
+
+        profileButton = new JButton("Column Profile");
+        profileButton.setFocusPainted(false);
+        profileButton.setEnabled(false);
+        profileButton.setToolTipText("Distinct values, quantiles and most frequent values of every column");
+
+        diagnosticsButton = new JButton("Diagnostics");
+        diagnosticsButton.setFocusPainted(false);
+        diagnosticsButton.setToolTipText("Time spent loading and charting, and values that could not be read");
+
+        filterLabel = new JLabel();
+
+        // Coalesces quick successive filter clicks into one chart update.
+        filterTimer = new Timer(200, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                applyFilter();
+            }
+        });
+        filterTimer.setRepeats(false);
+
+        // Shows rows from a followed file in batches, so a fast feed does not redraw per row.
+        followTimer = new Timer(FOLLOW_REFRESH_MILLIS, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                showAppendedRows();
+            }
+        });
+
+        chartTypeComboBox = new JComboBox<>(new String[]{"Bar Chart", "Pie Chart", "Line Chart", "Scatter Chart", "Heatmap"});
+        chartTypeComboBox.setBackground(Color.WHITE);
+        
+        categoryColumnComboBox = new JComboBox<>();
+        categoryColumnComboBox.setBackground(Color.WHITE);
+        
+        numericColumnComboBox = new JComboBox<>();
+        numericColumnComboBox.setBackground(Color.WHITE);
+        
+        xAxisComboBox = new JComboBox<>();
+        xAxisComboBox.setBackground(Color.WHITE);
+        
+        yAxisComboBox = new JComboBox<>();
+        yAxisComboBox.setBackground(Color.WHITE);
+
+        aggregationComboBox = new JComboBox<>(GroupByAggregator.Aggregation.values());
+        aggregationComboBox.setBackground(Color.WHITE);
+        aggregationComboBox.setVisible(false);
+
+        progressBar = new JProgressBar(0, 100);
+        progressBar.setStringPainted(true);
+        progressBar.setVisible(false);
+
+        cancelButton = new JButton("Cancel");
+        cancelButton.setFocusPainted(false);
+        cancelButton.setVisible(false);
+
+        uploadButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                JFileChooser fileChooser = new JFileChooser();
+                int result = fileChooser.showOpenDialog(null);
+                if (result == JFileChooser.APPROVE_OPTION) {
+                    File file = fileChooser.getSelectedFile();
+                    if (SnapshotFile.isSnapshot(file)) {
+                        openSnapshot(file);
+                    } else if (ExternalAggregator.isOutOfCore(file)) {
+                        openOutOfCore(file);
+                    } else {
+                        loadData(file);
+                    }
+                }
+            }
+        });
+
+        snapshotButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                JFileChooser fileChooser = new JFileChooser();
+                fileChooser.setSelectedFile(new File("dataset" + SnapshotFile.EXTENSION));
+                if (fileChooser.showSaveDialog(null) == JFileChooser.APPROVE_OPTION) {
+                    File file = fileChooser.getSelectedFile();
+                    if (!file.getName().endsWith(SnapshotFile.EXTENSION)) {
+                        file = new File(file.getParentFile(), file.getName() + SnapshotFile.EXTENSION);
+                    }
+                    if (isMappedSnapshot(file)) {
+                        JOptionPane.showMessageDialog(null, "The dataset was opened from " + file.getName()
+                                + " and is already saved there.");
+                        return;
+                    }
+                    saveSnapshot(file);
+                }
+            }
+        });
+
+        chartTypeComboBox.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                updateColumnSelectors();
+            }
+        });
+
+        generateButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                if (table == null || table.getRowCount() == 0) {
+                    JOptionPane.showMessageDialog(null, "Please upload a dataset first!");
+                    return;
+                }
+                String selectedChartType = (String) chartTypeComboBox.getSelectedItem();
+                createVisualization(selectedChartType);
+            }
+        });
+
+        dashboardButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                if (table != null) {
+                    editDashboard();
+                }
+            }
+        });
+
+        filterButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                if (table == null) return;
+                if (filterDialog == null || !filterDialog.isDisplayable()) {
+                    filterDialog = new FilterDialog(DiverseDataVisualizationApp.this, table, categoryColumns, filter,
+                            changed -> {
+                                filter = changed;
+                                filterTimer.restart();
+                            });
+                }
+                filterDialog.setVisible(true);
+            }
+        });
+
+        followButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                if (followButton.isSelected()) {
+                    startFollowing();
+                } else {
+                    stopFollowing();
+                }
+            }
+        });
+
+        profileButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                if (charts != null) {
+                    showProfile();
+                }
+            }
+        });
+
+        diagnosticsButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                if (diagnosticsDialog == null || !diagnosticsDialog.isDisplayable()) {
+                    diagnosticsDialog = new DiagnosticsDialog(DiverseDataVisualizationApp.this, Metrics.GLOBAL, AGGREGATES);
+                }
+                diagnosticsDialog.setVisible(true);
+            }
+        });
+
+        cancelButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                if (activeTask != null) {
+                    activeTask.cancel(true);
+                }
+            }
+        });
+
+        JPanel topPanel = new JPanel();
+        topPanel.setBackground(new Color(240, 248, 255));
+        topPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+        topPanel.setLayout(new FlowLayout(FlowLayout.CENTER, 10, 10));
+
+        topPanel.add(uploadButton);
+        topPanel.add(snapshotButton);
+        topPanel.add(new JLabel("Chart Type:"));
+        topPanel.add(chartTypeComboBox);
+        topPanel.add(categoryColumnComboBox);
+        topPanel.add(numericColumnComboBox);
+        topPanel.add(aggregationComboBox);
+        topPanel.add(xAxisComboBox);
+        topPanel.add(yAxisComboBox);
+        topPanel.add(generateButton);
+        topPanel.add(dashboardButton);
+        topPanel.add(filterButton);
+        topPanel.add(followButton);
+        topPanel.add(profileButton);
+        topPanel.add(diagnosticsButton);
+        topPanel.add(filterLabel);
+        topPanel.add(progressBar);
+        topPanel.add(cancelButton);
+
+        add(topPanel, BorderLayout.NORTH);
+        add(scrollPane, BorderLayout.CENTER);
+    }
+
+    /**
+     * Parses the file on a background thread, on all cores if it is a large CSV file. The first
+     * page of rows is previewed as soon as it has been read; the full dataset is shown once the
+     * table is built.
+     */
+    private void loadData(final File file) {
+        final long fileSize = Math.max(1, file.length());
+        final RowReader parser = XlsxReader.isWorkbook(file) ? new XlsxReader() : new CsvParser();
+        final ParallelCsvLoader parallel = parser instanceof CsvParser && ParallelCsvLoader.isWorthSplitting(file)
+                ? new ParallelCsvLoader(PREVIEW_ROWS) : null;
+        final TableLoader loader = new TableLoader();
+        final List<String[]> firstPage = new ArrayList<>();
+
+        SwingWorker<TableLoader, Integer> worker = new SwingWorker<TableLoader, Integer>() {
+            private boolean previewShown;
+
+            protected TableLoader doInBackground() throws Exception {
+                if (parallel != null) {
+                    TableLoader loaded;
+                    try (Metrics.Span span = Metrics.GLOBAL.start(Metrics.Stage.LOAD)) {
+                        loaded = parallel.load(file, new ParallelCsvLoader.Listener() {
+                            public void firstRows(String[] headers, List<String[]> rows) {
+                                firstPage.addAll(rows);
+                                publish(rows.size());
+                            }
+
+                            public void progress(long rows) {
+                                publish((int) Math.min(Integer.MAX_VALUE, rows));
+                            }
+                        });
+                        span.addRows(loaded.getTable() == null ? 0 : loaded.getTable().getRowCount());
+                        span.addBytes(parallel.getBytesRead());
+                    }
+                    if (loaded.getTable() != null) {
+                        prepareCharts(loaded.getTable());
+                    }
+                    return loaded;
+                }
+                try (Metrics.Span span = Metrics.GLOBAL.start(Metrics.Stage.LOAD)) {
+                    long parsed = parser.parse(file, new CsvParser.RowHandler() {
+                        private int rows;
+
+                        public boolean handleRow(String[] values) {
+                            if (loader.getHeaders() != null) {
+                                rows++;
+                                if (rows <= PREVIEW_ROWS) {
+                                    firstPage.add(values);
+                                }
+                                if (rows == PREVIEW_ROWS || (rows & 0x3FFF) == 0) {
+                                    publish(rows);
+                                }
+                            }
+                            return !isCancelled() && loader.handleRow(values);
+                        }
+                    });
+                    span.addRows(Math.max(0, parsed - 1));
+                    span.addBytes(parser.getBytesRead());
+                    if (!isCancelled()) {
+                        loader.finish();
+                    }
+                }
+                if (loader.getTable() != null) {
+                    prepareCharts(loader.getTable());
+                }
+                return loader;
+            }
+
+            protected void process(List<Integer> chunks) {
+                int rows = chunks.get(chunks.size() - 1);
+                long bytesRead = parallel != null ? parallel.getBytesRead() : parser.getBytesRead();
+                progressBar.setValue((int) (bytesRead * 100 / fileSize));
+                progressBar.setString(String.format("%,d rows, %,d / %,d KB",
+                        rows, bytesRead / 1024, fileSize / 1024));
+                if (!previewShown && rows >= PREVIEW_ROWS) {
+                    previewShown = true;
+                    showPreview(firstPageModel(parallel != null ? parallel.getHeaders() : loader.getHeaders(), firstPage));
+                }
+            }
+
+            protected void done() {
+                finishTask();
+                TableLoader loaded;
+                try {
+                    loaded = get();
+                } catch (CancellationException ex) {
+                    restorePreview();
+                    return;
+                } catch (InterruptedException | ExecutionException ex) {
+                    restorePreview();
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    JOptionPane.showMessageDialog(null, "Error loading file: " + cause.getMessage());
+                    cause.printStackTrace();
+                    return;
+                }
+                if (showData(loaded.getHeaders(), loaded.getTable(), loaded.getSchema(), loaded.getDateParser(), null)) {
+                    boolean endedInRow = parallel != null ? parallel.endedInRow() : parser instanceof CsvParser
+                            && ((CsvParser) parser).endedInRow();
+                    // A file whose header line is not complete yet cannot be followed.
+                    if (parser instanceof CsvParser && !(endedInRow && loaded.getTable().getRowCount() == 0)) {
+                        loadedFile = file;
+                        loadedBytes = parallel != null ? parallel.getRowsEnd() : ((CsvParser) parser).getRowsEnd();
+                        loadedPartialRow = endedInRow;
+                        followButton.setEnabled(true);
+                    }
+                    JOptionPane.showMessageDialog(null, "Data loaded successfully!");
+                    generateButton.setEnabled(true);
+                }
+            }
+        };
+        startTask(worker, false);
+    }
+
+    /** Maps a saved snapshot in the background; no parsing or type inference is needed. */
+    private void openSnapshot(final File file) {
+        SwingWorker<SnapshotFile.Snapshot, Void> worker = new SwingWorker<SnapshotFile.Snapshot, Void>() {
+            protected SnapshotFile.Snapshot doInBackground() throws Exception {
+                SnapshotFile.Snapshot snapshot;
+                try (Metrics.Span span = Metrics.GLOBAL.start(Metrics.Stage.LOAD)) {
+                    snapshot = SnapshotFile.read(file);
+                    span.addRows(snapshot.table.getRowCount());
+                    span.addBytes(file.length());
+                }
+                prepareCharts(snapshot.table);
+                return snapshot;
+            }
+
+            protected void done() {
+                finishTask();
+                SnapshotFile.Snapshot snapshot;
+                try {
+                    snapshot = get();
+                } catch (CancellationException ex) {
+                    return;
+                } catch (InterruptedException | ExecutionException ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    JOptionPane.showMessageDialog(null, "Error loading file: " + cause.getMessage());
+                    cause.printStackTrace();
+                    return;
+                }
+                if (showData(snapshot.table.getHeaders(), snapshot.table, snapshot.schema, snapshot.dateParser, null)) {
+                    mappedSnapshot = file;
+                    JOptionPane.showMessageDialog(null, "Data loaded successfully!");
+                    generateButton.setEnabled(true);
+                }
+            }
+        };
+        startTask(worker, true);
+    }
+
+    /**
+     * Opens a file too large to load. Only its first rows are read, for the column types and
+     * the preview; bar, pie and line charts then aggregate the whole file in a pass each.
+     */
+    private void openOutOfCore(final File file) {
+        final ExternalAggregator source = new ExternalAggregator(file);
+        SwingWorker<ColumnTable, Void> worker = new SwingWorker<ColumnTable, Void>() {
+            protected ColumnTable doInBackground() throws Exception {
+                AGGREGATES.invalidateAll();
+                try (Metrics.Span span = Metrics.GLOBAL.start(Metrics.Stage.LOAD)) {
+                    ColumnTable sample = source.open();
+                    span.addRows(sample == null ? 0 : sample.getRowCount());
+                    span.addBytes(source.getBytesRead());
+                    return sample;
+                }
+            }
+
+            protected void done() {
+                finishTask();
+                ColumnTable sample;
+                try {
+                    sample = get();
+                } catch (CancellationException ex) {
+                    return;
+                } catch (InterruptedException | ExecutionException ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    JOptionPane.showMessageDialog(null, "Error loading file: " + cause.getMessage());
+                    cause.printStackTrace();
+                    return;
+                }
+                TableLoader loader = source.getSample();
+                if (showData(loader.getHeaders(), sample, loader.getSchema(), loader.getDateParser(), source)) {
+                    JOptionPane.showMessageDialog(null, String.format("%s is larger than %,d MB, so only its first %,d rows"
+                                    + " are loaded.%nBar, pie and line charts read the whole file when first generated.",
+                            file.getName(), ExternalAggregator.defaultThreshold() >> 20, sample.getRowCount()));
+                    generateButton.setEnabled(true);
+                }
+            }
+        };
+        startTask(worker, true);
+    }
+
+    /** Whether the file is the snapshot the current table is mapped from. */
+    private boolean isMappedSnapshot(File file) {
+        if (mappedSnapshot == null || !file.exists()) return false;
+        try {
+            return Files.isSameFile(mappedSnapshot.toPath(), file.toPath());
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    private void saveSnapshot(final File file) {
+        final ColumnTable data = table;
+        final List<SchemaInference.ColumnSchema> dataSchema = schema;
+        final DateParser parser = dateParser;
+        SwingWorker<Void, Void> worker = new SwingWorker<Void, Void>() {
+            protected Void doInBackground() throws Exception {
+                SnapshotFile.write(file, data, dataSchema, parser);
+                return null;
+            }
+
+            protected void done() {
+                finishTask();
+                try {
+                    get();
+                    JOptionPane.showMessageDialog(null, "Snapshot saved to " + file.getName());
+                } catch (CancellationException ex) {
+                    // The snapshot is only moved into place once complete; nothing to clean up.
+                } catch (InterruptedException | ExecutionException ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    JOptionPane.showMessageDialog(null, "Error saving snapshot: " + cause.getMessage());
+                    cause.printStackTrace();
+                }
+            }
+        };
+        startTask(worker, true);
+    }
+
+    /**
+     * Replaces the current dataset with a finished load, or with the first rows of a file
+     * charted out of core by the given aggregator. Runs on the EDT.
+     */
+    private boolean showData(String[] loadedHeaders, ColumnTable loaded, List<SchemaInference.ColumnSchema> loadedSchema,
+                             DateParser loadedDateParser, ExternalAggregator source) {
+        stopFollowing();
+        loadedFile = null;
+        loadedPartialRow = false;
+        mappedSnapshot = null;
+        followButton.setEnabled(false);
+        table = null;
+        charts = null;
+        headers = loadedHeaders;
+        numericColumns = new ArrayList<>();
+        categoryColumns = new ArrayList<>();
+        dateColumnIndex = null;
+
+        if (headers == null || headers.length < 2 || loaded == null || loaded.getRowCount() == 0) {
+            panel.removeAll();
+            JOptionPane.showMessageDialog(null, "Invalid data format!");
+            panel.revalidate();
+            panel.repaint();
+            return false;
+        }
+
+        table = loaded;
+        charts = source == null ? new ChartBuilder(table, AGGREGATES, true)
+                : ChartBuilder.outOfCore(source, table, AGGREGATES, true);
+        filter = RowFilter.NONE;
+        filteredRows = table.getRowCount();
+        shownChartType = null;
+        shownChart = null;
+        shownChartTask = null;
+        shownDashboard = null;
+        dashboardSpecs = null;
+        if (filterDialog != null) {
+            filterDialog.dispose();
+            filterDialog = null;
+        }
+        if (profileDialog != null) {
+            profileDialog.dispose();
+            profileDialog = null;
+        }
+        showRowCount();
+        schema = loadedSchema;
+        dateParser = loadedDateParser;
+        try (Metrics.Span span = Metrics.GLOBAL.start(Metrics.Stage.ANALYZE)) {
+            span.addRows(table.getRowCount());
+            analyzeColumns();
+
+            showPreview(new ColumnTableModel(table));
+            updateColumnSelectors();
+        }
+        return true;
+    }
+
+    /**
+     * Drops the previous dataset's aggregates and builds the spatial index, time rollups and
+     * column profile of the new one. Runs on the loading thread, so the first heatmap, time
+     * series or profile does not wait for them.
+     */
+    private static void prepareCharts(ColumnTable loaded) {
+        AGGREGATES.invalidateAll();
+        try (Metrics.Span span = Metrics.GLOBAL.start(Metrics.Stage.INDEX)) {
+            ChartBuilder charts = new ChartBuilder(loaded, AGGREGATES, true);
+            charts.indexCoordinates();
+            charts.rollUpDates();
+            charts.getProfile();
+            span.addRows(loaded.getRowCount());
+        }
+    }
+
+    private void showPreview(TableModel model) {
+        panel.removeAll();
+
+        dataTable = new JTable(model);
+        tableScrollPane = new JScrollPane(dataTable);
+        tableScrollPane.setPreferredSize(new Dimension(1150, 200));
+        tableScrollPane.setMaximumSize(new Dimension(1150, 200));
+        
+        panel.add(tableScrollPane);
+        panel.add(Box.createRigidArea(new Dimension(0, 10)));
+
+        panel.revalidate();
+        panel.repaint();
+    }
+
+    /** Puts back the preview of the current dataset after an early preview of a failed load. */
+    private void restorePreview() {
+        if (table != null) {
+            showPreview(new ColumnTableModel(table));
+        } else {
+            panel.removeAll();
+            panel.revalidate();
+            panel.repaint();
+        }
+    }
+
+    /** Table model over the first rows of a load that is still running. */
+    private static TableModel firstPageModel(String[] headers, List<String[]> rows) {
+        String[][] cells = new String[rows.size()][];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = Arrays.copyOf(rows.get(i), headers.length);
+        }
+        return new DefaultTableModel(cells, headers) {
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+    }
+
+    private void startTask(SwingWorker<?, ?> worker, boolean indeterminate) {
+        activeTask = worker;
+        uploadButton.setEnabled(false);
+        snapshotButton.setEnabled(false);
+        generateButton.setEnabled(false);
+        dashboardButton.setEnabled(false);
+        filterButton.setEnabled(false);
+        profileButton.setEnabled(false);
+        progressBar.setIndeterminate(indeterminate);
+        progressBar.setValue(0);
+        progressBar.setString(indeterminate ? "Working..." : "Starting...");
+        progressBar.setVisible(true);
+        cancelButton.setVisible(true);
+        worker.execute();
+    }
+
+    private void finishTask() {
+        activeTask = null;
+        uploadButton.setEnabled(true);
+        // A file charted out of core has only its first rows in the table.
+        snapshotButton.setEnabled(table != null && charts.getExternal() == null);
+        generateButton.setEnabled(table != null);
+        dashboardButton.setEnabled(table != null);
+        filterButton.setEnabled(table != null && charts.getExternal() == null);
+        profileButton.setEnabled(table != null);
+        progressBar.setVisible(false);
+        cancelButton.setVisible(false);
+    }
+
+    private void analyzeColumns() {
+        for (int col = 0; col < headers.length; col++) {
+            switch (schema.get(col).type) {
+                case DATE:
+                    dateColumnIndex = col;
+                    break;
+                case NUMERIC:
+                    numericColumns.add(col);
+                    break;
+                default:
+                    categoryColumns.add(col);
+                    break;
+            }
+        }
+    }
+
+    private void updateColumnSelectors() {
+        String chartType = (String) chartTypeComboBox.getSelectedItem();
+        
+        categoryColumnComboBox.removeAllItems();
+        numericColumnComboBox.removeAllItems();
+        xAxisComboBox.removeAllItems();
+        yAxisComboBox.removeAllItems();
+        
+        categoryColumnComboBox.setVisible(false);
+        numericColumnComboBox.setVisible(false);
+        xAxisComboBox.setVisible(false);
+        yAxisComboBox.setVisible(false);
+        aggregationComboBox.setVisible(false);
+
+        if (chartType.equals("Bar Chart")) {
+            categoryColumnComboBox.setVisible(true);
+            numericColumnComboBox.setVisible(true);
+            aggregationComboBox.setVisible(true);
+            for (int col : categoryColumns) {
+                categoryColumnComboBox.addItem(headers[col]);
+            }
+            for (int col : numericColumns) {
+                numericColumnComboBox.addItem(headers[col]);
+            }
+        } else if (chartType.equals("Pie Chart")) {
+            categoryColumnComboBox.setVisible(true);
+            for (int col : categoryColumns) {
+                categoryColumnComboBox.addItem(headers[col]);
+            }
+        } else if (chartType.equals("Line Chart")) {
+            categoryColumnComboBox.setVisible(true);
+            numericColumnComboBox.setVisible(true);
+            aggregationComboBox.setVisible(true);
+            for (int col : categoryColumns) {
+                categoryColumnComboBox.addItem(headers[col]);
+            }
+            for (int col : numericColumns) {
+                numericColumnComboBox.addItem(headers[col]);
+            }
+        } else if (chartType.equals("Scatter Chart")) {
+            xAxisComboBox.setVisible(true);
+            yAxisComboBox.setVisible(true);
+            for (int col : numericColumns) {
+                xAxisComboBox.addItem(headers[col]);
+                yAxisComboBox.addItem(headers[col]);
+            }
+            if (numericColumns.size() > 1) {
+                yAxisComboBox.setSelectedIndex(1);
+            }
+        } else if (chartType.equals("Heatmap")) {
+            xAxisComboBox.setVisible(true);
+            yAxisComboBox.setVisible(true);
+            numericColumnComboBox.setVisible(true);
+            numericColumnComboBox.addItem(COUNT_WEIGHT);
+            for (int col : numericColumns) {
+                xAxisComboBox.addItem(headers[col]);
+                yAxisComboBox.addItem(headers[col]);
+                numericColumnComboBox.addItem(headers[col]);
+            }
+            int longitude = SpatialGrid.findColumn(table, "Longitude", "Lon", "Lng");
+            int latitude = SpatialGrid.findColumn(table, "Latitude", "Lat");
+            if (longitude >= 0) {
+                xAxisComboBox.setSelectedItem(headers[longitude]);
+            }
+            if (latitude >= 0) {
+                yAxisComboBox.setSelectedItem(headers[latitude]);
+            } else if (numericColumns.size() > 1) {
+                yAxisComboBox.setSelectedIndex(1);
+            }
+        }
+    }
+
+    private void createVisualization(String chartType) {
+        if (headers == null || headers.length < 2 || table == null || table.getRowCount() == 0) {
+            JOptionPane.showMessageDialog(null, "No data available!");
+            return;
+        }
+
+        final Function<ChartBuilder, ChartBuilder.LiveChart> chartTask;
+        switch (chartType) {
+            case "Bar Chart":
+                chartTask = createBarChart();
+                break;
+            case "Pie Chart":
+                chartTask = createPieChart();
+                break;
+            case "Line Chart":
+                chartTask = createLineChart();
+                break;
+            case "Scatter Chart":
+                chartTask = createScatterChart();
+                break;
+            case "Heatmap":
+                chartTask = createHeatmap();
+                break;
+            default:
+                chartTask = null;
+                break;
+        }
+        if (chartTask == null) {
+            return;
+        }
+
+        // Aggregation and chart construction run off the EDT; only the finished chart comes back.
+        final ChartBuilder builder = charts;
+        final ExternalAggregator source = builder.getExternal();
+        SwingWorker<ChartBuilder.LiveChart, Void> worker = new SwingWorker<ChartBuilder.LiveChart, Void>() {
+            protected ChartBuilder.LiveChart doInBackground() {
+                try (Metrics.Span span = Metrics.GLOBAL.start(Metrics.Stage.CHART)) {
+                    span.addRows(builder.getTable().getRowCount());
+                    return chartTask.apply(builder);
+                }
+            }
+
+            protected void done() {
+                finishTask();
+                ChartBuilder.LiveChart chart;
+                try {
+                    chart = get();
+                } catch (CancellationException ex) {
+                    return;
+                } catch (InterruptedException | ExecutionException ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    if (cause instanceof IllegalStateException) {
+                        JOptionPane.showMessageDialog(null, cause.getMessage());
+                    } else {
+                        JOptionPane.showMessageDialog(null, "Error generating chart: " + cause.getMessage());
+                        cause.printStackTrace();
+                    }
+                    return;
+                }
+                shownChartType = chartType;
+                shownChartTask = chartTask;
+                shownDashboard = null;
+                showLiveChart(chart);
+                if (source != null) {
+                    showRowCount();
+                }
+            }
+        };
+        startTask(worker, source == null);
+        if (source != null) {
+            showPassProgress(worker, source);
+        }
+    }
+
+    /**
+     * Opens the column profile. A loaded table's profile was built with it; out of core the
+     * first request reads the file once, and later ones come from the aggregate cache.
+     */
+    private void showProfile() {
+        final ChartBuilder builder = charts;
+        final ExternalAggregator source = builder.getExternal();
+        SwingWorker<ColumnProfile, Void> worker = new SwingWorker<ColumnProfile, Void>() {
+            @SuppressWarnings("try")
+            protected ColumnProfile doInBackground() {
+                try (Metrics.Span span = Metrics.GLOBAL.start(Metrics.Stage.AGGREGATE)) {
+                    return builder.getProfile();
+                }
+            }
+
+            protected void done() {
+                finishTask();
+                ColumnProfile profile;
+                try {
+                    profile = get();
+                } catch (CancellationException ex) {
+                    return;
+                } catch (InterruptedException | ExecutionException ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    JOptionPane.showMessageDialog(null, "Error profiling columns: " + cause.getMessage());
+                    cause.printStackTrace();
+                    return;
+                }
+                if (source != null) {
+                    showRowCount();
+                }
+                if (profileDialog != null) {
+                    profileDialog.dispose();
+                }
+                profileDialog = new ProfileDialog(DiverseDataVisualizationApp.this, profile);
+                profileDialog.setVisible(true);
+            }
+        };
+        startTask(worker, source == null);
+        if (source != null) {
+            showPassProgress(worker, source);
+        }
+    }
+
+    /**
+     * Asks for the charts of a dashboard, one spec per line as the batch renderer takes them,
+     * and shows them.
+     */
+    private void editDashboard() {
+        JTextArea specsArea = new JTextArea(dashboardSpecs != null ? dashboardSpecs : suggestDashboard(), 8, 70);
+        JPanel content = new JPanel(new BorderLayout(0, 5));
+        content.add(new JLabel("One chart per line: bar or line:category=...,value=...,agg=sum|count|mean|min|max,"
+                + " pie:category=..., scatter:x=...,y=..., heatmap:x=...,y=...,weight=..."), BorderLayout.NORTH);
+        content.add(new JScrollPane(specsArea), BorderLayout.CENTER);
+        if (JOptionPane.showConfirmDialog(this, content, "Dashboard", JOptionPane.OK_CANCEL_OPTION,
+                JOptionPane.PLAIN_MESSAGE) != JOptionPane.OK_OPTION) {
+            return;
+        }
+        dashboardSpecs = specsArea.getText();
+        List<ChartSpec> specs = new ArrayList<>();
+        try {
+            for (String line : dashboardSpecs.split("\\R")) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                specs.add(ChartSpec.parse(line, specs.size() + 1));
+            }
+        } catch (IllegalArgumentException ex) {
+            JOptionPane.showMessageDialog(null, ex.getMessage());
+            return;
+        }
+        if (specs.isEmpty()) {
+            JOptionPane.showMessageDialog(null, "Please enter at least one chart!");
+            return;
+        }
+        showDashboard(specs);
+    }
+
+    /** A bar, line and pie chart over the first category and numeric columns, to start from. */
+    private String suggestDashboard() {
+        if (categoryColumns.isEmpty()) return "";
+        String category = headers[categoryColumns.get(0)];
+        String other = headers[categoryColumns.get(Math.min(1, categoryColumns.size() - 1))];
+        StringBuilder specs = new StringBuilder();
+        if (!numericColumns.isEmpty()) {
+            String value = headers[numericColumns.get(0)];
+            specs.append("bar:category=").append(category).append(",value=").append(value).append('\n');
+            specs.append("line:category=").append(other).append(",value=").append(value).append(",agg=count\n");
+        }
+        specs.append("pie:category=").append(other).append('\n');
+        specs.append("pie:category=").append(category).append('\n');
+        return specs.toString();
+    }
+
+    /**
+     * Shows several charts in a grid. Their aggregates are computed first, together in one
+     * scan of the rows or one pass over a file charted out of core; the charts are then built
+     * from the cache one by one, each painted as soon as it is built.
+     */
+    private void showDashboard(final List<ChartSpec> specs) {
+        final ChartBuilder builder = charts;
+        final ExternalAggregator source = builder.getExternal();
+        final DashboardPanel grid = new DashboardPanel(specs);
+        removeChart();
+        JLabel dashboardLabel = new JLabel("Dashboard");
+        dashboardLabel.setFont(new Font("Serif", Font.BOLD, 20));
+        dashboardLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
+        panel.add(dashboardLabel);
+        panel.add(Box.createRigidArea(new Dimension(0, 10)));
+        panel.add(grid);
+        panel.revalidate();
+        panel.repaint();
+        shownChartType = null;
+        shownChart = null;
+        shownChartTask = null;
+        shownDashboard = specs;
+        chartShownAt = System.currentTimeMillis();
+        chartBehind = false;
+
+        SwingWorker<Void, Tile> worker = new SwingWorker<Void, Tile>() {
+            protected Void doInBackground() {
+                builder.prefetch(ChartSpec.queries(builder, specs));
+                for (int i = 0; i < specs.size() && !isCancelled(); i++) {
+                    try (Metrics.Span span = Metrics.GLOBAL.start(Metrics.Stage.CHART)) {
+                        span.addRows(builder.getTable().getRowCount());
+                        publish(new Tile(i, specs.get(i).build(builder), null));
+                    } catch (IllegalArgumentException | IllegalStateException ex) {
+                        publish(new Tile(i, null, ex.getMessage()));
+                    } catch (RuntimeException ex) {
+                        ex.printStackTrace();
+                        publish(new Tile(i, null, "Error generating chart: " + ex.getMessage()));
+                    }
+                }
+                return null;
+            }
+
+            protected void process(List<Tile> tiles) {
+                for (Tile tile : tiles) {
+                    if (tile.chart != null) {
+                        grid.showChart(tile.index, tile.chart);
+                    } else {
+                        grid.showError(tile.index, tile.error);
+                    }
+                }
+            }
+
+            protected void done() {
+                finishTask();
+                try {
+                    get();
+                } catch (CancellationException ex) {
+                    return;
+                } catch (InterruptedException | ExecutionException ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    if (cause instanceof IllegalStateException) {
+                        JOptionPane.showMessageDialog(null, cause.getMessage());
+                    } else {
+                        JOptionPane.showMessageDialog(null, "Error generating dashboard: " + cause.getMessage());
+                        cause.printStackTrace();
+                    }
+                    return;
+                }
+                if (source != null) {
+                    showRowCount();
+                }
+            }
+        };
+        startTask(worker, source == null);
+        if (source != null) {
+            showPassProgress(worker, source);
+        }
+    }
+
+    /** Shows how far a pass over a file charted out of core has read, while the task runs. */
+    private void showPassProgress(final SwingWorker<?, ?> worker, final ExternalAggregator source) {
+        final long fileSize = Math.max(1, source.getFile().length());
+        final Timer timer = new Timer(PASS_PROGRESS_MILLIS, null);
+        timer.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                if (activeTask != worker) {
+                    timer.stop();
+                    return;
+                }
+                long bytesRead = source.getBytesRead();
+                progressBar.setValue((int) (bytesRead * 100 / fileSize));
+                progressBar.setString(String.format("Reading file: %,d / %,d MB", bytesRead >> 20, fileSize >> 20));
+            }
+        });
+        timer.start();
+    }
+
+    /**
+     * Evaluates the current filter against the bitmap indexes in the background, then redraws
+     * the chart or dashboard on display, if any. Waits while another task is running.
+     */
+    private void applyFilter() {
+        if (activeTask != null) {
+            filterTimer.restart();
+            return;
+        }
+        final ChartBuilder filtered = charts.withFilter(filter);
+        SwingWorker<Integer, Void> worker = new SwingWorker<Integer, Void>() {
+            protected Integer doInBackground() {
+                return filtered.countRows();
+            }
+
+            protected void done() {
+                finishTask();
+                int rows;
+                try {
+                    rows = get();
+                } catch (CancellationException ex) {
+                    return;
+                } catch (InterruptedException | ExecutionException ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    JOptionPane.showMessageDialog(null, "Error applying filter: " + cause.getMessage());
+                    cause.printStackTrace();
+                    return;
+                }
+                charts = filtered;
+                filteredRows = rows;
+                showRowCount();
+                if (shownChartType != null) {
+                    createVisualization(shownChartType);
+                } else if (shownDashboard != null) {
+                    showDashboard(shownDashboard);
+                }
+            }
+        };
+        startTask(worker, true);
+    }
+
+    /**
+     * "N rows", or "M of N rows" when the charts are filtered. Out of core, the number of
+     * rows is known once a chart has read the whole file.
+     */
+    private void showRowCount() {
+        ExternalAggregator source = charts.getExternal();
+        if (source != null) {
+            filterLabel.setText(source.getRowCount() < 0
+                    ? String.format("First %,d rows, out of core", table.getRowCount())
+                    : String.format("%,d rows, out of core", source.getRowCount()));
+            return;
+        }
+        filterLabel.setText(charts.getFilter().isEmpty()
+                ? String.format("%,d rows", table.getRowCount())
+                : String.format("%,d of %,d rows", filteredRows, table.getRowCount()));
+    }
+
+    /**
+     * Follows the loaded CSV file. Appended rows are parsed and added to a copy of the table
+     * on the follower's thread; the window picks up the grown table on a timer.
+     */
+    private void startFollowing() {
+        final ColumnTable base = table;
+        final DateParser parser = dateParser;
+        // The first row read completes a partial last row, which is left out of the copy.
+        final int keptRows = loadedPartialRow ? base.getRowCount() - 1 : base.getRowCount();
+        final AtomicReference<Appended> latest = new AtomicReference<>();
+        final FeedFollower started = new FeedFollower(loadedFile, loadedBytes, new FeedFollower.Listener() {
+            private ColumnTable.Builder builder;
+
+            public void rowsAppended(List<String[]> rows, long offset) {
+                if (builder == null) {
+                    builder = new ColumnTable.Builder(base, keptRows, parser == null ? null : parser::parseEpochDay);
+                }
+                for (String[] row : rows) {
+                    builder.addRow(row);
+                }
+                builder.reportRejected(Metrics.GLOBAL);
+                latest.set(new Appended(builder.snapshot(), offset));
+            }
+
+            public void followFailed(final IOException error) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        if (follower != null && appended == latest) {
+                            stopFollowing();
+                            JOptionPane.showMessageDialog(null, "Stopped following file: " + error.getMessage());
+                        }
+                    }
+                });
+            }
+        });
+        appended = latest;
+        follower = started;
+        follower.start();
+        followTimer.start();
+        followButton.setSelected(true);
+    }
+
+    /** Rows read but not shown yet are dropped; following again reads them again. */
+    private void stopFollowing() {
+        if (follower == null) return;
+        follower.stop();
+        follower = null;
+        appended = null;
+        followTimer.stop();
+        followButton.setSelected(false);
+    }
+
+    /**
+     * Switches to the table grown by the followed file and brings the chart up to date:
+     * bar, pie and line charts add only the new rows to their aggregates, other charts and
+     * dashboards are rebuilt every {@link #FOLLOW_REBUILD_MILLIS}. Skipped while a task or the
+     * previous update is running; the rows are then shown on a later tick. When the first
+     * rows replace a partial last row, the charts are rebuilt straight away.
+     */
+    private void showAppendedRows() {
+        if (activeTask != null || liveUpdate != null || appended == null) return;
+        final Appended grown = appended.getAndSet(null);
+        final boolean replacing = grown != null && loadedPartialRow;
+        final ChartBuilder.LiveChart live = shownChart;
+        final boolean rebuild = live != null && (replacing || !live.isUpdatable() && (grown != null || chartBehind)
+                && System.currentTimeMillis() - chartShownAt >= FOLLOW_REBUILD_MILLIS);
+        final List<ChartSpec> dashboard = shownDashboard;
+        final boolean redraw = dashboard != null && (replacing || (grown != null || chartBehind)
+                && System.currentTimeMillis() - chartShownAt >= FOLLOW_REBUILD_MILLIS);
+        if (grown == null && !rebuild && !redraw) return;
+
+        final ColumnTable previous = table;
+        final int fromRow = replacing ? table.getRowCount() - 1 : table.getRowCount();
+        if (grown != null) {
+            table = grown.table;
+            loadedBytes = grown.offset;
+            loadedPartialRow = false;
+            charts = charts.withTable(table);
+            if (dataTable != null && dataTable.getModel() instanceof ColumnTableModel) {
+                ((ColumnTableModel) dataTable.getModel()).setTable(table);
+            }
+            chartBehind = live != null || dashboard != null;
+        }
+        final int toRow = table.getRowCount();
+        final ChartBuilder builder = charts;
+        final Function<ChartBuilder, ChartBuilder.LiveChart> chartTask = shownChartTask;
+        SwingWorker<Runnable, Void> worker = new SwingWorker<Runnable, Void>() {
+            private int matched;
+
+            protected Runnable doInBackground() {
+                try (Metrics.Span span = Metrics.GLOBAL.start(Metrics.Stage.UPDATE)) {
+                    span.addRows(toRow - fromRow);
+                    RowBitmap added = builder.getFilter().select(builder.getTable(), fromRow, toRow);
+                    matched = added == null ? toRow - fromRow : added.cardinality();
+                    if (replacing) {
+                        RowBitmap replaced = builder.getFilter().select(previous, fromRow, fromRow + 1);
+                        matched -= replaced == null ? 1 : replaced.cardinality();
+                    }
+                    if (live == null) {
+                        return null;
+                    }
+                    if (live.isUpdatable() && !replacing) {
+                        return live.update(builder);
+                    }
+                    if (!rebuild) {
+                        return null;
+                    }
+                    final ChartBuilder.LiveChart rebuilt = chartTask.apply(builder);
+                    return () -> showLiveChart(rebuilt);
+                }
+            }
+
+            protected void done() {
+                liveUpdate = null;
+                Runnable update;
+                try {
+                    update = get();
+                } catch (CancellationException ex) {
+                    return;
+                } catch (InterruptedException | ExecutionException ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    stopFollowing();
+                    JOptionPane.showMessageDialog(null, "Error updating chart: " + cause.getMessage());
+                    cause.printStackTrace();
+                    return;
+                }
+                if (charts == builder) {
+                    // Otherwise a new filter was applied, and its count covers these rows.
+                    filteredRows += matched;
+                    showRowCount();
+                }
+                // A chart generated meanwhile already covers the new rows.
+                if (update != null && live == shownChart) {
+                    update.run();
+                    chartBehind = false;
+                }
+                if (redraw && dashboard == shownDashboard && activeTask == null) {
+                    showDashboard(dashboard);
+                }
+            }
+        };
+        liveUpdate = worker;
+        worker.execute();
+    }
+
+    private void showLiveChart(ChartBuilder.LiveChart chart) {
+        shownChart = chart;
+        chartShownAt = System.currentTimeMillis();
+        chartBehind = false;
+        showChart(chart.chart);
+    }
+
+    private void showChart(JFreeChart chart) {
+        removeChart();
+
+        JLabel visualizationLabel = new JLabel("Data Visualization");
+        visualizationLabel.setFont(new Font("Serif", Font.BOLD, 20));
+        visualizationLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
+        panel.add(visualizationLabel);
+        panel.add(Box.createRigidArea(new Dimension(0, 10)));
+
+        ChartPanel chartPanel = new ChartPanel(chart) {
+            @SuppressWarnings("try")
+            public void paintComponent(Graphics g) {
+                try (Metrics.Span span = Metrics.GLOBAL.start(Metrics.Stage.PAINT)) {
+                    super.paintComponent(g);
+                }
+            }
+        };
+        chartPanel.setPreferredSize(new Dimension(1150, 400));
+        chartPanel.setMaximumSize(new Dimension(1150, 400));
+        chartPanel.setAlignmentX(Component.CENTER_ALIGNMENT);
+        panel.add(chartPanel);
+
+        panel.revalidate();
+        panel.repaint();
+    }
+
+    /** Removes the chart or dashboard on display, and its heading. */
+    private void removeChart() {
+        Component[] components = panel.getComponents();
+        for (int i = components.length - 1; i >= 0; i--) {
+            if (components[i] instanceof ChartPanel || components[i] instanceof JLabel
+                    || components[i] instanceof DashboardPanel) {
+                panel.remove(components[i]);
+            }
+        }
+    }
+
+    private Function<ChartBuilder, ChartBuilder.LiveChart> createBarChart() {
+        final String categoryCol = (String) categoryColumnComboBox.getSelectedItem();
+        final String numericCol = (String) numericColumnComboBox.getSelectedItem();
+        
+        if (categoryCol == null || numericCol == null) {
+            JOptionPane.showMessageDialog(null, "Please select valid columns!");
+            return null;
+        }
+
+        final int catIndex = getColumnIndex(categoryCol);
+        final int numIndex = getColumnIndex(numericCol);
+        final GroupByAggregator.Aggregation aggregation = (GroupByAggregator.Aggregation) aggregationComboBox.getSelectedItem();
+
+        return builder -> builder.liveBarChart(catIndex, numIndex, aggregation);
+    }
+
+    private Function<ChartBuilder, ChartBuilder.LiveChart> createPieChart() {
+        final String categoryCol = (String) categoryColumnComboBox.getSelectedItem();
+        
+        if (categoryCol == null) {
+            JOptionPane.showMessageDialog(null, "Please select a category column!");
+            return null;
+        }
+
+        final int catIndex = getColumnIndex(categoryCol);
+
+        return builder -> builder.livePieChart(catIndex);
+    }
+
+    private Function<ChartBuilder, ChartBuilder.LiveChart> createLineChart() {
+        final String categoryCol = (String) categoryColumnComboBox.getSelectedItem();
+        final String numericCol = (String) numericColumnComboBox.getSelectedItem();
+        
+        if (categoryCol == null || numericCol == null) {
+            JOptionPane.showMessageDialog(null, "Please select valid columns!");
+            return null;
+        }
+
+        final int catIndex = getColumnIndex(categoryCol);
+        final int numIndex = getColumnIndex(numericCol);
+        final GroupByAggregator.Aggregation aggregation = (GroupByAggregator.Aggregation) aggregationComboBox.getSelectedItem();
+
+        return builder -> builder.liveLineChart(catIndex, numIndex, aggregation);
+    }
+
+    private Function<ChartBuilder, ChartBuilder.LiveChart> createScatterChart() {
+        final String xCol = (String) xAxisComboBox.getSelectedItem();
+        final String yCol = (String) yAxisComboBox.getSelectedItem();
+        
+        if (xCol == null || yCol == null) {
+            JOptionPane.showMessageDialog(null, "Please select valid columns!");
+            return null;
+        }
+
+        final int xIndex = getColumnIndex(xCol);
+        final int yIndex = getColumnIndex(yCol);
+
+        return builder -> new ChartBuilder.LiveChart(builder.createScatterChart(xIndex, yIndex), null);
+    }
+
+    private Function<ChartBuilder, ChartBuilder.LiveChart> createHeatmap() {
+        final String xCol = (String) xAxisComboBox.getSelectedItem();
+        final String yCol = (String) yAxisComboBox.getSelectedItem();
+        final String weightCol = (String) numericColumnComboBox.getSelectedItem();
+
+        if (xCol == null || yCol == null) {
+            JOptionPane.showMessageDialog(null, "Please select valid columns!");
+            return null;
+        }
+
+        final int xIndex = getColumnIndex(xCol);
+        final int yIndex = getColumnIndex(yCol);
+        final int weightIndex = weightCol == null || weightCol.equals(COUNT_WEIGHT) ? -1 : getColumnIndex(weightCol);
+
+        return builder -> new ChartBuilder.LiveChart(builder.createHeatmap(xIndex, yIndex, weightIndex), null);
+    }
+
+    private int getColumnIndex(String columnName) {
+        for (int i = 0; i < headers.length; i++) {
+            if (headers[i].equals(columnName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public static void main(String[] args) {
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                new DiverseDataVisualizationApp().setVisible(true);
+            }
+        });
+    }
+}
\ No newline at end of file
@@ -0,0 +1,168 @@
+package accidentviz;
+
+import java.util.Arrays;
+
+/**
+ * Level-of-detail reduction applied before data reaches JFreeChart, whose renderers slow
+ * down badly beyond a few tens of thousands of items. Line series are thinned with
+ * Largest-Triangle-Three-Buckets, which keeps the visual peaks and troughs; scatter data is
+ * density-binned once a view holds more points than can usefully be drawn.
+ */
+class Downsampling {
+
+    /** Scatter views with at most this many points are drawn at full resolution. */
+    static final int SCATTER_RAW_LIMIT = 20_000;
+    static final int SCATTER_BINS_X = 400;
+    static final int SCATTER_BINS_Y = 200;
+    /** Maximum points per line series handed to the chart. */
+    static final int LINE_THRESHOLD = 2_000;
+
+    /** Plot coordinates of the points to draw. */
+    static final class Points implements AggregateCache.Sized {
+        final double[] x;
+        final double[] y;
+        final int size;
+
+        Points(double[] x, double[] y, int size) {
+            this.x = x;
+            this.y = y;
+            this.size = size;
+        }
+
+        public long estimatedBytes() {
+            return 64 + 8L * (x.length + y.length);
+        }
+    }
+
+    /**
+     * Returns the indices in [from, to) chosen by LTTB, in ascending order. The x values must
+     * be sorted. Ranges that already fit the threshold are returned whole.
+     */
+    static int[] largestTriangleThreeBuckets(double[] x, double[] y, int from, int to, int threshold) {
+        int length = to - from;
+        if (length <= threshold || threshold < 3) {
+            int[] all = new int[Math.max(0, length)];
+            for (int i = 0; i < all.length; i++) all[i] = from + i;
+            return all;
+        }
+
+        int[] sampled = new int[threshold];
+        int count = 0;
+        double every = (double) (length - 2) / (threshold - 2);
+        int a = from;
+        sampled[count++] = a;
+
+        for (int i = 0; i < threshold - 2; i++) {
+            int averageStart = from + (int) Math.floor((i + 1) * every) + 1;
+            int averageEnd = Math.min(from + (int) Math.floor((i + 2) * every) + 1, to);
+            double averageX = 0;
+            double averageY = 0;
+            for (int j = averageStart; j < averageEnd; j++) {
+                averageX += x[j];
+                averageY += y[j];
+            }
+            int averageLength = Math.max(1, averageEnd - averageStart);
+            averageX /= averageLength;
+            averageY /= averageLength;
+
+            int rangeStart = from + (int) Math.floor(i * every) + 1;
+            int rangeEnd = from + (int) Math.floor((i + 1) * every) + 1;
+            double maxArea = -1;
+            int next = rangeStart;
+            for (int j = rangeStart; j < rangeEnd; j++) {
+                double area = Math.abs((x[a] - averageX) * (y[j] - y[a]) - (x[a] - x[j]) * (averageY - y[a]));
+                if (area > maxArea) {
+                    maxArea = area;
+                    next = j;
+                }
+            }
+            sampled[count++] = next;
+            a = next;
+        }
+        sampled[count++] = to - 1;
+        return sampled;
+    }
+
+    /**
+     * Collects the points inside the given bounds. If there are more than
+     * {@link #SCATTER_RAW_LIMIT}, the view is divided into a grid and each occupied cell is
+     * drawn once, at the mean position of its points. Infinite bounds mean the data extent.
+     */
+    static Points densityBin(ColumnTable.NumericColumn xs, ColumnTable.NumericColumn ys, int rows,
+                             double xLow, double xHigh, double yLow, double yHigh) {
+        return densityBin(xs, ys, rows, null, xLow, xHigh, yLow, yHigh);
+    }
+
+    /** As above, over only the selected rows; a null selection means every row. */
+    static Points densityBin(ColumnTable.NumericColumn xs, ColumnTable.NumericColumn ys, int rows, RowBitmap selection,
+                             double xLow, double xHigh, double yLow, double yHigh) {
+        int[] batch = new int[RowBitmap.BATCH_SIZE];
+        if (Double.isInfinite(xLow) || Double.isInfinite(xHigh) || Double.isInfinite(yLow) || Double.isInfinite(yHigh)) {
+            double[] bounds = {Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+            RowBitmap.Cursor cursor = RowBitmap.rows(selection, 0, rows);
+            for (int n = cursor.fill(batch); n > 0; n = cursor.fill(batch)) {
+                for (int i = 0; i < n; i++) {
+                    double x = xs.getDouble(batch[i]);
+                    double y = ys.getDouble(batch[i]);
+                    if (Double.isNaN(x) || Double.isNaN(y)) continue;
+                    bounds[0] = Math.min(bounds[0], x);
+                    bounds[1] = Math.max(bounds[1], x);
+                    bounds[2] = Math.min(bounds[2], y);
+                    bounds[3] = Math.max(bounds[3], y);
+                }
+            }
+            xLow = Math.max(xLow, bounds[0]);
+            xHigh = Math.min(xHigh, bounds[1]);
+            yLow = Math.max(yLow, bounds[2]);
+            yHigh = Math.min(yHigh, bounds[3]);
+        }
+
+        double[] rawX = new double[Math.min(rows, 1024)];
+        double[] rawY = new double[rawX.length];
+        int rawCount = 0;
+        int cells = SCATTER_BINS_X * SCATTER_BINS_Y;
+        double[] sumX = new double[cells];
+        double[] sumY = new double[cells];
+        int[] counts = new int[cells];
+        double cellWidth = Math.max(xHigh - xLow, Double.MIN_NORMAL) / SCATTER_BINS_X;
+        double cellHeight = Math.max(yHigh - yLow, Double.MIN_NORMAL) / SCATTER_BINS_Y;
+
+        RowBitmap.Cursor cursor = RowBitmap.rows(selection, 0, rows);
+        for (int n = cursor.fill(batch); n > 0; n = cursor.fill(batch)) {
+            for (int i = 0; i < n; i++) {
+                double x = xs.getDouble(batch[i]);
+                double y = ys.getDouble(batch[i]);
+                if (!(x >= xLow && x <= xHigh && y >= yLow && y <= yHigh)) continue;
+                if (rawCount <= SCATTER_RAW_LIMIT) {
+                    if (rawCount == rawX.length) {
+                        rawX = Arrays.copyOf(rawX, rawCount * 2);
+                        rawY = Arrays.copyOf(rawY, rawCount * 2);
+                    }
+                    rawX[rawCount] = x;
+                    rawY[rawCount] = y;
+                }
+                rawCount++;
+                int cellX = Math.min(SCATTER_BINS_X - 1, (int) ((x - xLow) / cellWidth));
+                int cellY = Math.min(SCATTER_BINS_Y - 1, (int) ((y - yLow) / cellHeight));
+                int cell = cellY * SCATTER_BINS_X + cellX;
+                sumX[cell] += x;
+                sumY[cell] += y;
+                counts[cell]++;
+            }
+        }
+
+        if (rawCount <= SCATTER_RAW_LIMIT) {
+            return new Points(Arrays.copyOf(rawX, rawCount), Arrays.copyOf(rawY, rawCount), rawCount);
+        }
+        double[] binX = new double[cells];
+        double[] binY = new double[cells];
+        int size = 0;
+        for (int cell = 0; cell < cells; cell++) {
+            if (counts[cell] == 0) continue;
+            binX[size] = sumX[cell] / counts[cell];
+            binY[size] = sumY[cell] / counts[cell];
+            size++;
+        }
+        return new Points(Arrays.copyOf(binX, size), Arrays.copyOf(binY, size), size);
+    }
+}
@@ -0,0 +1,530 @@
+package accidentviz;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Aggregates a file too large to load, for bar, pie and line charts and the column profile.
+ * Only the first rows are kept, to settle the column types and show a preview. Each
+ * {@link #aggregate} call is then one pass over the file: rows are parsed into a
+ * {@link ColumnTable} batch holding just the needed columns, the batch is aggregated with
+ * {@link GroupByAggregator}, {@link TimeRollup} or {@link ColumnProfile} as a loaded table
+ * would be, and the totals are merged. Category codes stay the same from batch to batch
+ * until a column has more than {@link #MAX_KEYS_IN_MEMORY} values; its group-by totals are
+ * then written to hash partitions in a temp directory and its dictionary starts over. The
+ * partitions are merged one at a time at the end, so memory depends on the batch size and
+ * the number of values, never on the size of the file.
+ */
+class ExternalAggregator {
+
+    /** System property overriding {@link #defaultThreshold()}, in bytes. */
+    static final String THRESHOLD_PROPERTY = "accidentviz.outOfCoreBytes";
+    static final int BATCH_ROWS = 1 << 18;
+    static final int MAX_KEYS_IN_MEMORY = 1 << 18;
+    /** A group-by that spilled keeps this many of its most frequent categories. */
+    static final int MAX_SPILLED_CATEGORIES = 1000;
+    private static final int PARTITIONS = 256;
+    private static final int SAMPLE_ROWS = 1000;
+
+    /**
+     * One aggregate a pass can compute, or a {@link FusedAggregator} scan of a loaded table;
+     * the kind and columns match the chart cache keys.
+     */
+    static final class Query {
+        final String kind;
+        final int[] columns;
+
+        private Query(String kind, int... columns) {
+            this.kind = kind;
+            this.columns = columns;
+        }
+
+        /** Count, sum, min and max of a numeric column per category. */
+        static Query groupBy(int catIndex, int numIndex) {
+            return new Query("groupBy", catIndex, numIndex);
+        }
+
+        /** Rows per category. */
+        static Query count(int catIndex) {
+            return new Query("count", catIndex);
+        }
+
+        /** A {@link TimeRollup} of a category column. */
+        static Query rollup(int dateIndex, int catIndex) {
+            return new Query("rollup", dateIndex, catIndex);
+        }
+
+        /** A {@link ColumnProfile} of every column. */
+        static Query profile() {
+            return new Query("profile");
+        }
+
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Query)) return false;
+            Query other = (Query) o;
+            return kind.equals(other.kind) && Arrays.equals(columns, other.columns);
+        }
+
+        public int hashCode() {
+            return 31 * kind.hashCode() + Arrays.hashCode(columns);
+        }
+
+        public String toString() {
+            return kind + Arrays.toString(columns);
+        }
+    }
+
+    private final File file;
+    private final int batchRows;
+    private final int maxKeysInMemory;
+    private TableLoader sample;
+    private volatile RowReader reader;
+    private volatile long rowCount = -1;
+
+    ExternalAggregator(File file) {
+        this(file, BATCH_ROWS, MAX_KEYS_IN_MEMORY);
+    }
+
+    ExternalAggregator(File file, int batchRows, int maxKeysInMemory) {
+        this.file = file;
+        this.batchRows = batchRows;
+        this.maxKeysInMemory = maxKeysInMemory;
+    }
+
+    /** Files bigger than this are aggregated out of core: half the maximum heap by default. */
+    static long defaultThreshold() {
+        return Long.getLong(THRESHOLD_PROPERTY, Runtime.getRuntime().maxMemory() / 2);
+    }
+
+    static boolean isOutOfCore(File file) {
+        return file.length() > defaultThreshold();
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Reads the first rows, until the column types are settled and a preview's worth has
+     * been seen, and returns them as a table. Returns null for an empty file.
+     */
+    ColumnTable open() throws IOException {
+        final TableLoader loader = new TableLoader();
+        reader = newReader();
+        reader.parse(file, new CsvParser.RowHandler() {
+            private int rows;
+
+            public boolean handleRow(String[] fields) {
+                loader.handleRow(fields);
+                return rows++ < SAMPLE_ROWS || !loader.hasSchema();
+            }
+        });
+        sample = loader;
+        return loader.finish();
+    }
+
+    /** The first rows read by {@link #open()}. */
+    TableLoader getSample() {
+        return sample;
+    }
+
+    /** Bytes read by the pass running now, or by the last one. */
+    long getBytesRead() {
+        RowReader current = reader;
+        return current == null ? 0 : current.getBytesRead();
+    }
+
+    /** Data rows in the file, or -1 until a pass has read it all. */
+    long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Computes the queries in one pass over the file. Group-by results list categories in
+     * order of first appearance, as for a loaded table; one that spilled keeps only the
+     * {@link #MAX_SPILLED_CATEGORIES} categories with the most rows. An interrupted pass
+     * throws {@link InterruptedIOException}.
+     *
+     * @throws IllegalStateException if a line chart is asked for a category column with more
+     *                               than {@link #MAX_KEYS_IN_MEMORY} values
+     */
+    Map<Query, AggregateCache.Sized> aggregate(List<Query> queries) throws IOException {
+        String[] headers = sample.getHeaders();
+        List<SchemaInference.ColumnSchema> schema = sample.getSchema();
+        ColumnTable.ColumnType[] types = new ColumnTable.ColumnType[headers.length];
+        final boolean[] needed = new boolean[headers.length];
+        for (int col = 0; col < headers.length; col++) {
+            types[col] = schema.get(col).type;
+        }
+        for (Query query : queries) {
+            for (int col : query.columns) {
+                if (col >= 0) needed[col] = true;
+            }
+            if (query.kind.equals("rollup")) {
+                // A rollup covers every numeric column.
+                for (int col = 0; col < headers.length; col++) {
+                    needed[col] |= types[col] == ColumnTable.ColumnType.NUMERIC;
+                }
+            } else if (query.kind.equals("profile")) {
+                Arrays.fill(needed, true);
+            }
+        }
+        DateParser dateParser = sample.getDateParser();
+        final ColumnTable.Builder builder = new ColumnTable.Builder(headers, types,
+                dateParser == null ? null : dateParser::parseEpochDay);
+        final Pass pass = new Pass(queries, builder);
+        final long[] rows = new long[1];
+        try {
+            reader = newReader();
+            reader.parse(file, new CsvParser.RowHandler() {
+                private boolean header = true;
+
+                public boolean handleRow(String[] fields) {
+                    if (header) {
+                        header = false;
+                        return true;
+                    }
+                    for (int col = 0; col < fields.length && col < needed.length; col++) {
+                        if (!needed[col]) fields[col] = null;
+                    }
+                    builder.addRow(fields);
+                    rows[0]++;
+                    if (builder.getRowCount() == batchRows) {
+                        try {
+                            pass.aggregateBatch();
+                        } catch (IOException ex) {
+                            throw new SpillFailed(ex);
+                        }
+                    }
+                    return !Thread.currentThread().isInterrupted();
+                }
+            });
+            if (Thread.interrupted()) {
+                throw new InterruptedIOException("Aggregation cancelled");
+            }
+            pass.aggregateBatch();
+            Map<Query, AggregateCache.Sized> results = pass.finish();
+            rowCount = rows[0];
+            return results;
+        } catch (SpillFailed ex) {
+            throw ex.getCause();
+        } finally {
+            pass.deleteSpills();
+        }
+    }
+
+    private RowReader newReader() {
+        return XlsxReader.isWorkbook(file) ? new XlsxReader() : new CsvParser();
+    }
+
+    /** Carries a spill failure out of a row handler, which cannot throw IOException. */
+    private static final class SpillFailed extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        SpillFailed(IOException cause) {
+            super(cause);
+        }
+
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+
+    /** The running totals of one pass. */
+    private final class Pass {
+        private final ColumnTable.Builder builder;
+        private final List<Grouping> groupings = new ArrayList<>();
+        private final List<Rollup> rollups = new ArrayList<>();
+        private Query profileQuery;
+        private ColumnProfile profile;
+        /** How many times each category column's dictionary has started over. */
+        private final int[] epochs;
+        private Path spillDir;
+
+        Pass(List<Query> queries, ColumnTable.Builder builder) {
+            this.builder = builder;
+            this.epochs = new int[sample.getHeaders().length];
+            for (Query query : queries) {
+                if (query.kind.equals("rollup")) {
+                    rollups.add(new Rollup(query));
+                } else if (query.kind.equals("profile")) {
+                    profileQuery = query;
+                } else {
+                    groupings.add(new Grouping(query));
+                }
+            }
+        }
+
+        void aggregateBatch() throws IOException {
+            ColumnTable batch = builder.flush();
+            for (Grouping grouping : groupings) {
+                grouping.add(batch);
+            }
+            for (Rollup rollup : rollups) {
+                rollup.add(batch);
+            }
+            if (profileQuery != null) {
+                // Sketches keep the values of columns whose dictionaries start over below.
+                ColumnProfile batchProfile = ColumnProfile.of(batch);
+                if (profile == null) {
+                    profile = batchProfile;
+                } else {
+                    profile.merge(batchProfile);
+                }
+            }
+            for (int col = 0; col < epochs.length; col++) {
+                if (batch.getColumn(col).getType() != ColumnTable.ColumnType.CATEGORY
+                        || builder.getCardinality(col) <= maxKeysInMemory) continue;
+                for (Rollup rollup : rollups) {
+                    if (rollup.catIndex == col) {
+                        throw new IllegalStateException(batch.getHeaders()[col] + " has too many values to chart over time");
+                    }
+                }
+                for (Grouping grouping : groupings) {
+                    if (grouping.catIndex == col) {
+                        grouping.spill(epochs[col]);
+                    }
+                }
+                builder.forgetValues(col);
+                epochs[col]++;
+            }
+        }
+
+        Map<Query, AggregateCache.Sized> finish() throws IOException {
+            Map<Query, AggregateCache.Sized> results = new LinkedHashMap<>();
+            for (Grouping grouping : groupings) {
+                results.put(grouping.query, grouping.finish(epochs[grouping.catIndex]));
+            }
+            for (Rollup rollup : rollups) {
+                results.put(rollup.query, rollup.finish());
+            }
+            if (profileQuery != null) {
+                results.put(profileQuery, profile);
+            }
+            return results;
+        }
+
+        Path spillDir() throws IOException {
+            if (spillDir == null) {
+                spillDir = Files.createTempDirectory("accidentviz-spill");
+            }
+            return spillDir;
+        }
+
+        void deleteSpills() {
+            for (Grouping grouping : groupings) {
+                grouping.closeQuietly();
+            }
+            if (spillDir == null) return;
+            File[] files = spillDir.toFile().listFiles();
+            if (files != null) {
+                for (File spilled : files) {
+                    spilled.delete();
+                }
+            }
+            spillDir.toFile().delete();
+        }
+
+        /** A group-by whose totals are spilled to partition files once it has too many keys. */
+        private final class Grouping {
+            final Query query;
+            final int catIndex;
+            final int numIndex;
+            private GroupByAggregator.Result running;
+            private DataOutputStream[] partitions;
+            private File[] partitionFiles;
+
+            Grouping(Query query) {
+                this.query = query;
+                this.catIndex = query.columns[0];
+                this.numIndex = query.columns.length > 1 ? query.columns[1] : -1;
+            }
+
+            void add(ColumnTable batch) {
+                GroupByAggregator.Result result = GroupByAggregator.aggregate(batch.getCategoryColumn(catIndex),
+                        numIndex < 0 ? null : batch.getNumericColumn(numIndex));
+                // Later batches know every earlier category, so the new result can take the old one.
+                if (running != null) {
+                    result.merge(running);
+                }
+                running = result;
+            }
+
+            /**
+             * Appends the categories with rows to their partitions, with the position of their
+             * first row as epoch and code, and drops them from memory.
+             */
+            void spill(int epoch) throws IOException {
+                if (partitions == null) {
+                    partitions = new DataOutputStream[PARTITIONS];
+                    partitionFiles = new File[PARTITIONS];
+                    Path dir = spillDir();
+                    for (int p = 0; p < PARTITIONS; p++) {
+                        partitionFiles[p] = Files.createTempFile(dir, query.kind + "-" + catIndex + "-", ".bin").toFile();
+                        partitions[p] = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(partitionFiles[p].toPath())));
+                    }
+                }
+                for (int code = 0; code < running.size(); code++) {
+                    if (running.counts[code] == 0) continue;
+                    String key = running.keys[code];
+                    DataOutputStream out = partitions[(key.hashCode() & 0x7FFFFFFF) % PARTITIONS];
+                    byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                    out.writeLong(((long) epoch << 32) | code);
+                    out.writeLong(running.counts[code]);
+                    out.writeDouble(running.sums[code]);
+                    out.writeDouble(running.mins[code]);
+                    out.writeDouble(running.maxs[code]);
+                }
+                running = null;
+            }
+
+            GroupByAggregator.Result finish(int epoch) throws IOException {
+                if (partitions == null) {
+                    return running;
+                }
+                if (running != null) {
+                    spill(epoch);
+                }
+                for (DataOutputStream out : partitions) {
+                    out.close();
+                }
+                // The most frequent categories, least frequent on top so it is dropped first.
+                PriorityQueue<Spilled> top = new PriorityQueue<>(Comparator.comparingLong((Spilled s) -> s.count)
+                        .thenComparing(Comparator.comparingLong((Spilled s) -> s.firstSeen).reversed()));
+                for (File partitionFile : partitionFiles) {
+                    for (Spilled spilled : readPartition(partitionFile)) {
+                        top.add(spilled);
+                        if (top.size() > MAX_SPILLED_CATEGORIES) {
+                            top.poll();
+                        }
+                    }
+                    partitionFile.delete();
+                }
+                Spilled[] kept = top.toArray(new Spilled[0]);
+                Arrays.sort(kept, Comparator.comparingLong((Spilled s) -> s.firstSeen));
+                String[] keys = new String[kept.length];
+                for (int i = 0; i < kept.length; i++) {
+                    keys[i] = kept[i].key;
+                }
+                GroupByAggregator.Result result = new GroupByAggregator.Result(keys);
+                for (int i = 0; i < kept.length; i++) {
+                    result.counts[i] = kept[i].count;
+                    result.sums[i] = kept[i].sum;
+                    result.mins[i] = kept[i].min;
+                    result.maxs[i] = kept[i].max;
+                }
+                return result;
+            }
+
+            void closeQuietly() {
+                if (partitions == null) return;
+                for (DataOutputStream out : partitions) {
+                    try {
+                        out.close();
+                    } catch (IOException ignored) {
+                        // The file is deleted next.
+                    }
+                }
+            }
+        }
+
+        /** A time rollup, merged batch by batch in a binary counter so each merge is of similar sizes. */
+        private final class Rollup {
+            final Query query;
+            final int dateIndex;
+            final int catIndex;
+            private final List<TimeRollup> merged = new ArrayList<>();
+            private final List<Integer> batches = new ArrayList<>();
+
+            Rollup(Query query) {
+                this.query = query;
+                this.dateIndex = query.columns[0];
+                this.catIndex = query.columns[1];
+            }
+
+            void add(ColumnTable batch) {
+                merged.add(TimeRollup.build(batch, dateIndex, catIndex, 0, batch.getRowCount(), null));
+                batches.add(1);
+                int last = merged.size() - 1;
+                while (last > 0 && batches.get(last - 1).equals(batches.get(last))) {
+                    merged.set(last - 1, TimeRollup.merge(merged.get(last - 1), merged.remove(last)));
+                    batches.set(last - 1, batches.get(last - 1) + batches.remove(last));
+                    last--;
+                }
+            }
+
+            TimeRollup finish() {
+                TimeRollup total = merged.get(merged.size() - 1);
+                for (int i = merged.size() - 2; i >= 0; i--) {
+                    total = TimeRollup.merge(merged.get(i), total);
+                }
+                return total;
+            }
+        }
+    }
+
+    /** The totals of one category, read back from a partition. */
+    private static final class Spilled {
+        final String key;
+        final long firstSeen;
+        long count;
+        double sum;
+        double min;
+        double max;
+
+        Spilled(String key, long firstSeen) {
+            this.key = key;
+            this.firstSeen = firstSeen;
+        }
+    }
+
+    /** Sums the entries of one partition by category. */
+    private static List<Spilled> readPartition(File partitionFile) throws IOException {
+        Map<String, Spilled> totals = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(partitionFile.toPath())))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException end) {
+                    break;
+                }
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                String key = new String(bytes, StandardCharsets.UTF_8);
+                long firstSeen = in.readLong();
+                Spilled spilled = totals.get(key);
+                if (spilled == null) {
+                    spilled = new Spilled(key, firstSeen);
+                    spilled.min = Double.POSITIVE_INFINITY;
+                    spilled.max = Double.NEGATIVE_INFINITY;
+                    totals.put(key, spilled);
+                }
+                spilled.count += in.readLong();
+                spilled.sum += in.readDouble();
+                spilled.min = Math.min(spilled.min, in.readDouble());
+                spilled.max = Math.max(spilled.max, in.readDouble());
+            }
+        }
+        return new ArrayList<>(totals.values());
+    }
+}
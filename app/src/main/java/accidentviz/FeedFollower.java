@@ -0,0 +1,150 @@
+package accidentviz;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Follows a CSV file that is being appended to, like {@code tail -f}. A background thread
+ * remembers the byte offset it has read up to and, whenever the file grows, parses only the
+ * new bytes. Rows are passed on once the parser has seen their line break, outside quotes,
+ * so a writer caught in the middle of a row, including inside a quoted field that spans
+ * lines, is picked up on the next round. The directory is watched for changes, and the
+ * file is also checked on a timer, since some file systems do not report modifications.
+ */
+class FeedFollower {
+
+    interface Listener {
+        /**
+         * Called on the follower thread with each batch of appended rows and the offset of
+         * the byte after them.
+         */
+        void rowsAppended(List<String[]> rows, long offset);
+
+        /** Called on the follower thread when the file can no longer be followed. */
+        void followFailed(IOException error);
+    }
+
+    private static final long POLL_MILLIS = 500;
+    private static final int MAX_BATCH_BYTES = 8 << 20;
+
+    private final Path path;
+    private final Listener listener;
+    private final Thread thread;
+    private volatile long offset;
+    private volatile boolean stopped;
+
+    /** @param offset where the new rows start, normally the end of the last complete row loaded */
+    FeedFollower(File file, long offset, Listener listener) {
+        this.path = file.toPath().toAbsolutePath();
+        this.offset = offset;
+        this.listener = listener;
+        this.thread = new Thread(this::run, "follow " + file.getName());
+        thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    void stop() {
+        stopped = true;
+        thread.interrupt();
+    }
+
+    /** Bytes of the file read so far. */
+    long getOffset() {
+        return offset;
+    }
+
+    private void run() {
+        try (WatchService watcher = path.getFileSystem().newWatchService()) {
+            path.getParent().register(watcher, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_CREATE);
+            while (!stopped) {
+                readAppended();
+                WatchKey key = watcher.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    key.pollEvents();
+                    key.reset();
+                }
+            }
+        } catch (InterruptedException e) {
+            // Stopped.
+        } catch (IOException e) {
+            if (!stopped) {
+                listener.followFailed(e);
+            }
+        }
+    }
+
+    /**
+     * Parses the complete rows added since the last call, a batch at a time, and moves the
+     * offset to the end of the last of them. Each batch, listener included, is timed as the
+     * {@link Metrics.Stage#FOLLOW} stage.
+     */
+    private void readAppended() throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < offset) {
+                throw new IOException(path.getFileName() + " was truncated or replaced");
+            }
+            while (offset < size && !stopped) {
+                ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(size - offset, MAX_BATCH_BYTES));
+                while (buffer.hasRemaining() && channel.read(buffer, offset + buffer.position()) > 0) {
+                    // Keep reading until the batch is full.
+                }
+                int length = buffer.position();
+                byte[] bytes = buffer.array();
+                // Without a line break no row can be complete yet.
+                int lastBreak = length;
+                while (lastBreak > 0 && bytes[lastBreak - 1] != '\n') {
+                    lastBreak--;
+                }
+                if (lastBreak == 0) {
+                    checkRowLength(length);
+                    return;
+                }
+                final List<String[]> rows = new ArrayList<>();
+                try (Metrics.Span span = Metrics.GLOBAL.start(Metrics.Stage.FOLLOW)) {
+                    // A line break inside quotes does not end a row, so the parser decides where the rows end.
+                    CsvParser parser = new CsvParser().completeRowsOnly();
+                    parser.parse(Channels.newChannel(new ByteArrayInputStream(bytes, 0, length)), new CsvParser.RowHandler() {
+                        public boolean handleRow(String[] fields) {
+                            rows.add(fields);
+                            return true;
+                        }
+                    });
+                    int end = (int) parser.getRowsEnd();
+                    if (end == 0) {
+                        checkRowLength(length);
+                        return;
+                    }
+                    offset += end;
+                    if (!rows.isEmpty()) {
+                        listener.rowsAppended(rows, offset);
+                    }
+                    span.addRows(rows.size());
+                    span.addBytes(end);
+                }
+            }
+        }
+    }
+
+    /** A batch without a complete row is waited on, unless the row can never fit in one. */
+    private void checkRowLength(int batchBytes) throws IOException {
+        if (batchBytes == MAX_BATCH_BYTES) {
+            throw new IOException("Row longer than " + (MAX_BATCH_BYTES >> 20) + " MB in " + path.getFileName());
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package accidentviz;
+
+import javax.swing.*;
+import javax.swing.event.ListSelectionEvent;
+import javax.swing.event.ListSelectionListener;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Non-modal window for choosing category values to filter on. Every change is passed to the
+ * listener straight away, so the chart follows the selection while the dialog stays open.
+ * Columns with more than {@link #MAX_VALUES} distinct values, such as ids, are not offered.
+ */
+class FilterDialog extends JDialog {
+    private static final long serialVersionUID = 1L;
+
+    static final int MAX_VALUES = 1000;
+
+    private final ColumnTable table;
+    private final List<Integer> columns;
+    private final Consumer<RowFilter> listener;
+    private final JList<String> columnList;
+    private final JList<String> valueList;
+    private RowFilter filter;
+    private boolean updating;
+
+    FilterDialog(Frame owner, ColumnTable table, List<Integer> categoryColumns, RowFilter initial, Consumer<RowFilter> listener) {
+        super(owner, "Filters", false);
+        this.table = table;
+        this.filter = initial;
+        this.listener = listener;
+        this.columns = new ArrayList<>();
+        DefaultListModel<String> columnModel = new DefaultListModel<>();
+        for (int col : categoryColumns) {
+            if (table.getCategoryColumn(col).getCardinality() <= MAX_VALUES) {
+                columns.add(col);
+                columnModel.addElement(table.getHeaders()[col]);
+            }
+        }
+
+        columnList = new JList<>(columnModel);
+        columnList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        valueList = new JList<>(new DefaultListModel<>());
+        valueList.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+
+        columnList.addListSelectionListener(new ListSelectionListener() {
+            public void valueChanged(ListSelectionEvent e) {
+                if (!e.getValueIsAdjusting()) {
+                    showValues();
+                }
+            }
+        });
+        valueList.addListSelectionListener(new ListSelectionListener() {
+            public void valueChanged(ListSelectionEvent e) {
+                if (!e.getValueIsAdjusting() && !updating) {
+                    int col = selectedColumn();
+                    if (col >= 0) {
+                        setFilter(filter.with(col, valueList.getSelectedIndices()));
+                    }
+                }
+            }
+        });
+
+        JButton clearButton = new JButton("Clear All");
+        clearButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                setFilter(RowFilter.NONE);
+                showValues();
+            }
+        });
+        JButton closeButton = new JButton("Close");
+        closeButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                dispose();
+            }
+        });
+
+        JPanel lists = new JPanel(new GridLayout(1, 2, 10, 0));
+        lists.add(new JScrollPane(columnList));
+        lists.add(new JScrollPane(valueList));
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        buttons.add(clearButton);
+        buttons.add(closeButton);
+
+        JPanel content = new JPanel(new BorderLayout(0, 10));
+        content.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+        content.add(new JLabel("Select values; Ctrl-click to choose several."), BorderLayout.NORTH);
+        content.add(lists, BorderLayout.CENTER);
+        content.add(buttons, BorderLayout.SOUTH);
+        setContentPane(content);
+        setSize(560, 400);
+        setLocationRelativeTo(owner);
+
+        if (!columns.isEmpty()) {
+            columnList.setSelectedIndex(0);
+        }
+    }
+
+    private int selectedColumn() {
+        int index = columnList.getSelectedIndex();
+        return index < 0 ? -1 : columns.get(index);
+    }
+
+    /** Lists the values of the selected column, with the filtered ones selected. */
+    private void showValues() {
+        updating = true;
+        try {
+            DefaultListModel<String> model = (DefaultListModel<String>) valueList.getModel();
+            model.clear();
+            int col = selectedColumn();
+            if (col < 0) return;
+            for (String value : table.getCategoryColumn(col).dictionary) {
+                model.addElement(value.isEmpty() ? "(blank)" : value);
+            }
+            valueList.setSelectedIndices(filter.getCodes(col));
+        } finally {
+            updating = false;
+        }
+    }
+
+    private void setFilter(RowFilter changed) {
+        filter = changed;
+        listener.accept(filter);
+    }
+}
@@ -0,0 +1,163 @@
+package accidentviz;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Computes the aggregates of several charts over a loaded table in one parallel scan of the
+ * rows, where each chart on its own would scan them again. Row ranges are split across the
+ * fork-join pool as in {@link GroupByAggregator}. Each leaf walks its range a block at a time
+ * and hands the block to every group-by before moving on, so the columns they share are
+ * read while still in cache and the selected rows of a filter are decoded once for all of
+ * them. Time rollups take the leaf's range in one piece. The partial results are merged
+ * pairwise on the way back up.
+ */
+class FusedAggregator {
+
+    private static final int MIN_ROWS_PER_TASK = 1 << 15;
+    /** Rollup partials span every day of their rows, so their leaves are kept as large as {@link TimeRollup}'s. */
+    private static final int MIN_ROWS_PER_ROLLUP_TASK = 1 << 18;
+    private static final int BLOCK_ROWS = RowBitmap.BATCH_SIZE;
+
+    private final ColumnTable table;
+    private final RowBitmap selection;
+    /** The group-by and count queries, with their columns; a count has no value column. */
+    private final List<ExternalAggregator.Query> groupBys = new ArrayList<>();
+    private final List<ColumnTable.CategoryColumn> categories = new ArrayList<>();
+    private final List<ColumnTable.NumericColumn> values = new ArrayList<>();
+    private final List<ExternalAggregator.Query> rollups = new ArrayList<>();
+
+    private FusedAggregator(ColumnTable table, List<ExternalAggregator.Query> queries, RowBitmap selection) {
+        this.table = table;
+        this.selection = selection;
+        for (ExternalAggregator.Query query : queries) {
+            switch (query.kind) {
+                case "groupBy":
+                    groupBys.add(query);
+                    categories.add(table.getCategoryColumn(query.columns[0]));
+                    values.add(table.getNumericColumn(query.columns[1]));
+                    break;
+                case "count":
+                    groupBys.add(query);
+                    categories.add(table.getCategoryColumn(query.columns[0]));
+                    values.add(null);
+                    break;
+                case "rollup":
+                    rollups.add(query);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Not an aggregate over rows: " + query);
+            }
+        }
+    }
+
+    /**
+     * Runs the group-by, count and rollup queries over the selected rows of the table, a null
+     * selection meaning every row, and returns each query's result. The results equal those
+     * of {@link GroupByAggregator#aggregate} and {@link TimeRollup#build} run one at a time.
+     */
+    static Map<ExternalAggregator.Query, AggregateCache.Sized> aggregate(ColumnTable table,
+                                                                     List<ExternalAggregator.Query> queries,
+                                                                     RowBitmap selection) {
+        FusedAggregator fused = new FusedAggregator(table, queries, selection);
+        int rows = table.getRowCount();
+        int parallelism = Math.max(1, ForkJoinPool.commonPool().getParallelism());
+        long resultBytes = 0;
+        for (ColumnTable.CategoryColumn category : fused.categories) {
+            resultBytes += GroupByAggregator.Result.estimatedBytes(category.dictionary.length);
+        }
+        int leafSize = GroupByAggregator.leafSize(rows, MIN_ROWS_PER_TASK, resultBytes);
+        if (!fused.rollups.isEmpty()) {
+            leafSize = Math.max(leafSize, Math.max(MIN_ROWS_PER_ROLLUP_TASK, (rows + parallelism - 1) / parallelism));
+        }
+        Partial partial = ForkJoinPool.commonPool().invoke(fused.new FusedTask(0, rows, leafSize));
+
+        Map<ExternalAggregator.Query, AggregateCache.Sized> results = new LinkedHashMap<>();
+        for (int i = 0; i < fused.groupBys.size(); i++) {
+            results.put(fused.groupBys.get(i), partial.groupBys[i]);
+        }
+        for (int i = 0; i < fused.rollups.size(); i++) {
+            results.put(fused.rollups.get(i), partial.rollups[i]);
+        }
+        return results;
+    }
+
+    /** The results of every query over one range of rows. */
+    private static final class Partial {
+        final GroupByAggregator.Result[] groupBys;
+        final TimeRollup[] rollups;
+
+        Partial(GroupByAggregator.Result[] groupBys, TimeRollup[] rollups) {
+            this.groupBys = groupBys;
+            this.rollups = rollups;
+        }
+
+        /** Combines this range with the range after it. */
+        Partial merge(Partial later) {
+            for (int i = 0; i < groupBys.length; i++) {
+                groupBys[i].merge(later.groupBys[i]);
+            }
+            for (int i = 0; i < rollups.length; i++) {
+                rollups[i] = TimeRollup.merge(rollups[i], later.rollups[i]);
+            }
+            return this;
+        }
+    }
+
+    private final class FusedTask extends RecursiveTask<Partial> {
+        private static final long serialVersionUID = 1L;
+        private final int from;
+        private final int to;
+        private final int leafSize;
+
+        FusedTask(int from, int to, int leafSize) {
+            this.from = from;
+            this.to = to;
+            this.leafSize = leafSize;
+        }
+
+        protected Partial compute() {
+            if (to - from <= leafSize) {
+                return accumulate();
+            }
+            int middle = (from + to) >>> 1;
+            FusedTask left = new FusedTask(from, middle, leafSize);
+            left.fork();
+            Partial later = new FusedTask(middle, to, leafSize).compute();
+            return left.join().merge(later);
+        }
+
+        private Partial accumulate() {
+            GroupByAggregator.Result[] results = new GroupByAggregator.Result[groupBys.size()];
+            for (int i = 0; i < results.length; i++) {
+                results[i] = new GroupByAggregator.Result(categories.get(i).dictionary);
+            }
+            if (selection == null) {
+                for (int block = from; block < to; block += BLOCK_ROWS) {
+                    int end = Math.min(to, block + BLOCK_ROWS);
+                    for (int i = 0; i < results.length; i++) {
+                        GroupByAggregator.addRows(results[i], categories.get(i), values.get(i), block, end);
+                    }
+                }
+            } else if (results.length > 0) {
+                int[] batch = new int[BLOCK_ROWS];
+                RowBitmap.Cursor cursor = RowBitmap.rows(selection, from, to);
+                for (int n = cursor.fill(batch); n > 0; n = cursor.fill(batch)) {
+                    for (int i = 0; i < results.length; i++) {
+                        GroupByAggregator.addRows(results[i], categories.get(i), values.get(i), batch, n);
+                    }
+                }
+            }
+            TimeRollup[] rolledUp = new TimeRollup[rollups.size()];
+            for (int i = 0; i < rolledUp.length; i++) {
+                int[] columns = rollups.get(i).columns;
+                rolledUp[i] = TimeRollup.accumulate(table, columns[0], columns[1], from, to, selection);
+            }
+            return new Partial(results, rolledUp);
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package accidentviz;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntPredicate;
+
+/**
+ * Parallel group-by over a dictionary-encoded category column. Row ranges are split across
+ * the fork-join pool; each leaf accumulates into its own primitive arrays indexed by
+ * category code, and the partial results are merged pairwise on the way back up. With a
+ * large dictionary, such as a column of ids, there are fewer and larger leaves, so that the
+ * arrays of all leaves stay within a fixed budget.
+ */
+class GroupByAggregator {
+
+    enum Aggregation {
+        SUM("Sum"), COUNT("Count"), MEAN("Mean"), MIN("Min"), MAX("Max");
+
+        final String label;
+
+        Aggregation(String label) {
+            this.label = label;
+        }
+
+        public String toString() {
+            return label;
+        }
+    }
+
+    private static final int MIN_ROWS_PER_TASK = 1 << 15;
+    /**
+     * Every leaf holds arrays as long as the dictionary, so a column of ids would need a copy
+     * of them per leaf; leaves are made larger until all of them fit in this.
+     */
+    static final long LEAF_RESULTS_BYTES = 64L << 20;
+
+    /** Per-category count, sum, min and max; categories without rows have a count of zero. */
+    static final class Result implements AggregateCache.Sized {
+        final String[] keys;
+        final long[] counts;
+        final double[] sums;
+        final double[] mins;
+        final double[] maxs;
+
+        Result(String[] keys) {
+            int size = keys.length;
+            this.keys = keys;
+            this.counts = new long[size];
+            this.sums = new double[size];
+            this.mins = new double[size];
+            this.maxs = new double[size];
+            Arrays.fill(mins, Double.POSITIVE_INFINITY);
+            Arrays.fill(maxs, Double.NEGATIVE_INFINITY);
+        }
+
+        int size() {
+            return keys.length;
+        }
+
+        public long estimatedBytes() {
+            return estimatedBytes(keys.length);
+        }
+
+        /** The size of a result with the given number of categories. */
+        static long estimatedBytes(int categories) {
+            return 64 + 32L * categories;
+        }
+
+        double value(int code, Aggregation aggregation) {
+            switch (aggregation) {
+                case COUNT:
+                    return counts[code];
+                case MEAN:
+                    return counts[code] == 0 ? Double.NaN : sums[code] / counts[code];
+                case MIN:
+                    return mins[code];
+                case MAX:
+                    return maxs[code];
+                default:
+                    return sums[code];
+            }
+        }
+
+        /**
+         * Adds the other result into this one. The other result may have fewer categories,
+         * e.g. when it was computed before appended rows brought new values.
+         */
+        void merge(Result other) {
+            for (int code = 0; code < other.counts.length; code++) {
+                if (other.counts[code] == 0) continue;
+                counts[code] += other.counts[code];
+                sums[code] += other.sums[code];
+                mins[code] = Math.min(mins[code], other.mins[code]);
+                maxs[code] = Math.max(maxs[code], other.maxs[code]);
+            }
+        }
+
+        /**
+         * Returns the codes of the k largest values, largest first, using a bounded min-heap
+         * instead of sorting every category. Ties go to the category seen first.
+         */
+        int[] topK(int k, Aggregation aggregation, IntPredicate include) {
+            int[] heap = new int[Math.max(0, k)];
+            double[] heapValues = new double[heap.length];
+            int size = 0;
+            for (int code = 0; code < counts.length; code++) {
+                if (counts[code] == 0 || !include.test(code)) continue;
+                double value = value(code, aggregation);
+                if (size < heap.length) {
+                    heap[size] = code;
+                    heapValues[size] = value;
+                    siftUp(heap, heapValues, size++);
+                } else if (size > 0 && value > heapValues[0]) {
+                    heap[0] = code;
+                    heapValues[0] = value;
+                    siftDown(heap, heapValues, 0, size);
+                }
+            }
+            // Drain the heap smallest-first into the tail of the result.
+            int[] result = new int[size];
+            for (int i = size - 1; i >= 0; i--) {
+                result[i] = heap[0];
+                heap[0] = heap[i];
+                heapValues[0] = heapValues[i];
+                siftDown(heap, heapValues, 0, i);
+            }
+            return result;
+        }
+
+        /** Heap order: smaller value first, and for equal values the later code first. */
+        private static boolean less(int[] heap, double[] values, int a, int b) {
+            return values[a] < values[b] || (values[a] == values[b] && heap[a] > heap[b]);
+        }
+
+        private static void siftUp(int[] heap, double[] values, int i) {
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (!less(heap, values, i, parent)) break;
+                swap(heap, values, i, parent);
+                i = parent;
+            }
+        }
+
+        private static void siftDown(int[] heap, double[] values, int i, int size) {
+            while (true) {
+                int left = 2 * i + 1;
+                if (left >= size) break;
+                int smallest = left;
+                if (left + 1 < size && less(heap, values, left + 1, left)) smallest = left + 1;
+                if (!less(heap, values, smallest, i)) break;
+                swap(heap, values, i, smallest);
+                i = smallest;
+            }
+        }
+
+        private static void swap(int[] heap, double[] values, int a, int b) {
+            int code = heap[a];
+            heap[a] = heap[b];
+            heap[b] = code;
+            double value = values[a];
+            values[a] = values[b];
+            values[b] = value;
+        }
+    }
+
+    /**
+     * Groups the rows by category. With a null value column only the counts are filled in;
+     * otherwise rows with a missing value are skipped.
+     */
+    static Result aggregate(ColumnTable.CategoryColumn categories, ColumnTable.NumericColumn values) {
+        return aggregate(categories, values, null);
+    }
+
+    /** As above, over only the selected rows; a null selection means every row. */
+    static Result aggregate(ColumnTable.CategoryColumn categories, ColumnTable.NumericColumn values, RowBitmap selection) {
+        return aggregate(categories, values, 0, categories.codes.limit(), selection);
+    }
+
+    /** As above, over the rows from..to-1 only, e.g. rows just appended to the table. */
+    static Result aggregate(ColumnTable.CategoryColumn categories, ColumnTable.NumericColumn values,
+                            int from, int to, RowBitmap selection) {
+        int leafSize = leafSize(to - from, MIN_ROWS_PER_TASK, Result.estimatedBytes(categories.dictionary.length));
+        return ForkJoinPool.commonPool().invoke(new GroupByTask(categories, values, selection, from, to, leafSize));
+    }
+
+    /**
+     * Rows per leaf of a scan whose leaves each hold results of the given size: a few leaves
+     * per thread and no fewer rows than given, but few enough leaves that their results
+     * together stay within {@link #LEAF_RESULTS_BYTES}. Halving a range down to the leaf size
+     * makes at most twice rows / leafSize leaves.
+     */
+    static int leafSize(int rows, int minRows, long resultBytes) {
+        int parallelism = Math.max(1, ForkJoinPool.commonPool().getParallelism());
+        long maxLeaves = Math.max(1, LEAF_RESULTS_BYTES / (2 * Math.max(1, resultBytes)));
+        return (int) Math.max(Math.max(minRows, rows / (parallelism * 4L)), (rows + maxLeaves - 1) / maxLeaves);
+    }
+
+    /**
+     * Adds the rows from..to-1 into the result: the counts only with a null value column,
+     * otherwise skipping rows with a missing value. The inner loop of a group-by, also used
+     * by {@link FusedAggregator} to feed one block of rows to several group-bys.
+     */
+    static void addRows(Result result, ColumnTable.CategoryColumn categories, ColumnTable.NumericColumn values,
+                        int from, int to) {
+        IntBuffer codes = categories.codes;
+        long[] counts = result.counts;
+        if (values == null) {
+            for (int row = from; row < to; row++) {
+                int code = codes.get(row);
+                if (code != ColumnTable.MISSING_CODE) counts[code]++;
+            }
+            return;
+        }
+        double[] sums = result.sums;
+        double[] mins = result.mins;
+        double[] maxs = result.maxs;
+        for (int row = from; row < to; row++) {
+            int code = codes.get(row);
+            double value = values.getDouble(row);
+            if (code == ColumnTable.MISSING_CODE || Double.isNaN(value)) continue;
+            counts[code]++;
+            sums[code] += value;
+            if (value < mins[code]) mins[code] = value;
+            if (value > maxs[code]) maxs[code] = value;
+        }
+    }
+
+    /** As above, for the first n row ids of the batch, e.g. selected rows from a {@link RowBitmap.Cursor}. */
+    static void addRows(Result result, ColumnTable.CategoryColumn categories, ColumnTable.NumericColumn values,
+                        int[] rows, int n) {
+        IntBuffer codes = categories.codes;
+        long[] counts = result.counts;
+        if (values == null) {
+            for (int i = 0; i < n; i++) {
+                int code = codes.get(rows[i]);
+                if (code != ColumnTable.MISSING_CODE) counts[code]++;
+            }
+            return;
+        }
+        double[] sums = result.sums;
+        double[] mins = result.mins;
+        double[] maxs = result.maxs;
+        for (int i = 0; i < n; i++) {
+            int row = rows[i];
+            int code = codes.get(row);
+            if (code == ColumnTable.MISSING_CODE) continue;
+            double value = values.getDouble(row);
+            if (Double.isNaN(value)) continue;
+            counts[code]++;
+            sums[code] += value;
+            if (value < mins[code]) mins[code] = value;
+            if (value > maxs[code]) maxs[code] = value;
+        }
+    }
+
+    private static final class GroupByTask extends RecursiveTask<Result> {
+        private static final long serialVersionUID = 1L;
+        private final ColumnTable.CategoryColumn categories;
+        private final ColumnTable.NumericColumn values;
+        private final RowBitmap selection;
+        private final int from;
+        private final int to;
+        private final int leafSize;
+
+        GroupByTask(ColumnTable.CategoryColumn categories, ColumnTable.NumericColumn values, RowBitmap selection,
+                    int from, int to, int leafSize) {
+            this.categories = categories;
+            this.values = values;
+            this.selection = selection;
+            this.from = from;
+            this.to = to;
+            this.leafSize = leafSize;
+        }
+
+        protected Result compute() {
+            if (to - from <= leafSize) {
+                return accumulate();
+            }
+            int middle = (from + to) >>> 1;
+            GroupByTask left = new GroupByTask(categories, values, selection, from, middle, leafSize);
+            left.fork();
+            Result result = new GroupByTask(categories, values, selection, middle, to, leafSize).compute();
+            result.merge(left.join());
+            return result;
+        }
+
+        private Result accumulate() {
+            Result result = new Result(categories.dictionary);
+            if (selection == null) {
+                addRows(result, categories, values, from, to);
+                return result;
+            }
+            int[] batch = new int[RowBitmap.BATCH_SIZE];
+            RowBitmap.Cursor cursor = RowBitmap.rows(selection, from, to);
+            for (int n = cursor.fill(batch); n > 0; n = cursor.fill(batch)) {
+                addRows(result, categories, values, batch, n);
+            }
+            return result;
+        }
+    }
+}
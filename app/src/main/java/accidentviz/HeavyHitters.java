@@ -0,0 +1,139 @@
+package accidentviz;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * The most frequent values of a stream, counted in a fixed number of counters with Metwally
+ * et al.'s Space-Saving algorithm. A value without a counter takes over the smallest one
+ * and inherits its count as possible overcount, so every count is an upper bound and count
+ * minus error a lower bound. Any value with more than 1/capacity of the rows is certain to
+ * be tracked. Summaries of parts merge into a summary of the whole with the same bounds.
+ */
+class HeavyHitters {
+
+    static final int DEFAULT_CAPACITY = 64;
+
+    /** A tracked value; its true count lies between count - error and count. */
+    static final class Entry {
+        final String value;
+        final long count;
+        final long error;
+
+        Entry(String value, long count, long error) {
+            this.value = value;
+            this.count = count;
+            this.error = error;
+        }
+    }
+
+    private final int capacity;
+    /** Count and error of each tracked value. */
+    private final Map<String, long[]> counters = new HashMap<>();
+    /** No value without a counter has been seen more often than this. */
+    private long floor;
+
+    HeavyHitters() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    HeavyHitters(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Exact summary of known counts, e.g. per code of a category column: the most frequent
+     * values are kept with their counts, and the floor is the largest count left out.
+     */
+    static HeavyHitters ofCounts(String[] values, int[] counts, int capacity) {
+        PriorityQueue<Integer> largest = new PriorityQueue<>(capacity + 1, (a, b) -> Integer.compare(counts[a], counts[b]));
+        HeavyHitters summary = new HeavyHitters(capacity);
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) continue;
+            largest.add(i);
+            if (largest.size() > capacity) {
+                summary.floor = Math.max(summary.floor, counts[largest.poll()]);
+            }
+        }
+        for (int i : largest) {
+            summary.counters.put(values[i], new long[] {counts[i], 0});
+        }
+        return summary;
+    }
+
+    void add(String value, long weight) {
+        long[] counter = counters.get(value);
+        if (counter != null) {
+            counter[0] += weight;
+            return;
+        }
+        if (counters.size() < capacity) {
+            counters.put(value, new long[] {floor + weight, floor});
+            return;
+        }
+        Map.Entry<String, long[]> smallest = null;
+        for (Map.Entry<String, long[]> entry : counters.entrySet()) {
+            if (smallest == null || entry.getValue()[0] < smallest.getValue()[0]) {
+                smallest = entry;
+            }
+        }
+        long evicted = smallest.getValue()[0];
+        counters.remove(smallest.getKey());
+        floor = Math.max(floor, evicted);
+        counters.put(value, new long[] {evicted + weight, evicted});
+    }
+
+    /**
+     * Folds in another summary. A value the other summary does not track may have been seen
+     * up to its floor times there, which is added to both its count and its error.
+     */
+    void merge(HeavyHitters other) {
+        Map<String, long[]> merged = new HashMap<>();
+        for (Map.Entry<String, long[]> entry : counters.entrySet()) {
+            long[] theirs = other.counters.get(entry.getKey());
+            long[] mine = entry.getValue();
+            merged.put(entry.getKey(), theirs == null ? new long[] {mine[0] + other.floor, mine[1] + other.floor}
+                    : new long[] {mine[0] + theirs[0], mine[1] + theirs[1]});
+        }
+        for (Map.Entry<String, long[]> entry : other.counters.entrySet()) {
+            if (!counters.containsKey(entry.getKey())) {
+                long[] theirs = entry.getValue();
+                merged.put(entry.getKey(), new long[] {theirs[0] + floor, theirs[1] + floor});
+            }
+        }
+        floor += other.floor;
+        counters.clear();
+        PriorityQueue<Map.Entry<String, long[]>> largest = new PriorityQueue<>(capacity + 1,
+                (a, b) -> Long.compare(a.getValue()[0], b.getValue()[0]));
+        for (Map.Entry<String, long[]> entry : merged.entrySet()) {
+            largest.add(entry);
+            if (largest.size() > capacity) {
+                floor = Math.max(floor, largest.poll().getValue()[0]);
+            }
+        }
+        for (Map.Entry<String, long[]> entry : largest) {
+            counters.put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /** Up to n tracked values, most frequent first. */
+    List<Entry> top(int n) {
+        List<Entry> entries = new ArrayList<>(counters.size());
+        for (Map.Entry<String, long[]> entry : counters.entrySet()) {
+            entries.add(new Entry(entry.getKey(), entry.getValue()[0], entry.getValue()[1]));
+        }
+        entries.sort((a, b) -> a.count != b.count ? Long.compare(b.count, a.count) : a.value.compareTo(b.value));
+        return entries.subList(0, Math.min(n, entries.size()));
+    }
+
+    long estimatedBytes() {
+        long bytes = 64;
+        for (String value : counters.keySet()) {
+            bytes += 112 + 2L * value.length();
+        }
+        return bytes;
+    }
+}
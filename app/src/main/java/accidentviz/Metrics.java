@@ -0,0 +1,307 @@
+package accidentviz;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Latency histograms and throughput of each stage between opening a file and seeing a chart,
+ * plus counters for data the loader had to drop, so that a slow or odd session can be traced
+ * to its cause. Stages are timed with {@link #start}; every stage is also a JFR event, which
+ * costs nothing unless a flight recording is running. Thread-safe.
+ */
+class Metrics {
+
+    /** The metrics of this process. */
+    static final Metrics GLOBAL = new Metrics();
+
+    enum Stage {
+        LOAD("Load file"),
+        INDEX("Index"),
+        ANALYZE("Analyze columns"),
+        AGGREGATE("Aggregate"),
+        CHART("Build chart"),
+        PAINT("Paint chart"),
+        FOLLOW("Follow file"),
+        UPDATE("Update chart"),
+        RENDER("Render file"),
+        QUERY("Serve query");
+
+        final String label;
+
+        Stage(String label) {
+            this.label = label;
+        }
+
+        public String toString() {
+            return label;
+        }
+    }
+
+    /** Bucket b counts stages that took less than 2^(b+1) microseconds, and at least 2^b from b = 1 on. */
+    static final int BUCKETS = 32;
+
+    /** Totals of one stage, copied out by {@link #getStages()}. */
+    static final class StageStats {
+        final Stage stage;
+        long count;
+        long totalNanos;
+        long minNanos = Long.MAX_VALUE;
+        long maxNanos;
+        long rows;
+        long bytes;
+        /** Bytes allocated by the thread that ran each stage, or -1 if the JVM cannot tell. */
+        long allocatedBytes;
+        final long[] buckets = new long[BUCKETS];
+
+        StageStats(Stage stage) {
+            this.stage = stage;
+        }
+
+        private StageStats(StageStats other) {
+            this(other.stage);
+            count = other.count;
+            totalNanos = other.totalNanos;
+            minNanos = other.minNanos;
+            maxNanos = other.maxNanos;
+            rows = other.rows;
+            bytes = other.bytes;
+            allocatedBytes = other.allocatedBytes;
+            System.arraycopy(other.buckets, 0, buckets, 0, BUCKETS);
+        }
+
+        double meanMillis() {
+            return count == 0 ? 0 : totalNanos / 1e6 / count;
+        }
+
+        /** Upper bound of the bucket holding the given fraction of timings, capped at the slowest. */
+        double percentileMillis(double fraction) {
+            long rank = (long) Math.ceil(fraction * count);
+            long seen = 0;
+            for (int b = 0; b < BUCKETS; b++) {
+                seen += buckets[b];
+                if (seen >= rank && seen > 0) {
+                    return Math.min(maxNanos, (2L << b) * 1000L) / 1e6;
+                }
+            }
+            return maxNanos / 1e6;
+        }
+
+        double rowsPerSecond() {
+            return totalNanos == 0 ? 0 : rows * 1e9 / totalNanos;
+        }
+
+        double bytesPerSecond() {
+            return totalNanos == 0 ? 0 : bytes * 1e9 / totalNanos;
+        }
+    }
+
+    /** One run of a stage; closing it records the elapsed time. */
+    final class Span implements AutoCloseable {
+        private final Stage stage;
+        private final long startNanos = System.nanoTime();
+        private final long startAllocated = allocatedBytes();
+        private final StageEvent event = new StageEvent();
+        private long rows;
+        private long bytes;
+
+        private Span(Stage stage) {
+            this.stage = stage;
+            event.begin();
+        }
+
+        void addRows(long count) {
+            rows += count;
+        }
+
+        void addBytes(long count) {
+            bytes += count;
+        }
+
+        public void close() {
+            long nanos = System.nanoTime() - startNanos;
+            long endAllocated = allocatedBytes();
+            record(stage, nanos, rows, bytes, startAllocated < 0 || endAllocated < 0 ? -1 : endAllocated - startAllocated);
+            event.end();
+            if (event.shouldCommit()) {
+                event.stage = stage.label;
+                event.rows = rows;
+                event.bytes = bytes;
+                event.commit();
+            }
+        }
+    }
+
+    @Name("accidentviz.Stage")
+    @Label("Stage")
+    @Category("Accident Visualization")
+    @Description("A timed stage of loading a file or drawing a chart")
+    static final class StageEvent extends Event {
+        @Label("Stage")
+        String stage;
+
+        @Label("Rows")
+        long rows;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+    }
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final StageStats[] stages = new StageStats[Stage.values().length];
+    private final Map<String, Long> counters = new TreeMap<>();
+    private Instant since = Instant.now();
+
+    Metrics() {
+        reset();
+    }
+
+    /** Starts timing a stage on the current thread; close the span when the stage is done. */
+    Span start(Stage stage) {
+        return new Span(stage);
+    }
+
+    /** Adds to a named counter, e.g. values the loader could not parse. */
+    synchronized void count(String counter, long delta) {
+        if (delta != 0) {
+            counters.merge(counter, delta, Long::sum);
+        }
+    }
+
+    synchronized void reset() {
+        for (Stage stage : Stage.values()) {
+            stages[stage.ordinal()] = new StageStats(stage);
+        }
+        counters.clear();
+        since = Instant.now();
+    }
+
+    /** Copies of the stages that have run at least once, in pipeline order. */
+    synchronized List<StageStats> getStages() {
+        List<StageStats> copies = new ArrayList<>();
+        for (StageStats stats : stages) {
+            if (stats.count > 0) {
+                copies.add(new StageStats(stats));
+            }
+        }
+        return copies;
+    }
+
+    synchronized Map<String, Long> getCounters() {
+        return new TreeMap<>(counters);
+    }
+
+    synchronized Instant getSince() {
+        return since;
+    }
+
+    /** Everything recorded since the last reset, as a JSON document. */
+    String toJson() {
+        List<StageStats> copies = getStages();
+        Map<String, Long> counterCopy = getCounters();
+        Runtime runtime = Runtime.getRuntime();
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"since\": ").append(quote(getSince().toString())).append(",\n");
+        json.append("  \"exportedAt\": ").append(quote(Instant.now().toString())).append(",\n");
+        json.append("  \"javaVersion\": ").append(quote(System.getProperty("java.version"))).append(",\n");
+        json.append("  \"processors\": ").append(runtime.availableProcessors()).append(",\n");
+        json.append("  \"maxHeapBytes\": ").append(runtime.maxMemory()).append(",\n");
+        json.append("  \"stages\": [");
+        for (int i = 0; i < copies.size(); i++) {
+            StageStats stats = copies.get(i);
+            json.append(i == 0 ? "\n" : ",\n");
+            json.append("    {\"stage\": ").append(quote(stats.stage.name().toLowerCase(Locale.ROOT)))
+                    .append(", \"count\": ").append(stats.count)
+                    .append(", \"totalMillis\": ").append(number(stats.totalNanos / 1e6))
+                    .append(", \"meanMillis\": ").append(number(stats.meanMillis()))
+                    .append(", \"minMillis\": ").append(number(stats.minNanos / 1e6))
+                    .append(", \"p50Millis\": ").append(number(stats.percentileMillis(0.5)))
+                    .append(", \"p90Millis\": ").append(number(stats.percentileMillis(0.9)))
+                    .append(", \"p99Millis\": ").append(number(stats.percentileMillis(0.99)))
+                    .append(", \"maxMillis\": ").append(number(stats.maxNanos / 1e6))
+                    .append(", \"rows\": ").append(stats.rows)
+                    .append(", \"rowsPerSecond\": ").append(number(stats.rowsPerSecond()))
+                    .append(", \"bytes\": ").append(stats.bytes)
+                    .append(", \"bytesPerSecond\": ").append(number(stats.bytesPerSecond()))
+                    .append(", \"allocatedBytes\": ").append(stats.allocatedBytes)
+                    .append(",\n     \"histogram\": [");
+            boolean first = true;
+            for (int b = 0; b < BUCKETS; b++) {
+                if (stats.buckets[b] == 0) continue;
+                json.append(first ? "" : ", ").append("{\"underMicros\": ").append(2L << b)
+                        .append(", \"count\": ").append(stats.buckets[b]).append('}');
+                first = false;
+            }
+            json.append("]}");
+        }
+        json.append(copies.isEmpty() ? "],\n" : "\n  ],\n");
+        json.append("  \"counters\": {");
+        boolean first = true;
+        for (Map.Entry<String, Long> counter : counterCopy.entrySet()) {
+            json.append(first ? "\n" : ",\n").append("    ").append(quote(counter.getKey())).append(": ").append(counter.getValue());
+            first = false;
+        }
+        json.append(counterCopy.isEmpty() ? "}\n" : "\n  }\n");
+        json.append("}\n");
+        return json.toString();
+    }
+
+    private synchronized void record(Stage stage, long nanos, long rows, long bytes, long allocated) {
+        StageStats stats = stages[stage.ordinal()];
+        stats.count++;
+        stats.totalNanos += nanos;
+        stats.minNanos = Math.min(stats.minNanos, nanos);
+        stats.maxNanos = Math.max(stats.maxNanos, nanos);
+        stats.rows += rows;
+        stats.bytes += bytes;
+        stats.allocatedBytes = allocated < 0 || stats.allocatedBytes < 0 ? -1 : stats.allocatedBytes + allocated;
+        long micros = nanos / 1000;
+        int bucket = micros < 2 ? 0 : 63 - Long.numberOfLeadingZeros(micros);
+        stats.buckets[Math.min(BUCKETS - 1, bucket)]++;
+    }
+
+    private static long allocatedBytes() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+            if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+                return threads.getCurrentThreadAllocatedBytes();
+            }
+        }
+        return -1;
+    }
+
+    private static String number(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    /** A JSON string literal. */
+    static String quote(String text) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
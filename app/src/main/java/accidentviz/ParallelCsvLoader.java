@@ -0,0 +1,406 @@
+package accidentviz;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Loads one large CSV file on all cores. The file is cut into byte ranges just after a line
+ * break, and each range is parsed into its own {@link ColumnTable} on the common fork/join
+ * pool; the parts are then joined in file order. Column types come from a
+ * {@link SchemaInference} per range, merged so that a column keeps a numeric or date type
+ * only if every range agrees.
+ *
+ * <p>A line break inside a quoted field cannot be told apart from the end of a row without
+ * reading the file from its start, so the cuts are guesses. A range that does not end exactly
+ * on a row boundary proves a guess wrong; the file is then loaded sequentially instead, with
+ * the same result as {@link TableLoader}.
+ */
+class ParallelCsvLoader {
+
+    /** Files are not split into ranges smaller than this. */
+    static final long MIN_CHUNK_BYTES = 16L << 20;
+    private static final int CHUNKS_PER_THREAD = 2;
+    /** Rows per range for type inference; the first range samples as many as {@link TableLoader}. */
+    private static final int SAMPLE_ROWS_PER_CHUNK = 1000;
+    private static final int PROGRESS_MILLIS = 100;
+    private static final int PROGRESS_ROWS = 1 << 14;
+    private static final int SCAN_BYTES = 1 << 16;
+
+    /** Called on the loading thread. */
+    interface Listener {
+        /** The header and the first rows of the file, as soon as they have been read. */
+        void firstRows(String[] headers, List<String[]> rows);
+
+        /** Roughly how many rows have been parsed so far. */
+        void progress(long rows);
+    }
+
+    private final int firstRowCount;
+    private final long minChunkBytes;
+    private final int maxChunks;
+    private final LongAdder rowsRead = new LongAdder();
+    private volatile CsvParser[] parsers = new CsvParser[0];
+    private volatile String[] headers;
+    private volatile boolean cancelled;
+    private long rowsEnd;
+    private boolean endedInRow;
+
+    ParallelCsvLoader(int firstRowCount) {
+        this(firstRowCount, MIN_CHUNK_BYTES, ForkJoinPool.getCommonPoolParallelism() * CHUNKS_PER_THREAD);
+    }
+
+    /** A loader that cuts files into at most the given number of ranges, none smaller than the given size. */
+    ParallelCsvLoader(int firstRowCount, long minChunkBytes, int maxChunks) {
+        this.firstRowCount = firstRowCount;
+        this.minChunkBytes = minChunkBytes;
+        this.maxChunks = maxChunks;
+    }
+
+    /** Whether the file is large enough, and there are enough cores, to load it in parallel. */
+    static boolean isWorthSplitting(File file) {
+        return ForkJoinPool.getCommonPoolParallelism() > 1 && file.length() >= 2 * MIN_CHUNK_BYTES;
+    }
+
+    /** Bytes parsed so far, over all ranges. */
+    long getBytesRead() {
+        long total = 0;
+        for (CsvParser parser : parsers) {
+            total += parser.getBytesRead();
+        }
+        return total;
+    }
+
+    /** Bytes of the file up to the end of its last complete row; see {@link CsvParser#getRowsEnd()}. */
+    long getRowsEnd() {
+        return rowsEnd;
+    }
+
+    /** Whether the file ends inside a row, without a line break after it. */
+    boolean endedInRow() {
+        return endedInRow;
+    }
+
+    /** The number of ranges the file was parsed in; 1 after a sequential load. */
+    int getRangeCount() {
+        return parsers.length;
+    }
+
+    /** The header row, or null until it has been read. */
+    String[] getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Loads the file and returns a finished {@link TableLoader} holding the table, its schema
+     * and date parser. Interrupting the calling thread stops the load.
+     */
+    TableLoader load(File file, Listener listener) throws IOException, InterruptedException {
+        TableLoader loader;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            loader = loadInParallel(channel, file.length(), listener);
+        }
+        // Null if there is no header, or a cut fell inside a quoted line break and misparsed a range.
+        return loader != null ? loader : loadSequentially(file, listener);
+    }
+
+    private TableLoader loadInParallel(FileChannel channel, long size, Listener listener)
+            throws IOException, InterruptedException {
+        new CsvParser().parseRange(channel, 0, size, new CsvParser.RowHandler() {
+            public boolean handleRow(String[] fields) {
+                headers = fields;
+                return false;
+            }
+        });
+        if (headers == null) {
+            return null;
+        }
+        long[] starts = split(channel, size);
+        List<Chunk> chunks = new ArrayList<>(starts.length);
+        for (int k = 0; k < starts.length; k++) {
+            chunks.add(new Chunk(channel, starts[k], k + 1 < starts.length ? starts[k + 1] : size));
+        }
+
+        List<SampleTask> sampleTasks = new ArrayList<>();
+        for (Chunk chunk : chunks) {
+            sampleTasks.add(new SampleTask(chunk));
+        }
+        List<List<String[]>> samples = run(sampleTasks, null);
+        SchemaInference inference = sampleTasks.get(0).inference;
+        for (int k = 1; k < sampleTasks.size(); k++) {
+            inference.merge(sampleTasks.get(k).inference);
+        }
+        List<String[]> firstRows = samples.get(0);
+        if (listener != null) {
+            listener.firstRows(headers, firstRows.subList(0, Math.min(firstRowCount, firstRows.size())));
+        }
+
+        List<SchemaInference.ColumnSchema> schema = inference.getSchema();
+        ColumnTable.ColumnType[] types = new ColumnTable.ColumnType[headers.length];
+        DateParser dateParser = null;
+        for (int col = 0; col < headers.length; col++) {
+            types[col] = schema.get(col).type;
+            if (types[col] == ColumnTable.ColumnType.DATE) {
+                List<String> dates = new ArrayList<>();
+                for (List<String[]> sample : samples) {
+                    for (String[] row : sample) {
+                        if (col < row.length && !SchemaInference.isBlank(row[col])) {
+                            dates.add(row[col]);
+                        }
+                    }
+                }
+                dateParser = DateParser.detect(dates);
+            }
+        }
+        CsvParser[] chunkParsers = new CsvParser[chunks.size()];
+        List<BuildTask> buildTasks = new ArrayList<>();
+        for (int k = 0; k < chunks.size(); k++) {
+            chunkParsers[k] = new CsvParser();
+            buildTasks.add(new BuildTask(chunks.get(k), chunkParsers[k], types, dateParser));
+        }
+        parsers = chunkParsers;
+        List<ColumnTable> parts = run(buildTasks, listener);
+        for (int k = 0; k + 1 < buildTasks.size(); k++) {
+            if (!buildTasks.get(k).endsOnRowBoundary) {
+                return null;
+            }
+        }
+        for (BuildTask task : buildTasks) {
+            for (Map.Entry<String, Long> counter : task.rejected.getCounters().entrySet()) {
+                Metrics.GLOBAL.count(counter.getKey(), counter.getValue());
+            }
+        }
+        CsvParser last = chunkParsers[chunkParsers.length - 1];
+        rowsEnd = chunks.get(chunks.size() - 1).from + last.getRowsEnd();
+        endedInRow = last.endedInRow();
+        ColumnTable table = parts.size() == 1 ? parts.get(0) : ColumnTable.concat(parts);
+        return TableLoader.finished(headers, schema, dateParser, table);
+    }
+
+    private TableLoader loadSequentially(File file, final Listener listener) throws IOException {
+        CsvParser parser = new CsvParser();
+        parsers = new CsvParser[] {parser};
+        final TableLoader loader = new TableLoader();
+        parser.parse(file, new CsvParser.RowHandler() {
+            private long rows;
+
+            public boolean handleRow(String[] fields) {
+                if (Thread.currentThread().isInterrupted()) {
+                    cancelled = true;
+                    return false;
+                }
+                loader.handleRow(fields);
+                if (++rows % PROGRESS_ROWS == 0 && listener != null) {
+                    listener.progress(rows);
+                }
+                return true;
+            }
+        });
+        if (cancelled) {
+            throw new InterruptedIOException("Load cancelled");
+        }
+        rowsEnd = parser.getRowsEnd();
+        endedInRow = parser.endedInRow();
+        loader.finish();
+        return loader;
+    }
+
+    /** Starts of the ranges: 0, then the byte after the first line break past each even cut. */
+    private long[] split(FileChannel channel, long size) throws IOException {
+        long chunkCount = Math.max(1, Math.min(maxChunks, size / minChunkBytes));
+        long step = size / chunkCount;
+        List<Long> starts = new ArrayList<>();
+        starts.add(0L);
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BYTES);
+        for (long k = 1; k < chunkCount; k++) {
+            long start = nextLineStart(channel, Math.max(k * step, starts.get(starts.size() - 1)), size, buffer);
+            if (start < size && start > starts.get(starts.size() - 1)) {
+                starts.add(start);
+            }
+        }
+        long[] result = new long[starts.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = starts.get(i);
+        }
+        return result;
+    }
+
+    private static long nextLineStart(FileChannel channel, long position, long size, ByteBuffer buffer) throws IOException {
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) break;
+            byte[] bytes = buffer.array();
+            for (int i = 0; i < read; i++) {
+                if (bytes[i] == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * Runs the tasks on the common pool, calling the listener with progress until they are all
+     * done, and returns their results in order.
+     */
+    private <T> List<T> run(final List<? extends RecursiveTask<T>> tasks, Listener listener)
+            throws IOException, InterruptedException {
+        ForkJoinTask<?> all = ForkJoinPool.commonPool().submit(new Runnable() {
+            public void run() {
+                ForkJoinTask.invokeAll(tasks);
+            }
+        });
+        try {
+            while (true) {
+                try {
+                    all.get(PROGRESS_MILLIS, TimeUnit.MILLISECONDS);
+                    break;
+                } catch (TimeoutException e) {
+                    if (listener != null) {
+                        listener.progress(rowsRead.sum());
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            cancelled = true;
+            throw e;
+        } catch (ExecutionException e) {
+            cancelled = true;
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+        List<T> results = new ArrayList<>(tasks.size());
+        for (RecursiveTask<T> task : tasks) {
+            results.add(task.join());
+        }
+        return results;
+    }
+
+    /** One byte range of the file; the first one starts with the header row. */
+    private static final class Chunk {
+        final FileChannel channel;
+        final long from;
+        final long to;
+
+        Chunk(FileChannel channel, long from, long to) {
+            this.channel = channel;
+            this.from = from;
+            this.to = to;
+        }
+
+        boolean hasHeader() {
+            return from == 0;
+        }
+    }
+
+    /** Infers column types from the first rows of a range, and keeps those rows. */
+    private final class SampleTask extends RecursiveTask<List<String[]>> {
+        private static final long serialVersionUID = 1L;
+        private final Chunk chunk;
+        SchemaInference inference;
+
+        SampleTask(Chunk chunk) {
+            this.chunk = chunk;
+        }
+
+        protected List<String[]> compute() {
+            inference = new SchemaInference(headers,
+                    chunk.hasHeader() ? SchemaInference.DEFAULT_SAMPLE_ROWS : SAMPLE_ROWS_PER_CHUNK);
+            final List<String[]> sample = new ArrayList<>();
+            try {
+                new CsvParser().parseRange(chunk.channel, chunk.from, chunk.to, new CsvParser.RowHandler() {
+                    private boolean skipHeader = chunk.hasHeader();
+                    private boolean settled;
+
+                    public boolean handleRow(String[] fields) {
+                        if (skipHeader) {
+                            skipHeader = false;
+                            return true;
+                        }
+                        sample.add(fields);
+                        settled = settled || !inference.accept(fields);
+                        // The first range also supplies the preview.
+                        return !cancelled && (!settled || chunk.hasHeader() && sample.size() < firstRowCount);
+                    }
+                });
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return sample;
+        }
+    }
+
+    /** Parses a whole range into a table with the merged column types. */
+    private final class BuildTask extends RecursiveTask<ColumnTable> {
+        private static final long serialVersionUID = 1L;
+        private final Chunk chunk;
+        private final CsvParser parser;
+        private final ColumnTable.ColumnType[] types;
+        private final DateParser dateParser;
+        final Metrics rejected = new Metrics();
+        boolean endsOnRowBoundary;
+
+        BuildTask(Chunk chunk, CsvParser parser, ColumnTable.ColumnType[] types, DateParser dateParser) {
+            this.chunk = chunk;
+            this.parser = parser;
+            this.types = types;
+            this.dateParser = dateParser;
+        }
+
+        protected ColumnTable compute() {
+            final ColumnTable.Builder builder = new ColumnTable.Builder(headers, types,
+                    dateParser == null ? null : dateParser::parseEpochDay);
+            long rows;
+            try {
+                rows = parser.parseRange(chunk.channel, chunk.from, chunk.to, new CsvParser.RowHandler() {
+                    private boolean skipHeader = chunk.hasHeader();
+                    private int unreported;
+
+                    public boolean handleRow(String[] fields) {
+                        if (skipHeader) {
+                            skipHeader = false;
+                            return true;
+                        }
+                        builder.addRow(fields);
+                        if (++unreported == PROGRESS_ROWS) {
+                            rowsRead.add(unreported);
+                            unreported = 0;
+                        }
+                        return !cancelled;
+                    }
+                });
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            endsOnRowBoundary = rows >= 0;
+            ColumnTable table = builder.build();
+            builder.reportRejected(rejected);
+            return table;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package accidentviz;
+
+import javax.swing.*;
+import javax.swing.event.ListSelectionEvent;
+import javax.swing.event.ListSelectionListener;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Non-modal window showing a {@link ColumnProfile}: rows, missing values, distinct values and
+ * quantiles per column, and the most frequent values of the selected column. Distinct counts
+ * and quantiles come from sketches and are approximate; frequent value counts show their
+ * error bound when they have one.
+ */
+class ProfileDialog extends JDialog {
+    private static final long serialVersionUID = 1L;
+
+    private static final int TOP_VALUES = 10;
+    private static final double[] QUANTILES = {0, 0.25, 0.5, 0.75, 0.99, 1};
+    private static final String[] COLUMNS = {
+        "Column", "Type", "Rows", "Missing", "Distinct (approx.)", "Min", "25%", "Median", "75%", "99%", "Max"
+    };
+
+    private final ColumnProfile profile;
+    private final JTextArea detailArea = new JTextArea(10, 60);
+
+    ProfileDialog(Frame owner, ColumnProfile profile) {
+        super(owner, "Column Profile", false);
+        this.profile = profile;
+
+        final JTable columnTable = new JTable(new ProfileTableModel(profile));
+        columnTable.getColumnModel().getColumn(0).setPreferredWidth(160);
+        columnTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        columnTable.getSelectionModel().addListSelectionListener(new ListSelectionListener() {
+            public void valueChanged(ListSelectionEvent e) {
+                if (!e.getValueIsAdjusting()) {
+                    showDetails(columnTable.getSelectedRow());
+                }
+            }
+        });
+        detailArea.setEditable(false);
+
+        JButton closeButton = new JButton("Close");
+        closeButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                dispose();
+            }
+        });
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        buttons.add(closeButton);
+
+        JPanel tables = new JPanel(new BorderLayout(0, 10));
+        tables.add(new JScrollPane(columnTable), BorderLayout.CENTER);
+        tables.add(new JScrollPane(detailArea), BorderLayout.SOUTH);
+
+        JPanel content = new JPanel(new BorderLayout(0, 10));
+        content.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+        content.add(new JLabel("Select a column to see its most frequent values or its distribution."), BorderLayout.NORTH);
+        content.add(tables, BorderLayout.CENTER);
+        content.add(buttons, BorderLayout.SOUTH);
+        setContentPane(content);
+        setSize(1000, 520);
+        setLocationRelativeTo(owner);
+        if (profile.columns.length > 0) {
+            columnTable.setRowSelectionInterval(0, 0);
+        }
+    }
+
+    private void showDetails(int col) {
+        if (col < 0) {
+            detailArea.setText("");
+            return;
+        }
+        ColumnProfile.Column column = profile.columns[col];
+        StringBuilder text = new StringBuilder();
+        if (column.topValues != null) {
+            List<HeavyHitters.Entry> top = column.topValues.top(TOP_VALUES);
+            text.append(String.format("Most frequent values of %s:%n", column.name));
+            for (HeavyHitters.Entry entry : top) {
+                text.append(entry.error == 0
+                        ? String.format("  %s: %,d%n", entry.value, entry.count)
+                        : String.format("  %s: %,d to %,d%n", entry.value, entry.count - entry.error, entry.count));
+            }
+            if (top.isEmpty()) {
+                text.append("  No values.");
+            }
+        } else {
+            double[] deciles = new double[11];
+            for (int i = 0; i < deciles.length; i++) {
+                deciles[i] = i / 10.0;
+            }
+            double[] values = column.quantiles.quantiles(deciles);
+            text.append(String.format("Deciles of %s, over %,d values:%n", column.name, column.quantiles.getCount()));
+            for (int i = 0; i < values.length; i++) {
+                text.append(String.format("  %3d%%: %s%n", i * 10, format(column, values[i])));
+            }
+        }
+        detailArea.setText(text.toString());
+        detailArea.setCaretPosition(0);
+    }
+
+    /** A number with up to six significant digits, or an ISO date for a date column. */
+    private static String format(ColumnProfile.Column column, double value) {
+        if (Double.isNaN(value)) return "";
+        if (column.type == ColumnTable.ColumnType.DATE) {
+            return LocalDate.ofEpochDay(Math.round(value)).toString();
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return String.format("%,d", (long) value);
+        }
+        return new BigDecimal(value).round(new MathContext(6)).stripTrailingZeros().toPlainString();
+    }
+
+    private static final class ProfileTableModel extends AbstractTableModel {
+        private static final long serialVersionUID = 1L;
+        private final ColumnProfile profile;
+        /** The quantiles of each numeric or date column, computed once. */
+        private final double[][] quantiles;
+
+        ProfileTableModel(ColumnProfile profile) {
+            this.profile = profile;
+            this.quantiles = new double[profile.columns.length][];
+            for (int col = 0; col < quantiles.length; col++) {
+                QuantileSketch sketch = profile.columns[col].quantiles;
+                quantiles[col] = sketch == null ? null : sketch.quantiles(QUANTILES);
+            }
+        }
+
+        public int getRowCount() {
+            return profile.columns.length;
+        }
+
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        public String getColumnName(int column) {
+            return COLUMNS[column];
+        }
+
+        public Object getValueAt(int row, int column) {
+            ColumnProfile.Column stats = profile.columns[row];
+            switch (column) {
+                case 0:
+                    return stats.name;
+                case 1:
+                    return stats.type.toString();
+                case 2:
+                    return String.format("%,d", stats.rows);
+                case 3:
+                    return String.format("%,d", stats.missing);
+                case 4:
+                    return String.format("%,d", stats.distinct.estimate());
+                default:
+                    return quantiles[row] == null ? "" : format(stats, quantiles[row][column - 5]);
+            }
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package accidentviz;
+
+import java.util.Arrays;
+
+/**
+ * Approximate quantiles of a stream of numbers in a few thousand doubles, after Karnin, Lang
+ * and Liberty's KLL sketch. Values go into a buffer at level 0; a full level is sorted and
+ * every other value, from a random start, moves up a level with twice the weight. Upper
+ * levels get the most room, so with the default k the rank of a returned quantile is off by
+ * about 1% of the count. Min, max and count are exact. Sketches merge by pooling their
+ * levels and compacting again, so parts of a table can be sketched separately.
+ */
+class QuantileSketch {
+
+    static final int DEFAULT_K = 200;
+    /** Each level below the top gets this fraction of the room of the level above. */
+    private static final double SHRINK = 2.0 / 3.0;
+
+    private final int k;
+    private double[][] levels = new double[0][];
+    private int[] sizes = new int[0];
+    private int size;
+    private int maxSize;
+    private long count;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    /** Xorshift state choosing which half of a compacted level survives; fixed, so results repeat. */
+    private long random = 0x2545F4914F6CDD1DL;
+
+    QuantileSketch() {
+        this(DEFAULT_K);
+    }
+
+    QuantileSketch(int k) {
+        this.k = k;
+        grow();
+    }
+
+    /** Adds a value; NaN, the missing value of numeric columns, is ignored. */
+    void add(double value) {
+        if (Double.isNaN(value)) return;
+        count++;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        append(0, value);
+        size++;
+        if (size >= maxSize) {
+            compress();
+        }
+    }
+
+    /** Folds in the values another sketch has seen. */
+    void merge(QuantileSketch other) {
+        while (levels.length < other.levels.length) {
+            grow();
+        }
+        for (int level = 0; level < other.levels.length; level++) {
+            for (int i = 0; i < other.sizes[level]; i++) {
+                append(level, other.levels[level][i]);
+            }
+            size += other.sizes[level];
+        }
+        count += other.count;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        while (size >= maxSize) {
+            compress();
+        }
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    /** The smallest value, or NaN if there are none. */
+    double getMin() {
+        return count == 0 ? Double.NaN : min;
+    }
+
+    /** The largest value, or NaN if there are none. */
+    double getMax() {
+        return count == 0 ? Double.NaN : max;
+    }
+
+    /**
+     * The value at each fraction of the sorted values, e.g. 0.5 for the median; 0 and 1 give
+     * the exact min and max. NaN if there are no values.
+     */
+    double[] quantiles(double... fractions) {
+        double[] result = new double[fractions.length];
+        if (count == 0) {
+            Arrays.fill(result, Double.NaN);
+            return result;
+        }
+        double[] values = new double[size];
+        long[] weights = new long[size];
+        int n = 0;
+        for (int level = 0; level < levels.length; level++) {
+            for (int i = 0; i < sizes[level]; i++) {
+                values[n] = levels[level][i];
+                weights[n++] = 1L << level;
+            }
+        }
+        sortByValue(values, weights, n);
+        long totalWeight = 0;
+        for (int i = 0; i < n; i++) {
+            totalWeight += weights[i];
+        }
+        for (int f = 0; f < fractions.length; f++) {
+            double fraction = fractions[f];
+            if (fraction <= 0) {
+                result[f] = min;
+            } else if (fraction >= 1) {
+                result[f] = max;
+            } else {
+                double target = fraction * totalWeight;
+                long seen = 0;
+                int i = 0;
+                while (i < n - 1 && seen + weights[i] < target) {
+                    seen += weights[i++];
+                }
+                result[f] = values[i];
+            }
+        }
+        return result;
+    }
+
+    long estimatedBytes() {
+        long bytes = 96;
+        for (double[] level : levels) {
+            bytes += 16 + 8L * level.length;
+        }
+        return bytes;
+    }
+
+    private int capacity(int level) {
+        int height = levels.length - level - 1;
+        return Math.max(2, (int) Math.ceil(k * Math.pow(SHRINK, height)) + 1);
+    }
+
+    private void grow() {
+        levels = Arrays.copyOf(levels, levels.length + 1);
+        sizes = Arrays.copyOf(sizes, sizes.length + 1);
+        levels[levels.length - 1] = new double[0];
+        maxSize = 0;
+        for (int level = 0; level < levels.length; level++) {
+            maxSize += capacity(level);
+        }
+    }
+
+    private void append(int level, double value) {
+        if (sizes[level] == levels[level].length) {
+            levels[level] = Arrays.copyOf(levels[level], Math.max(8, levels[level].length * 2));
+        }
+        levels[level][sizes[level]++] = value;
+    }
+
+    /** Compacts the lowest full levels until the sketch is back under its size. */
+    private void compress() {
+        for (int level = 0; level < levels.length; level++) {
+            if (sizes[level] >= capacity(level)) {
+                if (level + 1 == levels.length) {
+                    grow();
+                }
+                compact(level);
+                if (size < maxSize) break;
+            }
+        }
+    }
+
+    private void compact(int level) {
+        double[] values = levels[level];
+        int n = sizes[level];
+        Arrays.sort(values, 0, n);
+        random ^= random << 13;
+        random ^= random >>> 7;
+        random ^= random << 17;
+        // With an odd count the smallest value stays behind.
+        int odd = n & 1;
+        for (int i = odd + (int) (random & 1); i < n; i += 2) {
+            append(level + 1, values[i]);
+        }
+        size -= (n - odd) / 2;
+        sizes[level] = odd;
+    }
+
+    /** Sorts the values, moving each weight with its value. */
+    private static void sortByValue(double[] values, long[] weights, int n) {
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(values[a], values[b]));
+        double[] sortedValues = new double[n];
+        long[] sortedWeights = new long[n];
+        for (int i = 0; i < n; i++) {
+            sortedValues[i] = values[order[i]];
+            sortedWeights[i] = weights[order[i]];
+        }
+        System.arraycopy(sortedValues, 0, values, 0, n);
+        System.arraycopy(sortedWeights, 0, weights, 0, n);
+    }
+}
@@ -0,0 +1,479 @@
+package accidentviz;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.jfree.chart.ChartUtils;
+import org.jfree.chart.JFreeChart;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Headless HTTP server answering queries over one loaded dataset, for scripts and local
+ * dashboards:
+ *
+ * <pre>
+ * java -cp ... accidentviz.QueryServer [--port 8080] [--threads N] data.csv
+ *
+ * GET /columns
+ * GET /count?where=Weather_Conditions=Raining no high winds
+ * GET /groupby?category=District_Area&amp;value=Number_of_Casualties&amp;agg=mean&amp;top=10&amp;format=csv
+ * GET /timeseries?category=Accident_Severity&amp;value=Number_of_Casualties&amp;granularity=month
+ * GET /chart?spec=bar:category=District_Area,value=Number_of_Casualties&amp;size=800x400
+ * </pre>
+ *
+ * Results are JSON, or CSV with format=csv, and are written to the response as they are
+ * formatted; charts are PNG and take a spec as {@link BatchRenderer} does. Each where keeps
+ * only rows with that category value, as --where does. The server listens on the loopback
+ * address only. The table is never modified once loaded, so requests read it at the same
+ * time without locking, and aggregates are shared through one {@link AggregateCache}, so a
+ * repeated query is answered from memory. Requests run on a fixed pool of threads.
+ */
+class QueryServer {
+
+    static final int DEFAULT_PORT = 8080;
+    /** Connections waiting to be accepted; local scripts may open many at once. */
+    private static final int BACKLOG = 256;
+    private static final int MAX_CHART_SIZE = 4096;
+    private static final String JSON = "application/json; charset=utf-8";
+    private static final String CSV = "text/csv; charset=utf-8";
+
+    private final ChartBuilder charts;
+    private HttpServer server;
+    private ExecutorService pool;
+
+    QueryServer(ChartBuilder charts) {
+        this.charts = charts;
+    }
+
+    /** Starts listening on the loopback address; port 0 picks a free port. */
+    void start(int port, int threads) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+        pool = Executors.newFixedThreadPool(threads);
+        server.setExecutor(pool);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                serve(exchange);
+            }
+        });
+        server.start();
+    }
+
+    int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    void stop() {
+        server.stop(0);
+        pool.shutdownNow();
+    }
+
+    @SuppressWarnings("try")
+    private void serve(HttpExchange exchange) throws IOException {
+        try (Metrics.Span span = Metrics.GLOBAL.start(Metrics.Stage.QUERY)) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                sendError(exchange, 405, "Only GET is supported");
+                return;
+            }
+            Map<String, List<String>> params = parseQuery(exchange.getRequestURI().getRawQuery());
+            String path = exchange.getRequestURI().getPath();
+            switch (path) {
+                case "/columns":
+                    columns(exchange, params);
+                    break;
+                case "/count":
+                    count(exchange, params);
+                    break;
+                case "/groupby":
+                    groupBy(exchange, params);
+                    break;
+                case "/timeseries":
+                    timeSeries(exchange, params);
+                    break;
+                case "/chart":
+                    chart(exchange, params);
+                    break;
+                default:
+                    sendError(exchange, 404, "Unknown path " + path + "; try /columns, /count, /groupby, /timeseries or /chart");
+                    break;
+            }
+        } catch (IllegalArgumentException | IllegalStateException ex) {
+            sendError(exchange, 400, ex.getMessage());
+        } catch (RuntimeException ex) {
+            ex.printStackTrace();
+            sendError(exchange, 500, "Error answering query: " + ex.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void columns(HttpExchange exchange, Map<String, List<String>> params) throws IOException {
+        boolean csv = isCsv(params);
+        ColumnTable table = charts.getTable();
+        String[] headers = table.getHeaders();
+        try (Writer out = respond(exchange, csv)) {
+            if (csv) {
+                out.write("name,type\n");
+            } else {
+                out.write("{\"rows\": " + table.getRowCount() + ", \"columns\": [");
+            }
+            for (int col = 0; col < headers.length; col++) {
+                String type = table.getColumn(col).getType().name().toLowerCase(Locale.ROOT);
+                if (csv) {
+                    out.write(csvField(headers[col]) + "," + type + "\n");
+                } else {
+                    out.write((col == 0 ? "" : ", ") + "{\"name\": " + Metrics.quote(headers[col]) + ", \"type\": \"" + type + "\"}");
+                }
+            }
+            if (!csv) {
+                out.write("]}\n");
+            }
+        }
+    }
+
+    private void count(HttpExchange exchange, Map<String, List<String>> params) throws IOException {
+        boolean csv = isCsv(params);
+        int rows = filtered(params).countRows();
+        try (Writer out = respond(exchange, csv)) {
+            out.write(csv ? "rows\n" + rows + "\n" : "{\"rows\": " + rows + "}\n");
+        }
+    }
+
+    /** Count and one aggregate of a numeric column per category; only the counts without a value column. */
+    private void groupBy(HttpExchange exchange, Map<String, List<String>> params) throws IOException {
+        boolean csv = isCsv(params);
+        ChartBuilder builder = filtered(params);
+        String category = require(params, "category");
+        int catIndex = ChartSpec.findColumn(builder, category, ColumnTable.ColumnType.CATEGORY);
+        String value = param(params, "value");
+        int numIndex = value == null ? -1 : ChartSpec.findColumn(builder, value, ColumnTable.ColumnType.NUMERIC);
+        GroupByAggregator.Aggregation aggregation = aggregation(params, numIndex >= 0);
+        String top = param(params, "top");
+        GroupByAggregator.Result result = builder.getGroupBy(catIndex, numIndex);
+
+        int[] codes;
+        if (top != null) {
+            codes = result.topK(positive(top, "top"), aggregation, code -> true);
+        } else {
+            int groups = 0;
+            codes = new int[result.size()];
+            for (int code = 0; code < result.size(); code++) {
+                if (result.counts[code] > 0) codes[groups++] = code;
+            }
+            codes = Arrays.copyOf(codes, groups);
+        }
+
+        try (Writer out = respond(exchange, csv)) {
+            if (csv) {
+                out.write("key,count,value\n");
+            } else {
+                out.write("{\"category\": " + Metrics.quote(category) + ", \"value\": " + (value == null ? "null" : Metrics.quote(value))
+                        + ", \"aggregation\": \"" + aggregation.name().toLowerCase(Locale.ROOT) + "\", \"groups\": [");
+            }
+            for (int i = 0; i < codes.length; i++) {
+                int code = codes[i];
+                String key = result.keys[code];
+                double aggregate = result.value(code, aggregation);
+                if (csv) {
+                    out.write(csvField(key) + "," + result.counts[code] + "," + number(aggregate, true) + "\n");
+                } else {
+                    out.write((i == 0 ? "\n" : ",\n") + "  {\"key\": " + Metrics.quote(key) + ", \"count\": " + result.counts[code]
+                            + ", \"value\": " + number(aggregate, false) + "}");
+                }
+            }
+            if (!csv) {
+                out.write("\n]}\n");
+            }
+        }
+    }
+
+    /**
+     * One aggregate of a numeric column per category and period, from the time rollup. The
+     * granularity is day, week, month or year; by default the finest that charts would show.
+     */
+    private void timeSeries(HttpExchange exchange, Map<String, List<String>> params) throws IOException {
+        boolean csv = isCsv(params);
+        ChartBuilder builder = filtered(params);
+        if (builder.getDateColumnIndex() < 0) {
+            throw new IllegalArgumentException("The dataset has no date column");
+        }
+        String category = require(params, "category");
+        int catIndex = ChartSpec.findColumn(builder, category, ColumnTable.ColumnType.CATEGORY);
+        String value = require(params, "value");
+        int numIndex = ChartSpec.findColumn(builder, value, ColumnTable.ColumnType.NUMERIC);
+        GroupByAggregator.Aggregation aggregation = aggregation(params, true);
+        TimeRollup.Granularity granularity = null;
+        String granularityName = param(params, "granularity");
+        if (granularityName != null) {
+            try {
+                granularity = TimeRollup.Granularity.valueOf(granularityName.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException("Unknown granularity: " + granularityName + "; use day, week, month or year");
+            }
+        }
+        TimeRollup rollup = builder.getTimeRollup(catIndex);
+        if (granularity == null) {
+            granularity = rollup.isEmpty() ? TimeRollup.Granularity.MONTH
+                    : TimeRollup.Granularity.fitting(rollup.minDay, rollup.maxDay, ChartBuilder.MAX_TIME_PERIODS);
+        }
+        int slot = rollup.slotOf(numIndex);
+
+        try (Writer out = respond(exchange, csv)) {
+            if (csv) {
+                out.write("key,period,count,value\n");
+            } else {
+                out.write("{\"category\": " + Metrics.quote(category) + ", \"value\": " + Metrics.quote(value)
+                        + ", \"aggregation\": \"" + aggregation.name().toLowerCase(Locale.ROOT)
+                        + "\", \"granularity\": \"" + granularity.label + "\", \"points\": [");
+            }
+            boolean first = true;
+            for (int code = 0; code < rollup.keys.length; code++) {
+                TimeRollup.Series series = rollup.getSeries(granularity, code);
+                String key = rollup.keys[code];
+                for (int i = 0; i < series.size(); i++) {
+                    int count = series.counts[slot][i];
+                    if (count == 0) continue;
+                    String period = LocalDate.ofEpochDay(series.periods[i]).toString();
+                    double aggregate = series.value(slot, i, aggregation);
+                    if (csv) {
+                        out.write(csvField(key) + "," + period + "," + count + "," + number(aggregate, true) + "\n");
+                    } else {
+                        out.write((first ? "\n" : ",\n") + "  {\"key\": " + Metrics.quote(key) + ", \"period\": \"" + period
+                                + "\", \"count\": " + count + ", \"value\": " + number(aggregate, false) + "}");
+                    }
+                    first = false;
+                }
+            }
+            if (!csv) {
+                out.write("\n]}\n");
+            }
+        }
+    }
+
+    private void chart(HttpExchange exchange, Map<String, List<String>> params) throws IOException {
+        ChartBuilder builder = filtered(params);
+        ChartSpec spec = ChartSpec.parse(require(params, "spec"), 1);
+        int width = 1150;
+        int height = 400;
+        String size = param(params, "size");
+        if (size != null) {
+            String[] parts = size.toLowerCase(Locale.ROOT).split("x");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Expected size=WIDTHxHEIGHT: " + size);
+            }
+            width = Math.min(MAX_CHART_SIZE, positive(parts[0], "width"));
+            height = Math.min(MAX_CHART_SIZE, positive(parts[1], "height"));
+        }
+        JFreeChart chart;
+        try (Metrics.Span span = Metrics.GLOBAL.start(Metrics.Stage.CHART)) {
+            span.addRows(builder.getTable().getRowCount());
+            chart = spec.build(builder);
+        }
+        byte[] png;
+        try (Metrics.Span span = Metrics.GLOBAL.start(Metrics.Stage.RENDER)) {
+            png = ChartUtils.encodeAsPNG(chart.createBufferedImage(width, height));
+            span.addBytes(png.length);
+        }
+        exchange.getResponseHeaders().set("Content-Type", "image/png");
+        exchange.sendResponseHeaders(200, png.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(png);
+        }
+    }
+
+    /** The charts over the rows matching the where parameters. */
+    private ChartBuilder filtered(Map<String, List<String>> params) {
+        List<String> conditions = params.get("where");
+        if (conditions == null) return charts;
+        RowFilter filter = BatchRenderer.parseFilter(charts.getTable(), conditions);
+        return filter.isEmpty() ? charts : charts.withFilter(filter);
+    }
+
+    /** The agg parameter; sum by default, and only count without a value column. */
+    private static GroupByAggregator.Aggregation aggregation(Map<String, List<String>> params, boolean hasValue) {
+        String name = param(params, "agg");
+        if (name == null) {
+            return hasValue ? GroupByAggregator.Aggregation.SUM : GroupByAggregator.Aggregation.COUNT;
+        }
+        GroupByAggregator.Aggregation aggregation;
+        try {
+            aggregation = GroupByAggregator.Aggregation.valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Unknown aggregation: " + name);
+        }
+        if (!hasValue && aggregation != GroupByAggregator.Aggregation.COUNT) {
+            throw new IllegalArgumentException("agg=" + name + " needs value=<column>");
+        }
+        return aggregation;
+    }
+
+    private static boolean isCsv(Map<String, List<String>> params) {
+        String format = param(params, "format");
+        if (format == null || format.equalsIgnoreCase("json")) return false;
+        if (format.equalsIgnoreCase("csv")) return true;
+        throw new IllegalArgumentException("Unknown format: " + format + "; use json or csv");
+    }
+
+    private static String param(Map<String, List<String>> params, String key) {
+        List<String> values = params.get(key);
+        return values == null || values.get(0).isEmpty() ? null : values.get(0);
+    }
+
+    private static String require(Map<String, List<String>> params, String key) {
+        String value = param(params, key);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing " + key + "=");
+        }
+        return value;
+    }
+
+    private static int positive(String value, String name) {
+        try {
+            int number = Integer.parseInt(value.trim());
+            if (number > 0) return number;
+        } catch (NumberFormatException ex) {
+            // Reported below.
+        }
+        throw new IllegalArgumentException("Invalid " + name + ": " + value);
+    }
+
+    private static Map<String, List<String>> parseQuery(String rawQuery) {
+        Map<String, List<String>> params = new HashMap<>();
+        if (rawQuery == null) return params;
+        for (String pair : rawQuery.split("&")) {
+            if (pair.isEmpty()) continue;
+            int equals = pair.indexOf('=');
+            String key = URLDecoder.decode(equals < 0 ? pair : pair.substring(0, equals), StandardCharsets.UTF_8);
+            String value = equals < 0 ? "" : URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8);
+            params.computeIfAbsent(key, k -> new ArrayList<>()).add(value);
+        }
+        return params;
+    }
+
+    /** Sends the status line and headers; the body follows in chunks as it is written. */
+    private static Writer respond(HttpExchange exchange, boolean csv) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", csv ? CSV : JSON);
+        exchange.sendResponseHeaders(200, 0);
+        return new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8));
+    }
+
+    /** Reports an error, unless the response has already started. */
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        if (exchange.getResponseCode() != -1) return;
+        byte[] body = (message + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    /** Whole numbers without a fraction; NaN, a mean over no values, as null, or empty in CSV. */
+    private static String number(double value, boolean csv) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) return csv ? "" : "null";
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) return Long.toString((long) value);
+        return Double.toString(value);
+    }
+
+    private static String csvField(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return '"' + value.replace("\"", "\"\"") + '"';
+            }
+        }
+        return value;
+    }
+
+    private static int usage(String message) {
+        System.err.println(message);
+        System.err.println("Usage: QueryServer [--port N] [--threads N] <dataset>");
+        return 2;
+    }
+
+    static int run(String[] args) throws IOException {
+        int port = DEFAULT_PORT;
+        int threads = 2 * Runtime.getRuntime().availableProcessors();
+        File dataset = null;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.startsWith("--")) {
+                if (i + 1 == args.length) return usage("Missing value for " + arg);
+                String value = args[++i];
+                try {
+                    switch (arg) {
+                        case "--port":
+                            port = Integer.parseInt(value);
+                            break;
+                        case "--threads":
+                            threads = Math.max(1, Integer.parseInt(value));
+                            break;
+                        default:
+                            return usage("Unknown option: " + arg);
+                    }
+                } catch (NumberFormatException ex) {
+                    return usage("Invalid value for " + arg + ": " + value);
+                }
+            } else if (dataset == null) {
+                dataset = new File(arg);
+            } else {
+                return usage("Only one dataset can be served: " + arg);
+            }
+        }
+        if (dataset == null) {
+            return usage("A dataset is required.");
+        }
+        if (!SnapshotFile.isSnapshot(dataset) && ExternalAggregator.isOutOfCore(dataset)) {
+            System.err.printf("%s is larger than %,d MB; the server needs every row in memory. Give it more heap"
+                    + " with -Xmx.%n", dataset.getName(), ExternalAggregator.defaultThreshold() >> 20);
+            return 1;
+        }
+
+        long start = System.nanoTime();
+        ColumnTable table;
+        try {
+            table = BatchRenderer.load(dataset);
+        } catch (IOException ex) {
+            System.err.println("Error loading file: " + ex.getMessage());
+            return 1;
+        }
+        AggregateCache aggregates = new AggregateCache(Runtime.getRuntime().maxMemory() / 16);
+        ChartBuilder charts = new ChartBuilder(table, aggregates, false);
+        charts.rollUpDates();
+        QueryServer server = new QueryServer(charts);
+        try {
+            server.start(port, threads);
+        } catch (IOException ex) {
+            System.err.println("Cannot listen on port " + port + ": " + ex.getMessage());
+            return 1;
+        }
+        System.out.printf("Loaded %,d rows in %,d ms; serving http://localhost:%d/%n", table.getRowCount(),
+                (System.nanoTime() - start) / 1_000_000, server.getPort());
+        return 0;
+    }
+
+    /** Runs until killed; the server's threads keep the JVM alive. */
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        int status = run(args);
+        if (status != 0) {
+            System.exit(status);
+        }
+    }
+}
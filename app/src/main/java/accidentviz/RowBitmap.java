@@ -0,0 +1,392 @@
+package accidentviz;
+
+import java.util.Arrays;
+
+/**
+ * Compressed set of row ids in the style of a roaring bitmap. Rows are split by their high 16
+ * bits into containers of up to 65536 rows; a container with few rows is a sorted array of
+ * the low 16 bits, a dense one is a 1024-word bitmap. AND and OR work container by container,
+ * so sparse filters stay small and dense ones combine a word at a time.
+ */
+class RowBitmap implements AggregateCache.Sized {
+
+    /** Containers with more rows than this are stored as bitmaps. */
+    private static final int ARRAY_LIMIT = 4096;
+    private static final int BITMAP_WORDS = 1 << 10;
+
+    /** Suggested size of the batches filled by a {@link Cursor}. */
+    static final int BATCH_SIZE = 4096;
+
+    static final RowBitmap EMPTY = new RowBitmap(new char[0], new Object[0], new int[0], 0);
+
+    /** Hands out row ids in ascending order, a batch at a time. */
+    abstract static class Cursor {
+        /** Fills the batch with the next row ids and returns how many; 0 once done. */
+        abstract int fill(int[] batch);
+    }
+
+    /** Adds rows in ascending order. */
+    static final class Builder {
+        private char[] keys = new char[4];
+        private Object[] containers = new Object[4];
+        private int[] cardinalities = new int[4];
+        private int size;
+        private int currentKey = -1;
+        private char[] values = new char[16];
+        private long[] bits;
+        private int count;
+
+        void add(int row) {
+            int key = row >>> 16;
+            if (key != currentKey) {
+                flush();
+                currentKey = key;
+            }
+            char low = (char) row;
+            if (bits != null) {
+                bits[low >>> 6] |= 1L << low;
+            } else if (count < ARRAY_LIMIT) {
+                if (count == values.length) values = Arrays.copyOf(values, count * 2);
+                values[count] = low;
+            } else {
+                bits = toBitmap(values, count);
+                bits[low >>> 6] |= 1L << low;
+            }
+            count++;
+        }
+
+        RowBitmap build() {
+            flush();
+            return new RowBitmap(Arrays.copyOf(keys, size), Arrays.copyOf(containers, size), Arrays.copyOf(cardinalities, size), size);
+        }
+
+        private void flush() {
+            if (count == 0) return;
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                containers = Arrays.copyOf(containers, size * 2);
+                cardinalities = Arrays.copyOf(cardinalities, size * 2);
+            }
+            keys[size] = (char) currentKey;
+            containers[size] = bits != null ? bits : Arrays.copyOf(values, count);
+            cardinalities[size] = count;
+            size++;
+            bits = null;
+            count = 0;
+        }
+    }
+
+    private final char[] keys;
+    /** Each container is a sorted char[] of low bits or a long[] bitmap. */
+    private final Object[] containers;
+    private final int[] cardinalities;
+    private final int size;
+
+    private RowBitmap(char[] keys, Object[] containers, int[] cardinalities, int size) {
+        this.keys = keys;
+        this.containers = containers;
+        this.cardinalities = cardinalities;
+        this.size = size;
+    }
+
+    /** Rows from..to-1 of the selection, or all of them if the selection is null. */
+    static Cursor rows(RowBitmap selection, int from, int to) {
+        return selection == null ? new RangeCursor(from, to) : selection.new BitmapCursor(from, to);
+    }
+
+    int cardinality() {
+        int total = 0;
+        for (int i = 0; i < size; i++) {
+            total += cardinalities[i];
+        }
+        return total;
+    }
+
+    boolean contains(int row) {
+        int index = Arrays.binarySearch(keys, 0, size, (char) (row >>> 16));
+        if (index < 0) return false;
+        char low = (char) row;
+        Object container = containers[index];
+        if (container instanceof long[]) {
+            return (((long[]) container)[low >>> 6] & (1L << low)) != 0;
+        }
+        return Arrays.binarySearch((char[]) container, low) >= 0;
+    }
+
+    RowBitmap and(RowBitmap other) {
+        ResultBuilder result = new ResultBuilder(Math.min(size, other.size));
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Object a = containers[i];
+                Object b = other.containers[j];
+                if (a instanceof char[] && b instanceof char[]) {
+                    result.add(keys[i], andArrays((char[]) a, (char[]) b));
+                } else if (a instanceof char[]) {
+                    result.add(keys[i], andArrayBitmap((char[]) a, (long[]) b));
+                } else if (b instanceof char[]) {
+                    result.add(keys[i], andArrayBitmap((char[]) b, (long[]) a));
+                } else {
+                    result.add(keys[i], andBitmaps((long[]) a, (long[]) b));
+                }
+                i++;
+                j++;
+            }
+        }
+        return result.build();
+    }
+
+    RowBitmap or(RowBitmap other) {
+        ResultBuilder result = new ResultBuilder(size + other.size);
+        int i = 0;
+        int j = 0;
+        while (i < size || j < other.size) {
+            if (j == other.size || (i < size && keys[i] < other.keys[j])) {
+                result.add(keys[i], containers[i], cardinalities[i]);
+                i++;
+            } else if (i == size || keys[i] > other.keys[j]) {
+                result.add(other.keys[j], other.containers[j], other.cardinalities[j]);
+                j++;
+            } else {
+                Object a = containers[i];
+                Object b = other.containers[j];
+                if (a instanceof char[] && b instanceof char[]) {
+                    result.add(keys[i], orArrays((char[]) a, (char[]) b));
+                } else if (a instanceof char[]) {
+                    result.add(keys[i], orArrayBitmap((char[]) a, (long[]) b));
+                } else if (b instanceof char[]) {
+                    result.add(keys[i], orArrayBitmap((char[]) b, (long[]) a));
+                } else {
+                    result.add(keys[i], orBitmaps((long[]) a, (long[]) b));
+                }
+                i++;
+                j++;
+            }
+        }
+        return result.build();
+    }
+
+    public long estimatedBytes() {
+        long bytes = 48 + 14L * keys.length;
+        for (int i = 0; i < size; i++) {
+            bytes += containers[i] instanceof long[] ? 16 + 8L * BITMAP_WORDS : 16 + 2L * cardinalities[i];
+        }
+        return bytes;
+    }
+
+    private static long[] toBitmap(char[] values, int count) {
+        long[] bits = new long[BITMAP_WORDS];
+        for (int i = 0; i < count; i++) {
+            bits[values[i] >>> 6] |= 1L << values[i];
+        }
+        return bits;
+    }
+
+    private static char[] andArrays(char[] a, char[] b) {
+        char[] out = new char[Math.min(a.length, b.length)];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) i++;
+            else if (a[i] > b[j]) j++;
+            else {
+                out[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    private static char[] andArrayBitmap(char[] a, long[] b) {
+        char[] out = new char[a.length];
+        int n = 0;
+        for (char value : a) {
+            if ((b[value >>> 6] & (1L << value)) != 0) out[n++] = value;
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    private static long[] andBitmaps(long[] a, long[] b) {
+        long[] out = new long[BITMAP_WORDS];
+        for (int w = 0; w < BITMAP_WORDS; w++) {
+            out[w] = a[w] & b[w];
+        }
+        return out;
+    }
+
+    private static Object orArrays(char[] a, char[] b) {
+        char[] out = new char[a.length + b.length];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length || j < b.length) {
+            if (j == b.length || (i < a.length && a[i] < b[j])) out[n++] = a[i++];
+            else if (i == a.length || a[i] > b[j]) out[n++] = b[j++];
+            else {
+                out[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return n > ARRAY_LIMIT ? toBitmap(out, n) : Arrays.copyOf(out, n);
+    }
+
+    private static long[] orArrayBitmap(char[] a, long[] b) {
+        long[] out = b.clone();
+        for (char value : a) {
+            out[value >>> 6] |= 1L << value;
+        }
+        return out;
+    }
+
+    private static long[] orBitmaps(long[] a, long[] b) {
+        long[] out = new long[BITMAP_WORDS];
+        for (int w = 0; w < BITMAP_WORDS; w++) {
+            out[w] = a[w] | b[w];
+        }
+        return out;
+    }
+
+    /** Collects the containers of an AND or OR, dropping empty ones and shrinking sparse bitmaps. */
+    private static final class ResultBuilder {
+        private final char[] keys;
+        private final Object[] containers;
+        private final int[] cardinalities;
+        private int size;
+
+        ResultBuilder(int capacity) {
+            keys = new char[capacity];
+            containers = new Object[capacity];
+            cardinalities = new int[capacity];
+        }
+
+        void add(char key, Object container) {
+            if (container instanceof char[]) {
+                add(key, container, ((char[]) container).length);
+                return;
+            }
+            long[] bits = (long[]) container;
+            int cardinality = 0;
+            for (long word : bits) {
+                cardinality += Long.bitCount(word);
+            }
+            if (cardinality > ARRAY_LIMIT) {
+                add(key, bits, cardinality);
+                return;
+            }
+            char[] values = new char[cardinality];
+            int n = 0;
+            for (int w = 0; w < BITMAP_WORDS; w++) {
+                for (long word = bits[w]; word != 0; word &= word - 1) {
+                    values[n++] = (char) ((w << 6) + Long.numberOfTrailingZeros(word));
+                }
+            }
+            add(key, values, cardinality);
+        }
+
+        void add(char key, Object container, int cardinality) {
+            if (cardinality == 0) return;
+            keys[size] = key;
+            containers[size] = container;
+            cardinalities[size] = cardinality;
+            size++;
+        }
+
+        RowBitmap build() {
+            return new RowBitmap(keys, containers, cardinalities, size);
+        }
+    }
+
+    private static final class RangeCursor extends Cursor {
+        private int next;
+        private final int to;
+
+        RangeCursor(int from, int to) {
+            this.next = from;
+            this.to = to;
+        }
+
+        int fill(int[] batch) {
+            int n = Math.min(batch.length, to - next);
+            for (int i = 0; i < n; i++) {
+                batch[i] = next + i;
+            }
+            next += n;
+            return Math.max(n, 0);
+        }
+    }
+
+    private final class BitmapCursor extends Cursor {
+        private int container;
+        /** Index into an array container, or bit number in a bitmap container. */
+        private int position;
+        private final int to;
+
+        BitmapCursor(int from, int to) {
+            this.to = to;
+            int index = Arrays.binarySearch(keys, 0, size, (char) (from >>> 16));
+            if (index >= 0) {
+                container = index;
+                char low = (char) from;
+                if (containers[index] instanceof char[]) {
+                    int found = Arrays.binarySearch((char[]) containers[index], low);
+                    position = found >= 0 ? found : -found - 1;
+                } else {
+                    position = low;
+                }
+            } else {
+                container = -index - 1;
+            }
+        }
+
+        int fill(int[] batch) {
+            int n = 0;
+            while (n < batch.length && container < size) {
+                int base = keys[container] << 16;
+                Object current = containers[container];
+                if (current instanceof char[]) {
+                    char[] values = (char[]) current;
+                    while (position < values.length && n < batch.length) {
+                        int row = base | values[position];
+                        if (row >= to) {
+                            container = size;
+                            return n;
+                        }
+                        batch[n++] = row;
+                        position++;
+                    }
+                    if (position < values.length) break;
+                } else {
+                    long[] bits = (long[]) current;
+                    while (position < 1 << 16 && n < batch.length) {
+                        int w = position >>> 6;
+                        long word = bits[w] & (-1L << position);
+                        if (word == 0) {
+                            position = (w + 1) << 6;
+                            continue;
+                        }
+                        int bit = (w << 6) + Long.numberOfTrailingZeros(word);
+                        int row = base | bit;
+                        if (row >= to) {
+                            container = size;
+                            return n;
+                        }
+                        batch[n++] = row;
+                        position = bit + 1;
+                    }
+                    if (position < 1 << 16) break;
+                }
+                container++;
+                position = 0;
+            }
+            return n;
+        }
+    }
+}
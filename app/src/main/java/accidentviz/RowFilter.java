@@ -0,0 +1,125 @@
+package accidentviz;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.IntFunction;
+
+/**
+ * Selected values per category column. Rows match if, for every filtered column, they hold
+ * one of the selected values: values of one column are OR'ed and columns are AND'ed.
+ * Immutable; {@link #with} returns a changed copy.
+ */
+final class RowFilter {
+
+    static final RowFilter NONE = new RowFilter(new TreeMap<>());
+
+    /** Sorted codes per column index. */
+    private final TreeMap<Integer, int[]> codes;
+
+    private RowFilter(TreeMap<Integer, int[]> codes) {
+        this.codes = codes;
+    }
+
+    /** A copy with the column's selection replaced; no codes removes the column from the filter. */
+    RowFilter with(int column, int[] selected) {
+        TreeMap<Integer, int[]> copy = new TreeMap<>(codes);
+        if (selected == null || selected.length == 0) {
+            copy.remove(column);
+        } else {
+            int[] sorted = selected.clone();
+            Arrays.sort(sorted);
+            copy.put(column, sorted);
+        }
+        return new RowFilter(copy);
+    }
+
+    boolean isEmpty() {
+        return codes.isEmpty();
+    }
+
+    Set<Integer> getColumns() {
+        return codes.keySet();
+    }
+
+    /** The selected codes of a column, or an empty array if it is not filtered. */
+    int[] getCodes(int column) {
+        int[] selected = codes.get(column);
+        return selected == null ? new int[0] : selected.clone();
+    }
+
+    /** Canonical form, used in cache keys. */
+    String key() {
+        StringBuilder key = new StringBuilder();
+        for (Map.Entry<Integer, int[]> entry : codes.entrySet()) {
+            if (key.length() > 0) key.append(';');
+            key.append(entry.getKey()).append('=').append(Arrays.toString(entry.getValue()));
+        }
+        return key.toString();
+    }
+
+    /** For chart subtitles, e.g. "Weather_Conditions = Fine, Raining; Urban_or_Rural = Urban". */
+    String describe(ColumnTable table) {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<Integer, int[]> entry : codes.entrySet()) {
+            if (text.length() > 0) text.append("; ");
+            ColumnTable.CategoryColumn column = table.getCategoryColumn(entry.getKey());
+            text.append(table.getHeaders()[entry.getKey()]).append(" = ");
+            int[] selected = entry.getValue();
+            for (int i = 0; i < selected.length; i++) {
+                if (i > 0) text.append(", ");
+                text.append(column.dictionary[selected[i]]);
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Evaluates the filter with the given per-column indexes: an OR within each column, then an
+     * AND across columns starting from the smallest. Returns null when nothing is filtered.
+     */
+    RowBitmap select(IntFunction<BitmapIndex> indexes) {
+        if (codes.isEmpty()) return null;
+        List<RowBitmap> perColumn = new ArrayList<>();
+        for (Map.Entry<Integer, int[]> entry : codes.entrySet()) {
+            perColumn.add(indexes.apply(entry.getKey()).rowsWithAny(entry.getValue()));
+        }
+        perColumn.sort(Comparator.comparingInt(RowBitmap::cardinality));
+        RowBitmap result = perColumn.get(0);
+        for (int i = 1; i < perColumn.size(); i++) {
+            result = result.and(perColumn.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * The matching rows among from..to-1, found by looking at each row's codes. Meant for a
+     * small range, such as rows just appended to the table, where building indexes would cost
+     * more than it saves. Returns null when nothing is filtered.
+     */
+    RowBitmap select(ColumnTable table, int from, int to) {
+        if (codes.isEmpty()) return null;
+        int[] columns = new int[codes.size()];
+        int[][] selected = new int[columns.length][];
+        int next = 0;
+        for (Map.Entry<Integer, int[]> entry : codes.entrySet()) {
+            columns[next] = entry.getKey();
+            selected[next++] = entry.getValue();
+        }
+        RowBitmap.Builder result = new RowBitmap.Builder();
+        for (int row = from; row < to; row++) {
+            boolean matches = true;
+            for (int i = 0; i < columns.length && matches; i++) {
+                matches = Arrays.binarySearch(selected[i], table.getCategoryColumn(columns[i]).getCode(row)) >= 0;
+            }
+            if (matches) {
+                result.add(row);
+            }
+        }
+        return result.build();
+    }
+}
@@ -0,0 +1,17 @@
+package accidentviz;
+
+import java.io.File;
+import java.io.IOException;
+
+/** A file format that can be read as rows of text fields, e.g. into a {@link TableLoader}. */
+interface RowReader {
+
+    /** Reads the file, header row first, and returns the number of rows. */
+    long parse(File file, CsvParser.RowHandler handler) throws IOException;
+
+    /**
+     * How far the current or last parse has got, in bytes of the file; safe to poll from
+     * another thread.
+     */
+    long getBytesRead();
+}
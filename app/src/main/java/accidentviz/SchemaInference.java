@@ -0,0 +1,219 @@
+package accidentviz;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Infers column types in a single row-major pass. Every cell is checked by hand-written
+ * recognizers that never throw or allocate. A column is settled as a category as soon as
+ * one value is neither a number nor a date; numeric and date columns are settled once the
+ * sample limit is reached, after which no more rows need to be inspected.
+ */
+class SchemaInference {
+
+    static final int DEFAULT_SAMPLE_ROWS = 10_000;
+
+    static final class ColumnSchema {
+        final String name;
+        final ColumnTable.ColumnType type;
+        final long rowsInspected;
+        final long nullCount;
+        /** Share of inspected values that fit the type, discounted for small samples. */
+        final double confidence;
+
+        ColumnSchema(String name, ColumnTable.ColumnType type, long rowsInspected, long nullCount, double confidence) {
+            this.name = name;
+            this.type = type;
+            this.rowsInspected = rowsInspected;
+            this.nullCount = nullCount;
+            this.confidence = confidence;
+        }
+
+        public String toString() {
+            return String.format("%s: %s (%.1f%% confidence, %d nulls in %d rows)",
+                    name, type, confidence * 100, nullCount, rowsInspected);
+        }
+    }
+
+    private final String[] headers;
+    private final int sampleRows;
+    private final boolean[] maybeNumeric;
+    private final boolean[] maybeDate;
+    private final long[] nullCounts;
+    private final long[] valueCounts;
+    private int unsettled;
+    private long rowsInspected;
+
+    SchemaInference(String[] headers) {
+        this(headers, DEFAULT_SAMPLE_ROWS);
+    }
+
+    SchemaInference(String[] headers, int sampleRows) {
+        this.headers = headers;
+        this.sampleRows = sampleRows;
+        this.maybeNumeric = new boolean[headers.length];
+        this.maybeDate = new boolean[headers.length];
+        this.nullCounts = new long[headers.length];
+        this.valueCounts = new long[headers.length];
+        Arrays.fill(maybeNumeric, true);
+        Arrays.fill(maybeDate, true);
+        this.unsettled = headers.length;
+    }
+
+    /** Inspects one row and returns false once every column type is settled. */
+    boolean accept(String[] row) {
+        if (isSettled()) return false;
+        rowsInspected++;
+        for (int col = 0; col < headers.length; col++) {
+            if (!maybeNumeric[col] && !maybeDate[col]) continue;
+            if (col >= row.length || isBlank(row[col])) {
+                nullCounts[col]++;
+                continue;
+            }
+            String value = row[col];
+            valueCounts[col]++;
+            if (maybeNumeric[col] && !isNumber(value)) {
+                maybeNumeric[col] = false;
+            }
+            if (maybeDate[col] && !isDate(value)) {
+                maybeDate[col] = false;
+            }
+            if (!maybeNumeric[col] && !maybeDate[col]) {
+                unsettled--;
+            }
+        }
+        return !isSettled();
+    }
+
+    /**
+     * Adds what another inference over the same columns saw, e.g. in another part of the
+     * file, so that a column keeps a type only if it fits every part.
+     */
+    void merge(SchemaInference other) {
+        rowsInspected += other.rowsInspected;
+        unsettled = 0;
+        for (int col = 0; col < headers.length; col++) {
+            maybeNumeric[col] &= other.maybeNumeric[col];
+            maybeDate[col] &= other.maybeDate[col];
+            nullCounts[col] += other.nullCounts[col];
+            valueCounts[col] += other.valueCounts[col];
+            if (maybeNumeric[col] || maybeDate[col]) {
+                unsettled++;
+            }
+        }
+    }
+
+    boolean isSettled() {
+        return unsettled == 0 || rowsInspected >= sampleRows;
+    }
+
+    /** Returns the schema; only the first date-like column is typed as a date. */
+    List<ColumnSchema> getSchema() {
+        List<ColumnSchema> schema = new ArrayList<>(headers.length);
+        boolean dateAssigned = false;
+        for (int col = 0; col < headers.length; col++) {
+            ColumnTable.ColumnType type;
+            if (valueCounts[col] == 0) {
+                type = ColumnTable.ColumnType.CATEGORY;
+            } else if (maybeDate[col] && !dateAssigned) {
+                type = ColumnTable.ColumnType.DATE;
+                dateAssigned = true;
+            } else if (maybeNumeric[col] && !maybeDate[col]) {
+                type = ColumnTable.ColumnType.NUMERIC;
+            } else {
+                type = ColumnTable.ColumnType.CATEGORY;
+            }
+            double confidence = 1.0;
+            if (type != ColumnTable.ColumnType.CATEGORY) {
+                // Rule of three: with n agreeing values, the 95% upper bound on the miss rate is 3/n.
+                confidence = Math.max(0.0, 1.0 - 3.0 / Math.max(1, valueCounts[col]));
+            }
+            schema.add(new ColumnSchema(headers[col], type, rowsInspected, nullCounts[col], confidence));
+        }
+        return Collections.unmodifiableList(schema);
+    }
+
+    static boolean isBlank(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) > ' ') return false;
+        }
+        return true;
+    }
+
+    /** Decimal number with optional sign, fraction and exponent, surrounded by optional whitespace. */
+    static boolean isNumber(String value) {
+        int end = value.length();
+        int i = 0;
+        while (i < end && value.charAt(i) <= ' ') i++;
+        while (end > i && value.charAt(end - 1) <= ' ') end--;
+        if (i < end && (value.charAt(i) == '-' || value.charAt(i) == '+')) i++;
+
+        int digits = 0;
+        while (i < end && isDigit(value.charAt(i))) {
+            i++;
+            digits++;
+        }
+        if (i < end && value.charAt(i) == '.') {
+            i++;
+            while (i < end && isDigit(value.charAt(i))) {
+                i++;
+                digits++;
+            }
+        }
+        if (digits == 0) return false;
+
+        if (i < end && (value.charAt(i) == 'e' || value.charAt(i) == 'E')) {
+            i++;
+            if (i < end && (value.charAt(i) == '-' || value.charAt(i) == '+')) i++;
+            int exponentDigits = 0;
+            while (i < end && isDigit(value.charAt(i))) {
+                i++;
+                exponentDigits++;
+            }
+            if (exponentDigits == 0) return false;
+        }
+        return i == end;
+    }
+
+    /**
+     * Matches the shapes of the supported date formats: yyyy-MM-dd style with the year first,
+     * or dd-MM-yyyy, MM/dd/yyyy and dd/MM/yyyy style with the year last.
+     */
+    static boolean isDate(String value) {
+        int end = value.length();
+        int i = 0;
+        while (i < end && value.charAt(i) <= ' ') i++;
+        while (end > i && value.charAt(end - 1) <= ' ') end--;
+
+        int group0 = 0, group1 = 0, group2 = 0;
+        int count = 0;
+        char separator = 0;
+        int length = 0;
+        for (; i <= end; i++) {
+            char c = i < end ? value.charAt(i) : 0;
+            if (i < end && isDigit(c)) {
+                length++;
+                continue;
+            }
+            if (length == 0 || count == 3) return false;
+            if (count == 0) group0 = length;
+            else if (count == 1) group1 = length;
+            else group2 = length;
+            count++;
+            length = 0;
+            if (i == end) break;
+            if (c != '-' && c != '/') return false;
+            if (separator == 0) separator = c;
+            else if (c != separator) return false;
+        }
+        if (count != 3 || group1 > 2) return false;
+        if (group0 == 4) return separator == '-' && group2 <= 2;
+        return group0 <= 2 && group2 == 4;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
@@ -0,0 +1,287 @@
+package accidentviz;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Binary snapshot of a loaded {@link ColumnTable} and its inferred schema. Reopening a
+ * snapshot maps each column with {@link FileChannel#map}, so the data is queryable at once,
+ * stays off the Java heap and is paged in by the OS as the charts touch it. Only headers,
+ * schema and category dictionaries are read onto the heap.
+ *
+ * <p>Layout: an 8-byte magic and the offset of the metadata block, then one little-endian,
+ * 8-byte aligned data block per column, then the metadata block written with
+ * {@link DataOutputStream}. The last byte of the magic is the format version.
+ *
+ * <p>A snapshot is written to a temporary file next to the target and moved over it once
+ * complete, so a failed or cancelled save leaves any previous file intact, and a table mapped
+ * from the previous file keeps reading the old data rather than a truncated file.
+ */
+class SnapshotFile {
+
+    static final String EXTENSION = ".armsnap";
+
+    private static final byte[] MAGIC = {'A', 'R', 'M', 'S', 'N', 'A', 'P', '2'};
+    private static final int HEADER_SIZE = MAGIC.length + 8;
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+    private static final byte INT_COLUMN = 0;
+    private static final byte DOUBLE_COLUMN = 1;
+    private static final byte CATEGORY_COLUMN = 2;
+    private static final byte DATE_COLUMN = 3;
+
+    static final class Snapshot {
+        final ColumnTable table;
+        final List<SchemaInference.ColumnSchema> schema;
+        /** The date parser of the original load, or null without a date column. */
+        final DateParser dateParser;
+
+        Snapshot(ColumnTable table, List<SchemaInference.ColumnSchema> schema, DateParser dateParser) {
+            this.table = table;
+            this.schema = schema;
+            this.dateParser = dateParser;
+        }
+    }
+
+    static boolean isSnapshot(File file) {
+        if (file.length() < HEADER_SIZE) return false;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(MAGIC.length);
+            channel.read(magic, 0);
+            // Any version, so that an old snapshot is reported as such rather than parsed as CSV.
+            return Arrays.equals(magic.array(), 0, MAGIC.length - 1, MAGIC, 0, MAGIC.length - 1);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    static void write(File file, ColumnTable table, List<SchemaInference.ColumnSchema> schema,
+                      DateParser dateParser) throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        File temp = File.createTempFile(file.getName() + ".", ".tmp", directory);
+        boolean moved = false;
+        try {
+            writeTo(temp, table, schema, dateParser);
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Snapshot not saved");
+            }
+            try {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            moved = true;
+        } finally {
+            if (!moved) {
+                Files.deleteIfExists(temp.toPath());
+            }
+        }
+    }
+
+    private static void writeTo(File file, ColumnTable table, List<SchemaInference.ColumnSchema> schema,
+                                DateParser dateParser) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            int rows = table.getRowCount();
+            long[] offsets = new long[table.getColumnCount()];
+            long position = HEADER_SIZE;
+            channel.position(position);
+
+            for (int col = 0; col < table.getColumnCount(); col++) {
+                position = align(channel, position);
+                offsets[col] = position;
+                ColumnTable.Column column = table.getColumn(col);
+                for (int row = 0; row < rows; row++) {
+                    if (buffer.remaining() < 8) {
+                        position += flush(channel, buffer);
+                    }
+                    if (column instanceof ColumnTable.DoubleColumn) {
+                        buffer.putDouble(((ColumnTable.DoubleColumn) column).getDouble(row));
+                    } else if (column instanceof ColumnTable.IntColumn) {
+                        buffer.putInt(((ColumnTable.IntColumn) column).getInt(row));
+                    } else if (column instanceof ColumnTable.CategoryColumn) {
+                        buffer.putInt(((ColumnTable.CategoryColumn) column).getCode(row));
+                    } else {
+                        buffer.putInt(((ColumnTable.DateColumn) column).getEpochDay(row));
+                    }
+                }
+                position += flush(channel, buffer);
+            }
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(rows);
+            out.writeInt(table.getColumnCount());
+            writeString(out, dateParser == null ? "" : dateParser.getPattern());
+            for (int col = 0; col < table.getColumnCount(); col++) {
+                ColumnTable.Column column = table.getColumn(col);
+                SchemaInference.ColumnSchema columnSchema = schema.get(col);
+                writeString(out, table.getHeaders()[col]);
+                out.writeByte(typeCode(column));
+                out.writeLong(offsets[col]);
+                out.writeLong(columnSchema.rowsInspected);
+                out.writeLong(columnSchema.nullCount);
+                out.writeDouble(columnSchema.confidence);
+                if (column instanceof ColumnTable.CategoryColumn) {
+                    String[] dictionary = ((ColumnTable.CategoryColumn) column).dictionary;
+                    out.writeInt(dictionary.length);
+                    for (String value : dictionary) {
+                        writeString(out, value);
+                    }
+                }
+            }
+            out.flush();
+            channel.write(ByteBuffer.wrap(bytes.toByteArray()), position);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.put(MAGIC).putLong(position).flip();
+            channel.write(header, 0);
+        }
+    }
+
+    static Snapshot read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(header, 0);
+            header.flip();
+            byte[] magic = new byte[MAGIC.length];
+            header.get(magic);
+            if (!Arrays.equals(magic, 0, MAGIC.length - 1, MAGIC, 0, MAGIC.length - 1)) {
+                throw new IOException("Not a dataset snapshot: " + file.getName());
+            }
+            if (magic[MAGIC.length - 1] != MAGIC[MAGIC.length - 1]) {
+                throw new IOException(file.getName() + " was saved by another version; load the original file"
+                        + " and save a new snapshot.");
+            }
+            long metadataOffset = header.getLong();
+
+            ByteBuffer metadata = channel.map(FileChannel.MapMode.READ_ONLY, metadataOffset, channel.size() - metadataOffset);
+            DataInputStream in = new DataInputStream(new ByteBufferInputStream(metadata));
+            int rows = in.readInt();
+            int columnCount = in.readInt();
+            String datePattern = readString(in);
+
+            String[] headers = new String[columnCount];
+            ColumnTable.Column[] columns = new ColumnTable.Column[columnCount];
+            List<SchemaInference.ColumnSchema> schema = new ArrayList<>(columnCount);
+            for (int col = 0; col < columnCount; col++) {
+                headers[col] = readString(in);
+                byte type = in.readByte();
+                long offset = in.readLong();
+                long rowsInspected = in.readLong();
+                long nullCount = in.readLong();
+                double confidence = in.readDouble();
+
+                long width = type == DOUBLE_COLUMN ? 8 : 4;
+                ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, offset, width * rows)
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                ColumnTable.ColumnType columnType;
+                switch (type) {
+                    case DOUBLE_COLUMN:
+                        columns[col] = new ColumnTable.DoubleColumn(headers[col], data.asDoubleBuffer());
+                        columnType = ColumnTable.ColumnType.NUMERIC;
+                        break;
+                    case INT_COLUMN:
+                        columns[col] = new ColumnTable.IntColumn(headers[col], data.asIntBuffer());
+                        columnType = ColumnTable.ColumnType.NUMERIC;
+                        break;
+                    case DATE_COLUMN:
+                        columns[col] = new ColumnTable.DateColumn(headers[col], data.asIntBuffer());
+                        columnType = ColumnTable.ColumnType.DATE;
+                        break;
+                    case CATEGORY_COLUMN:
+                        String[] dictionary = new String[in.readInt()];
+                        for (int i = 0; i < dictionary.length; i++) {
+                            dictionary[i] = readString(in);
+                        }
+                        columns[col] = new ColumnTable.CategoryColumn(headers[col], data.asIntBuffer(), dictionary);
+                        columnType = ColumnTable.ColumnType.CATEGORY;
+                        break;
+                    default:
+                        throw new IOException("Unknown column type " + type + " in " + file.getName());
+                }
+                schema.add(new SchemaInference.ColumnSchema(headers[col], columnType, rowsInspected, nullCount, confidence));
+            }
+
+            DateParser dateParser = datePattern.isEmpty() ? null : DateParser.forPattern(datePattern);
+            return new Snapshot(new ColumnTable(headers, columns, rows), Collections.unmodifiableList(schema), dateParser);
+        }
+    }
+
+    private static byte typeCode(ColumnTable.Column column) {
+        if (column instanceof ColumnTable.DoubleColumn) return DOUBLE_COLUMN;
+        if (column instanceof ColumnTable.IntColumn) return INT_COLUMN;
+        if (column instanceof ColumnTable.CategoryColumn) return CATEGORY_COLUMN;
+        return DATE_COLUMN;
+    }
+
+    /** Pads the channel with zeros up to the next multiple of 8 and returns the new position. */
+    private static long align(FileChannel channel, long position) throws IOException {
+        int padding = (int) ((8 - (position & 7)) & 7);
+        if (padding > 0) {
+            channel.write(ByteBuffer.allocate(padding), position);
+        }
+        channel.position(position + padding);
+        return position + padding;
+    }
+
+    private static int flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        int written = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+        return written;
+    }
+
+    /** Strings are length-prefixed UTF-8, since writeUTF is limited to 64 KB. */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) return -1;
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package accidentviz;
+
+/**
+ * Uniform grid index over a pair of coordinate columns, normally Longitude and Latitude.
+ * Row ids are stored sorted by cell, so a bounding box only visits the rows of the cells it
+ * overlaps. Heatmaps add whole cells at once wherever a cell falls inside a single output
+ * bin, and only look at individual rows for cells that straddle a bin or the view edge.
+ */
+class SpatialGrid implements AggregateCache.Sized {
+
+    static final int GRID_SIZE = 512;
+
+    /** Per-cell sums of one weight column, computed once and cached next to the grid. */
+    static final class CellSums implements AggregateCache.Sized {
+        final double[] sums;
+
+        CellSums(double[] sums) {
+            this.sums = sums;
+        }
+
+        public long estimatedBytes() {
+            return 16 + 8L * sums.length;
+        }
+    }
+
+    /** Binned totals for one view. Only bins with a positive value are listed. */
+    static final class Heat {
+        final double xLow;
+        final double yLow;
+        final double binWidth;
+        final double binHeight;
+        final double[] x;
+        final double[] y;
+        final double[] values;
+        final int size;
+        final double min;
+        final double max;
+
+        Heat(double xLow, double yLow, double binWidth, double binHeight, double[] x, double[] y, double[] values, int size) {
+            this.xLow = xLow;
+            this.yLow = yLow;
+            this.binWidth = binWidth;
+            this.binHeight = binHeight;
+            this.x = x;
+            this.y = y;
+            this.values = values;
+            this.size = size;
+            double low = Double.POSITIVE_INFINITY;
+            double high = 0;
+            for (int i = 0; i < size; i++) {
+                low = Math.min(low, values[i]);
+                high = Math.max(high, values[i]);
+            }
+            this.min = size == 0 ? 0 : low;
+            this.max = high;
+        }
+    }
+
+    private final ColumnTable.NumericColumn xs;
+    private final ColumnTable.NumericColumn ys;
+    final double xMin;
+    final double xMax;
+    final double yMin;
+    final double yMax;
+    private final double cellWidth;
+    private final double cellHeight;
+    /** Rows of cell c are rowIds[cellStart[c]] .. rowIds[cellStart[c + 1] - 1]. */
+    private final int[] cellStart;
+    private final int[] rowIds;
+
+    private SpatialGrid(ColumnTable.NumericColumn xs, ColumnTable.NumericColumn ys, double xMin, double xMax,
+                        double yMin, double yMax, int[] cellStart, int[] rowIds) {
+        this.xs = xs;
+        this.ys = ys;
+        this.xMin = xMin;
+        this.xMax = xMax;
+        this.yMin = yMin;
+        this.yMax = yMax;
+        this.cellWidth = cellSize(xMin, xMax);
+        this.cellHeight = cellSize(yMin, yMax);
+        this.cellStart = cellStart;
+        this.rowIds = rowIds;
+    }
+
+    /** Indexes every row with both coordinates present. Two passes: extent, then a counting sort by cell. */
+    static SpatialGrid build(ColumnTable.NumericColumn xs, ColumnTable.NumericColumn ys, int rows) {
+        double xMin = Double.POSITIVE_INFINITY;
+        double xMax = Double.NEGATIVE_INFINITY;
+        double yMin = Double.POSITIVE_INFINITY;
+        double yMax = Double.NEGATIVE_INFINITY;
+        for (int row = 0; row < rows; row++) {
+            double x = xs.getDouble(row);
+            double y = ys.getDouble(row);
+            if (Double.isNaN(x) || Double.isNaN(y)) continue;
+            xMin = Math.min(xMin, x);
+            xMax = Math.max(xMax, x);
+            yMin = Math.min(yMin, y);
+            yMax = Math.max(yMax, y);
+        }
+        int cells = GRID_SIZE * GRID_SIZE;
+        int[] cellStart = new int[cells + 1];
+        if (xMin > xMax) {
+            return new SpatialGrid(xs, ys, 0, 0, 0, 0, cellStart, new int[0]);
+        }
+        double cellWidth = cellSize(xMin, xMax);
+        double cellHeight = cellSize(yMin, yMax);
+
+        int[] cellOf = new int[rows];
+        int indexed = 0;
+        for (int row = 0; row < rows; row++) {
+            double x = xs.getDouble(row);
+            double y = ys.getDouble(row);
+            if (Double.isNaN(x) || Double.isNaN(y)) {
+                cellOf[row] = -1;
+                continue;
+            }
+            int cell = cell(y, yMin, cellHeight) * GRID_SIZE + cell(x, xMin, cellWidth);
+            cellOf[row] = cell;
+            cellStart[cell + 1]++;
+            indexed++;
+        }
+        for (int cell = 0; cell < cells; cell++) {
+            cellStart[cell + 1] += cellStart[cell];
+        }
+        int[] next = new int[cells];
+        System.arraycopy(cellStart, 0, next, 0, cells);
+        int[] rowIds = new int[indexed];
+        for (int row = 0; row < rows; row++) {
+            int cell = cellOf[row];
+            if (cell >= 0) {
+                rowIds[next[cell]++] = row;
+            }
+        }
+        return new SpatialGrid(xs, ys, xMin, xMax, yMin, yMax, cellStart, rowIds);
+    }
+
+    /** Index of the first column named like one of the given names, ignoring case, or -1. */
+    static int findColumn(ColumnTable table, String... names) {
+        String[] headers = table.getHeaders();
+        for (String name : names) {
+            for (int col = 0; col < headers.length; col++) {
+                if (headers[col].trim().equalsIgnoreCase(name)
+                        && table.getColumn(col).getType() == ColumnTable.ColumnType.NUMERIC) {
+                    return col;
+                }
+            }
+        }
+        return -1;
+    }
+
+    public long estimatedBytes() {
+        return 64 + 4L * cellStart.length + 4L * rowIds.length;
+    }
+
+    /** Sums the weight column per cell; missing weights count as zero. */
+    CellSums sumCells(ColumnTable.NumericColumn weights) {
+        double[] sums = new double[GRID_SIZE * GRID_SIZE];
+        for (int cell = 0; cell < sums.length; cell++) {
+            double sum = 0;
+            for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                double weight = weights.getDouble(rowIds[i]);
+                if (!Double.isNaN(weight)) sum += weight;
+            }
+            sums[cell] = sum;
+        }
+        return new CellSums(sums);
+    }
+
+    /**
+     * Totals the rows inside the bounds into binsX x binsY bins: a count of rows, or the sum
+     * of the weight column if cell sums are given. Infinite bounds mean the indexed extent.
+     * With a selection only the selected rows are counted; a null selection means every row.
+     */
+    Heat heat(ColumnTable.NumericColumn weights, CellSums cellSums, RowBitmap selection,
+              double xLow, double xHigh, double yLow, double yHigh, int binsX, int binsY) {
+        if (Double.isInfinite(xLow)) xLow = xMin;
+        if (Double.isInfinite(xHigh)) xHigh = xMax;
+        if (Double.isInfinite(yLow)) yLow = yMin;
+        if (Double.isInfinite(yHigh)) yHigh = yMax;
+        double binWidth = Math.max(xHigh - xLow, Double.MIN_NORMAL) / binsX;
+        double binHeight = Math.max(yHigh - yLow, Double.MIN_NORMAL) / binsY;
+        double[] bins = new double[binsX * binsY];
+
+        if (selection != null) {
+            // Cell totals include rows outside the selection, so visit the selected rows instead.
+            int[] batch = new int[RowBitmap.BATCH_SIZE];
+            RowBitmap.Cursor cursor = RowBitmap.rows(selection, 0, Integer.MAX_VALUE);
+            for (int n = cursor.fill(batch); n > 0; n = cursor.fill(batch)) {
+                for (int i = 0; i < n; i++) {
+                    int row = batch[i];
+                    double x = xs.getDouble(row);
+                    double y = ys.getDouble(row);
+                    if (!(x >= xLow && x <= xHigh && y >= yLow && y <= yHigh)) continue;
+                    double weight = 1;
+                    if (cellSums != null) {
+                        weight = weights.getDouble(row);
+                        if (Double.isNaN(weight)) continue;
+                    }
+                    bins[bin(y, yLow, binHeight, binsY) * binsX + bin(x, xLow, binWidth, binsX)] += weight;
+                }
+            }
+        } else if (rowIds.length > 0 && xLow <= xMax && xHigh >= xMin && yLow <= yMax && yHigh >= yMin) {
+            int fromX = cell(Math.max(xLow, xMin), xMin, cellWidth);
+            int toX = cell(Math.min(xHigh, xMax), xMin, cellWidth);
+            int fromY = cell(Math.max(yLow, yMin), yMin, cellHeight);
+            int toY = cell(Math.min(yHigh, yMax), yMin, cellHeight);
+            for (int cy = fromY; cy <= toY; cy++) {
+                double bottom = yMin + cy * cellHeight;
+                double top = cy == GRID_SIZE - 1 ? yMax : bottom + cellHeight;
+                int binBottom = bin(bottom, yLow, binHeight, binsY);
+                boolean insideY = bottom >= yLow && top <= yHigh && binBottom == bin(top, yLow, binHeight, binsY)
+                        && binBottom >= 0;
+                for (int cx = fromX; cx <= toX; cx++) {
+                    int cell = cy * GRID_SIZE + cx;
+                    int start = cellStart[cell];
+                    int end = cellStart[cell + 1];
+                    if (start == end) continue;
+                    double left = xMin + cx * cellWidth;
+                    double right = cx == GRID_SIZE - 1 ? xMax : left + cellWidth;
+                    int binLeft = bin(left, xLow, binWidth, binsX);
+                    if (insideY && left >= xLow && right <= xHigh && binLeft >= 0
+                            && binLeft == bin(right, xLow, binWidth, binsX)) {
+                        // The whole cell lands in one bin.
+                        bins[binBottom * binsX + binLeft] += cellSums == null ? end - start : cellSums.sums[cell];
+                        continue;
+                    }
+                    for (int i = start; i < end; i++) {
+                        int row = rowIds[i];
+                        double x = xs.getDouble(row);
+                        double y = ys.getDouble(row);
+                        if (!(x >= xLow && x <= xHigh && y >= yLow && y <= yHigh)) continue;
+                        double weight = 1;
+                        if (cellSums != null) {
+                            weight = weights.getDouble(row);
+                            if (Double.isNaN(weight)) continue;
+                        }
+                        bins[bin(y, yLow, binHeight, binsY) * binsX + bin(x, xLow, binWidth, binsX)] += weight;
+                    }
+                }
+            }
+        }
+
+        int occupied = 0;
+        for (double value : bins) {
+            if (value > 0) occupied++;
+        }
+        double[] x = new double[occupied];
+        double[] y = new double[occupied];
+        double[] values = new double[occupied];
+        int size = 0;
+        for (int bin = 0; bin < bins.length; bin++) {
+            if (!(bins[bin] > 0)) continue;
+            x[size] = xLow + (bin % binsX + 0.5) * binWidth;
+            y[size] = yLow + (bin / binsX + 0.5) * binHeight;
+            values[size] = bins[bin];
+            size++;
+        }
+        return new Heat(xLow, yLow, binWidth, binHeight, x, y, values, size);
+    }
+
+    private static double cellSize(double min, double max) {
+        return Math.max(max - min, Double.MIN_NORMAL) / GRID_SIZE;
+    }
+
+    private static int cell(double value, double min, double size) {
+        return Math.max(0, Math.min(GRID_SIZE - 1, (int) ((value - min) / size)));
+    }
+
+    /** Bin holding the value, with the upper edge in the last bin; -1 below the range. */
+    private static int bin(double value, double low, double width, int bins) {
+        if (value < low) return -1;
+        return Math.min(bins - 1, (int) ((value - low) / width));
+    }
+}
@@ -0,0 +1,110 @@
+package accidentviz;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Turns a stream of parsed rows into a {@link ColumnTable}. The first row is the header.
+ * Following rows are held back only until {@link SchemaInference} has settled the column
+ * types; after that each row goes straight into the typed column builders.
+ */
+class TableLoader implements CsvParser.RowHandler {
+
+    private final List<String[]> pending = new ArrayList<>();
+    private String[] headers;
+    private SchemaInference inference;
+    private List<SchemaInference.ColumnSchema> schema;
+    private DateParser dateParser;
+    private ColumnTable.Builder builder;
+    private ColumnTable table;
+
+    /** A finished load of a table built elsewhere, e.g. by {@link ParallelCsvLoader}. */
+    static TableLoader finished(String[] headers, List<SchemaInference.ColumnSchema> schema, DateParser dateParser,
+                                ColumnTable table) {
+        TableLoader loader = new TableLoader();
+        loader.headers = headers;
+        loader.schema = schema;
+        loader.dateParser = dateParser;
+        loader.table = table;
+        return loader;
+    }
+
+    public boolean handleRow(String[] fields) {
+        if (headers == null) {
+            headers = fields;
+            inference = new SchemaInference(headers);
+            return true;
+        }
+        if (builder != null) {
+            builder.addRow(fields);
+            return true;
+        }
+        pending.add(fields);
+        if (!inference.accept(fields)) {
+            startBuilding();
+        }
+        return true;
+    }
+
+    String[] getHeaders() {
+        return headers;
+    }
+
+    /** Whether the column types are settled; they no longer change with later rows. */
+    boolean hasSchema() {
+        return builder != null;
+    }
+
+    /** The inferred schema, available once {@link #finish()} has been called. */
+    List<SchemaInference.ColumnSchema> getSchema() {
+        return schema;
+    }
+
+    /** The parser detected for the date column, or null if there is none. */
+    DateParser getDateParser() {
+        return dateParser;
+    }
+
+    /**
+     * Builds the table from the rows seen so far; later calls return the same table. Values
+     * that did not parse are counted in {@link Metrics#GLOBAL}.
+     */
+    ColumnTable finish() {
+        if (headers == null) return null;
+        if (table == null) {
+            if (builder == null) {
+                startBuilding();
+            }
+            table = builder.build();
+            builder.reportRejected(Metrics.GLOBAL);
+        }
+        return table;
+    }
+
+    /** The finished table, or null before {@link #finish()}. */
+    ColumnTable getTable() {
+        return table;
+    }
+
+    private void startBuilding() {
+        schema = inference.getSchema();
+        ColumnTable.ColumnType[] types = new ColumnTable.ColumnType[headers.length];
+        for (int col = 0; col < headers.length; col++) {
+            types[col] = schema.get(col).type;
+            if (types[col] == ColumnTable.ColumnType.DATE) {
+                List<String> sample = new ArrayList<>();
+                for (String[] row : pending) {
+                    if (col < row.length && !SchemaInference.isBlank(row[col])) {
+                        sample.add(row[col]);
+                    }
+                }
+                dateParser = DateParser.detect(sample);
+            }
+        }
+        builder = new ColumnTable.Builder(headers, types, dateParser == null ? null : dateParser::parseEpochDay);
+        for (String[] row : pending) {
+            builder.addRow(row);
+        }
+        pending.clear();
+    }
+}
@@ -0,0 +1,441 @@
+package accidentviz;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Per-category totals of every numeric column by day, week, month and year, over one date
+ * column. Built in one scan of the table, normally while the file loads, and extended by
+ * merging when rows are appended, so a time series over years of accidents is drawn from a
+ * few hundred periods instead of millions of rows. Each period keeps the count, sum, min
+ * and max of each numeric column, which covers every {@link GroupByAggregator.Aggregation}.
+ * Immutable once built.
+ */
+class TimeRollup implements AggregateCache.Sized {
+
+    private static final int MIN_ROWS_PER_TASK = 1 << 18;
+    private static final int MAX_DENSE_DAY_CELLS = 1 << 20;
+
+    enum Granularity {
+        DAY("day", 1), WEEK("week", 7), MONTH("month", 30.44), YEAR("year", 365.25);
+
+        final String label;
+        private final double days;
+
+        Granularity(String label, double days) {
+            this.label = label;
+            this.days = days;
+        }
+
+        /** Epoch day of the first day of the period holding the given day. Weeks start on Monday. */
+        int start(int epochDay) {
+            switch (this) {
+                case WEEK:
+                    // Day 0, 1970-01-01, was a Thursday.
+                    return epochDay - Math.floorMod(epochDay + 3, 7);
+                case MONTH:
+                    return (int) LocalDate.ofEpochDay(epochDay).withDayOfMonth(1).toEpochDay();
+                case YEAR:
+                    return (int) LocalDate.ofEpochDay(epochDay).withDayOfYear(1).toEpochDay();
+                default:
+                    return epochDay;
+            }
+        }
+
+        /** The finest granularity that covers the days fromDay..toDay in at most maxPeriods periods. */
+        static Granularity fitting(int fromDay, int toDay, int maxPeriods) {
+            double span = (double) toDay - fromDay + 1;
+            for (Granularity granularity : values()) {
+                if (span / granularity.days <= maxPeriods) {
+                    return granularity;
+                }
+            }
+            return YEAR;
+        }
+    }
+
+    /**
+     * The periods of one category in ascending order, each identified by the epoch day it
+     * starts on, with statistics per numeric column slot. Periods where a column has no
+     * values have a count of zero for it.
+     */
+    static final class Series {
+        final int[] periods;
+        /** Indexed by slot, then period. */
+        final int[][] counts;
+        final double[][] sums;
+        final double[][] mins;
+        final double[][] maxs;
+
+        private Series(int size, int slots) {
+            periods = new int[size];
+            counts = new int[slots][size];
+            sums = new double[slots][size];
+            mins = new double[slots][size];
+            maxs = new double[slots][size];
+            for (int slot = 0; slot < slots; slot++) {
+                Arrays.fill(mins[slot], Double.POSITIVE_INFINITY);
+                Arrays.fill(maxs[slot], Double.NEGATIVE_INFINITY);
+            }
+        }
+
+        int size() {
+            return periods.length;
+        }
+
+        double value(int slot, int i, GroupByAggregator.Aggregation aggregation) {
+            switch (aggregation) {
+                case COUNT:
+                    return counts[slot][i];
+                case MEAN:
+                    return counts[slot][i] == 0 ? Double.NaN : sums[slot][i] / counts[slot][i];
+                case MIN:
+                    return mins[slot][i];
+                case MAX:
+                    return maxs[slot][i];
+                default:
+                    return sums[slot][i];
+            }
+        }
+
+        /** Adds period j of the other series into period i of this one. */
+        private void add(int i, Series other, int j) {
+            for (int slot = 0; slot < counts.length; slot++) {
+                counts[slot][i] += other.counts[slot][j];
+                sums[slot][i] += other.sums[slot][j];
+                mins[slot][i] = Math.min(mins[slot][i], other.mins[slot][j]);
+                maxs[slot][i] = Math.max(maxs[slot][i], other.maxs[slot][j]);
+            }
+        }
+
+        private long estimatedBytes() {
+            return 128 + periods.length * (4 + 28L * counts.length);
+        }
+    }
+
+    final String[] keys;
+    /** The numeric columns of the table, in slot order. */
+    private final int[] numericColumns;
+    /** First and last day with data, or MAX_VALUE and MIN_VALUE when there is none. */
+    final int minDay;
+    final int maxDay;
+    /** Indexed by granularity ordinal, then category code. */
+    private final Series[][] levels;
+
+    private TimeRollup(String[] keys, int[] numericColumns, int minDay, int maxDay, Series[][] levels) {
+        this.keys = keys;
+        this.numericColumns = numericColumns;
+        this.minDay = minDay;
+        this.maxDay = maxDay;
+        this.levels = levels;
+    }
+
+    boolean isEmpty() {
+        return minDay > maxDay;
+    }
+
+    Series getSeries(Granularity granularity, int code) {
+        return levels[granularity.ordinal()][code];
+    }
+
+    /** The slot of a numeric column, or -1 if it is not numeric. */
+    int slotOf(int column) {
+        for (int slot = 0; slot < numericColumns.length; slot++) {
+            if (numericColumns[slot] == column) return slot;
+        }
+        return -1;
+    }
+
+    public long estimatedBytes() {
+        long bytes = 64;
+        for (Series[] level : levels) {
+            for (Series series : level) {
+                bytes += series.estimatedBytes();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Rolls up the rows from..to-1 by category and date; a null selection means every row in
+     * that range. Rows without a category or date are left out. The day level is summed on a
+     * dense category x day grid when it is small enough, and in a hash map otherwise; the
+     * coarser levels are then summed from the days. Large ranges are split across the
+     * common fork-join pool and the parts merged.
+     */
+    static TimeRollup build(ColumnTable table, int dateIndex, int catIndex, int from, int to, RowBitmap selection) {
+        int parallelism = ForkJoinPool.commonPool().getParallelism();
+        int leafSize = Math.max(MIN_ROWS_PER_TASK, (to - from + parallelism - 1) / Math.max(1, parallelism));
+        return ForkJoinPool.commonPool().invoke(new RollupTask(table, dateIndex, catIndex, selection, from, to, leafSize));
+    }
+
+    private static final class RollupTask extends RecursiveTask<TimeRollup> {
+        private static final long serialVersionUID = 1L;
+        private final ColumnTable table;
+        private final int dateIndex;
+        private final int catIndex;
+        private final RowBitmap selection;
+        private final int from;
+        private final int to;
+        private final int leafSize;
+
+        RollupTask(ColumnTable table, int dateIndex, int catIndex, RowBitmap selection, int from, int to, int leafSize) {
+            this.table = table;
+            this.dateIndex = dateIndex;
+            this.catIndex = catIndex;
+            this.selection = selection;
+            this.from = from;
+            this.to = to;
+            this.leafSize = leafSize;
+        }
+
+        protected TimeRollup compute() {
+            if (to - from <= leafSize) {
+                return accumulate(table, dateIndex, catIndex, from, to, selection);
+            }
+            int middle = (from + to) >>> 1;
+            RollupTask left = new RollupTask(table, dateIndex, catIndex, selection, from, middle, leafSize);
+            left.fork();
+            TimeRollup later = new RollupTask(table, dateIndex, catIndex, selection, middle, to, leafSize).compute();
+            return merge(left.join(), later);
+        }
+    }
+
+    /** Rolls up the rows from..to-1 on the calling thread; a leaf of {@link #build}, and of a fused scan. */
+    static TimeRollup accumulate(ColumnTable table, int dateIndex, int catIndex, int from, int to, RowBitmap selection) {
+        ColumnTable.CategoryColumn categories = table.getCategoryColumn(catIndex);
+        ColumnTable.DateColumn dates = table.getDateColumn(dateIndex);
+        int[] numericColumns = numericColumns(table);
+        int slots = numericColumns.length;
+        ColumnTable.NumericColumn[] values = new ColumnTable.NumericColumn[slots];
+        for (int slot = 0; slot < slots; slot++) {
+            values[slot] = table.getNumericColumn(numericColumns[slot]);
+        }
+        int cardinality = categories.getCardinality();
+
+        int minDay = Integer.MAX_VALUE;
+        int maxDay = Integer.MIN_VALUE;
+        int[] batch = new int[RowBitmap.BATCH_SIZE];
+        RowBitmap.Cursor cursor = RowBitmap.rows(selection, from, to);
+        for (int n = cursor.fill(batch); n > 0; n = cursor.fill(batch)) {
+            for (int i = 0; i < n; i++) {
+                int row = batch[i];
+                int day = dates.getEpochDay(row);
+                if (day == ColumnTable.MISSING_DAY || categories.getCode(row) == ColumnTable.MISSING_CODE) continue;
+                minDay = Math.min(minDay, day);
+                maxDay = Math.max(maxDay, day);
+            }
+        }
+        if (minDay > maxDay) {
+            Series[][] levels = new Series[Granularity.values().length][cardinality];
+            for (Series[] level : levels) {
+                for (int code = 0; code < cardinality; code++) {
+                    level[code] = new Series(0, slots);
+                }
+            }
+            return new TimeRollup(categories.dictionary, numericColumns, minDay, maxDay, levels);
+        }
+
+        // Each distinct category and day gets an entry, found through a dense grid or a map.
+        long width = (long) maxDay - minDay + 1;
+        int[] grid = width * cardinality <= MAX_DENSE_DAY_CELLS ? new int[(int) width * cardinality] : null;
+        Map<Long, Integer> map = grid == null ? new HashMap<>() : null;
+        // Running statistics of entry e and slot k at e * slots + k, so a row touches adjacent memory.
+        int[] counts = new int[1024 * slots];
+        double[] sums = new double[counts.length];
+        double[] mins = new double[counts.length];
+        double[] maxs = new double[counts.length];
+        long[] entryKeys = new long[1024];
+        int entryCount = 0;
+        cursor = RowBitmap.rows(selection, from, to);
+        for (int n = cursor.fill(batch); n > 0; n = cursor.fill(batch)) {
+            for (int i = 0; i < n; i++) {
+                int row = batch[i];
+                int code = categories.getCode(row);
+                int day = dates.getEpochDay(row);
+                if (code == ColumnTable.MISSING_CODE || day == ColumnTable.MISSING_DAY) continue;
+                long key = ((long) code << 32) | (day - minDay);
+                int entry;
+                if (grid != null) {
+                    int cell = (int) (code * width + (day - minDay));
+                    entry = grid[cell] - 1;
+                    if (entry < 0) {
+                        entry = entryCount++;
+                        grid[cell] = entry + 1;
+                    }
+                } else {
+                    Integer found = map.get(key);
+                    if (found == null) {
+                        found = entryCount++;
+                        map.put(key, found);
+                    }
+                    entry = found;
+                }
+                if (entry == entryKeys.length) {
+                    entryKeys = Arrays.copyOf(entryKeys, entry * 2);
+                    counts = Arrays.copyOf(counts, counts.length * 2);
+                    sums = Arrays.copyOf(sums, counts.length);
+                    mins = Arrays.copyOf(mins, counts.length);
+                    maxs = Arrays.copyOf(maxs, counts.length);
+                }
+                entryKeys[entry] = key;
+                int base = entry * slots;
+                for (int slot = 0; slot < slots; slot++) {
+                    double value = values[slot].getDouble(row);
+                    if (Double.isNaN(value)) continue;
+                    int at = base + slot;
+                    if (counts[at]++ == 0) {
+                        mins[at] = value;
+                        maxs[at] = value;
+                    } else {
+                        mins[at] = Math.min(mins[at], value);
+                        maxs[at] = Math.max(maxs[at], value);
+                    }
+                    sums[at] += value;
+                }
+            }
+        }
+
+        // Order the entries by category, then day.
+        long[] sortedKeys = Arrays.copyOf(entryKeys, entryCount);
+        Arrays.sort(sortedKeys);
+        int[] sizes = new int[cardinality];
+        for (long key : sortedKeys) {
+            sizes[(int) (key >>> 32)]++;
+        }
+        Series[] days = new Series[cardinality];
+        for (int code = 0; code < cardinality; code++) {
+            days[code] = new Series(sizes[code], slots);
+            sizes[code] = 0;
+        }
+        for (long key : sortedKeys) {
+            int code = (int) (key >>> 32);
+            int day = minDay + (int) key;
+            int entry = grid != null ? grid[(int) (code * width + (day - minDay))] - 1 : map.get(key);
+            Series series = days[code];
+            int i = sizes[code]++;
+            series.periods[i] = day;
+            for (int slot = 0; slot < slots; slot++) {
+                int at = entry * slots + slot;
+                if (counts[at] == 0) continue;
+                series.counts[slot][i] = counts[at];
+                series.sums[slot][i] = sums[at];
+                series.mins[slot][i] = mins[at];
+                series.maxs[slot][i] = maxs[at];
+            }
+        }
+
+        Series[][] levels = new Series[Granularity.values().length][];
+        levels[Granularity.DAY.ordinal()] = days;
+        for (Granularity granularity : Granularity.values()) {
+            if (granularity == Granularity.DAY) continue;
+            Series[] level = new Series[cardinality];
+            for (int code = 0; code < cardinality; code++) {
+                level[code] = rollUp(days[code], granularity);
+            }
+            levels[granularity.ordinal()] = level;
+        }
+        return new TimeRollup(categories.dictionary, numericColumns, minDay, maxDay, levels);
+    }
+
+    /**
+     * Combines the rollup of an earlier set of rows with that of later rows, adding up the
+     * periods present in both. The later rollup may have more categories; the result uses
+     * its keys.
+     */
+    static TimeRollup merge(TimeRollup earlier, TimeRollup later) {
+        int cardinality = later.keys.length;
+        Series[][] levels = new Series[later.levels.length][cardinality];
+        for (int level = 0; level < levels.length; level++) {
+            for (int code = 0; code < cardinality; code++) {
+                Series b = later.levels[level][code];
+                if (code >= earlier.keys.length) {
+                    levels[level][code] = b;
+                } else if (b.size() == 0) {
+                    levels[level][code] = earlier.levels[level][code];
+                } else {
+                    levels[level][code] = merge(earlier.levels[level][code], b);
+                }
+            }
+        }
+        return new TimeRollup(later.keys, later.numericColumns, Math.min(earlier.minDay, later.minDay),
+                Math.max(earlier.maxDay, later.maxDay), levels);
+    }
+
+    private static Series merge(Series a, Series b) {
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.size() || j < b.size()) {
+            if (j == b.size() || (i < a.size() && a.periods[i] < b.periods[j])) {
+                i++;
+            } else if (i == a.size() || a.periods[i] > b.periods[j]) {
+                j++;
+            } else {
+                i++;
+                j++;
+            }
+            size++;
+        }
+        Series merged = new Series(size, a.counts.length);
+        int n = 0;
+        i = 0;
+        j = 0;
+        while (i < a.size() || j < b.size()) {
+            if (j == b.size() || (i < a.size() && a.periods[i] < b.periods[j])) {
+                merged.periods[n] = a.periods[i];
+                merged.add(n++, a, i++);
+            } else if (i == a.size() || a.periods[i] > b.periods[j]) {
+                merged.periods[n] = b.periods[j];
+                merged.add(n++, b, j++);
+            } else {
+                merged.periods[n] = a.periods[i];
+                merged.add(n, a, i++);
+                merged.add(n++, b, j++);
+            }
+        }
+        return merged;
+    }
+
+    /** Sums consecutive days into the periods of a coarser granularity. */
+    private static Series rollUp(Series days, Granularity granularity) {
+        int size = 0;
+        int last = Integer.MIN_VALUE;
+        for (int day : days.periods) {
+            int start = granularity.start(day);
+            if (start != last) {
+                size++;
+                last = start;
+            }
+        }
+        Series periods = new Series(size, days.counts.length);
+        int n = -1;
+        last = Integer.MIN_VALUE;
+        for (int i = 0; i < days.size(); i++) {
+            int start = granularity.start(days.periods[i]);
+            if (start != last) {
+                periods.periods[++n] = start;
+                last = start;
+            }
+            periods.add(n, days, i);
+        }
+        return periods;
+    }
+
+    private static int[] numericColumns(ColumnTable table) {
+        int count = 0;
+        for (int col = 0; col < table.getColumnCount(); col++) {
+            if (table.getColumn(col).getType() == ColumnTable.ColumnType.NUMERIC) count++;
+        }
+        int[] columns = new int[count];
+        int next = 0;
+        for (int col = 0; col < table.getColumnCount(); col++) {
+            if (table.getColumn(col).getType() == ColumnTable.ColumnType.NUMERIC) columns[next++] = col;
+        }
+        return columns;
+    }
+}
@@ -0,0 +1,398 @@
+package accidentviz;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Streaming reader for the first worksheet of an .xlsx workbook. The sheet XML is read with
+ * StAX straight out of the zip entry, a row at a time, so memory does not grow with the
+ * number of rows; only the shared string table is held, and it is no bigger than the
+ * category dictionaries built from it. Every cell that refers to the same shared string gets
+ * the same String instance, so the column builders find its dictionary code from a cached
+ * hash without a new string per cell. Numbers keep their stored text, and numbers formatted
+ * as dates are turned into ISO dates for {@link DateParser}.
+ */
+class XlsxReader implements RowReader {
+
+    private static final String RELATIONSHIPS_NS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+    private static final String DEFAULT_SHEET = "xl/worksheets/sheet1.xml";
+
+    /** Day 0 of the 1900 date system; serials from 61 on are counted from here. */
+    private static final long EPOCH_1900 = LocalDate.of(1899, 12, 30).toEpochDay();
+    private static final long EPOCH_1904 = LocalDate.of(1904, 1, 1).toEpochDay();
+    /** Columns A to XFD, the most a worksheet can have. */
+    private static final int MAX_COLUMNS = 1 << 14;
+
+    private volatile long bytesRead;
+
+    /** Whether the file is a zip archive with a workbook in it. */
+    static boolean isWorkbook(File file) {
+        try (ZipFile zip = new ZipFile(file)) {
+            return zip.getEntry("xl/workbook.xml") != null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public long parse(File file, CsvParser.RowHandler handler) throws IOException {
+        bytesRead = 0;
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        try (ZipFile zip = new ZipFile(file)) {
+            String sheetPath = DEFAULT_SHEET;
+            boolean date1904 = false;
+            XMLStreamReader workbook = open(factory, zip, "xl/workbook.xml");
+            String sheetId = null;
+            String sheetName = null;
+            while (workbook.hasNext()) {
+                if (workbook.next() != XMLStreamConstants.START_ELEMENT) continue;
+                String name = workbook.getLocalName();
+                if (name.equals("workbookPr")) {
+                    String value = workbook.getAttributeValue(null, "date1904");
+                    date1904 = "1".equals(value) || "true".equals(value);
+                } else if (name.equals("sheet") && sheetId == null) {
+                    sheetId = workbook.getAttributeValue(RELATIONSHIPS_NS, "id");
+                    sheetName = workbook.getAttributeValue(null, "name");
+                }
+            }
+            workbook.close();
+            if (sheetId != null && zip.getEntry("xl/_rels/workbook.xml.rels") != null) {
+                XMLStreamReader rels = open(factory, zip, "xl/_rels/workbook.xml.rels");
+                while (rels.hasNext()) {
+                    if (rels.next() == XMLStreamConstants.START_ELEMENT && rels.getLocalName().equals("Relationship")
+                            && sheetId.equals(rels.getAttributeValue(null, "Id"))) {
+                        String target = rels.getAttributeValue(null, "Target");
+                        sheetPath = target.startsWith("/") ? target.substring(1) : "xl/" + target;
+                    }
+                }
+                rels.close();
+            }
+
+            String[] strings = readSharedStrings(factory, zip);
+            boolean[] dateStyles = readDateStyles(factory, zip);
+            ZipEntry sheet = zip.getEntry(sheetPath);
+            if (sheet == null) {
+                throw new IOException("No worksheet found in " + file.getName());
+            }
+            return readSheet(factory, zip, sheet, sheetName != null ? sheetName : sheetPath, file.length(),
+                    strings, dateStyles, date1904 ? EPOCH_1904 : EPOCH_1900, handler);
+        } catch (XMLStreamException e) {
+            throw new IOException("Malformed workbook: " + e.getMessage(), e);
+        }
+    }
+
+    private static XMLStreamReader open(XMLInputFactory factory, ZipFile zip, String path)
+            throws IOException, XMLStreamException {
+        return factory.createXMLStreamReader(zip.getInputStream(zip.getEntry(path)));
+    }
+
+    /** The shared strings in order; rich text runs are joined and phonetic hints dropped. */
+    private static String[] readSharedStrings(XMLInputFactory factory, ZipFile zip) throws IOException, XMLStreamException {
+        if (zip.getEntry("xl/sharedStrings.xml") == null) {
+            return new String[0];
+        }
+        XMLStreamReader reader = open(factory, zip, "xl/sharedStrings.xml");
+        List<String> strings = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        boolean phonetic = false;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String name = reader.getLocalName();
+                if (name.equals("si")) {
+                    text.setLength(0);
+                } else if (name.equals("rPh")) {
+                    phonetic = true;
+                } else if (name.equals("t") && !phonetic) {
+                    text.append(reader.getElementText());
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                String name = reader.getLocalName();
+                if (name.equals("si")) {
+                    strings.add(text.toString().trim());
+                } else if (name.equals("rPh")) {
+                    phonetic = false;
+                }
+            }
+        }
+        reader.close();
+        return strings.toArray(new String[0]);
+    }
+
+    /** For each cell style, whether its number format shows a date. */
+    private static boolean[] readDateStyles(XMLInputFactory factory, ZipFile zip) throws IOException, XMLStreamException {
+        if (zip.getEntry("xl/styles.xml") == null) {
+            return new boolean[0];
+        }
+        XMLStreamReader reader = open(factory, zip, "xl/styles.xml");
+        Map<Integer, Boolean> customFormats = new HashMap<>();
+        List<Boolean> styles = new ArrayList<>();
+        boolean cellStyles = false;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String name = reader.getLocalName();
+                if (name.equals("numFmt")) {
+                    customFormats.put(formatId(reader.getAttributeValue(null, "numFmtId")),
+                            isDateFormat(reader.getAttributeValue(null, "formatCode")));
+                } else if (name.equals("cellXfs")) {
+                    cellStyles = true;
+                } else if (name.equals("xf") && cellStyles) {
+                    String id = reader.getAttributeValue(null, "numFmtId");
+                    int format = id == null ? 0 : formatId(id);
+                    Boolean custom = customFormats.get(format);
+                    styles.add(custom != null ? custom : isBuiltInDateFormat(format));
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT && reader.getLocalName().equals("cellXfs")) {
+                cellStyles = false;
+            }
+        }
+        reader.close();
+        boolean[] dateStyles = new boolean[styles.size()];
+        for (int i = 0; i < dateStyles.length; i++) {
+            dateStyles[i] = styles.get(i);
+        }
+        return dateStyles;
+    }
+
+    private static int formatId(String id) throws IOException {
+        try {
+            return Integer.parseInt(id);
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed workbook: number format id " + id + " in xl/styles.xml", e);
+        }
+    }
+
+    private static boolean isBuiltInDateFormat(int id) {
+        return (id >= 14 && id <= 17) || id == 22 || (id >= 27 && id <= 36) || (id >= 50 && id <= 58);
+    }
+
+    /** A format shows a date if it has a day or year part outside quoted text and [...] sections. */
+    private static boolean isDateFormat(String code) {
+        if (code == null) return false;
+        boolean quoted = false;
+        boolean bracketed = false;
+        for (int i = 0; i < code.length(); i++) {
+            char c = code.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (quoted) {
+                continue;
+            } else if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                bracketed = true;
+            } else if (c == ']') {
+                bracketed = false;
+            } else if (!bracketed && (c == 'd' || c == 'D' || c == 'y' || c == 'Y')) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long readSheet(XMLInputFactory factory, ZipFile zip, ZipEntry sheet, String sheetName, long fileSize,
+                           String[] strings, boolean[] dateStyles, long epoch, CsvParser.RowHandler handler)
+            throws IOException, XMLStreamException {
+        // Progress is reported in file bytes, scaled from the uncompressed sheet.
+        final double scale = sheet.getSize() > 0 ? (double) fileSize / sheet.getSize() : 0;
+        InputStream in = new FilterInputStream(zip.getInputStream(sheet)) {
+            private long consumed;
+
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) count(1);
+                return b;
+            }
+
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int n = super.read(buffer, offset, length);
+                if (n > 0) count(n);
+                return n;
+            }
+
+            private void count(int n) {
+                consumed += n;
+                bytesRead = Math.min(fileSize, (long) (consumed * scale));
+            }
+        };
+        XMLStreamReader reader = factory.createXMLStreamReader(new BufferedInputStream(in, 1 << 16));
+        try {
+            String[] cells = new String[16];
+            int width = 0;
+            int headerWidth = 0;
+            int column = 0;
+            String type = null;
+            int style = 0;
+            String value = null;
+            boolean inline = false;
+            long rows = 0;
+            // Rows and cells may leave out their references; these count them for error messages.
+            long rowCount = 0;
+            String row = null;
+            String cell = null;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String name = reader.getLocalName();
+                    if (name.equals("row")) {
+                        width = 0;
+                        column = 0;
+                        rowCount++;
+                        row = reader.getAttributeValue(null, "r");
+                        if (row == null) {
+                            row = String.valueOf(rowCount);
+                        }
+                    } else if (name.equals("c")) {
+                        type = reader.getAttributeValue(null, "t");
+                        style = 0;
+                        value = null;
+                        cell = reader.getAttributeValue(null, "r");
+                        if (cell != null) {
+                            column = columnIndex(cell);
+                            if (column < 0 || column >= MAX_COLUMNS) {
+                                throw malformedCell(sheetName, cell, "a bad reference");
+                            }
+                        } else {
+                            cell = columnName(column) + row;
+                        }
+                        String styleId = reader.getAttributeValue(null, "s");
+                        if (styleId != null) {
+                            try {
+                                style = Integer.parseInt(styleId);
+                            } catch (NumberFormatException e) {
+                                throw malformedCell(sheetName, cell, "style " + styleId);
+                            }
+                        }
+                    } else if (name.equals("v")) {
+                        String text = reader.getElementText();
+                        try {
+                            value = cellValue(text, type, style, strings, dateStyles, epoch);
+                        } catch (IllegalArgumentException | DateTimeException e) {
+                            throw malformedCell(sheetName, cell, "value " + text);
+                        }
+                    } else if (name.equals("is")) {
+                        inline = true;
+                        value = "";
+                    } else if (name.equals("t") && inline) {
+                        value += reader.getElementText();
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    String name = reader.getLocalName();
+                    if (name.equals("is")) {
+                        inline = false;
+                        value = value.trim();
+                    } else if (name.equals("c")) {
+                        if (column >= cells.length) {
+                            cells = Arrays.copyOf(cells, Math.max(cells.length * 2, column + 1));
+                        }
+                        // Cells may be left out; fill the gap with blanks.
+                        for (int i = width; i < column; i++) {
+                            cells[i] = "";
+                        }
+                        cells[column] = value == null ? "" : value;
+                        width = Math.max(width, column + 1);
+                        column++;
+                    } else if (name.equals("row") && width > 0) {
+                        // So are trailing blank cells; pad to the header so rows line up as in a CSV file.
+                        if (rows == 0) {
+                            headerWidth = width;
+                        }
+                        for (int i = width; i < headerWidth; i++) {
+                            cells[i] = "";
+                        }
+                        rows++;
+                        if (!handler.handleRow(Arrays.copyOf(cells, Math.max(width, headerWidth)))) {
+                            break;
+                        }
+                    }
+                }
+            }
+            return rows;
+        } finally {
+            reader.close();
+            in.close();
+        }
+    }
+
+    private static String cellValue(String text, String type, int style, String[] strings, boolean[] dateStyles, long epoch) {
+        if (type == null || type.equals("n")) {
+            if (style < dateStyles.length && dateStyles[style] && SchemaInference.isNumber(text)) {
+                return toDate(Double.parseDouble(text), epoch);
+            }
+            return text.trim();
+        }
+        switch (type) {
+            case "s":
+                int index = Integer.parseInt(text.trim());
+                if (index < 0 || index >= strings.length) {
+                    throw new IllegalArgumentException("No shared string " + index);
+                }
+                return strings[index];
+            case "b":
+                return text.trim().equals("1") ? "TRUE" : "FALSE";
+            case "e":
+                return "";
+            case "d":
+                int time = text.indexOf('T');
+                return time >= 0 ? text.substring(0, time) : text.trim();
+            default:
+                return text.trim();
+        }
+    }
+
+    /** The date of a serial day number; the time of day is dropped, as charts work per day. */
+    private static String toDate(double serial, long epoch) {
+        long day = (long) Math.floor(serial);
+        // The 1900 system counts a February 29th that 1900 did not have.
+        if (epoch == EPOCH_1900 && day < 61) {
+            day++;
+        }
+        return LocalDate.ofEpochDay(epoch + day).toString();
+    }
+
+    private static IOException malformedCell(String sheet, String cell, String problem) {
+        return new IOException("Malformed workbook: cell " + cell + " of sheet " + sheet + " has " + problem);
+    }
+
+    /** Zero-based column of a cell reference such as "AB12", or -1 if it has no column letters. */
+    private static int columnIndex(String ref) {
+        int column = 0;
+        for (int i = 0; i < ref.length(); i++) {
+            char c = ref.charAt(i);
+            if (c < 'A' || c > 'Z' || column > MAX_COLUMNS) break;
+            column = column * 26 + (c - 'A' + 1);
+        }
+        return column - 1;
+    }
+
+    /** The letters of a zero-based column, the inverse of {@link #columnIndex}. */
+    private static String columnName(int column) {
+        StringBuilder name = new StringBuilder();
+        for (int n = column + 1; n > 0; n = (n - 1) / 26) {
+            name.insert(0, (char) ('A' + (n - 1) % 26));
+        }
+        return name.toString();
+    }
+}
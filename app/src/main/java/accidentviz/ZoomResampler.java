@@ -0,0 +1,93 @@
+package accidentviz;
+
+import org.jfree.chart.axis.ValueAxis;
+import org.jfree.chart.event.AxisChangeEvent;
+import org.jfree.chart.event.AxisChangeListener;
+import org.jfree.chart.plot.XYPlot;
+
+import javax.swing.*;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Re-queries a downsampled XY chart when the user zooms or pans. Axis changes are debounced,
+ * the visible region is resampled from the full-resolution data on a background thread, and
+ * the result is applied to the chart's series on the EDT.
+ */
+class ZoomResampler implements AxisChangeListener {
+
+    interface Resampler {
+        /**
+         * Computes the series contents for the visible bounds, off the EDT. Infinite bounds
+         * mean the whole dataset. The returned task replaces the series data on the EDT.
+         */
+        Runnable resample(double xLow, double xHigh, double yLow, double yHigh) throws Exception;
+    }
+
+    private static final int DEBOUNCE_MILLIS = 150;
+    private static final double[] FULL_VIEW = {
+        Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY
+    };
+
+    private final XYPlot plot;
+    private final Resampler resampler;
+    private final Timer timer;
+    private double[] requested = FULL_VIEW;
+    private SwingWorker<Runnable, Void> pending;
+
+    private ZoomResampler(XYPlot plot, Resampler resampler) {
+        this.plot = plot;
+        this.resampler = resampler;
+        this.timer = new Timer(DEBOUNCE_MILLIS, e -> resampleVisibleRegion());
+        this.timer.setRepeats(false);
+    }
+
+    /** Attaches a resampler to both axes; the chart must already hold the full-view data. */
+    static void install(XYPlot plot, Resampler resampler) {
+        ZoomResampler listener = new ZoomResampler(plot, resampler);
+        plot.getDomainAxis().addChangeListener(listener);
+        plot.getRangeAxis().addChangeListener(listener);
+    }
+
+    public void axisChanged(AxisChangeEvent event) {
+        timer.restart();
+    }
+
+    private void resampleVisibleRegion() {
+        ValueAxis domain = plot.getDomainAxis();
+        ValueAxis range = plot.getRangeAxis();
+        final double[] bounds;
+        if (domain.isAutoRange() && range.isAutoRange()) {
+            bounds = FULL_VIEW;
+        } else {
+            bounds = new double[] {domain.getLowerBound(), domain.getUpperBound(), range.getLowerBound(), range.getUpperBound()};
+        }
+        // Applying new data re-fires axis events; an unchanged view must not resample again.
+        if (Arrays.equals(bounds, requested)) {
+            return;
+        }
+        requested = bounds;
+        if (pending != null) {
+            pending.cancel(false);
+        }
+
+        pending = new SwingWorker<Runnable, Void>() {
+            protected Runnable doInBackground() throws Exception {
+                return resampler.resample(bounds[0], bounds[1], bounds[2], bounds[3]);
+            }
+
+            protected void done() {
+                if (isCancelled()) return;
+                try {
+                    get().run();
+                } catch (CancellationException | InterruptedException ex) {
+                    return;
+                } catch (ExecutionException ex) {
+                    ex.getCause().printStackTrace();
+                }
+            }
+        };
+        pending.execute();
+    }
+}
@@ -0,0 +1,100 @@
+package accidentviz;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AggregateCacheTest {
+
+    /** A cached value of a fixed size. */
+    private static final class Value implements AggregateCache.Sized {
+        final long bytes;
+
+        Value(long bytes) {
+            this.bytes = bytes;
+        }
+
+        public long estimatedBytes() {
+            return bytes;
+        }
+    }
+
+    @Test
+    void computesOnceAndCountsHitsAndMisses() {
+        AggregateCache cache = new AggregateCache(1_000);
+        AtomicInteger computed = new AtomicInteger();
+        AggregateCache.Key key = new AggregateCache.Key(1, "groupBy", 2, 3);
+        Value first = cache.get(key, () -> {
+            computed.incrementAndGet();
+            return new Value(100);
+        });
+        Value second = cache.get(new AggregateCache.Key(1, "groupBy", 2, 3), () -> {
+            computed.incrementAndGet();
+            return new Value(100);
+        });
+        assertSame(first, second);
+        assertEquals(1, computed.get());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void keysOfAnotherVersionOrColumnDoNotMatch() {
+        AggregateCache cache = new AggregateCache(1_000);
+        Value value = cache.get(new AggregateCache.Key(1, "groupBy", 2, 3), () -> new Value(10));
+        assertNotSame(value, cache.get(new AggregateCache.Key(2, "groupBy", 2, 3), () -> new Value(10)));
+        assertNotSame(value, cache.get(new AggregateCache.Key(1, "groupBy", 3, 2), () -> new Value(10)));
+        assertNotSame(value, cache.get(new AggregateCache.Key(1, "count", 2, 3), () -> new Value(10)));
+        assertEquals(4, cache.getMisses());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedByBytes() {
+        AggregateCache cache = new AggregateCache(1_000);
+        AggregateCache.Key a = new AggregateCache.Key(1, "a");
+        AggregateCache.Key b = new AggregateCache.Key(1, "b");
+        AggregateCache.Key c = new AggregateCache.Key(1, "c");
+        cache.get(a, () -> new Value(400));
+        cache.get(b, () -> new Value(400));
+        // Using a makes b the eldest.
+        cache.get(a, () -> new Value(400));
+        cache.get(c, () -> new Value(400));
+        assertTrue(cache.contains(a));
+        assertFalse(cache.contains(b));
+        assertTrue(cache.contains(c));
+
+        // A value over the limit is returned but not kept, and evicts nothing.
+        AggregateCache.Key big = new AggregateCache.Key(1, "big");
+        assertEquals(5_000, cache.get(big, () -> new Value(5_000)).bytes);
+        assertFalse(cache.contains(big));
+        assertTrue(cache.contains(a));
+
+        // One that fills the cache alone evicts everything else.
+        AggregateCache.Key full = new AggregateCache.Key(1, "full");
+        cache.get(full, () -> new Value(1_000));
+        assertTrue(cache.contains(full));
+        assertFalse(cache.contains(a));
+        assertFalse(cache.contains(c));
+    }
+
+    @Test
+    void invalidateAllFreesTheBytes() {
+        AggregateCache cache = new AggregateCache(1_000);
+        AggregateCache.Key a = new AggregateCache.Key(1, "a");
+        cache.get(a, () -> new Value(900));
+        cache.invalidateAll();
+        assertFalse(cache.contains(a));
+        AggregateCache.Key b = new AggregateCache.Key(2, "b");
+        AggregateCache.Key c = new AggregateCache.Key(2, "c");
+        cache.get(b, () -> new Value(500));
+        cache.get(c, () -> new Value(500));
+        assertTrue(cache.contains(b));
+        assertTrue(cache.contains(c));
+    }
+}
@@ -0,0 +1,87 @@
+package accidentviz;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchRendererTest {
+
+    @TempDir
+    File directory;
+
+    @Test
+    void parsesChartSpecs() {
+        ChartSpec bar = ChartSpec.parse("Bar: Category=District_Area, value=Speed ,agg=mean,name=speeds", 1);
+        assertEquals("bar", bar.type);
+        assertEquals("District_Area", bar.options.get("category"));
+        assertEquals("Speed", bar.options.get("value"));
+        assertEquals("mean", bar.options.get("agg"));
+        assertEquals("speeds", bar.fileName);
+        assertFalse(bar.options.containsKey("name"));
+
+        ChartSpec pie = ChartSpec.parse("pie", 7);
+        assertEquals("07-pie", pie.fileName);
+        assertTrue(pie.options.isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> pie.require("category"));
+
+        assertThrows(IllegalArgumentException.class, () -> ChartSpec.parse("bar:category", 1));
+    }
+
+    @Test
+    void rendersEveryChartAndReportsFailures() throws Exception {
+        File data = new File(directory, "accidents.csv");
+        Files.write(data.toPath(), TestData.accidents(2_000, 91).getBytes(StandardCharsets.UTF_8));
+        File out = new File(directory, "charts");
+        File specs = new File(directory, "specs.txt");
+        Files.write(specs.toPath(), ("# More charts\n\nline:category=Urban_or_Rural,value=Speed,agg=max\n")
+                .getBytes(StandardCharsets.UTF_8));
+        File metrics = new File(directory, "metrics.json");
+
+        int status = BatchRenderer.run(new String[] {"--out", out.getPath(), "--size", "300x200", "--threads", "2",
+                "--where", "Urban_or_Rural=Urban", "--metrics", metrics.getPath(), data.getPath(),
+                "bar:category=District_Area,value=Number_of_Casualties,agg=mean,name=casualties",
+                "heatmap:x=Longitude,y=Latitude", "pie:category=No_Such_Column", "@" + specs.getPath()});
+
+        assertEquals(1, status);
+        assertTrue(new File(out, "casualties.png").length() > 0);
+        assertTrue(new File(out, "02-heatmap.png").length() > 0);
+        assertFalse(new File(out, "03-pie.png").exists());
+        assertTrue(new File(out, "04-line.png").length() > 0);
+        assertTrue(new String(Files.readAllBytes(metrics.toPath()), StandardCharsets.UTF_8).contains("\"stage\": \"render\""));
+    }
+
+    @Test
+    void rejectsBadArguments() throws Exception {
+        File data = new File(directory, "accidents.csv");
+        Files.write(data.toPath(), TestData.accidents(100, 92).getBytes(StandardCharsets.UTF_8));
+        assertEquals(2, BatchRenderer.run(new String[] {data.getPath()}));
+        assertEquals(2, BatchRenderer.run(new String[] {"--size", "big", data.getPath(), "pie:category=District_Area"}));
+        assertEquals(2, BatchRenderer.run(new String[] {"--format", "gif", data.getPath(), "pie:category=District_Area"}));
+        assertEquals(2, BatchRenderer.run(new String[] {"--out", directory.getPath(), "--where", "District_Area=Nowhere",
+                data.getPath(), "pie:category=District_Area"}));
+        assertEquals(1, BatchRenderer.run(new String[] {"--out", directory.getPath(),
+                new File(directory, "missing.csv").getPath(), "pie:category=District_Area"}));
+    }
+
+    @Test
+    void filtersOnCategoryValues() throws Exception {
+        ColumnTable table = TestData.table(TestData.accidents(1_000, 93));
+        RowFilter filter = BatchRenderer.parseFilter(table, Arrays.asList(
+                "Urban_or_Rural=Urban", "District_Area=District 3", "District_Area=District 4"));
+        assertEquals(2, filter.getCodes(TestData.column("District_Area")).length);
+        assertEquals(1, filter.getCodes(TestData.column("Urban_or_Rural")).length);
+        assertTrue(BatchRenderer.parseFilter(table, Collections.emptyList()).isEmpty());
+        assertThrows(IllegalArgumentException.class,
+                () -> BatchRenderer.parseFilter(table, Collections.singletonList("Speed=40")));
+    }
+}
@@ -0,0 +1,54 @@
+package accidentviz;
+
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.plot.CategoryPlot;
+import org.jfree.chart.plot.PiePlot;
+import org.jfree.data.category.CategoryDataset;
+import org.jfree.data.general.PieDataset;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/** The ingest and chart paths the benchmarks time, from CSV text to chart datasets. */
+class ChartPathTest {
+
+    private static final String CSV = "District_Area,Number_of_Casualties,Accident_Date\n"
+            + "North,1,2021-01-05\n"
+            + "South,2,2021-01-06\n"
+            + "North,3,2021-02-01\n"
+            + "East,4,2022-03-10\n"
+            + "North,5,2022-03-11\n";
+
+    @Test
+    void loadsTypedColumns() throws Exception {
+        TableLoader loader = TestData.load(CSV);
+        ColumnTable table = loader.getTable();
+        assertEquals(5, table.getRowCount());
+        assertEquals(ColumnTable.ColumnType.CATEGORY, table.getColumn(0).getType());
+        assertEquals(ColumnTable.ColumnType.NUMERIC, table.getColumn(1).getType());
+        assertEquals(ColumnTable.ColumnType.DATE, table.getColumn(2).getType());
+        assertNotNull(loader.getDateParser());
+    }
+
+    @Test
+    void barChartSumsPerCategory() throws Exception {
+        ChartBuilder charts = new ChartBuilder(TestData.table(CSV), new AggregateCache(1 << 20), false);
+        JFreeChart chart = charts.createBarChart(0, 1, GroupByAggregator.Aggregation.SUM);
+        CategoryDataset dataset = ((CategoryPlot) chart.getPlot()).getDataset();
+        assertEquals(9.0, dataset.getValue(0, dataset.getColumnIndex("North")).doubleValue());
+        assertEquals(2.0, dataset.getValue(0, dataset.getColumnIndex("South")).doubleValue());
+        assertEquals(4.0, dataset.getValue(0, dataset.getColumnIndex("East")).doubleValue());
+    }
+
+    @Test
+    void pieChartCountsPerCategory() throws Exception {
+        ChartBuilder charts = new ChartBuilder(TestData.table(CSV), new AggregateCache(1 << 20), false);
+        JFreeChart chart = charts.createPieChart(0);
+        @SuppressWarnings("unchecked")
+        PieDataset<String> dataset = (PieDataset<String>) ((PiePlot<?>) chart.getPlot()).getDataset();
+        assertEquals(3.0, dataset.getValue("North").doubleValue());
+        assertEquals(1.0, dataset.getValue("South").doubleValue());
+        assertEquals(1.0, dataset.getValue("East").doubleValue());
+    }
+}
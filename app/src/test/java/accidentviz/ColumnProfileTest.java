@@ -0,0 +1,102 @@
+package accidentviz;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ColumnProfileTest {
+
+    private static final int ROWS = 50_000;
+
+    @Test
+    void profilesEveryColumn() throws IOException {
+        ColumnTable table = TestData.table(TestData.accidents(ROWS, 61));
+        ColumnProfile profile = ColumnProfile.of(table);
+        assertEquals(table.getColumnCount(), profile.columns.length);
+
+        for (String name : new String[] {"District_Area", "Speed"}) {
+            ColumnProfile.Column column = profile.columns[TestData.column(name)];
+            assertEquals(ROWS, column.rows);
+            assertEquals(missing(table, TestData.column(name)), column.missing);
+            // The generator leaves out about one value in fifty.
+            assertTrue(Math.abs(column.missing - ROWS / 50) < ROWS / 200, name + " missing " + column.missing);
+        }
+        assertEquals(0, profile.columns[TestData.column("Number_of_Casualties")].missing);
+
+        ColumnProfile.Column districts = profile.columns[TestData.column("District_Area")];
+        assertNull(districts.quantiles);
+        assertEquals(40, districts.distinct.estimate());
+        Map<String, Long> counts = counts(table, TestData.column("District_Area"));
+        for (HeavyHitters.Entry entry : districts.topValues.top(Integer.MAX_VALUE)) {
+            assertEquals(counts.get(entry.value).longValue(), entry.count);
+            assertEquals(0, entry.error);
+        }
+
+        ColumnProfile.Column speeds = profile.columns[TestData.column("Speed")];
+        ColumnTable.NumericColumn speed = table.getNumericColumn(TestData.column("Speed"));
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        Set<Double> distinct = new HashSet<>();
+        for (int row = 0; row < ROWS; row++) {
+            double value = speed.getDouble(row);
+            if (Double.isNaN(value)) continue;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            distinct.add(value);
+        }
+        assertEquals(min, speeds.quantiles.getMin());
+        assertEquals(max, speeds.quantiles.getMax());
+        assertEquals(ROWS - speeds.missing, speeds.quantiles.getCount());
+        assertEquals(distinct.size(), speeds.distinct.estimate(), distinct.size() * 0.05);
+
+        ColumnProfile.Column dates = profile.columns[TestData.column("Accident_Date")];
+        assertEquals(counts(table, TestData.column("Accident_Date")).size(), dates.distinct.estimate(), 1344 * 0.05);
+    }
+
+    @Test
+    void mergedProfilesAddUp() throws IOException {
+        String csv = TestData.accidents(ROWS, 62);
+        int half = csv.indexOf('\n', csv.length() / 2) + 1;
+        ColumnTable first = TestData.table(csv.substring(0, half));
+        ColumnTable second = TestData.table(TestData.HEADER + "\n" + csv.substring(half));
+        ColumnProfile whole = ColumnProfile.of(TestData.table(csv));
+        ColumnProfile merged = ColumnProfile.of(first);
+        merged.merge(ColumnProfile.of(second));
+
+        for (int col = 0; col < whole.columns.length; col++) {
+            assertEquals(whole.columns[col].rows, merged.columns[col].rows);
+            assertEquals(whole.columns[col].missing, merged.columns[col].missing);
+            assertEquals(whole.columns[col].distinct.estimate(), merged.columns[col].distinct.estimate());
+        }
+        ColumnProfile.Column speeds = merged.columns[TestData.column("Speed")];
+        assertEquals(whole.columns[TestData.column("Speed")].quantiles.getMin(), speeds.quantiles.getMin());
+        assertEquals(whole.columns[TestData.column("Speed")].quantiles.getMax(), speeds.quantiles.getMax());
+    }
+
+    /** Blank cells; a category column keeps them as an empty value rather than as missing. */
+    private static long missing(ColumnTable table, int col) {
+        long missing = 0;
+        for (int row = 0; row < table.getRowCount(); row++) {
+            if (table.getColumn(col).isMissing(row) || table.getColumn(col).getString(row).isEmpty()) missing++;
+        }
+        return missing;
+    }
+
+    private static Map<String, Long> counts(ColumnTable table, int col) {
+        Map<String, Long> counts = new HashMap<>();
+        for (int row = 0; row < table.getRowCount(); row++) {
+            if (!table.getColumn(col).getString(row).isEmpty()) {
+                counts.merge(table.getColumn(col).getString(row), 1L, Long::sum);
+            }
+        }
+        return counts;
+    }
+}
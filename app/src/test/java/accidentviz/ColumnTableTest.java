@@ -0,0 +1,104 @@
+package accidentviz;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ColumnTableTest {
+
+    private static final String[] HEADERS = {"Area", "Casualties", "Speed"};
+    private static final ColumnTable.ColumnType[] TYPES = {ColumnTable.ColumnType.CATEGORY,
+            ColumnTable.ColumnType.NUMERIC, ColumnTable.ColumnType.NUMERIC};
+
+    @Test
+    void builderKeepsWholeNumbersAsIntsUntilAFractionArrives() {
+        ColumnTable.Builder builder = new ColumnTable.Builder(HEADERS, TYPES, null);
+        builder.addRow(new String[] {"North", "1", "30"});
+        builder.addRow(new String[] {"South", "", "40"});
+        builder.addRow(new String[] {"North", "3", "42.5"});
+        ColumnTable table = builder.build();
+
+        assertEquals(3, table.getRowCount());
+        assertTrue(table.getColumn(1) instanceof ColumnTable.IntColumn);
+        assertTrue(table.getColumn(2) instanceof ColumnTable.DoubleColumn);
+        assertTrue(table.getColumn(1).isMissing(1));
+        assertEquals(30.0, table.getNumericColumn(2).getDouble(0));
+        assertEquals(42.5, table.getNumericColumn(2).getDouble(2));
+        assertArrayEquals(new String[] {"North", "South"}, table.getCategoryColumn(0).dictionary);
+        assertEquals(0, table.getCategoryColumn(0).getCode(2));
+    }
+
+    @Test
+    void concatJoinsPartsAsOneTable() throws Exception {
+        String csv = TestData.accidents(3_000, 21);
+        int cut = csv.indexOf('\n', csv.length() / 3) + 1;
+        ColumnTable whole = TestData.table(csv);
+        ColumnTable first = TestData.table(csv.substring(0, cut));
+        ColumnTable second = TestData.table(TestData.HEADER + "\n" + csv.substring(cut));
+
+        ColumnTable joined = ColumnTable.concat(Arrays.asList(first, second));
+        SnapshotFileTest.assertSameTable(whole, joined);
+        int district = TestData.column("District_Area");
+        assertArrayEquals(whole.getCategoryColumn(district).dictionary, joined.getCategoryColumn(district).dictionary);
+    }
+
+    @Test
+    void concatWidensIntsWhenAnyPartHasFractions() {
+        ColumnTable.Builder ints = new ColumnTable.Builder(HEADERS, TYPES, null);
+        ints.addRow(new String[] {"North", "1", "30"});
+        ColumnTable.Builder doubles = new ColumnTable.Builder(HEADERS, TYPES, null);
+        doubles.addRow(new String[] {"South", "2", "31.5"});
+
+        ColumnTable joined = ColumnTable.concat(Arrays.asList(ints.build(), doubles.build()));
+        assertTrue(joined.getColumn(1) instanceof ColumnTable.IntColumn);
+        assertTrue(joined.getColumn(2) instanceof ColumnTable.DoubleColumn);
+        assertEquals(30.0, joined.getNumericColumn(2).getDouble(0));
+        assertEquals(31.5, joined.getNumericColumn(2).getDouble(1));
+    }
+
+    @Test
+    void flushStartsABatchWithTheSameCodes() {
+        ColumnTable.Builder builder = new ColumnTable.Builder(HEADERS, TYPES, null);
+        builder.addRow(new String[] {"North", "1", "30"});
+        builder.addRow(new String[] {"South", "2", "40"});
+        ColumnTable first = builder.flush();
+        assertEquals(0, builder.getRowCount());
+
+        builder.addRow(new String[] {"South", "3", "50"});
+        builder.addRow(new String[] {"East", "4", "60"});
+        ColumnTable second = builder.flush();
+
+        assertEquals(2, first.getRowCount());
+        assertEquals(2, second.getRowCount());
+        assertEquals(first.getCategoryColumn(0).getCode(1), second.getCategoryColumn(0).getCode(0));
+        assertEquals("East", second.getColumn(0).getString(1));
+        assertEquals(3, builder.getCardinality(0));
+        // The first batch is a copy, so reusing the arrays did not change it.
+        assertEquals(1.0, first.getNumericColumn(1).getDouble(0));
+    }
+
+    @Test
+    void snapshotStaysValidAsRowsAreAdded() throws Exception {
+        ColumnTable table = TestData.table("Area,Casualties\nNorth,1\nSouth,2\n");
+        ColumnTable.Builder builder = new ColumnTable.Builder(table, null);
+        builder.addRow(new String[] {"East", "3"});
+        ColumnTable snapshot = builder.snapshot();
+        for (int i = 0; i < 5_000; i++) {
+            builder.addRow(new String[] {"West", "4"});
+        }
+        assertEquals(3, snapshot.getRowCount());
+        assertEquals("East", snapshot.getColumn(0).getString(2));
+        assertEquals(3.0, snapshot.getNumericColumn(1).getDouble(2));
+        assertEquals(5_003, builder.build().getRowCount());
+
+        ColumnTable.Builder truncated = new ColumnTable.Builder(table, 1, null);
+        truncated.addRow(new String[] {"South", "7"});
+        ColumnTable replaced = truncated.build();
+        assertEquals(2, replaced.getRowCount());
+        assertEquals(7.0, replaced.getNumericColumn(1).getDouble(1));
+    }
+}
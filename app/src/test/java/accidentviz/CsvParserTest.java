@@ -0,0 +1,133 @@
+package accidentviz;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CsvParserTest {
+
+    @Test
+    void splitsPlainRows() throws IOException {
+        List<String[]> rows = parse("a,b,c\n1,2,3\n");
+        assertEquals(2, rows.size());
+        assertArrayEquals(new String[] {"a", "b", "c"}, rows.get(0));
+        assertArrayEquals(new String[] {"1", "2", "3"}, rows.get(1));
+    }
+
+    @Test
+    void keepsDelimitersQuotesAndLineBreaksInsideQuotes() throws IOException {
+        List<String[]> rows = parse("name,note\n\"Smith, J\",\"said \"\"stop\"\"\nthen left\"\n");
+        assertEquals(2, rows.size());
+        assertArrayEquals(new String[] {"Smith, J", "said \"stop\"\nthen left"}, rows.get(1));
+    }
+
+    @Test
+    void acceptsCrLfAndSkipsBlankLines() throws IOException {
+        List<String[]> rows = parse("a,b\r\n1,2\r\n\r\n3,\"x\r\ny\"\r\n");
+        assertEquals(3, rows.size());
+        assertArrayEquals(new String[] {"1", "2"}, rows.get(1));
+        assertArrayEquals(new String[] {"3", "x\r\ny"}, rows.get(2));
+    }
+
+    @Test
+    void keepsEmptyFields() throws IOException {
+        List<String[]> rows = parse("a,b,c\n,,\n\"\",x,\n");
+        assertArrayEquals(new String[] {"", "", ""}, rows.get(1));
+        assertArrayEquals(new String[] {"", "x", ""}, rows.get(2));
+    }
+
+    @Test
+    void stripsByteOrderMark() throws IOException {
+        List<String[]> rows = parse("\uFEFFa,b\n1,2\n");
+        assertArrayEquals(new String[] {"a", "b"}, rows.get(0));
+    }
+
+    @Test
+    void readsLastRowWithoutLineBreak() throws IOException {
+        List<String[]> rows = parse("a,b\n1,2");
+        assertEquals(2, rows.size());
+        assertArrayEquals(new String[] {"1", "2"}, rows.get(1));
+    }
+
+    @Test
+    void sameRowsWhenEveryReadReturnsOneByte() throws IOException {
+        String csv = "a,b\r\n\"x,\"\"y\"\"\",1\r\nlong unquoted value,\"multi\r\nline\"\r\n";
+        List<String[]> whole = parse(csv);
+        List<String[]> trickled = new ArrayList<>();
+        new CsvParser().parse(oneByteAtATime(csv.getBytes(StandardCharsets.UTF_8)), collect(trickled));
+        assertEquals(whole.size(), trickled.size());
+        for (int i = 0; i < whole.size(); i++) {
+            assertArrayEquals(whole.get(i), trickled.get(i));
+        }
+        assertArrayEquals(new String[] {"x,\"y\"", "1"}, trickled.get(1));
+        assertArrayEquals(new String[] {"long unquoted value", "multi\r\nline"}, trickled.get(2));
+    }
+
+    @Test
+    void stopsWhenHandlerReturnsFalse() throws IOException {
+        final List<String[]> rows = new ArrayList<>();
+        long count = new CsvParser().parse(channel("a\n1\n2\n3\n"), new CsvParser.RowHandler() {
+            public boolean handleRow(String[] fields) {
+                rows.add(fields);
+                return rows.size() < 2;
+            }
+        });
+        assertEquals(2, count);
+        assertEquals(2, rows.size());
+    }
+
+    @Test
+    void usesOtherDelimiters() throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        new CsvParser(';').parse(channel("a;b\n\"1;2\";3\n"), collect(rows));
+        assertArrayEquals(new String[] {"1;2", "3"}, rows.get(1));
+    }
+
+    private static List<String[]> parse(String csv) throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        new CsvParser().parse(channel(csv), collect(rows));
+        return rows;
+    }
+
+    private static ReadableByteChannel channel(String csv) {
+        return Channels.newChannel(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static CsvParser.RowHandler collect(final List<String[]> rows) {
+        return new CsvParser.RowHandler() {
+            public boolean handleRow(String[] fields) {
+                rows.add(fields);
+                return true;
+            }
+        };
+    }
+
+    private static ReadableByteChannel oneByteAtATime(final byte[] bytes) {
+        return new ReadableByteChannel() {
+            private int position;
+
+            public int read(ByteBuffer buffer) {
+                if (position == bytes.length) return -1;
+                buffer.put(bytes[position++]);
+                return 1;
+            }
+
+            public boolean isOpen() {
+                return true;
+            }
+
+            public void close() {
+            }
+        };
+    }
+}
@@ -0,0 +1,86 @@
+package accidentviz;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DateParserTest {
+
+    @Test
+    void detectsTheFormatThatParsesMostValues() {
+        assertEquals("uuuu-M-d", DateParser.detect(Arrays.asList("2021-01-05", "2021-12-31")).getPattern());
+        assertEquals("d/M/uuuu", DateParser.detect(Arrays.asList("05/01/2021", "31/12/2021")).getPattern());
+        assertEquals("M/d/uuuu", DateParser.detect(Arrays.asList("01/05/2021", "12/31/2021")).getPattern());
+        assertEquals("uuuu-d-M", DateParser.detect(Arrays.asList("2021-05-01", "2021-31-12")).getPattern());
+    }
+
+    @Test
+    void ambiguousValuesKeepYearMonthDay() {
+        assertEquals("uuuu-M-d", DateParser.detect(Arrays.asList("2021-01-05", "2021-02-03")).getPattern());
+    }
+
+    @Test
+    void parsesToEpochDays() {
+        DateParser parser = DateParser.forPattern("d/M/uuuu");
+        assertEquals(LocalDate.of(2021, 1, 5).toEpochDay(), parser.parseEpochDay("05/01/2021"));
+        assertEquals(LocalDate.of(2021, 1, 5).toEpochDay(), parser.parseEpochDay("5/1/2021"));
+        assertEquals(LocalDate.of(2024, 2, 29).toEpochDay(), parser.parseEpochDay(" 29/02/2024 "));
+    }
+
+    @Test
+    void rejectsImpossibleDatesInsteadOfRollingOver() {
+        DateParser parser = DateParser.forPattern("uuuu-M-d");
+        for (String value : new String[] {"2021-13-01", "2021-02-29", "2021-04-31", "2021-00-10", "2021-01-00",
+                "", "2021-01", "x"}) {
+            assertEquals(ColumnTable.MISSING_DAY, parser.parseEpochDay(value), value);
+        }
+    }
+
+    @Test
+    void cachedValuesMatchFirstParse() {
+        DateParser parser = DateParser.forPattern("uuuu-M-d");
+        int first = parser.parseEpochDay("2022-03-10");
+        assertEquals(first, parser.parseEpochDay("2022-03-10"));
+        assertEquals(ColumnTable.MISSING_DAY, parser.parseEpochDay("2022-02-30"));
+        assertEquals(ColumnTable.MISSING_DAY, parser.parseEpochDay("2022-02-30"));
+    }
+
+    @Test
+    void safeToShareBetweenThreads() throws Exception {
+        final DateParser parser = DateParser.forPattern("uuuu-M-d");
+        final List<String> values = new ArrayList<>();
+        final int[] expected = new int[2_000];
+        LocalDate start = LocalDate.of(2015, 1, 1);
+        for (int i = 0; i < expected.length; i++) {
+            LocalDate date = start.plusDays(i);
+            values.add(date.toString());
+            expected[i] = (int) date.toEpochDay();
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<int[]>> results = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                results.add(pool.submit(() -> {
+                    int[] days = new int[values.size()];
+                    for (int i = 0; i < days.length; i++) {
+                        days[i] = parser.parseEpochDay(values.get(i));
+                    }
+                    return days;
+                }));
+            }
+            for (Future<int[]> result : results) {
+                assertEquals(Arrays.toString(expected), Arrays.toString(result.get()));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
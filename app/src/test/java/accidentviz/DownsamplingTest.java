@@ -0,0 +1,103 @@
+package accidentviz;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DownsamplingTest {
+
+    @Test
+    void lttbKeepsTheEndsAndThePeaks() {
+        int n = 10_000;
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = i;
+            y[i] = Math.sin(i / 500.0);
+        }
+        y[4_321] = 50;
+        y[7_777] = -50;
+
+        int[] sampled = Downsampling.largestTriangleThreeBuckets(x, y, 0, n, 100);
+        assertEquals(100, sampled.length);
+        assertEquals(0, sampled[0]);
+        assertEquals(n - 1, sampled[sampled.length - 1]);
+        for (int i = 1; i < sampled.length; i++) {
+            assertTrue(sampled[i] > sampled[i - 1]);
+        }
+        Set<Integer> kept = new HashSet<>();
+        for (int index : sampled) {
+            kept.add(index);
+        }
+        assertTrue(kept.contains(4_321));
+        assertTrue(kept.contains(7_777));
+    }
+
+    @Test
+    void lttbWorksOnASubrange() {
+        double[] x = new double[1_000];
+        double[] y = new double[1_000];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = i;
+            y[i] = i % 7;
+        }
+        int[] sampled = Downsampling.largestTriangleThreeBuckets(x, y, 200, 800, 50);
+        assertEquals(50, sampled.length);
+        assertEquals(200, sampled[0]);
+        assertEquals(799, sampled[49]);
+        for (int index : sampled) {
+            assertTrue(index >= 200 && index < 800);
+        }
+        assertArrayEquals(new int[] {5, 6, 7}, Downsampling.largestTriangleThreeBuckets(x, y, 5, 8, 50));
+    }
+
+    @Test
+    void densityBinReturnsRawPointsUnderTheLimit() throws Exception {
+        ColumnTable table = TestData.table(TestData.accidents(5_000, 81));
+        ColumnTable.NumericColumn xs = table.getNumericColumn(TestData.column("Longitude"));
+        ColumnTable.NumericColumn ys = table.getNumericColumn(TestData.column("Latitude"));
+        Downsampling.Points points = Downsampling.densityBin(xs, ys, 5_000, Double.NEGATIVE_INFINITY,
+                Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+        assertEquals(5_000, points.size);
+        assertEquals(xs.getDouble(17), points.x[17]);
+
+        Downsampling.Points box = Downsampling.densityBin(xs, ys, 5_000, -3, -2, 51, 52);
+        int inside = 0;
+        for (int row = 0; row < 5_000; row++) {
+            double x = xs.getDouble(row);
+            double y = ys.getDouble(row);
+            if (x >= -3 && x <= -2 && y >= 51 && y <= 52) inside++;
+        }
+        assertEquals(inside, box.size);
+    }
+
+    @Test
+    void densityBinAveragesEachCellOverTheLimit() throws Exception {
+        int rows = 60_000;
+        ColumnTable table = TestData.table(TestData.accidents(rows, 82));
+        ColumnTable.NumericColumn xs = table.getNumericColumn(TestData.column("Longitude"));
+        ColumnTable.NumericColumn ys = table.getNumericColumn(TestData.column("Latitude"));
+        RowBitmap selection = GroupByAggregatorTest.randomSelection(rows, 2);
+        for (RowBitmap rowsToBin : new RowBitmap[] {null, selection}) {
+            Downsampling.Points points = Downsampling.densityBin(xs, ys, rows, rowsToBin, -4, 0, 50, 55);
+            assertTrue(points.size > 0 && points.size <= Downsampling.SCATTER_BINS_X * Downsampling.SCATTER_BINS_Y);
+            assertTrue(points.size < rows);
+
+            // Every point is the mean of rows in one cell, so it lies in the cell it stands for.
+            double cellWidth = 4.0 / Downsampling.SCATTER_BINS_X;
+            double cellHeight = 5.0 / Downsampling.SCATTER_BINS_Y;
+            Set<Integer> cells = new HashSet<>();
+            for (int i = 0; i < points.size; i++) {
+                assertTrue(points.x[i] >= -4 && points.x[i] <= 0 && points.y[i] >= 50 && points.y[i] <= 55);
+                int cell = (int) ((points.y[i] - 50) / cellHeight) * Downsampling.SCATTER_BINS_X
+                        + (int) ((points.x[i] + 4) / cellWidth);
+                assertTrue(cells.add(cell), "two points in cell " + cell);
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package accidentviz;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ExternalAggregatorTest {
+
+    private static final int ROWS = 20_000;
+
+    @TempDir
+    static File directory;
+
+    private static File file;
+    private static ColumnTable loaded;
+    private static int district;
+    private static int speed;
+    private static int severity;
+    private static int date;
+
+    @BeforeAll
+    static void write() throws Exception {
+        String csv = TestData.accidents(ROWS, 21);
+        file = new File(directory, "accidents.csv");
+        Files.writeString(file.toPath(), csv);
+        loaded = TestData.table(csv);
+        district = TestData.column("District_Area");
+        speed = TestData.column("Speed");
+        severity = TestData.column("Accident_Severity");
+        date = TestData.column("Accident_Date");
+    }
+
+    @Test
+    void inMemoryPassMatchesLoadedTable() throws Exception {
+        assertMatchesLoadedTable(new ExternalAggregator(file));
+    }
+
+    @Test
+    void spilledPassMatchesLoadedTable() throws Exception {
+        // Small batches, and fewer keys in memory than the 40 districts, so the group-bys spill.
+        assertMatchesLoadedTable(new ExternalAggregator(file, 1_000, 16));
+    }
+
+    @Test
+    void refusesRollupsOverTooManyCategories() throws Exception {
+        ExternalAggregator external = new ExternalAggregator(file, 1_000, 16);
+        external.open();
+        assertThrows(IllegalStateException.class,
+                () -> external.aggregate(List.of(ExternalAggregator.Query.rollup(date, district))));
+    }
+
+    private static void assertMatchesLoadedTable(ExternalAggregator external) throws Exception {
+        external.open();
+        ExternalAggregator.Query groupBy = ExternalAggregator.Query.groupBy(district, speed);
+        ExternalAggregator.Query count = ExternalAggregator.Query.count(district);
+        ExternalAggregator.Query rollup = ExternalAggregator.Query.rollup(date, severity);
+        Map<ExternalAggregator.Query, AggregateCache.Sized> results = external.aggregate(Arrays.asList(groupBy, count, rollup));
+        assertEquals(ROWS, external.getRowCount());
+
+        assertSameByKey(GroupByAggregator.aggregate(loaded.getCategoryColumn(district), loaded.getNumericColumn(speed)),
+                (GroupByAggregator.Result) results.get(groupBy));
+        assertSameByKey(GroupByAggregator.aggregate(loaded.getCategoryColumn(district), null),
+                (GroupByAggregator.Result) results.get(count));
+
+        TimeRollup expected = TimeRollup.build(loaded, date, severity, 0, ROWS, null);
+        TimeRollup actual = (TimeRollup) results.get(rollup);
+        int slot = expected.slotOf(speed);
+        int actualSlot = actual.slotOf(speed);
+        for (TimeRollup.Granularity granularity : TimeRollup.Granularity.values()) {
+            for (int code = 0; code < expected.keys.length; code++) {
+                TimeRollup.Series want = expected.getSeries(granularity, code);
+                TimeRollup.Series got = actual.getSeries(granularity, Arrays.asList(actual.keys).indexOf(expected.keys[code]));
+                assertEquals(Arrays.toString(want.periods), Arrays.toString(got.periods));
+                assertEquals(Arrays.toString(want.counts[slot]), Arrays.toString(got.counts[actualSlot]));
+                for (int i = 0; i < want.size(); i++) {
+                    assertEquals(want.sums[slot][i], got.sums[actualSlot][i], 1e-9 * Math.abs(want.sums[slot][i]));
+                }
+            }
+        }
+    }
+
+    /** Categories may come back in another order once a group-by has spilled. */
+    private static void assertSameByKey(GroupByAggregator.Result expected, GroupByAggregator.Result actual) {
+        List<String> keys = Arrays.asList(actual.keys);
+        int present = 0;
+        for (int code = 0; code < expected.size(); code++) {
+            if (expected.counts[code] == 0) continue;
+            present++;
+            int other = keys.indexOf(expected.keys[code]);
+            String key = expected.keys[code];
+            assertEquals(expected.counts[code], actual.counts[other], key);
+            assertEquals(expected.sums[code], actual.sums[other], 1e-9 * Math.abs(expected.sums[code]), key);
+            assertEquals(expected.mins[code], actual.mins[other], key);
+            assertEquals(expected.maxs[code], actual.maxs[other], key);
+        }
+        long actualPresent = Arrays.stream(actual.counts).filter(c -> c > 0).count();
+        assertEquals(present, actualPresent);
+    }
+}
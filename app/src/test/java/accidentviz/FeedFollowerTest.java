@@ -0,0 +1,170 @@
+package accidentviz;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FeedFollowerTest {
+
+    /** Longer than a few polls of the follower. */
+    private static final long WAIT_MILLIS = 5_000;
+    private static final long QUIET_MILLIS = 1_500;
+
+    @TempDir
+    File directory;
+
+    private final BlockingQueue<List<String[]>> batches = new LinkedBlockingQueue<>();
+    private FeedFollower follower;
+
+    @AfterEach
+    void stop() {
+        if (follower != null) {
+            follower.stop();
+        }
+    }
+
+    @Test
+    void parserReportsWhereCompleteRowsEnd() throws IOException {
+        String csv = "Area,Cas\r\nNorth,1\nSouth,\"2\n\"\nEa";
+        CsvParser parser = new CsvParser();
+        List<String[]> rows = parse(parser, csv);
+        assertEquals(4, rows.size());
+        assertTrue(parser.endedInRow());
+        assertEquals(csv.length() - 2, parser.getRowsEnd());
+
+        CsvParser complete = new CsvParser().completeRowsOnly();
+        assertEquals(3, parse(complete, csv).size());
+        assertEquals(csv.length() - 2, complete.getRowsEnd());
+
+        CsvParser inQuotes = new CsvParser().completeRowsOnly();
+        assertEquals(1, parse(inQuotes, "a\n\"open\nquote").size());
+        assertEquals(2, inQuotes.getRowsEnd());
+
+        CsvParser terminated = new CsvParser();
+        parse(terminated, "a\n1\n");
+        assertFalse(terminated.endedInRow());
+        assertEquals(4, terminated.getRowsEnd());
+    }
+
+    @Test
+    void completesARowLoadedWithoutItsLineBreak() throws Exception {
+        File file = write("Area,Cas\nNorth,1\nSouth,2\nEa");
+        TableLoader loader = new TableLoader();
+        CsvParser parser = new CsvParser();
+        parser.parse(file, loader);
+        ColumnTable base = loader.finish();
+        assertEquals(3, base.getRowCount());
+        assertTrue(parser.endedInRow());
+
+        follow(file, parser.getRowsEnd());
+        append(file, "st,3\n");
+        List<String[]> rows = nextBatch();
+        assertEquals(1, rows.size());
+        assertArrayEquals(new String[] {"East", "3"}, rows.get(0));
+
+        // As the app does: the partial row is left out of the copy and replaced.
+        ColumnTable.Builder builder = new ColumnTable.Builder(base, base.getRowCount() - 1, null);
+        for (String[] row : rows) {
+            builder.addRow(row);
+        }
+        ColumnTable grown = builder.build();
+        assertEquals(3, grown.getRowCount());
+        assertEquals("East", grown.getColumn(0).getString(2));
+        assertEquals("3", grown.getColumn(1).getString(2));
+    }
+
+    @Test
+    void waitsForTheRestOfAPartialRow() throws Exception {
+        File file = write("Area,Cas\nNorth,1\n");
+        follow(file, file.length());
+        append(file, "South,2\nEa");
+        List<String[]> rows = nextBatch();
+        assertEquals(1, rows.size());
+        assertArrayEquals(new String[] {"South", "2"}, rows.get(0));
+        assertNull(batches.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS));
+
+        append(file, "st,3\n");
+        rows = nextBatch();
+        assertEquals(1, rows.size());
+        assertArrayEquals(new String[] {"East", "3"}, rows.get(0));
+        assertEquals(file.length(), follower.getOffset());
+    }
+
+    @Test
+    void keepsLineBreaksInsideQuotes() throws Exception {
+        File file = write("Area,Note\n");
+        follow(file, file.length());
+        append(file, "North,\"first line\n");
+        assertNull(batches.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS));
+
+        append(file, "second line\"\nSouth,plain\n");
+        List<String[]> rows = new ArrayList<>(nextBatch());
+        while (rows.size() < 2) {
+            rows.addAll(nextBatch());
+        }
+        assertEquals(2, rows.size());
+        assertArrayEquals(new String[] {"North", "first line\nsecond line"}, rows.get(0));
+        assertArrayEquals(new String[] {"South", "plain"}, rows.get(1));
+    }
+
+    private void follow(File file, long offset) {
+        follower = new FeedFollower(file, offset, new FeedFollower.Listener() {
+            public void rowsAppended(List<String[]> rows, long end) {
+                batches.add(rows);
+            }
+
+            public void followFailed(IOException error) {
+                batches.add(List.<String[]>of(new String[] {"failed: " + error.getMessage()}));
+            }
+        });
+        follower.start();
+    }
+
+    private List<String[]> nextBatch() throws InterruptedException {
+        List<String[]> rows = batches.poll(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        assertNotNull(rows, "no rows appended");
+        return rows;
+    }
+
+    private File write(String text) throws IOException {
+        File file = new File(directory, "feed.csv");
+        Files.writeString(file.toPath(), text);
+        return file;
+    }
+
+    private static void append(File file, String text) throws IOException {
+        Files.writeString(file.toPath(), text, StandardOpenOption.APPEND);
+    }
+
+    private static List<String[]> parse(CsvParser parser, String csv) throws IOException {
+        final List<String[]> rows = new ArrayList<>();
+        parser.parse(Channels.newChannel(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8))),
+                new CsvParser.RowHandler() {
+                    public boolean handleRow(String[] fields) {
+                        rows.add(fields);
+                        return true;
+                    }
+                });
+        return rows;
+    }
+}
@@ -0,0 +1,91 @@
+package accidentviz;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FusedAggregatorTest {
+
+    private static ColumnTable table;
+    private static List<ExternalAggregator.Query> queries;
+
+    @BeforeAll
+    static void load() throws Exception {
+        table = TestData.table(TestData.accidents(GroupByAggregatorTest.ROWS, 13));
+        int district = TestData.column("District_Area");
+        int severity = TestData.column("Accident_Severity");
+        int casualties = TestData.column("Number_of_Casualties");
+        int speed = TestData.column("Speed");
+        int date = TestData.column("Accident_Date");
+        queries = Arrays.asList(
+                ExternalAggregator.Query.groupBy(district, speed),
+                ExternalAggregator.Query.groupBy(severity, casualties),
+                ExternalAggregator.Query.count(district),
+                ExternalAggregator.Query.rollup(date, severity));
+    }
+
+    @Test
+    void groupBysAloneMatchSeparateRuns() {
+        // Without a rollup the rows are split into many leaves.
+        List<ExternalAggregator.Query> groupBys = queries.subList(0, 3);
+        assertMatchesSeparateRuns(groupBys, null, FusedAggregator.aggregate(table, groupBys, null));
+    }
+
+    @Test
+    void everyQueryMatchesSeparateRuns() {
+        assertMatchesSeparateRuns(queries, null, FusedAggregator.aggregate(table, queries, null));
+    }
+
+    @Test
+    void selectionMatchesSeparateRuns() {
+        RowBitmap selection = GroupByAggregatorTest.randomSelection(table.getRowCount(), 5);
+        assertMatchesSeparateRuns(queries, selection, FusedAggregator.aggregate(table, queries, selection));
+    }
+
+    private static void assertMatchesSeparateRuns(List<ExternalAggregator.Query> queries, RowBitmap selection,
+                                                  Map<ExternalAggregator.Query, AggregateCache.Sized> results) {
+        assertEquals(queries.size(), results.size());
+        for (ExternalAggregator.Query query : queries) {
+            int[] columns = query.columns;
+            switch (query.kind) {
+                case "groupBy":
+                    GroupByAggregatorTest.assertSameResult(GroupByAggregator.aggregate(table.getCategoryColumn(columns[0]),
+                            table.getNumericColumn(columns[1]), selection), (GroupByAggregator.Result) results.get(query));
+                    break;
+                case "count":
+                    GroupByAggregatorTest.assertSameResult(GroupByAggregator.aggregate(table.getCategoryColumn(columns[0]),
+                            null, selection), (GroupByAggregator.Result) results.get(query));
+                    break;
+                default:
+                    assertSameRollup(TimeRollup.build(table, columns[0], columns[1], 0, table.getRowCount(), selection),
+                            (TimeRollup) results.get(query));
+                    break;
+            }
+        }
+    }
+
+    private static void assertSameRollup(TimeRollup expected, TimeRollup actual) {
+        assertArrayEquals(expected.keys, actual.keys);
+        assertEquals(expected.minDay, actual.minDay);
+        assertEquals(expected.maxDay, actual.maxDay);
+        for (TimeRollup.Granularity granularity : TimeRollup.Granularity.values()) {
+            for (int code = 0; code < expected.keys.length; code++) {
+                TimeRollup.Series want = expected.getSeries(granularity, code);
+                TimeRollup.Series got = actual.getSeries(granularity, code);
+                assertArrayEquals(want.periods, got.periods);
+                for (int slot = 0; slot < want.counts.length; slot++) {
+                    assertArrayEquals(want.counts[slot], got.counts[slot]);
+                    assertArrayEquals(want.sums[slot], got.sums[slot], 1e-6);
+                    assertArrayEquals(want.mins[slot], got.mins[slot]);
+                    assertArrayEquals(want.maxs[slot], got.maxs[slot]);
+                }
+            }
+        }
+    }
+}
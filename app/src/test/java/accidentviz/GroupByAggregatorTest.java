@@ -0,0 +1,148 @@
+package accidentviz;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.function.IntPredicate;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GroupByAggregatorTest {
+
+    /** Enough rows for the fork-join task to split into several leaves. */
+    static final int ROWS = 150_000;
+
+    private static ColumnTable table;
+    private static int district;
+    private static int speed;
+
+    @BeforeAll
+    static void load() throws Exception {
+        table = TestData.table(TestData.accidents(ROWS, 7));
+        district = TestData.column("District_Area");
+        speed = TestData.column("Speed");
+    }
+
+    @Test
+    void countsMatchBruteForce() {
+        GroupByAggregator.Result result = GroupByAggregator.aggregate(table.getCategoryColumn(district), null);
+        assertSameResult(bruteForce(table, district, -1, row -> true), result);
+    }
+
+    @Test
+    void valuesMatchBruteForce() {
+        GroupByAggregator.Result result = GroupByAggregator.aggregate(table.getCategoryColumn(district),
+                table.getNumericColumn(speed));
+        assertSameResult(bruteForce(table, district, speed, row -> true), result);
+    }
+
+    @Test
+    void selectionMatchesBruteForce() {
+        RowBitmap selection = randomSelection(ROWS, 3);
+        GroupByAggregator.Result result = GroupByAggregator.aggregate(table.getCategoryColumn(district),
+                table.getNumericColumn(speed), selection);
+        assertSameResult(bruteForce(table, district, speed, selection::contains), result);
+    }
+
+    @Test
+    void rangeMatchesBruteForce() {
+        int from = 40_000;
+        int to = 110_001;
+        GroupByAggregator.Result result = GroupByAggregator.aggregate(table.getCategoryColumn(district),
+                table.getNumericColumn(speed), from, to, null);
+        assertSameResult(bruteForce(table, district, speed, row -> row >= from && row < to), result);
+    }
+
+    @Test
+    void mergingRangesEqualsWholeTable() {
+        ColumnTable.CategoryColumn categories = table.getCategoryColumn(district);
+        ColumnTable.NumericColumn values = table.getNumericColumn(speed);
+        GroupByAggregator.Result first = GroupByAggregator.aggregate(categories, values, 0, 12_345, null);
+        first.merge(GroupByAggregator.aggregate(categories, values, 12_345, ROWS, null));
+        assertSameResult(GroupByAggregator.aggregate(categories, values), first);
+    }
+
+    @Test
+    void uniqueCategoryPerRowMatchesBruteForce() throws Exception {
+        StringBuilder csv = new StringBuilder("Index,Speed\n");
+        Random random = new Random(8);
+        for (int row = 0; row < ROWS; row++) {
+            csv.append("ID").append(row).append(',').append(random.nextInt(1_000) / 10.0).append('\n');
+        }
+        ColumnTable ids = TestData.table(csv.toString());
+        assertEquals(ROWS, ids.getCategoryColumn(0).dictionary.length);
+        GroupByAggregator.Result result = GroupByAggregator.aggregate(ids.getCategoryColumn(0), ids.getNumericColumn(1));
+        assertSameResult(bruteForce(ids, 0, 1, row -> true), result);
+    }
+
+    @Test
+    void leavesStayWithinTheMemoryBudget() {
+        int rows = 2_000_000;
+        long idResult = GroupByAggregator.Result.estimatedBytes(rows);
+        assertEquals(rows, GroupByAggregator.leafSize(rows, 1 << 15, idResult));
+
+        long mediumResult = GroupByAggregator.Result.estimatedBytes(100_000);
+        int leafSize = GroupByAggregator.leafSize(rows, 1 << 15, mediumResult);
+        long leaves = 2L * ((rows + leafSize - 1) / leafSize);
+        assertTrue(leaves * mediumResult <= GroupByAggregator.LEAF_RESULTS_BYTES);
+
+        int districtLeaves = GroupByAggregator.leafSize(ROWS, 1 << 15, GroupByAggregator.Result.estimatedBytes(40));
+        assertTrue(districtLeaves < ROWS);
+    }
+
+    @Test
+    void topKReturnsLargestFirst() {
+        GroupByAggregator.Result result = new GroupByAggregator.Result(new String[] {"a", "b", "c", "d", "e"});
+        long[] counts = {5, 9, 0, 9, 1};
+        System.arraycopy(counts, 0, result.counts, 0, counts.length);
+        assertArrayEquals(new int[] {1, 3, 0}, result.topK(3, GroupByAggregator.Aggregation.COUNT, code -> true));
+        assertArrayEquals(new int[] {1, 0, 4}, result.topK(10, GroupByAggregator.Aggregation.COUNT, code -> code != 3));
+    }
+
+    /** Rows chosen at random, about one in the given number, with a dense run to get bitmap containers. */
+    static RowBitmap randomSelection(int rows, int oneIn) {
+        Random random = new Random(oneIn);
+        RowBitmap.Builder builder = new RowBitmap.Builder();
+        for (int row = 0; row < rows; row++) {
+            if ((row >= 70_000 && row < 80_000) || random.nextInt(oneIn) == 0) {
+                builder.add(row);
+            }
+        }
+        return builder.build();
+    }
+
+    /** The group-by computed one row at a time; a numIndex of -1 counts rows only. */
+    static GroupByAggregator.Result bruteForce(ColumnTable table, int catIndex, int numIndex, IntPredicate include) {
+        ColumnTable.CategoryColumn categories = table.getCategoryColumn(catIndex);
+        GroupByAggregator.Result result = new GroupByAggregator.Result(categories.dictionary);
+        for (int row = 0; row < table.getRowCount(); row++) {
+            int code = categories.getCode(row);
+            if (!include.test(row) || code == ColumnTable.MISSING_CODE) continue;
+            if (numIndex < 0) {
+                result.counts[code]++;
+                continue;
+            }
+            ColumnTable.NumericColumn values = table.getNumericColumn(numIndex);
+            if (values.isMissing(row)) continue;
+            double value = values.getDouble(row);
+            result.counts[code]++;
+            result.sums[code] += value;
+            result.mins[code] = Math.min(result.mins[code], value);
+            result.maxs[code] = Math.max(result.maxs[code], value);
+        }
+        return result;
+    }
+
+    static void assertSameResult(GroupByAggregator.Result expected, GroupByAggregator.Result actual) {
+        assertArrayEquals(expected.keys, actual.keys);
+        assertArrayEquals(expected.counts, actual.counts);
+        for (int code = 0; code < expected.size(); code++) {
+            assertEquals(expected.sums[code], actual.sums[code], 1e-9 * Math.abs(expected.sums[code]), expected.keys[code]);
+            assertEquals(expected.mins[code], actual.mins[code], expected.keys[code]);
+            assertEquals(expected.maxs[code], actual.maxs[code], expected.keys[code]);
+        }
+    }
+}
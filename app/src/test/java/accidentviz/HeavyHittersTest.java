@@ -0,0 +1,85 @@
+package accidentviz;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HeavyHittersTest {
+
+    private static final int CAPACITY = 16;
+
+    @Test
+    void countsBoundTheTrueCounts() {
+        Map<String, Long> counts = new HashMap<>();
+        HeavyHitters summary = new HeavyHitters(CAPACITY);
+        add(summary, counts, 50_000, 51);
+
+        assertBounds(summary, counts);
+        // A value with more than 1/capacity of the rows is always tracked.
+        assertEquals("Value 0", summary.top(1).get(0).value);
+    }
+
+    @Test
+    void mergedSummaryKeepsTheBounds() {
+        Map<String, Long> counts = new HashMap<>();
+        HeavyHitters first = new HeavyHitters(CAPACITY);
+        HeavyHitters second = new HeavyHitters(CAPACITY);
+        add(first, counts, 30_000, 52);
+        add(second, counts, 20_000, 53);
+
+        first.merge(second);
+        assertBounds(first, counts);
+        assertEquals(CAPACITY, first.top(Integer.MAX_VALUE).size());
+    }
+
+    @Test
+    void exactCountsKeepTheLargest() {
+        String[] values = {"a", "b", "c", "d", "e"};
+        int[] counts = {5, 0, 9, 2, 7};
+        HeavyHitters summary = HeavyHitters.ofCounts(values, counts, 3);
+        List<HeavyHitters.Entry> top = summary.top(10);
+        assertEquals(3, top.size());
+        assertEquals("c", top.get(0).value);
+        assertEquals(9, top.get(0).count);
+        assertEquals(0, top.get(0).error);
+        assertEquals("e", top.get(1).value);
+        assertEquals("a", top.get(2).value);
+
+        // Merged with a summary that has seen other values, "d" may have been left out of both.
+        HeavyHitters other = new HeavyHitters(3);
+        other.add("d", 4);
+        other.add("b", 1);
+        summary.merge(other);
+        Map<String, Long> truth = new HashMap<>();
+        for (int i = 0; i < values.length; i++) {
+            truth.put(values[i], (long) counts[i]);
+        }
+        truth.merge("d", 4L, Long::sum);
+        truth.merge("b", 1L, Long::sum);
+        assertBounds(summary, truth);
+    }
+
+    /** Adds Zipf-like values: value k is drawn about 1/(k+1) as often as value 0. */
+    private static void add(HeavyHitters summary, Map<String, Long> counts, int n, long seed) {
+        Random random = new Random(seed);
+        for (int i = 0; i < n; i++) {
+            String value = "Value " + (int) Math.floor(Math.exp(random.nextDouble() * Math.log(500)) - 1);
+            summary.add(value, 1);
+            counts.merge(value, 1L, Long::sum);
+        }
+    }
+
+    private static void assertBounds(HeavyHitters summary, Map<String, Long> counts) {
+        for (HeavyHitters.Entry entry : summary.top(Integer.MAX_VALUE)) {
+            long count = counts.getOrDefault(entry.value, 0L);
+            assertTrue(entry.count - entry.error <= count && count <= entry.count,
+                    entry.value + " seen " + count + " times, tracked as " + entry.count + " - " + entry.error);
+        }
+    }
+}
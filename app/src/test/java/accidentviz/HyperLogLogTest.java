@@ -0,0 +1,55 @@
+package accidentviz;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HyperLogLogTest {
+
+    /** Three standard errors of a sketch with 2^12 registers. */
+    private static final double TOLERANCE = 3 * 1.04 / Math.sqrt(1 << HyperLogLog.PRECISION);
+
+    @Test
+    void estimatesWithinItsErrorBound() {
+        for (int distinct : new int[] {1_000, 100_000, 1_000_000}) {
+            HyperLogLog sketch = new HyperLogLog();
+            for (int i = 0; i < distinct; i++) {
+                sketch.add(HyperLogLog.hash(i));
+                // Repeats do not count.
+                sketch.add(HyperLogLog.hash(i));
+            }
+            assertClose(distinct, sketch.estimate());
+        }
+    }
+
+    @Test
+    void smallCountsAreNearlyExact() {
+        HyperLogLog sketch = new HyperLogLog();
+        assertEquals(0, sketch.estimate());
+        for (int i = 0; i < 40; i++) {
+            sketch.add(HyperLogLog.hash("District " + i));
+        }
+        assertEquals(40, sketch.estimate());
+    }
+
+    @Test
+    void mergeCountsOverlappingValuesOnce() {
+        HyperLogLog first = new HyperLogLog();
+        HyperLogLog second = new HyperLogLog();
+        HyperLogLog union = new HyperLogLog();
+        for (int i = 0; i < 150_000; i++) {
+            if (i < 100_000) first.add(HyperLogLog.hash(i));
+            if (i >= 50_000) second.add(HyperLogLog.hash(i));
+            union.add(HyperLogLog.hash(i));
+        }
+        first.merge(second);
+        assertEquals(union.estimate(), first.estimate());
+        assertClose(150_000, first.estimate());
+    }
+
+    private static void assertClose(long expected, long estimate) {
+        double error = Math.abs(estimate - expected) / (double) expected;
+        assertTrue(error <= TOLERANCE, "estimated " + estimate + " for " + expected);
+    }
+}
@@ -0,0 +1,88 @@
+package accidentviz;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MetricsTest {
+
+    @Test
+    void spansFillTheHistogramOfTheirStage() throws Exception {
+        Metrics metrics = new Metrics();
+        for (int i = 0; i < 3; i++) {
+            try (Metrics.Span span = metrics.start(Metrics.Stage.LOAD)) {
+                span.addRows(100);
+                span.addBytes(1_000);
+                Thread.sleep(2);
+            }
+        }
+        List<Metrics.StageStats> stages = metrics.getStages();
+        assertEquals(1, stages.size());
+        Metrics.StageStats load = stages.get(0);
+        assertEquals(Metrics.Stage.LOAD, load.stage);
+        assertEquals(3, load.count);
+        assertEquals(300, load.rows);
+        assertEquals(3_000, load.bytes);
+        assertTrue(load.minNanos >= 2_000_000 && load.minNanos <= load.maxNanos);
+
+        long total = 0;
+        for (long bucket : load.buckets) {
+            total += bucket;
+        }
+        assertEquals(3, total);
+        // The slowest run is in the bucket its time falls in.
+        long micros = load.maxNanos / 1000;
+        assertTrue(load.buckets[63 - Long.numberOfLeadingZeros(micros)] > 0);
+        assertTrue(metrics.toJson().contains("\"stage\": \"load\", \"count\": 3"));
+
+        metrics.reset();
+        assertTrue(metrics.getStages().isEmpty());
+    }
+
+    @Test
+    void percentilesAreTheUpperBoundOfTheirBucket() {
+        Metrics.StageStats stats = new Metrics.StageStats(Metrics.Stage.AGGREGATE);
+        // 90 runs of 64-127 us and 10 of 4096-8191 us, the slowest taking 5 ms.
+        stats.buckets[6] = 90;
+        stats.buckets[12] = 10;
+        stats.count = 100;
+        stats.maxNanos = 5_000_000;
+        assertEquals(0.128, stats.percentileMillis(0.5), 1e-9);
+        assertEquals(0.128, stats.percentileMillis(0.9), 1e-9);
+        assertEquals(5.0, stats.percentileMillis(0.91), 1e-9);
+        assertEquals(5.0, stats.percentileMillis(0.99), 1e-9);
+
+        Metrics.StageStats none = new Metrics.StageStats(Metrics.Stage.AGGREGATE);
+        assertEquals(0, none.percentileMillis(0.5));
+    }
+
+    @Test
+    void countsValuesTheLoaderDropped() {
+        String[] headers = {"Area", "Speed", "Date"};
+        ColumnTable.ColumnType[] types = {ColumnTable.ColumnType.CATEGORY, ColumnTable.ColumnType.NUMERIC,
+                ColumnTable.ColumnType.DATE};
+        ColumnTable.Builder builder = new ColumnTable.Builder(headers, types,
+                value -> value.equals("2021-01-01") ? 18_628 : ColumnTable.MISSING_DAY);
+        builder.addRow(new String[] {"North", "30", "2021-01-01"});
+        builder.addRow(new String[] {"South", "fast", "yesterday"});
+        builder.addRow(new String[] {"East", "", ""});
+        builder.addRow(new String[] {"West", "40"});
+        builder.addRow(new String[] {"West", "40", "2021-01-01", "extra"});
+
+        Metrics metrics = new Metrics();
+        builder.reportRejected(metrics);
+        Map<String, Long> counters = metrics.getCounters();
+        assertEquals(1L, counters.get("Unparseable values in Speed"));
+        assertEquals(1L, counters.get("Unparseable values in Date"));
+        assertEquals(2L, counters.get("Rows with a different number of fields than the header"));
+        assertEquals(3, counters.size());
+
+        // Reported counts start again from zero.
+        builder.reportRejected(metrics);
+        assertEquals(1L, metrics.getCounters().get("Unparseable values in Speed"));
+    }
+}
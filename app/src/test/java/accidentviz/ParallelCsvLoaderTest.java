@@ -0,0 +1,84 @@
+package accidentviz;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParallelCsvLoaderTest {
+
+    private static final long CHUNK_BYTES = 16 << 10;
+
+    @TempDir
+    File directory;
+
+    @Test
+    void loadsManyRangesLikeTableLoader() throws Exception {
+        String csv = TestData.accidents(20_000, 31);
+        ParallelCsvLoader parallel = new ParallelCsvLoader(100, CHUNK_BYTES, 64);
+        TableLoader loaded = parallel.load(write("accidents.csv", csv), null);
+
+        assertEquals(64, parallel.getRangeCount());
+        assertSameLoad(TestData.load(csv), loaded);
+        assertEquals(csv.length(), parallel.getRowsEnd());
+    }
+
+    @Test
+    void fallsBackWhenACutIsInsideAQuotedLineBreak() throws Exception {
+        Random random = new Random(32);
+        StringBuilder csv = new StringBuilder("Area,Note,Number_of_Casualties\n");
+        for (int row = 0; row < 4_000; row++) {
+            csv.append("District ").append(random.nextInt(40)).append(",\"");
+            if (row == 2_000) {
+                // Longer than a range, so some cut must fall inside it.
+                for (int line = 0; line < 4_000; line++) {
+                    csv.append("line ").append(line).append('\n');
+                }
+            } else {
+                csv.append("note, ").append(row);
+            }
+            csv.append("\",").append(1 + random.nextInt(4)).append('\n');
+        }
+        ParallelCsvLoader parallel = new ParallelCsvLoader(100, CHUNK_BYTES, 8);
+        TableLoader loaded = parallel.load(write("quoted.csv", csv.toString()), null);
+
+        assertEquals(1, parallel.getRangeCount());
+        assertSameLoad(TestData.load(csv.toString()), loaded);
+        assertTrue(loaded.getTable().getColumn(1).getString(2_000).contains("line 3999"));
+    }
+
+    @Test
+    void handlesCrlfAndAByteOrderMark() throws Exception {
+        String csv = "\uFEFF" + TestData.accidents(10_000, 33).replace("\n", "\r\n");
+        ParallelCsvLoader parallel = new ParallelCsvLoader(100, CHUNK_BYTES, 16);
+        TableLoader loaded = parallel.load(write("crlf.csv", csv), null);
+
+        assertEquals(16, parallel.getRangeCount());
+        assertEquals(Arrays.asList(TestData.HEADER.split(",")), Arrays.asList(loaded.getHeaders()));
+        assertSameLoad(TestData.load(csv), loaded);
+        String last = loaded.getTable().getColumn(TestData.column("Urban_or_Rural")).getString(9_999);
+        assertTrue(last.equals("Urban") || last.equals("Rural"), last);
+    }
+
+    private static void assertSameLoad(TableLoader expected, TableLoader actual) {
+        assertEquals(Arrays.asList(expected.getHeaders()), Arrays.asList(actual.getHeaders()));
+        for (int col = 0; col < expected.getSchema().size(); col++) {
+            assertEquals(expected.getSchema().get(col).type, actual.getSchema().get(col).type);
+        }
+        SnapshotFileTest.assertSameTable(expected.getTable(), actual.getTable());
+    }
+
+    private File write(String name, String csv) throws IOException {
+        File file = new File(directory, name);
+        Files.write(file.toPath(), csv.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
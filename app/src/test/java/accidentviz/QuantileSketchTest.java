@@ -0,0 +1,85 @@
+package accidentviz;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QuantileSketchTest {
+
+    private static final int VALUES = 200_000;
+    /** The rank error the default k is sized for, with some slack for an unlucky compaction. */
+    private static final double RANK_ERROR = 0.015;
+    private static final double[] FRACTIONS = {0.01, 0.05, 0.1, 0.25, 0.5, 0.75, 0.9, 0.95, 0.99};
+
+    @Test
+    void quantilesAreWithinTheRankError() {
+        QuantileSketch sketch = new QuantileSketch();
+        for (int value : shuffled(VALUES, 41)) {
+            sketch.add(value);
+        }
+        assertEquals(VALUES, sketch.getCount());
+        assertEquals(0, sketch.getMin());
+        assertEquals(VALUES - 1, sketch.getMax());
+        assertRanks(sketch, VALUES);
+    }
+
+    @Test
+    void mergedSketchCoversBothParts() {
+        QuantileSketch first = new QuantileSketch();
+        QuantileSketch second = new QuantileSketch();
+        int[] values = shuffled(VALUES, 42);
+        for (int i = 0; i < values.length; i++) {
+            // Uneven parts, so the two sketches have a different number of levels.
+            (i % 10 == 0 ? first : second).add(values[i]);
+        }
+        first.merge(second);
+        assertEquals(VALUES, first.getCount());
+        double[] ends = first.quantiles(0, 1);
+        assertEquals(0, ends[0]);
+        assertEquals(VALUES - 1, ends[1]);
+        assertRanks(first, VALUES);
+    }
+
+    @Test
+    void ignoresNaN() {
+        QuantileSketch sketch = new QuantileSketch();
+        assertTrue(Double.isNaN(sketch.getMin()));
+        assertTrue(Double.isNaN(sketch.quantiles(0.5)[0]));
+        sketch.add(Double.NaN);
+        sketch.add(3);
+        sketch.add(Double.NaN);
+        sketch.add(1);
+        sketch.add(2);
+        assertEquals(3, sketch.getCount());
+        assertEquals(1, sketch.getMin());
+        assertEquals(3, sketch.getMax());
+        assertEquals(2, sketch.quantiles(0.5)[0]);
+    }
+
+    /** The values are 0..n-1, so a value is its own rank. */
+    private static void assertRanks(QuantileSketch sketch, int n) {
+        double[] quantiles = sketch.quantiles(FRACTIONS);
+        for (int f = 0; f < FRACTIONS.length; f++) {
+            double error = Math.abs(quantiles[f] - FRACTIONS[f] * n) / n;
+            assertTrue(error <= RANK_ERROR, "quantile " + FRACTIONS[f] + " was " + quantiles[f]);
+        }
+    }
+
+    private static int[] shuffled(int n, long seed) {
+        int[] values = new int[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = i;
+        }
+        Random random = new Random(seed);
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = values[i];
+            values[i] = values[j];
+            values[j] = swap;
+        }
+        return values;
+    }
+}
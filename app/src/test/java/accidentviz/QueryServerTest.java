@@ -0,0 +1,118 @@
+package accidentviz;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QueryServerTest {
+
+    private static final String CSV = "Area,Severity,Casualties,Accident_Date\n"
+            + "North,Slight,1,2021-01-05\n"
+            + "South,Serious,2,2021-01-20\n"
+            + "North,Slight,3,2021-02-01\n"
+            + "\"East, Upper\",Fatal,4,2021-02-10\n"
+            + "North,Serious,5,2021-02-11\n";
+
+    private static QueryServer server;
+    private static HttpClient client;
+
+    @BeforeAll
+    static void start() throws Exception {
+        ChartBuilder charts = new ChartBuilder(TestData.table(CSV), new AggregateCache(1 << 20), false);
+        server = new QueryServer(charts);
+        server.start(0, 2);
+        client = HttpClient.newHttpClient();
+    }
+
+    @AfterAll
+    static void stop() {
+        server.stop();
+    }
+
+    @Test
+    void listsColumns() throws Exception {
+        HttpResponse<String> response = get("/columns?format=csv");
+        assertEquals(200, response.statusCode());
+        assertEquals("name,type\nArea,category\nSeverity,category\nCasualties,numeric\nAccident_Date,date\n", response.body());
+        assertTrue(get("/columns").body().startsWith("{\"rows\": 5, \"columns\": [{\"name\": \"Area\""));
+    }
+
+    @Test
+    void countsFilteredRows() throws Exception {
+        assertEquals("{\"rows\": 5}\n", get("/count").body());
+        assertEquals("{\"rows\": 3}\n", get("/count?where=" + encode("Area=North")).body());
+        assertEquals("rows\n2\n", get("/count?format=csv&where=" + encode("Area=North") + "&where="
+                + encode("Severity=Slight")).body());
+    }
+
+    @Test
+    void groupsByCategory() throws Exception {
+        assertEquals("key,count,value\nNorth,3,9\nSouth,1,2\n\"East, Upper\",1,4\n",
+                get("/groupby?format=csv&category=Area&value=Casualties").body());
+        assertEquals("key,count,value\n\"East, Upper\",1,4\nNorth,3,3\n",
+                get("/groupby?format=csv&category=Area&value=Casualties&agg=mean&top=2").body());
+        assertEquals("key,count,value\nNorth,3,3\nSouth,1,1\n\"East, Upper\",1,1\n", get("/groupby?format=csv&category=Area").body());
+        String json = get("/groupby?category=Area&value=Casualties&agg=max&top=1").body();
+        assertEquals("{\"category\": \"Area\", \"value\": \"Casualties\", \"aggregation\": \"max\", \"groups\": [\n"
+                + "  {\"key\": \"North\", \"count\": 3, \"value\": 5}\n]}\n", json);
+    }
+
+    @Test
+    void rollsUpByPeriod() throws Exception {
+        assertEquals("key,period,count,value\nNorth,2021-01-01,1,1\nNorth,2021-02-01,2,8\nSouth,2021-01-01,1,2\n"
+                        + "\"East, Upper\",2021-02-01,1,4\n",
+                get("/timeseries?format=csv&category=Area&value=Casualties&granularity=month").body());
+    }
+
+    @Test
+    void rendersCharts() throws Exception {
+        HttpResponse<byte[]> response = client.send(request("/chart?size=300x200&spec="
+                + encode("pie:category=Area")), HttpResponse.BodyHandlers.ofByteArray());
+        assertEquals(200, response.statusCode());
+        assertEquals("image/png", response.headers().firstValue("Content-Type").orElse(""));
+        byte[] magic = new byte[4];
+        System.arraycopy(response.body(), 0, magic, 0, 4);
+        assertArrayEquals(new byte[] {(byte) 0x89, 'P', 'N', 'G'}, magic);
+    }
+
+    @Test
+    void reportsBadRequests() throws Exception {
+        assertEquals(404, get("/nothing").statusCode());
+        assertEquals(400, get("/groupby?category=Nope").statusCode());
+        assertEquals(400, get("/groupby?category=Casualties").statusCode());
+        assertEquals(400, get("/groupby?category=Area&agg=mean").statusCode());
+        assertEquals(400, get("/count?where=" + encode("Area=West")).statusCode());
+        assertEquals(400, get("/count?format=xml").statusCode());
+        assertEquals(400, get("/chart?spec=bar:category=Area&size=10").statusCode());
+        HttpResponse<String> post = client.send(HttpRequest.newBuilder(uri("/count"))
+                .POST(HttpRequest.BodyPublishers.noBody()).build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(405, post.statusCode());
+    }
+
+    private static HttpResponse<String> get(String path) throws Exception {
+        return client.send(request(path), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static HttpRequest request(String path) {
+        return HttpRequest.newBuilder(uri(path)).build();
+    }
+
+    private static URI uri(String path) {
+        return URI.create("http://127.0.0.1:" + server.getPort() + path);
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,142 @@
+package accidentviz;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RowBitmapTest {
+
+    /** Spans several containers of 65,536 rows. */
+    private static final int ROWS = 300_000;
+
+    /** Densities from sparse array containers to nearly full bitmap containers. */
+    private static final double[] DENSITIES = {0.0, 0.001, 0.05, 0.5, 0.99};
+
+    @Test
+    void andOrMatchBitSets() {
+        Random random = new Random(1);
+        for (double a : DENSITIES) {
+            for (double b : DENSITIES) {
+                BitSet left = randomRows(random, a);
+                BitSet right = randomRows(random, b);
+                BitSet and = (BitSet) left.clone();
+                and.and(right);
+                BitSet or = (BitSet) left.clone();
+                or.or(right);
+
+                RowBitmap leftBitmap = toBitmap(left);
+                RowBitmap rightBitmap = toBitmap(right);
+                assertSameRows(and, leftBitmap.and(rightBitmap));
+                assertSameRows(and, rightBitmap.and(leftBitmap));
+                assertSameRows(or, leftBitmap.or(rightBitmap));
+                assertSameRows(or, rightBitmap.or(leftBitmap));
+            }
+        }
+    }
+
+    @Test
+    void containersChangeKindAtTheLimit() {
+        BitSet rows = new BitSet();
+        // Exactly 4096 rows in one container, one more in the next, a gap, then a full container.
+        for (int row = 0; row < 4096 * 2; row += 2) rows.set(row);
+        for (int row = 65_536; row < 65_536 + 4097; row++) rows.set(row);
+        rows.set(3 * 65_536, 4 * 65_536);
+        RowBitmap bitmap = toBitmap(rows);
+        assertSameRows(rows, bitmap);
+        assertSameRows(rows, bitmap.or(RowBitmap.EMPTY));
+        assertSameRows(rows, bitmap.and(bitmap));
+        assertSameRows(new BitSet(), bitmap.and(RowBitmap.EMPTY));
+    }
+
+    @Test
+    void cursorReturnsRowsInRange() {
+        Random random = new Random(2);
+        for (double density : DENSITIES) {
+            BitSet rows = randomRows(random, density);
+            RowBitmap bitmap = toBitmap(rows);
+            int[][] ranges = {{0, ROWS}, {1, 65_536}, {65_535, 65_537}, {70_000, 200_001}, {ROWS - 3, ROWS}, {5, 5}};
+            for (int[] range : ranges) {
+                BitSet expected = rows.get(range[0], range[1]);
+                BitSet actual = new BitSet();
+                int[] batch = new int[1000];
+                RowBitmap.Cursor cursor = RowBitmap.rows(bitmap, range[0], range[1]);
+                int previous = -1;
+                for (int n = cursor.fill(batch); n > 0; n = cursor.fill(batch)) {
+                    for (int i = 0; i < n; i++) {
+                        assertTrue(batch[i] > previous);
+                        previous = batch[i];
+                        actual.set(batch[i] - range[0]);
+                    }
+                }
+                assertEquals(expected, actual, density + " " + range[0] + ".." + range[1]);
+            }
+        }
+    }
+
+    @Test
+    void nullSelectionCursorReturnsEveryRow() {
+        int[] batch = new int[RowBitmap.BATCH_SIZE];
+        RowBitmap.Cursor cursor = RowBitmap.rows(null, 10, 10_000);
+        int expected = 10;
+        for (int n = cursor.fill(batch); n > 0; n = cursor.fill(batch)) {
+            for (int i = 0; i < n; i++) {
+                assertEquals(expected++, batch[i]);
+            }
+        }
+        assertEquals(10_000, expected);
+    }
+
+    @Test
+    void filterSelectionMatchesRowScan() throws Exception {
+        ColumnTable table = TestData.table(TestData.accidents(100_000, 3));
+        final int district = TestData.column("District_Area");
+        final int severity = TestData.column("Accident_Severity");
+        final int area = TestData.column("Urban_or_Rural");
+        RowFilter filter = RowFilter.NONE.with(district, new int[] {0, 3, 5, 7}).with(severity, new int[] {0})
+                .with(area, new int[] {1});
+        RowBitmap indexed = filter.select(column -> BitmapIndex.build(table.getCategoryColumn(column), table.getRowCount()));
+        RowBitmap scanned = filter.select(table, 0, table.getRowCount());
+        assertEquals(toBitSet(scanned), toBitSet(indexed));
+        assertTrue(indexed.cardinality() > 0);
+    }
+
+    private static BitSet randomRows(Random random, double density) {
+        BitSet rows = new BitSet(ROWS);
+        for (int row = 0; row < ROWS; row++) {
+            if (random.nextDouble() < density) rows.set(row);
+        }
+        return rows;
+    }
+
+    private static RowBitmap toBitmap(BitSet rows) {
+        RowBitmap.Builder builder = new RowBitmap.Builder();
+        for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+            builder.add(row);
+        }
+        return builder.build();
+    }
+
+    private static BitSet toBitSet(RowBitmap bitmap) {
+        BitSet rows = new BitSet();
+        int[] batch = new int[RowBitmap.BATCH_SIZE];
+        RowBitmap.Cursor cursor = RowBitmap.rows(bitmap, 0, Integer.MAX_VALUE);
+        for (int n = cursor.fill(batch); n > 0; n = cursor.fill(batch)) {
+            for (int i = 0; i < n; i++) {
+                rows.set(batch[i]);
+            }
+        }
+        return rows;
+    }
+
+    private static void assertSameRows(BitSet expected, RowBitmap actual) {
+        assertEquals(expected.cardinality(), actual.cardinality());
+        assertEquals(expected, toBitSet(actual));
+        for (int row = 0; row < ROWS; row += 7) {
+            assertEquals(expected.get(row), actual.contains(row));
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package accidentviz;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SchemaInferenceTest {
+
+    @Test
+    void recognizesNumbers() {
+        for (String value : new String[] {"0", "-12", "+3.5", ".5", "5.", " 42 ", "1e6", "2.5E-3"}) {
+            assertTrue(SchemaInference.isNumber(value), value);
+        }
+        for (String value : new String[] {"", "-", ".", "1e", "1e+", "1,000", "12a", "0x1F", "NaN", "1 2"}) {
+            assertFalse(SchemaInference.isNumber(value), value);
+        }
+    }
+
+    @Test
+    void recognizesDateShapes() {
+        for (String value : new String[] {"2021-01-05", "2021-1-5", "05-01-2021", "1/5/2021", "05/01/2021"}) {
+            assertTrue(SchemaInference.isDate(value), value);
+        }
+        for (String value : new String[] {"2021/01/05", "2021-01/05", "2021-01-05-01", "21-01-05", "2021-001-05",
+                "5/1/21", "2021-01-", "Jan 5 2021", "20210105"}) {
+            assertFalse(SchemaInference.isDate(value), value);
+        }
+    }
+
+    @Test
+    void typesColumnsAndCountsNulls() {
+        SchemaInference inference = new SchemaInference(new String[] {"n", "d", "c", "empty"});
+        inference.accept(new String[] {"1", "2021-01-05", "North", ""});
+        inference.accept(new String[] {"", "2021-01-06", "South", " "});
+        inference.accept(new String[] {"2.5", "", "3", ""});
+        List<SchemaInference.ColumnSchema> schema = inference.getSchema();
+        assertEquals(ColumnTable.ColumnType.NUMERIC, schema.get(0).type);
+        assertEquals(ColumnTable.ColumnType.DATE, schema.get(1).type);
+        assertEquals(ColumnTable.ColumnType.CATEGORY, schema.get(2).type);
+        assertEquals(ColumnTable.ColumnType.CATEGORY, schema.get(3).type);
+        assertEquals(1, schema.get(0).nullCount);
+        assertEquals(1, schema.get(1).nullCount);
+        assertEquals(3, schema.get(3).nullCount);
+        assertEquals(3, schema.get(0).rowsInspected);
+    }
+
+    @Test
+    void onlyFirstDateColumnIsADate() {
+        SchemaInference inference = new SchemaInference(new String[] {"a", "b"});
+        inference.accept(new String[] {"2021-01-05", "2021-01-06"});
+        List<SchemaInference.ColumnSchema> schema = inference.getSchema();
+        assertEquals(ColumnTable.ColumnType.DATE, schema.get(0).type);
+        assertEquals(ColumnTable.ColumnType.CATEGORY, schema.get(1).type);
+    }
+
+    @Test
+    void settlesOnceEveryColumnIsACategory() {
+        SchemaInference inference = new SchemaInference(new String[] {"a", "b"});
+        assertTrue(inference.accept(new String[] {"x", "1"}));
+        assertFalse(inference.accept(new String[] {"y", "z"}));
+        assertTrue(inference.isSettled());
+    }
+
+    @Test
+    void settlesAtTheSampleLimit() {
+        SchemaInference inference = new SchemaInference(new String[] {"n"}, 3);
+        assertTrue(inference.accept(new String[] {"1"}));
+        assertTrue(inference.accept(new String[] {"2"}));
+        assertFalse(inference.accept(new String[] {"3"}));
+        assertFalse(inference.accept(new String[] {"not a number"}));
+        assertEquals(ColumnTable.ColumnType.NUMERIC, inference.getSchema().get(0).type);
+    }
+
+    @Test
+    void mergeKeepsTypesThatFitEveryPart() {
+        String[] headers = {"a", "b"};
+        SchemaInference first = new SchemaInference(headers);
+        first.accept(new String[] {"1", "2"});
+        SchemaInference second = new SchemaInference(headers);
+        second.accept(new String[] {"x", "3"});
+        first.merge(second);
+        List<SchemaInference.ColumnSchema> schema = first.getSchema();
+        assertEquals(ColumnTable.ColumnType.CATEGORY, schema.get(0).type);
+        assertEquals(ColumnTable.ColumnType.NUMERIC, schema.get(1).type);
+        assertEquals(2, schema.get(1).rowsInspected);
+    }
+}
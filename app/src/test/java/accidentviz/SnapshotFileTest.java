@@ -0,0 +1,96 @@
+package accidentviz;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SnapshotFileTest {
+
+    @TempDir
+    File directory;
+
+    @Test
+    void roundTripsEveryColumnType() throws IOException {
+        TableLoader loader = TestData.load(TestData.accidents(5_000, 11));
+        File file = new File(directory, "accidents" + SnapshotFile.EXTENSION);
+        SnapshotFile.write(file, loader.getTable(), loader.getSchema(), loader.getDateParser());
+
+        assertTrue(SnapshotFile.isSnapshot(file));
+        SnapshotFile.Snapshot snapshot = SnapshotFile.read(file);
+        assertSameTable(loader.getTable(), snapshot.table);
+        assertEquals(loader.getDateParser().getPattern(), snapshot.dateParser.getPattern());
+        for (int col = 0; col < loader.getSchema().size(); col++) {
+            assertEquals(loader.getSchema().get(col).toString(), snapshot.schema.get(col).toString());
+        }
+    }
+
+    @Test
+    void savesOverTheSnapshotTheTableIsMappedFrom() throws IOException {
+        TableLoader loader = TestData.load(TestData.accidents(5_000, 12));
+        File file = new File(directory, "accidents" + SnapshotFile.EXTENSION);
+        SnapshotFile.write(file, loader.getTable(), loader.getSchema(), loader.getDateParser());
+        SnapshotFile.Snapshot mapped = SnapshotFile.read(file);
+
+        SnapshotFile.write(file, mapped.table, mapped.schema, mapped.dateParser);
+
+        assertSameTable(loader.getTable(), mapped.table);
+        assertSameTable(loader.getTable(), SnapshotFile.read(file).table);
+        assertEquals(1, directory.listFiles().length);
+    }
+
+    @Test
+    void keepsHeadersLongerThanWriteUtfAllows() throws IOException {
+        StringBuilder header = new StringBuilder();
+        while (header.length() < 70_000) {
+            header.append("Stra\u00dfe ");
+        }
+        TableLoader loader = TestData.load(header + ",n\nx,1\n");
+        File file = new File(directory, "long" + SnapshotFile.EXTENSION);
+        SnapshotFile.write(file, loader.getTable(), loader.getSchema(), loader.getDateParser());
+        SnapshotFile.Snapshot snapshot = SnapshotFile.read(file);
+        assertEquals(header.toString(), snapshot.table.getHeaders()[0]);
+        assertSameTable(loader.getTable(), snapshot.table);
+    }
+
+    @Test
+    void rejectsOtherFilesAndVersions() throws IOException {
+        File csv = new File(directory, "data.csv");
+        Files.writeString(csv.toPath(), "a,b\n1,2\n");
+        assertFalse(SnapshotFile.isSnapshot(csv));
+        assertThrows(IOException.class, () -> SnapshotFile.read(csv));
+
+        TableLoader loader = TestData.load("a,b\n1,2\n");
+        File file = new File(directory, "old" + SnapshotFile.EXTENSION);
+        SnapshotFile.write(file, loader.getTable(), loader.getSchema(), loader.getDateParser());
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.seek(7);
+            raw.write('1');
+        }
+        assertTrue(SnapshotFile.isSnapshot(file));
+        IOException error = assertThrows(IOException.class, () -> SnapshotFile.read(file));
+        assertTrue(error.getMessage().contains("another version"), error.getMessage());
+    }
+
+    static void assertSameTable(ColumnTable expected, ColumnTable actual) {
+        assertEquals(expected.getRowCount(), actual.getRowCount());
+        assertEquals(expected.getColumnCount(), actual.getColumnCount());
+        for (int col = 0; col < expected.getColumnCount(); col++) {
+            ColumnTable.Column column = expected.getColumn(col);
+            ColumnTable.Column copy = actual.getColumn(col);
+            assertEquals(column.getClass(), copy.getClass());
+            for (int row = 0; row < expected.getRowCount(); row++) {
+                assertEquals(column.isMissing(row), copy.isMissing(row));
+                assertEquals(column.getString(row), copy.getString(row));
+            }
+        }
+    }
+}
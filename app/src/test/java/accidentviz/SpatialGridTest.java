@@ -0,0 +1,117 @@
+package accidentviz;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SpatialGridTest {
+
+    private static final int ROWS = 100_000;
+
+    private static ColumnTable table;
+    private static ColumnTable.NumericColumn xs;
+    private static ColumnTable.NumericColumn ys;
+    private static ColumnTable.NumericColumn speeds;
+    private static SpatialGrid grid;
+
+    @BeforeAll
+    static void load() throws Exception {
+        table = TestData.table(TestData.accidents(ROWS, 71));
+        xs = table.getNumericColumn(TestData.column("Longitude"));
+        ys = table.getNumericColumn(TestData.column("Latitude"));
+        speeds = table.getNumericColumn(TestData.column("Speed"));
+        grid = SpatialGrid.build(xs, ys, ROWS);
+    }
+
+    @Test
+    void fullExtentMatchesBruteForce() {
+        // 64 and 512 bins put bin edges on cell edges; 37 and 100 do not.
+        for (int bins : new int[] {37, 64, 100, 512}) {
+            assertSameHeat(null, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY,
+                    Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, bins, bins);
+        }
+    }
+
+    @Test
+    void zoomedBoxMatchesBruteForce() {
+        double cellWidth = (grid.xMax - grid.xMin) / SpatialGrid.GRID_SIZE;
+        double cellHeight = (grid.yMax - grid.yMin) / SpatialGrid.GRID_SIZE;
+        // A box cutting through cells, and one on cell edges.
+        assertSameHeat(null, grid.xMin + 100.3 * cellWidth, grid.xMin + 300.7 * cellWidth,
+                grid.yMin + 50.5 * cellHeight, grid.yMin + 420.1 * cellHeight, 80, 60);
+        assertSameHeat(null, grid.xMin + 128 * cellWidth, grid.xMin + 384 * cellWidth,
+                grid.yMin + 64 * cellHeight, grid.yMin + 448 * cellHeight, 32, 48);
+        // Reaching past the indexed extent.
+        assertSameHeat(null, grid.xMin - 1, grid.xMin + 10 * cellWidth, grid.yMax - 10 * cellHeight, grid.yMax + 1, 7, 9);
+    }
+
+    @Test
+    void selectionMatchesBruteForce() {
+        RowBitmap selection = GroupByAggregatorTest.randomSelection(ROWS, 3);
+        assertSameHeat(selection, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, 64, 64);
+        double cellWidth = (grid.xMax - grid.xMin) / SpatialGrid.GRID_SIZE;
+        assertSameHeat(selection, grid.xMin + 33.3 * cellWidth, grid.xMax - 20 * cellWidth,
+                Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, 50, 50);
+    }
+
+    @Test
+    void skipsMissingCoordinatesAndHandlesOneColumnOfPoints() throws Exception {
+        ColumnTable points = TestData.table("x,y\n1.5,2\n,3\n1.5,\n1.5,4\n1.5,4\n");
+        SpatialGrid line = SpatialGrid.build(points.getNumericColumn(0), points.getNumericColumn(1), points.getRowCount());
+        assertEquals(1.5, line.xMin);
+        assertEquals(1.5, line.xMax);
+        assertEquals(2, line.yMin);
+        assertEquals(4, line.yMax);
+        SpatialGrid.Heat heat = line.heat(null, null, null, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, 10, 10);
+        assertEquals(2, heat.size);
+        assertEquals(3, heat.values[0] + heat.values[1]);
+
+        ColumnTable empty = TestData.table("x,y\n1,\n,2\n");
+        SpatialGrid none = SpatialGrid.build(empty.getNumericColumn(0), empty.getNumericColumn(1), empty.getRowCount());
+        assertEquals(0, none.heat(null, null, null, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, 10, 10).size);
+    }
+
+    /** Checks the counts and the sums of speeds against binning every row. */
+    private static void assertSameHeat(RowBitmap selection, double xLow, double xHigh, double yLow, double yHigh,
+                                       int binsX, int binsY) {
+        SpatialGrid.CellSums sums = grid.sumCells(speeds);
+        for (ColumnTable.NumericColumn weights : new ColumnTable.NumericColumn[] {null, speeds}) {
+            SpatialGrid.Heat heat = grid.heat(weights, weights == null ? null : sums, selection,
+                    xLow, xHigh, yLow, yHigh, binsX, binsY);
+            double[] expected = bruteForce(weights, selection, Double.isInfinite(xLow) ? grid.xMin : xLow,
+                    Double.isInfinite(xHigh) ? grid.xMax : xHigh, Double.isInfinite(yLow) ? grid.yMin : yLow,
+                    Double.isInfinite(yHigh) ? grid.yMax : yHigh, heat, binsX, binsY);
+            double[] actual = new double[binsX * binsY];
+            for (int i = 0; i < heat.size; i++) {
+                int bx = (int) Math.floor((heat.x[i] - heat.xLow) / heat.binWidth);
+                int by = (int) Math.floor((heat.y[i] - heat.yLow) / heat.binHeight);
+                actual[by * binsX + bx] = heat.values[i];
+            }
+            for (int bin = 0; bin < expected.length; bin++) {
+                assertEquals(expected[bin], actual[bin], 1e-9 * Math.max(1, expected[bin]),
+                        "bin " + bin + " of " + binsX + "x" + binsY + (weights == null ? " counts" : " sums"));
+            }
+        }
+    }
+
+    private static double[] bruteForce(ColumnTable.NumericColumn weights, RowBitmap selection, double xLow, double xHigh,
+                                       double yLow, double yHigh, SpatialGrid.Heat heat, int binsX, int binsY) {
+        double[] bins = new double[binsX * binsY];
+        for (int row = 0; row < ROWS; row++) {
+            if (selection != null && !selection.contains(row)) continue;
+            double x = xs.getDouble(row);
+            double y = ys.getDouble(row);
+            if (!(x >= xLow && x <= xHigh && y >= yLow && y <= yHigh)) continue;
+            double weight = weights == null ? 1 : weights.getDouble(row);
+            if (Double.isNaN(weight)) continue;
+            int bx = Math.min(binsX - 1, (int) ((x - xLow) / heat.binWidth));
+            int by = Math.min(binsY - 1, (int) ((y - yLow) / heat.binHeight));
+            bins[by * binsX + bx] += weight;
+        }
+        return bins;
+    }
+}
@@ -0,0 +1,66 @@
+package accidentviz;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/** Small datasets for the tests, loaded the way the app loads a CSV file. */
+final class TestData {
+
+    static final String HEADER = "Accident_Severity,Accident_Date,District_Area,Number_of_Casualties,Speed,"
+            + "Latitude,Longitude,Urban_or_Rural";
+
+    private static final String[] SEVERITIES = {"Slight", "Slight", "Slight", "Serious", "Fatal"};
+    private static final String[] AREAS = {"Urban", "Rural"};
+
+    private TestData() {
+    }
+
+    /** Parses the CSV text and returns the finished loader. */
+    static TableLoader load(String csv) throws IOException {
+        TableLoader loader = new TableLoader();
+        new CsvParser().parse(Channels.newChannel(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8))), loader);
+        loader.finish();
+        return loader;
+    }
+
+    static ColumnTable table(String csv) throws IOException {
+        return load(csv).getTable();
+    }
+
+    /**
+     * A generated accident dataset with the given number of rows, the same for the same seed.
+     * About one speed and one district in fifty are missing.
+     */
+    static String accidents(int rows, long seed) {
+        Random random = new Random(seed);
+        StringBuilder csv = new StringBuilder(HEADER).append('\n');
+        for (int row = 0; row < rows; row++) {
+            csv.append(SEVERITIES[random.nextInt(SEVERITIES.length)]).append(',');
+            csv.append(2019 + random.nextInt(4)).append('-');
+            csv.append(String.format("%02d-%02d", 1 + random.nextInt(12), 1 + random.nextInt(28))).append(',');
+            if (random.nextInt(50) != 0) {
+                csv.append("District ").append(random.nextInt(40));
+            }
+            csv.append(',').append(1 + random.nextInt(4)).append(',');
+            if (random.nextInt(50) != 0) {
+                csv.append(20 + random.nextInt(500) / 10.0);
+            }
+            csv.append(',').append(50 + random.nextInt(5_000) / 1_000.0);
+            csv.append(',').append(-4 + random.nextInt(4_000) / 1_000.0);
+            csv.append(',').append(AREAS[random.nextInt(AREAS.length)]).append('\n');
+        }
+        return csv.toString();
+    }
+
+    /** The index of a column of {@link #HEADER}. */
+    static int column(String name) {
+        String[] headers = HEADER.split(",");
+        for (int i = 0; i < headers.length; i++) {
+            if (headers[i].equals(name)) return i;
+        }
+        throw new IllegalArgumentException(name);
+    }
+}
@@ -0,0 +1,149 @@
+package accidentviz;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.function.IntPredicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimeRollupTest {
+
+    private static ColumnTable table;
+    private static int date;
+    private static int district;
+
+    @BeforeAll
+    static void load() throws Exception {
+        table = TestData.table(TestData.accidents(30_000, 5));
+        date = TestData.column("Accident_Date");
+        district = TestData.column("District_Area");
+    }
+
+    @Test
+    void everyLevelMatchesBruteForce() {
+        TimeRollup rollup = TimeRollup.build(table, date, district, 0, table.getRowCount(), null);
+        assertSameRollup(table, bruteForce(table, row -> true), rollup);
+    }
+
+    @Test
+    void selectionMatchesBruteForce() {
+        RowBitmap selection = GroupByAggregatorTest.randomSelection(table.getRowCount(), 4);
+        TimeRollup rollup = TimeRollup.build(table, date, district, 0, table.getRowCount(), selection);
+        assertSameRollup(table, bruteForce(table, selection::contains), rollup);
+    }
+
+    @Test
+    void mergedRangesMatchWholeTable() {
+        int split = 12_345;
+        TimeRollup merged = TimeRollup.merge(TimeRollup.accumulate(table, date, district, 0, split, null),
+                TimeRollup.accumulate(table, date, district, split, table.getRowCount(), null));
+        assertSameRollup(table, bruteForce(table, row -> true), merged);
+    }
+
+    @Test
+    void wideDateRangesUseTheSparsePath() throws Exception {
+        // Two centuries of days times the categories is too large for the dense grid.
+        Random random = new Random(9);
+        StringBuilder csv = new StringBuilder("Accident_Date,District_Area,Number_of_Casualties\n");
+        LocalDate start = LocalDate.of(1900, 1, 1);
+        for (int row = 0; row < 20_000; row++) {
+            csv.append(start.plusDays(random.nextInt(73_000))).append(",District ").append(random.nextInt(30))
+                    .append(',').append(1 + random.nextInt(9)).append('\n');
+        }
+        ColumnTable wide = TestData.table(csv.toString());
+        TimeRollup rollup = TimeRollup.build(wide, 0, 1, 0, wide.getRowCount(), null);
+        assertSameRollup(wide, bruteForceOf(wide, 0, 1, row -> true), rollup);
+    }
+
+    @Test
+    void weeksStartOnMonday() {
+        for (int day = 0; day < 30; day++) {
+            LocalDate start = LocalDate.ofEpochDay(TimeRollup.Granularity.WEEK.start(day));
+            assertEquals(DayOfWeek.MONDAY, start.getDayOfWeek());
+            assertTrue(day - start.toEpochDay() < 7);
+        }
+    }
+
+    private static Map<String, double[]>[] bruteForce(ColumnTable table, IntPredicate include) {
+        return bruteForceOf(table, date, district, include);
+    }
+
+    /**
+     * Per granularity, the statistics of each category and period keyed "code/start/slot", as
+     * {count, sum, min, max}. A period present without values in a slot has a count of zero.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Map<String, double[]>[] bruteForceOf(ColumnTable table, int dateIndex, int catIndex,
+                                                        IntPredicate include) {
+        TimeRollup.Granularity[] granularities = TimeRollup.Granularity.values();
+        Map<String, double[]>[] levels = new Map[granularities.length];
+        int[] numeric = numericColumns(table);
+        for (TimeRollup.Granularity granularity : granularities) {
+            Map<String, double[]> level = new TreeMap<>();
+            for (int row = 0; row < table.getRowCount(); row++) {
+                int code = table.getCategoryColumn(catIndex).getCode(row);
+                int day = table.getDateColumn(dateIndex).getEpochDay(row);
+                if (!include.test(row) || code == ColumnTable.MISSING_CODE || day == ColumnTable.MISSING_DAY) continue;
+                for (int slot = 0; slot < numeric.length; slot++) {
+                    double[] stats = level.computeIfAbsent(code + "/" + granularity.start(day) + "/" + slot,
+                            key -> new double[] {0, 0, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY});
+                    ColumnTable.NumericColumn values = table.getNumericColumn(numeric[slot]);
+                    if (values.isMissing(row)) continue;
+                    double value = values.getDouble(row);
+                    stats[0]++;
+                    stats[1] += value;
+                    stats[2] = Math.min(stats[2], value);
+                    stats[3] = Math.max(stats[3], value);
+                }
+            }
+            levels[granularity.ordinal()] = level;
+        }
+        return levels;
+    }
+
+    private static void assertSameRollup(ColumnTable table, Map<String, double[]>[] expected, TimeRollup rollup) {
+        int slots = numericColumns(table).length;
+        for (TimeRollup.Granularity granularity : TimeRollup.Granularity.values()) {
+            Map<String, double[]> actual = new TreeMap<>();
+            for (int code = 0; code < rollup.keys.length; code++) {
+                TimeRollup.Series series = rollup.getSeries(granularity, code);
+                for (int i = 0; i < series.size(); i++) {
+                    for (int slot = 0; slot < slots; slot++) {
+                        actual.put(code + "/" + series.periods[i] + "/" + slot, new double[] {series.counts[slot][i],
+                                series.sums[slot][i], series.mins[slot][i], series.maxs[slot][i]});
+                    }
+                }
+            }
+            Map<String, double[]> level = expected[granularity.ordinal()];
+            assertEquals(level.keySet(), actual.keySet(), granularity.label);
+            for (Map.Entry<String, double[]> entry : level.entrySet()) {
+                double[] want = entry.getValue();
+                double[] got = actual.get(entry.getKey());
+                String where = granularity.label + " " + entry.getKey();
+                assertEquals(want[0], got[0], where);
+                assertEquals(want[1], got[1], 1e-9 * Math.abs(want[1]), where);
+                if (want[0] > 0) {
+                    assertEquals(want[2], got[2], where);
+                    assertEquals(want[3], got[3], where);
+                }
+            }
+        }
+    }
+
+    private static int[] numericColumns(ColumnTable table) {
+        int count = 0;
+        int[] columns = new int[table.getColumnCount()];
+        for (int col = 0; col < table.getColumnCount(); col++) {
+            if (table.getColumn(col).getType() == ColumnTable.ColumnType.NUMERIC) columns[count++] = col;
+        }
+        return Arrays.copyOf(columns, count);
+    }
+}
@@ -0,0 +1,96 @@
+package accidentviz;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class XlsxReaderTest {
+
+    private static final String STYLES = "<styleSheet><cellXfs count=\"2\"><xf numFmtId=\"0\"/><xf numFmtId=\"14\"/></cellXfs></styleSheet>";
+
+    @TempDir
+    File directory;
+
+    @Test
+    void readsSharedStringsAndDates() throws IOException {
+        File file = workbook(STYLES,
+                "<row r=\"1\"><c r=\"A1\" t=\"s\"><v>0</v></c><c r=\"B1\" t=\"s\"><v>1</v></c></row>"
+                        + "<row r=\"2\"><c r=\"A2\" t=\"s\"><v>2</v></c><c r=\"B2\" s=\"1\"><v>43831</v></c></row>",
+                "Area", "Date", "North");
+        List<String[]> rows = read(file);
+        assertEquals(2, rows.size());
+        assertEquals(Arrays.asList("Area", "Date"), Arrays.asList(rows.get(0)));
+        assertEquals(Arrays.asList("North", "2020-01-01"), Arrays.asList(rows.get(1)));
+    }
+
+    @Test
+    void reportsASharedStringThatIsNotThere() throws IOException {
+        File file = workbook(STYLES,
+                "<row r=\"1\"><c r=\"A1\" t=\"s\"><v>0</v></c></row><row r=\"2\"><c r=\"A2\" t=\"s\"><v>7</v></c></row>",
+                "Area");
+        assertMalformed(file, "A2");
+    }
+
+    @Test
+    void reportsAnUnreadableCell() throws IOException {
+        assertMalformed(workbook(STYLES, "<row r=\"1\"><c r=\"A1\" t=\"s\"><v>first</v></c></row>", "Area"), "A1");
+        assertMalformed(workbook(STYLES, "<row r=\"1\"><c r=\"B1\" s=\"x\"><v>1</v></c></row>"), "B1");
+        assertMalformed(workbook(STYLES, "<row r=\"1\"><c r=\"12\"><v>1</v></c></row>"), "12");
+        assertMalformed(workbook(STYLES, "<row r=\"1\"><c s=\"1\"/><c s=\"1\"><v>1e300</v></c></row>"), "B1");
+    }
+
+    @Test
+    void reportsAnUnreadableNumberFormat() throws IOException {
+        File file = workbook("<styleSheet><numFmts><numFmt numFmtId=\"x\" formatCode=\"yyyy\"/></numFmts></styleSheet>",
+                "<row r=\"1\"><c r=\"A1\"><v>1</v></c></row>");
+        IOException error = assertThrows(IOException.class, () -> read(file));
+        assertTrue(error.getMessage().contains("styles.xml"), error.getMessage());
+    }
+
+    private static void assertMalformed(File file, String cell) {
+        IOException error = assertThrows(IOException.class, () -> read(file));
+        assertTrue(error.getMessage().contains("cell " + cell + " of sheet Accidents"), error.getMessage());
+    }
+
+    private static List<String[]> read(File file) throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        new XlsxReader().parse(file, fields -> rows.add(fields));
+        return rows;
+    }
+
+    /** A one-sheet workbook with the given styles, sheet rows and shared strings. */
+    private File workbook(String styles, String sheetRows, String... strings) throws IOException {
+        StringBuilder shared = new StringBuilder("<sst>");
+        for (String string : strings) {
+            shared.append("<si><t>").append(string).append("</t></si>");
+        }
+        shared.append("</sst>");
+        File file = File.createTempFile("workbook", ".xlsx", directory);
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(file))) {
+            add(zip, "xl/workbook.xml", "<workbook><sheets><sheet name=\"Accidents\" sheetId=\"1\"/></sheets></workbook>");
+            add(zip, "xl/styles.xml", styles);
+            add(zip, "xl/sharedStrings.xml", shared.toString());
+            add(zip, "xl/worksheets/sheet1.xml", "<worksheet><sheetData>" + sheetRows + "</sheetData></worksheet>");
+        }
+        return file;
+    }
+
+    private static void add(ZipOutputStream zip, String path, String xml) throws IOException {
+        zip.putNextEntry(new ZipEntry(path));
+        zip.write(("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + xml).getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+    }
+}
@@ -0,0 +1,108 @@
+package accidentviz;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Generates synthetic accident datasets in the schema of accident_data.csv. The output is
+ * deterministic for a given row count, and each file is written once to the temp directory
+ * and reused by later benchmark runs.
+ */
+public class AccidentData {
+
+    static final String HEADER = "Index,Accident_Severity,Accident_Date,Latitude,Light_Conditions,District_Area,"
+            + "Longitude,Number_of_Vehicles,Number_of_Casualties,Road_Surface,Road_Type,Urban_or_Rural,"
+            + "Weather_Conditions,Vehicle_Type";
+
+    private static final String[] SEVERITIES = {"Slight", "Slight", "Slight", "Slight", "Serious", "Fatal"};
+    private static final String[] LIGHT_CONDITIONS = {"Daylight", "Darkness - lights lit", "Darkness - no lighting",
+            "Darkness - lighting unknown", "Darkness - lights unlit"};
+    private static final String[] ROAD_SURFACES = {"Dry", "Wet or damp", "Frost or ice", "Snow", "Flood over 3cm. deep"};
+    private static final String[] ROAD_TYPES = {"Single carriageway", "Dual carriageway", "Roundabout",
+            "One way street", "Slip road"};
+    private static final String[] AREAS = {"Urban", "Rural"};
+    private static final String[] WEATHER = {"Fine no high winds", "Raining no high winds", "Raining + high winds",
+            "Fine + high winds", "Snowing no high winds", "Fog or mist", "Other"};
+    private static final String[] VEHICLE_TYPES = {"Car", "Van / Goods 3.5 tonnes mgw or under", "Motorcycle over 500cc",
+            "Bus or coach (17 or more pass seats)", "Pedal cycle", "Taxi/Private hire car", "Goods 7.5 tonnes mgw and over"};
+
+    /** Roughly the number of district areas in the real data. */
+    private static final int DISTRICTS = 420;
+
+    /** Returns a generated file with the given number of data rows, creating it if needed. */
+    public static File file(int rows) throws IOException {
+        File file = new File(System.getProperty("java.io.tmpdir"), "accidents-" + rows + ".csv");
+        if (file.isFile() && file.length() > 0) {
+            return file;
+        }
+        File partial = new File(file.getPath() + ".part");
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(partial), StandardCharsets.UTF_8), 1 << 16)) {
+            write(writer, rows);
+        }
+        if (!partial.renameTo(file)) {
+            throw new IOException("Could not create " + file);
+        }
+        return file;
+    }
+
+    /** Writes the header and the given number of rows. */
+    public static void write(Writer writer, int rows) throws IOException {
+        Random random = new Random(rows);
+        StringBuilder line = new StringBuilder(192);
+        writer.write(HEADER);
+        writer.write('\n');
+        for (int row = 0; row < rows; row++) {
+            line.setLength(0);
+            line.append(200701).append(row).append(',');
+            line.append(pick(random, SEVERITIES)).append(',');
+            // accident_data.csv writes dates year-day-month
+            line.append(2019 + random.nextInt(4)).append('-');
+            appendTwoDigits(line, 1 + random.nextInt(28)).append('-');
+            appendTwoDigits(line, 1 + random.nextInt(12)).append(',');
+            if (random.nextInt(1000) == 0) {
+                line.append(",");
+            } else {
+                line.append(50.0 + random.nextInt(5_000_000) / 1_000_000.0).append(',');
+            }
+            line.append(pick(random, LIGHT_CONDITIONS)).append(',');
+            line.append("District ").append(random.nextInt(DISTRICTS)).append(',');
+            if (random.nextInt(1000) == 0) {
+                line.append(",");
+            } else {
+                line.append(-4.0 + random.nextInt(4_000_000) / 1_000_000.0).append(',');
+            }
+            line.append(1 + random.nextInt(3)).append(',');
+            line.append(1 + random.nextInt(4)).append(',');
+            line.append(pick(random, ROAD_SURFACES)).append(',');
+            line.append(pick(random, ROAD_TYPES)).append(',');
+            line.append(pick(random, AREAS)).append(',');
+            line.append(pick(random, WEATHER)).append(',');
+            line.append(pick(random, VEHICLE_TYPES)).append('\n');
+            writer.append(line);
+        }
+    }
+
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private static StringBuilder appendTwoDigits(StringBuilder line, int value) {
+        if (value < 10) line.append('0');
+        return line.append(value);
+    }
+
+    /** Index of a header in the generated schema. */
+    static int column(String name) {
+        String[] headers = HEADER.split(",");
+        for (int i = 0; i < headers.length; i++) {
+            if (headers[i].equals(name)) return i;
+        }
+        throw new IllegalArgumentException(name);
+    }
+}
@@ -0,0 +1,111 @@
+package accidentviz;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The aggregation behind each chart type, run against a loaded table without the
+ * aggregate cache so that every invocation does the full pass.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx8g"})
+public class ChartBenchmark {
+
+    @Param({"10000", "100000", "1000000", "10000000"})
+    public int rows;
+
+    private ColumnTable table;
+    private ColumnTable.CategoryColumn districts;
+    private int severityIndex;
+    private int districtIndex;
+    private ColumnTable.NumericColumn casualties;
+    private int casualtiesIndex;
+    private int dateIndex;
+    private ColumnTable.NumericColumn latitudes;
+    private ColumnTable.NumericColumn longitudes;
+    private RowFilter filter;
+    private RowBitmap selection;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        TableLoader loader = new TableLoader();
+        new CsvParser().parse(AccidentData.file(rows), loader);
+        table = loader.finish();
+        districtIndex = AccidentData.column("District_Area");
+        districts = table.getCategoryColumn(districtIndex);
+        severityIndex = AccidentData.column("Accident_Severity");
+        casualtiesIndex = AccidentData.column("Number_of_Casualties");
+        casualties = table.getNumericColumn(casualtiesIndex);
+        dateIndex = AccidentData.column("Accident_Date");
+        latitudes = table.getNumericColumn(AccidentData.column("Latitude"));
+        longitudes = table.getNumericColumn(AccidentData.column("Longitude"));
+        filter = BatchRenderer.parseFilter(table, List.of("Weather_Conditions=Raining no high winds",
+                "Weather_Conditions=Raining + high winds", "Urban_or_Rural=Urban"));
+        selection = select();
+    }
+
+    /** Bar chart: sum of casualties per district. */
+    @Benchmark
+    public GroupByAggregator.Result bar() {
+        return GroupByAggregator.aggregate(districts, casualties);
+    }
+
+    /** Evaluating a two-column filter, bitmap indexes included. */
+    @Benchmark
+    public RowBitmap select() {
+        return filter.select(col -> BitmapIndex.build(table.getCategoryColumn(col), table.getRowCount()));
+    }
+
+    /** Bar chart over the rows matching the filter. */
+    @Benchmark
+    public GroupByAggregator.Result barFiltered() {
+        return GroupByAggregator.aggregate(districts, casualties, selection);
+    }
+
+    /** Pie chart: the ten most frequent districts. */
+    @Benchmark
+    public int[] pie() {
+        GroupByAggregator.Result counts = GroupByAggregator.aggregate(districts, null);
+        return counts.topK(10, GroupByAggregator.Aggregation.COUNT, code -> !counts.keys[code].isEmpty());
+    }
+
+    /** Line chart with a date column: the day, week, month and year rollup per severity. */
+    @Benchmark
+    public TimeRollup line() {
+        return TimeRollup.build(table, dateIndex, severityIndex, 0, table.getRowCount(), null);
+    }
+
+    /** A dashboard of the bar, pie and line charts above, aggregated in one fused scan. */
+    @Benchmark
+    public Map<ExternalAggregator.Query, AggregateCache.Sized> dashboard() {
+        return FusedAggregator.aggregate(table, List.of(ExternalAggregator.Query.groupBy(districtIndex, casualtiesIndex),
+                ExternalAggregator.Query.count(districtIndex), ExternalAggregator.Query.rollup(dateIndex, severityIndex)), null);
+    }
+
+    /** Scatter chart: the full view of longitude against latitude. */
+    @Benchmark
+    public Downsampling.Points scatter() {
+        return Downsampling.densityBin(longitudes, latitudes, table.getRowCount(),
+                Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+    }
+}
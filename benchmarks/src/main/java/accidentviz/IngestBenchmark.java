@@ -0,0 +1,96 @@
+package accidentviz;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The load path: raw CSV parsing, a full load into the column store, schema inference over
+ * the sample rows and date parsing. Divide the file size by the score for bytes per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx8g"})
+public class IngestBenchmark {
+
+    @Param({"10000", "100000", "1000000", "10000000"})
+    public int rows;
+
+    private File file;
+    private String[] headers;
+    private List<String[]> sample;
+    private String[] dates;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = AccidentData.file(rows);
+        List<String[]> parsed = new ArrayList<>();
+        new CsvParser().parse(file, fields -> {
+            parsed.add(fields);
+            return parsed.size() <= SchemaInference.DEFAULT_SAMPLE_ROWS;
+        });
+        headers = parsed.remove(0);
+        sample = parsed;
+        int dateIndex = AccidentData.column("Accident_Date");
+        dates = new String[sample.size()];
+        for (int i = 0; i < dates.length; i++) {
+            dates[i] = sample.get(i)[dateIndex];
+        }
+    }
+
+    /** Tokenizing only; every row is handed to a no-op handler. */
+    @Benchmark
+    public long parse(Blackhole blackhole) throws IOException {
+        return new CsvParser().parse(file, fields -> {
+            blackhole.consume(fields);
+            return true;
+        });
+    }
+
+    /** Parsing, inference and building the typed columns, as the app does on open. */
+    @Benchmark
+    public ColumnTable load() throws IOException {
+        TableLoader loader = new TableLoader();
+        new CsvParser().parse(file, loader);
+        return loader.finish();
+    }
+
+    @Benchmark
+    public List<SchemaInference.ColumnSchema> inferSchema() {
+        SchemaInference inference = new SchemaInference(headers);
+        for (String[] row : sample) {
+            if (!inference.accept(row)) break;
+        }
+        return inference.getSchema();
+    }
+
+    /** Detection plus parsing with a fresh parser, so the per-value cache starts cold. */
+    @Benchmark
+    public long parseDates() {
+        DateParser parser = DateParser.detect(List.of(dates));
+        long total = 0;
+        for (String date : dates) {
+            total += parser.parseEpochDay(date);
+        }
+        return total;
+    }
+}